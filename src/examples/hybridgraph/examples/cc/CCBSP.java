@@ -5,6 +5,7 @@ package hybridgraph.examples.cc;
 
 import org.apache.hama.myhama.api.BSP;
 import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MessageSink;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.util.Context;
 
@@ -68,4 +69,15 @@ public class CCBSP extends BSP<Integer, Integer, Integer, Integer> {
 		
 		return result;
 	}
+	
+	@Override
+	public void getMessages(Context<Integer, Integer, Integer, Integer> context, 
+			MessageSink<Integer> sink) {
+		GraphRecord<Integer, Integer, Integer, Integer> graph = 
+			context.getGraphRecord();
+		int[] eids = graph.getEdgeIds();
+		for (int i = 0; i < graph.getEdgeNum(); i++) {
+			sink.emit(graph.getVerId(), eids[i], graph.getVerValue());
+		}
+	}
 }
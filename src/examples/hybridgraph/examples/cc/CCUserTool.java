@@ -10,6 +10,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.IntMinCombiner;
+import org.apache.hama.myhama.api.MsgCombiner;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.api.UserTool;
 import org.apache.hama.myhama.io.EdgeParser;
@@ -37,7 +39,7 @@ public class CCUserTool extends UserTool<Integer, Integer, Integer, Integer> {
 			this.verValue = this.verId;
 			
 			if (eData.equals("")) {
-	 			setEdges(new Integer[]{this.verId}, null);
+	 			setEdges(new int[]{this.verId}, null);
 	        	return;
 			}
 	        
@@ -69,20 +71,13 @@ public class CCUserTool extends UserTool<Integer, Integer, Integer, Integer> {
 		@Override
 		public void serEdges(ByteBuffer eOut) 
 				throws EOFException, IOException {
-			eOut.putInt(this.edgeNum);
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		eOut.putInt(this.edgeIds[index]);
-	    	}
+			serEdgeIds(eOut);
 		}
 
 		@Override
 		public void deserEdges(ByteBuffer eIn) 
 				throws EOFException, IOException {
-			this.edgeNum = eIn.getInt();
-	    	this.edgeIds = new Integer[this.edgeNum];
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		this.edgeIds[index] = eIn.getInt();
-	    	}
+			deserEdgeIds(eIn);
 		}
 		
 		@Override
@@ -90,6 +85,11 @@ public class CCUserTool extends UserTool<Integer, Integer, Integer, Integer> {
 			return 4;
 		}
 		
+		@Override
+		public int getFixedVerByte() {
+			return 4;
+		}
+		
 		@Override
 		public int getGraphInfoByte() {
 			return 0;
@@ -144,4 +144,9 @@ public class CCUserTool extends UserTool<Integer, Integer, Integer, Integer> {
 	public boolean isAccumulated() {
 		return true;
 	}
+	
+	@Override
+	public MsgCombiner<Integer> getCombiner() {
+		return new IntMinCombiner();
+	}
 }
@@ -14,6 +14,7 @@ import hybridgraph.examples.sssp.SSSPPullDriver;
 import hybridgraph.examples.sssp.determ.SSSPHybridDriverDeterm;
 
 import org.apache.hadoop.util.ProgramDriver;
+import org.apache.hama.myhama.io.StreamingPartitioner;
 
 
 public class ExampleDriver {
@@ -61,6 +62,10 @@ public class ExampleDriver {
 	    	pgd.addClass("mm.hybrid", MMBipartiteHybridDriver.class, 
 				"\trandom maximal matching by hybrid (05/25/2017)");
 	    	
+	    	/** Preprocessing */
+	    	pgd.addClass("partition", StreamingPartitioner.class, 
+				"\tstreaming LDG/Fennel partitioner with relabeling (10/18/2026)");
+	    	
 	    	pgd.driver(argv);
 	    	exitCode = 0;
 	    } catch(Throwable e) {
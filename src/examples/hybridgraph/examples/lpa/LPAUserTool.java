@@ -38,7 +38,7 @@ public class LPAUserTool
 			this.verValue = this.verId;
 			
 			if (eData.equals("")) {
-	 			setEdges(new Integer[]{this.verId}, null);
+	 			setEdges(new int[]{this.verId}, null);
 	        	return;
 			}
 	        
@@ -70,20 +70,13 @@ public class LPAUserTool
 		@Override
 		public void serEdges(ByteBuffer eOut) 
 				throws EOFException, IOException {
-			eOut.putInt(this.edgeNum);
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		eOut.putInt(this.edgeIds[index]);
-	    	}
+			serEdgeIds(eOut);
 		}
 
 		@Override
 		public void deserEdges(ByteBuffer eIn) 
 				throws EOFException, IOException {
-			this.edgeNum = eIn.getInt();
-	    	this.edgeIds = new Integer[this.edgeNum];
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		this.edgeIds[index] = eIn.getInt();
-	    	}
+			deserEdgeIds(eIn);
 		}
 		
 		@Override
@@ -91,6 +84,11 @@ public class LPAUserTool
 			return 4;
 		}
 		
+		@Override
+		public int getFixedVerByte() {
+			return 4;
+		}
+		
 		@Override
 		public int getGraphInfoByte() {
 			return 0;
@@ -42,7 +42,7 @@ public class MISUserTool extends UserTool<Integer, Integer, Integer, Integer> {
 			this.verValue = 0; //initialized as "unknown"
 			
 			if (eData.equals("")) {
-	 			setEdges(new Integer[]{this.verId}, null);
+	 			setEdges(new int[]{this.verId}, null);
 	        	return;
 			}
 	        
@@ -74,20 +74,13 @@ public class MISUserTool extends UserTool<Integer, Integer, Integer, Integer> {
 		@Override
 		public void serEdges(ByteBuffer eOut) 
 				throws EOFException, IOException {
-			eOut.putInt(this.edgeNum);
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		eOut.putInt(this.edgeIds[index]);
-	    	}
+			serEdgeIds(eOut);
 		}
 
 		@Override
 		public void deserEdges(ByteBuffer eIn) 
 				throws EOFException, IOException {
-			this.edgeNum = eIn.getInt();
-	    	this.edgeIds = new Integer[this.edgeNum];
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		this.edgeIds[index] = eIn.getInt();
-	    	}
+			deserEdgeIds(eIn);
 		}
 		
 		@Override
@@ -95,6 +88,11 @@ public class MISUserTool extends UserTool<Integer, Integer, Integer, Integer> {
 			return 4;
 		}
 		
+		@Override
+		public int getFixedVerByte() {
+			return 4;
+		}
+		
 		@Override
 		public int getGraphInfoByte() {
 			return 0;
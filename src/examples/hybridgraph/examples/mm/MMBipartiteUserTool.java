@@ -72,20 +72,13 @@ public class MMBipartiteUserTool
 		@Override
 		public void serEdges(ByteBuffer eOut) 
 				throws EOFException, IOException {
-			eOut.putInt(this.edgeNum);
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		eOut.putInt(this.edgeIds[index]);
-	    	}
+			serEdgeIds(eOut);
 		}
 
 		@Override
 		public void deserEdges(ByteBuffer eIn) 
 				throws EOFException, IOException {
-			this.edgeNum = eIn.getInt();
-	    	this.edgeIds = new Integer[this.edgeNum];
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		this.edgeIds[index] = eIn.getInt();
-	    	}
+			deserEdgeIds(eIn);
 		}
 		
 		@Override
@@ -6,6 +6,7 @@ package hybridgraph.examples.pagerank;
 import org.apache.hama.Constants.VBlockUpdateRule;
 import org.apache.hama.myhama.api.BSP;
 import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MessageSink;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.util.Context;
 
@@ -83,4 +84,15 @@ public class PageRankBSP extends BSP<Double, Integer, Double, Integer> {
 		}
 		return result;
 	}
+	
+	@Override
+	public void getMessages(Context<Double, Integer, Double, Integer> context, 
+			MessageSink<Double> sink) {
+		GraphRecord<Double, Integer, Double, Integer> graph = 
+			context.getGraphRecord();
+		int[] eids = graph.getEdgeIds();
+		for (int i = 0; i < graph.getEdgeNum(); i++) {
+			sink.emit(graph.getVerId(), eids[i], graph.getVerValue());
+		}
+	}
 }
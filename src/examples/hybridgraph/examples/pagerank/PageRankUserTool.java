@@ -9,7 +9,9 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.apache.hama.myhama.api.DoubleSumCombiner;
 import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MsgCombiner;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.api.UserTool;
 import org.apache.hama.myhama.io.EdgeParser;
@@ -40,7 +42,7 @@ public class PageRankUserTool
 			this.verValue = 10.0;
 	        	        
 	        if (eData.equals("")) {
-	 			setEdges(new Integer[]{this.verId}, null);
+	 			setEdges(new int[]{this.verId}, null);
 	 	        this.graphInfo = 1;
 	        	return;
 			}
@@ -86,20 +88,13 @@ public class PageRankUserTool
 		@Override
 		public void serEdges(ByteBuffer eOut) 
 				throws EOFException, IOException {
-			eOut.putInt(this.edgeNum);
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		eOut.putInt(this.edgeIds[index]);
-	    	}
+			serEdgeIds(eOut);
 		}
 
 		@Override
 		public void deserEdges(ByteBuffer eIn) 
 				throws EOFException, IOException {
-			this.edgeNum = eIn.getInt();
-	    	this.edgeIds = new Integer[this.edgeNum];
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		this.edgeIds[index] = eIn.getInt();
-	    	}
+			deserEdgeIds(eIn);
 		}
 		
 		@Override
@@ -116,6 +111,11 @@ public class PageRankUserTool
 			return 8;
 		}
 		
+		@Override
+		public int getFixedVerByte() {
+			return 8;
+		}
+		
 		@Override
 		public int getGraphInfoByte() {
 			return 4;
@@ -184,4 +184,9 @@ public class PageRankUserTool
 	public boolean isAccumulated() {
 		return true;
 	}
+	
+	@Override
+	public MsgCombiner<Double> getCombiner() {
+		return new DoubleSumCombiner();
+	}
 }
@@ -48,7 +48,7 @@ public class SAUserTool
 			this.verValue = new Value(this.verId, 1);
 			
 			if (eData.equals("")) {
-	 			setEdges(new Integer[]{this.verId}, null);
+	 			setEdges(new int[]{this.verId}, null);
 	        	return;
 			}
 	        
@@ -81,20 +81,13 @@ public class SAUserTool
 		@Override
 		public void serEdges(ByteBuffer eOut) 
 				throws EOFException, IOException {
-			eOut.putInt(this.edgeNum);
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		eOut.putInt(this.edgeIds[index]);
-	    	}
+			serEdgeIds(eOut);
 		}
 
 		@Override
 		public void deserEdges(ByteBuffer eIn) 
 				throws EOFException, IOException {
-			this.edgeNum = eIn.getInt();
-	    	this.edgeIds = new Integer[this.edgeNum];
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		this.edgeIds[index] = eIn.getInt();
-	    	}
+			deserEdgeIds(eIn);
 		}
 		
 		@Override
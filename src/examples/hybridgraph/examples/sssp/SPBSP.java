@@ -8,6 +8,7 @@ import java.util.Random;
 import org.apache.hama.Constants.VBlockUpdateRule;
 import org.apache.hama.myhama.api.BSP;
 import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MessageSink;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.util.Context;
 
@@ -101,4 +102,16 @@ public class SPBSP extends BSP<Double, Double, Double, Integer> {
 		}
 		return result;
 	}
+	
+	@Override
+	public void getMessages(Context<Double, Double, Double, Integer> context, 
+			MessageSink<Double> sink) {
+		GraphRecord<Double, Double, Double, Integer> graph = 
+			context.getGraphRecord();
+		int[] eids = graph.getEdgeIds();
+		//Generate a message based on a random edge weight and then send it to a neighbor. 
+		for (int i = 0; i < graph.getEdgeNum(); i++) {
+			sink.emit(graph.getVerId(), eids[i], graph.getVerValue()+rd.nextDouble());
+		}
+	}
 }
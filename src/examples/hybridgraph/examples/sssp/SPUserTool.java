@@ -9,7 +9,9 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.apache.hama.myhama.api.DoubleMinCombiner;
 import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MsgCombiner;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.api.UserTool;
 import org.apache.hama.myhama.io.EdgeParser;
@@ -42,7 +44,7 @@ public class SPUserTool extends UserTool<Double, Double, Double, Integer> {
 			this.verValue = Double.MAX_VALUE;
 			
 			if (eData.equals("")) {
-				setEdges(new Integer[]{this.verId}, null);
+				setEdges(new int[]{this.verId}, null);
 	        	return;
 			}
 	        
@@ -74,20 +76,13 @@ public class SPUserTool extends UserTool<Double, Double, Double, Integer> {
 		@Override
 		public void serEdges(ByteBuffer eOut) 
 				throws EOFException, IOException {
-			eOut.putInt(this.edgeNum);
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		eOut.putInt(this.edgeIds[index]);
-	    	}
+			serEdgeIds(eOut);
 		}
 
 		@Override
 		public void deserEdges(ByteBuffer eIn) 
 				throws EOFException, IOException {
-			this.edgeNum = eIn.getInt();
-	    	this.edgeIds = new Integer[this.edgeNum];
-	    	for (int index = 0; index < this.edgeNum; index++) {
-	    		this.edgeIds[index] = eIn.getInt();
-	    	}
+			deserEdgeIds(eIn);
 		}
 		
 		@Override
@@ -95,6 +90,11 @@ public class SPUserTool extends UserTool<Double, Double, Double, Integer> {
 			return 8;
 		}
 		
+		@Override
+		public int getFixedVerByte() {
+			return 8;
+		}
+		
 		/**
 		 * 4 + (4 + 4) * this.edgeNum
 		 */
@@ -160,4 +160,9 @@ public class SPUserTool extends UserTool<Double, Double, Double, Integer> {
 	public boolean isAccumulated() {
 		return true;
 	}
+	
+	@Override
+	public MsgCombiner<Double> getCombiner() {
+		return new DoubleMinCombiner();
+	}
 }
@@ -86,7 +86,7 @@ public class SPBSPDeterm extends BSP<Double, Double, Double, Integer> {
 		GraphRecord<Double, Double, Double, Integer> graph = 
 			context.getGraphRecord();
 		SPMsgRecordDeterm[] result = new SPMsgRecordDeterm[graph.getEdgeNum()];
-		Integer[] eids = graph.getEdgeIds();
+		int[] eids = graph.getEdgeIds();
 		Double[] eweights = graph.getEdgeWeights();
 		for (int idx = 0; idx < graph.getEdgeNum(); idx++) {
 			result[idx] = new SPMsgRecordDeterm();
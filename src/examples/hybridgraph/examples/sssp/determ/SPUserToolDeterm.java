@@ -42,18 +42,18 @@ public class SPUserToolDeterm extends UserTool<Double, Double, Double, Integer>
 			this.verValue = Double.MAX_VALUE;
 			
 			if (eData.equals("")) {
-				setEdges(new Integer[]{this.verId}, null);
+				setEdges(new int[]{this.verId}, null);
 	        	return;
 			}
 	        
 			if (eData.equals("")) {
-				setEdges(new Integer[]{this.verId}, new Double[]{0.1});
+				setEdges(new int[]{this.verId}, new Double[]{0.1});
 	        	return;
 			}
 	        
 			IntDoubleEdgeSet set = 
 				edgeParser.parseEdgeIdWeightArray(eData, ':');
-	        setEdges(set.getEdgeIds(), set.getEdgeWeights());
+	        setEdges(set.getEdgeIds(), set.getBoxedEdgeWeights());
 	    }
 
 		@Override
@@ -93,7 +93,7 @@ public class SPUserToolDeterm extends UserTool<Double, Double, Double, Integer>
 		public void deserEdges(ByteBuffer eIn) 
 				throws EOFException, IOException {
 			this.edgeNum = eIn.getInt();
-	    	this.edgeIds = new Integer[this.edgeNum];
+	    	this.edgeIds = new int[this.edgeNum];
 	    	this.edgeWeights = new Double[this.edgeNum];
 	    	for (int index = 0; index < this.edgeNum; index++) {
 	    		this.edgeIds[index] = eIn.getInt();
@@ -101,11 +101,32 @@ public class SPUserToolDeterm extends UserTool<Double, Double, Double, Integer>
 	    	}
 		}
 		
+		@Override
+		protected void serEdgeWeights(ByteBuffer eOut) 
+				throws EOFException, IOException {
+			for (int index = 0; index < this.edgeNum; index++) {
+				eOut.putDouble(this.edgeWeights[index]);
+			}
+		}
+		
+		@Override
+		protected void deserEdgeWeights(ByteBuffer eIn) 
+				throws EOFException, IOException {
+			for (int index = 0; index < this.edgeNum; index++) {
+				this.edgeWeights[index] = eIn.getDouble();
+			}
+		}
+		
 		@Override
 		public int getVerByte() {
 			return 8;
 		}
 		
+		@Override
+		public int getFixedVerByte() {
+			return 8;
+		}
+		
 		/**
 		 * 4 + (4 + 8) * this.edgeNum
 		 */
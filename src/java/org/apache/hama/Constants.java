@@ -45,6 +45,9 @@ public interface Constants {
   public static final String PEER_PORT = "bsp.peer.port";
   /** Default port region server listens on. */
   public static final int DEFAULT_PEER_PORT = 61000;
+  /** The data plane of one task listens on its peer port plus this offset. */
+  public static final String DATA_PORT_OFFSET = "bsp.peer.data.port.offset";
+  public static final int DEFAULT_DATA_PORT_OFFSET = 1000;
 
   public static final String PEER_ID = "bsp.peer.id";
   
@@ -83,6 +86,10 @@ public interface Constants {
 	  public static final int Load_Edge_Thread_Num = 20;
 	  public static final int Hash_Bucket_Num = 5;
 	  public static final int Pull_Msg_Thread_Num = 20;
+	  public static final int Compute_Thread_Num = 1;
+	  public static final int Compute_Batch_Size = 1024;
+	  public static final int Load_Thread_Num = 1;
+	  public static final int Load_Batch_Size = 1024;
   }
   
   public static class PRIORITY {
@@ -108,6 +115,34 @@ public interface Constants {
 	  public static final float Def_Seq_Write_ThroughPut = 2414;
 	  /** Default value (local cluster), MB/s */
 	  public static final float Def_Network_ThroughPut = 112;
+	  
+	  /** 
+	   * Measure throughputs by {@link org.apache.hama.monitor.HardwareBenchmark}
+	   * when a GroomServer starts up. If true, measured values reported by 
+	   * GroomServers override the above configured values, except: 
+	   * read throughputs, unless the calibration file is at least twice 
+	   * as large as the physical memory (otherwise reads hit the page 
+	   * cache), and the network throughput, which is only measured over 
+	   * the loopback interface. 
+	   */
+	  public static final String Calibrate = "bsp.hardware.calibrate";
+	  /** 
+	   * Bytes of the file (and the stream) used to measure throughputs. 
+	   * Set it to at least twice the physical memory to measure reads. 
+	   */
+	  public static final String Calibrate_Bytes = "bsp.hardware.calibrate.bytes";
+	  public static final long Def_Calibrate_Bytes = 64L*1024*1024;
+	  /** Block size of reads and writes, the same as the fio tests */
+	  public static final int Calibrate_Block_Size = 16*1024;
+	  
+	  /**
+	   * Threshold of miniQ (seconds) to switch from PULL to PUSH. 
+	   * If not set, the threshold is -230 which is tuned on the local cluster, 
+	   * scaled by the ratio between Def_Seq_Read_ThroughPut and the actual 
+	   * sequential read throughput.
+	   */
+	  public static final String MiniQ_Threshold = "bsp.hybrid.miniq.threshold";
+	  public static final double Def_MiniQ_Threshold = -230.0;
   }
   
   /**
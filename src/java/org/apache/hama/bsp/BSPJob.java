@@ -25,7 +25,11 @@ import java.util.Enumeration;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hama.HamaConfiguration;
+import org.apache.hama.monitor.StaticStyleSwitchPolicy;
+import org.apache.hama.monitor.StyleSwitchPolicy;
 import org.apache.hama.myhama.api.BSP;
 import org.apache.hama.myhama.api.UserTool;
 import org.apache.hama.myhama.io.InputFormat;
@@ -443,6 +447,23 @@ public void setBspClass(Class<? extends BSP> cls)
 	  return Constants.STYLE.valueOf(style);
   }
   
+  /**
+   * Set the {@link StyleSwitchPolicy} deciding the style of each superstep 
+   * under Constants.STYLE.Hybrid.
+   * @param cls
+   */
+  public void setStyleSwitchPolicyClass(
+		  Class<? extends StyleSwitchPolicy> cls) {
+	  conf.setClass("bsp.ite.impl.style.switch.policy", cls, 
+			  StyleSwitchPolicy.class);
+  }
+  
+  /** Return {@link StaticStyleSwitchPolicy} as default */
+  public Class<? extends StyleSwitchPolicy> getStyleSwitchPolicyClass() {
+	  return conf.getClass("bsp.ite.impl.style.switch.policy", 
+			  StaticStyleSwitchPolicy.class, StyleSwitchPolicy.class);
+  }
+  
   /** 
    * True, using {@link GraphDataServerDisk}, 
    * otherwise, using {@link GraphDataServerMem}.
@@ -515,6 +536,280 @@ public void setBspClass(Class<? extends BSP> cls)
 	  return conf.getInt("bsp.message.pack.size", 10000);
   }
   
+  /**
+   * Set the maximal number of {@link MsgPack}s for style.Pull, which are 
+   * merged into one response to save round-trips with remote tasks.
+   * @param num
+   */
+  public void setMsgPullBatch(int num) {
+	  conf.setInt("bsp.message.pull.batch", num);
+  }
+  
+  /** Return 8 as default */
+  public int getMsgPullBatch() {
+	  return conf.getInt("bsp.message.pull.batch", 8);
+  }
+  
+  /**
+   * Set the maximal bytes of messages in one response for style.Pull. 
+   * The next request continues from where the response stops.
+   * @param bytes
+   */
+  public void setMsgPullBatchByte(int bytes) {
+	  conf.setInt("bsp.message.pull.batch.byte", bytes);
+  }
+  
+  /** Return 4MB as default */
+  public int getMsgPullBatchByte() {
+	  return conf.getInt("bsp.message.pull.batch.byte", 4*1024*1024);
+  }
+  
+  /**
+   * Set the number of VBlocks whose messages are pre-fetched from source 
+   * tasks while updating the current VBlock, for style.Pull. 
+   * Zero disables pre-fetching for non-accumulated messages, 
+   * while accumulated messages are always pre-fetched for one VBlock.
+   * @param depth
+   */
+  public void setMsgPullPrefetchDepth(int depth) {
+	  conf.setInt("bsp.message.pull.prefetch.depth", depth);
+  }
+  
+  /** Return 1 as default */
+  public int getMsgPullPrefetchDepth() {
+	  return conf.getInt("bsp.message.pull.prefetch.depth", 1);
+  }
+  
+  /**
+   * Set the memory budget (bytes) of buffers used to keep 
+   * pre-fetched messages for style.Pull.
+   * @param mem
+   */
+  public void setMsgPullPrefetchMem(long mem) {
+	  conf.setLong("bsp.message.pull.prefetch.mem", mem);
+  }
+  
+  /** Return 128MB as default */
+  public long getMsgPullPrefetchMem() {
+	  return conf.getLong("bsp.message.pull.prefetch.mem", 128L*1024*1024);
+  }
+  
+  /**
+   * Combine messages sent to the same vertex in the sending buffer 
+   * under style.Push. Only for accumulated messages.
+   * @param combine
+   */
+  public void setSendCombine(boolean combine) {
+	  conf.setBoolean("bsp.message.send.combine", combine);
+  }
+  
+  /** Return true as default */
+  public boolean isSendCombine() {
+	  return conf.getBoolean("bsp.message.send.combine", true);
+  }
+  
+  /**
+   * Transfer {@link MsgPack}s by {@link MsgTransport} over NIO channels, 
+   * instead of Hadoop RPC. Other communications still use RPC.
+   * @param nio
+   */
+  public void setNioMsgTransport(boolean nio) {
+	  conf.setBoolean("bsp.message.transport.nio", nio);
+  }
+  
+  /** Return false as default */
+  public boolean isNioMsgTransport() {
+	  return conf.getBoolean("bsp.message.transport.nio", false);
+  }
+  
+  /**
+   * Set the maximal number of {@link MsgPack}s in flight per dstTask 
+   * under style.Push. The computation is suspended only when the 
+   * window of one dstTask is full or the sending budget is exhausted.
+   * @param window
+   */
+  public void setMsgSendWindow(int window) {
+	  conf.setInt("bsp.message.send.window", window);
+  }
+  
+  /** Return 1 as default */
+  public int getMsgSendWindow() {
+	  return conf.getInt("bsp.message.send.window", 1);
+  }
+  
+  /**
+   * Set the maximal bytes of {@link MsgPack}s in flight to all 
+   * remote dstTasks under style.Push.
+   * @param budget
+   */
+  public void setMsgSendBudget(long budget) {
+	  conf.setLong("bsp.message.send.budget", budget);
+  }
+  
+  /** Return 256MB as default */
+  public long getMsgSendBudget() {
+	  return conf.getLong("bsp.message.send.budget", 256L*1024*1024);
+  }
+  
+  /**
+   * Set the maximal bytes of vertex values of responding VBlocks, which 
+   * are read once and shared by pull requests from all destination 
+   * VBlocks at one superstep. Zero disables sharing.
+   * @param budget
+   */
+  public void setPullSharedScanBudget(long budget) {
+	  conf.setLong("bsp.pull.shared.scan.budget", budget);
+  }
+  
+  /** Return 64MB as default */
+  public long getPullSharedScanBudget() {
+	  return conf.getLong("bsp.pull.shared.scan.budget", 64L*1024*1024);
+  }
+  
+  /**
+   * Set the number of VBlocks whose value/info/adjacency files are read 
+   * ahead into the page cache while the current VBlock is updated 
+   * (only for the disk version). Zero disables read-ahead.
+   * @param num
+   */
+  public void setGraphPrefetchNum(int num) {
+	  conf.setInt("bsp.graph.prefetch.num", num);
+  }
+  
+  /** Return 1 as default */
+  public int getGraphPrefetchNum() {
+	  return conf.getInt("bsp.graph.prefetch.num", 1);
+  }
+  
+  /**
+   * If true, new values of an updated VBlock are forced to disk 
+   * in background after the VBlock is closed, only when 
+   * {@link #isGraphWriteSync()} is true (only for the disk version).
+   * @param flag
+   */
+  public void setGraphWriteBehind(boolean flag) {
+	  conf.setBoolean("bsp.graph.write.behind", flag);
+  }
+  
+  /** Return true as default */
+  public boolean isGraphWriteBehind() {
+	  return conf.getBoolean("bsp.graph.write.behind", true);
+  }
+  
+  /**
+   * If true, new values of an updated VBlock are forced to disk before 
+   * its value file is closed (only for the disk version). Otherwise, 
+   * they are written back by the page cache, since lost values are 
+   * recovered from checkpoints instead of local files.
+   * @param flag
+   */
+  public void setGraphWriteSync(boolean flag) {
+	  conf.setBoolean("bsp.graph.write.sync", flag);
+  }
+  
+  /** Return false as default */
+  public boolean isGraphWriteSync() {
+	  return conf.getBoolean("bsp.graph.write.sync", false);
+  }
+  
+  /**
+   * Set the maximum ratio of active vertices (including vertices with 
+   * messages) in one VBlock, below which only active vertices are read 
+   * and written by seeking in the value file, instead of scanning all 
+   * vertices of the VBlock. Zero disables the sparse path.
+   * @param ratio
+   */
+  public void setSparseUpdateRatio(float ratio) {
+	  conf.setFloat("bsp.update.sparse.ratio", ratio);
+  }
+  
+  /** Return 0.05 as default */
+  public float getSparseUpdateRatio() {
+	  return conf.getFloat("bsp.update.sparse.ratio", 0.05f);
+  }
+  
+  /**
+   * If true, edge ids of fragments in EBlock files are sorted, 
+   * gap-encoded and varint-coded (only for the disk version). 
+   * Weighted {@link GraphRecord}s should implement serEdgeWeights() 
+   * and deserEdgeWeights().
+   * @param flag
+   */
+  public void setCompressEBlock(boolean flag) {
+	  conf.setBoolean("bsp.eblock.compress", flag);
+  }
+  
+  /** Return false as default */
+  public boolean isCompressEBlock() {
+	  return conf.getBoolean("bsp.eblock.compress", false);
+  }
+  
+  /**
+   * Create one split per input file instead of dividing each file into 
+   * #tasks byte ranges. Used for graphs relabeled by 
+   * {@link org.apache.hama.myhama.io.StreamingPartitioner}, where 
+   * each file is one partition, so that #tasks = #files.
+   * @param flag
+   */
+  public void setInputSplitPerFile(boolean flag) {
+	  conf.setBoolean("bsp.input.split.per.file", flag);
+  }
+  
+  /** Return false as default */
+  public boolean isInputSplitPerFile() {
+	  return conf.getBoolean("bsp.input.split.per.file", false);
+  }
+  
+  /**
+   * Choose VBlock boundaries of each task from a degree histogram 
+   * collected by scanning its input split, so that #edges per VBlock 
+   * is balanced, instead of #vertices. It costs one more scan of 
+   * the input split before loading graph data.
+   * @param flag
+   */
+  public void setEdgeBalancedBlk(boolean flag) {
+	  conf.setBoolean("bsp.blk.balance.edge", flag);
+  }
+  
+  /** Return false as default */
+  public boolean isEdgeBalancedBlk() {
+	  return conf.getBoolean("bsp.blk.balance.edge", false);
+  }
+  
+  /**
+   * Mirror vertices with at least "degree" out-edges: their edges 
+   * to a remote task are shipped to and kept by that task after 
+   * loading, and then one value per remote task is sent at each 
+   * superstep instead of one message per edge. Only works for 
+   * STYLE.Push and STYLE.Pull without checkpoints and mini-supersteps, 
+   * and messages must be generated along out-edges of the 
+   * {@link GraphRecord}. Mirrors are disabled under STYLE.Hybrid 
+   * (used by all *.hybrid example drivers), since the style may switch 
+   * at any superstep while mirrored edges are kept only in the layout 
+   * of one style; see isMirrorEnabled().
+   * @param degree zero disables mirrors
+   */
+  public void setMirrorDegree(int degree) {
+	  conf.setInt("bsp.mirror.degree", degree);
+  }
+  
+  /** Return 0 as default */
+  public int getMirrorDegree() {
+	  return conf.getInt("bsp.mirror.degree", 0);
+  }
+  
+  /**
+   * Are mirrors used? True only if getMirrorDegree() > 0 under 
+   * STYLE.Push or STYLE.Pull, without checkpoints and mini-supersteps.
+   * @return
+   */
+  public boolean isMirrorEnabled() {
+	  return getMirrorDegree() > 0 
+	  		&& getBspStyle() != Constants.STYLE.Hybrid 
+	  		&& !isMiniSuperStep() 
+	  		&& getCheckPointPolicy() == Constants.CheckPoint.Policy.None;
+  }
+  
   public void setBoolean(String name, boolean value) {
 	  conf.setBoolean(name, value);
   }
@@ -536,6 +831,74 @@ public void setBspClass(Class<? extends BSP> cls)
 			  Constants.DEFAULT.Hash_Bucket_Num);
   }
   
+  /**
+   * Set the number of threads used to update vertices of one VBlock 
+   * within a task. Each thread owns its {@link BSP} instance, so 
+   * user-defined {@link BSP} classes must not share mutable static state 
+   * if more than one thread is used.
+   * @param num
+   */
+  public void setNumComputeThreads(int num) {
+	  conf.setInt("bsp.compute.thread.num", num);
+  }
+  
+  /**
+   * Get the number of threads used to update vertices per task.
+   * Return 1 by default, i.e., vertices are updated sequentially.
+   * @return
+   */
+  public int getNumComputeThreads() {
+	  return Math.max(1, conf.getInt("bsp.compute.thread.num", 
+			  Constants.DEFAULT.Compute_Thread_Num));
+  }
+  
+  /**
+   * Set the number of vertices read into memory and then updated 
+   * in parallel as a batch, valid only if #compute threads > 1.
+   * @param size
+   */
+  public void setComputeBatchSize(int size) {
+	  conf.setInt("bsp.compute.batch.size", size);
+  }
+  
+  /** Return 1024 as default */
+  public int getComputeBatchSize() {
+	  return Math.max(1, conf.getInt("bsp.compute.batch.size", 
+			  Constants.DEFAULT.Compute_Batch_Size));
+  }
+  
+  /**
+   * Set the number of threads used to parse and decompose input lines 
+   * when loading graph data onto local disk. EBlock files are written 
+   * by at most the same number of threads, one per destination task. 
+   * {@link UserTool}.getGraphRecord() and {@link GraphRecord}.parseGraphData() 
+   * must be thread-safe if more than one thread is used.
+   * @param num
+   */
+  public void setNumLoadThreads(int num) {
+	  conf.setInt("bsp.load.thread.num", num);
+  }
+  
+  /** Return 1 as default */
+  public int getNumLoadThreads() {
+	  return Math.max(1, conf.getInt("bsp.load.thread.num", 
+			  Constants.DEFAULT.Load_Thread_Num));
+  }
+  
+  /**
+   * Set the number of input lines parsed by one loading thread as a batch.
+   * @param size
+   */
+  public void setLoadBatchSize(int size) {
+	  conf.setInt("bsp.load.batch.size", size);
+  }
+  
+  /** Return 1024 as default */
+  public int getLoadBatchSize() {
+	  return Math.max(1, conf.getInt("bsp.load.batch.size", 
+			  Constants.DEFAULT.Load_Batch_Size));
+  }
+  
   /**
    * Set the checkpoint policy.
    * @param p
@@ -575,6 +938,96 @@ public void setBspClass(Class<? extends BSP> cls)
 	  return conf.getInt("fault.tolerance.ckp.interval", 0);
   }
   
+  /**
+   * Compress checkpoint files or not. 
+   * The codec is specified by setCheckPointCompressCodec().
+   * @param compress
+   */
+  public void setCompressCheckPoint(boolean compress) {
+	  conf.setBoolean("bsp.checkpoint.compress", compress);
+  }
+  
+  /** Return false as default */
+  public boolean isCompressCheckPoint() {
+	  return conf.getBoolean("bsp.checkpoint.compress", false);
+  }
+  
+  /**
+   * Set the {@link CompressionCodec} used to compress checkpoint files.
+   * @param codecClass
+   */
+  public void setCheckPointCompressCodec(
+		  Class<? extends CompressionCodec> codecClass) {
+	  conf.setClass("bsp.checkpoint.compress.codec", codecClass, 
+			  CompressionCodec.class);
+  }
+  
+  /** Return {@link DefaultCodec} as default */
+  public Class<? extends CompressionCodec> getCheckPointCompressCodec() {
+	  return conf.getClass("bsp.checkpoint.compress.codec", 
+			  DefaultCodec.class, CompressionCodec.class);
+  }
+  
+  /**
+   * Verify each VBlock in checkpoint files by CRC32 or not.
+   * @param checksum
+   */
+  public void setCheckPointChecksum(boolean checksum) {
+	  conf.setBoolean("bsp.checkpoint.checksum", checksum);
+  }
+  
+  /** Return true as default */
+  public boolean isCheckPointChecksum() {
+	  return conf.getBoolean("bsp.checkpoint.checksum", true);
+  }
+  
+  /**
+   * Archive only VBlocks whose values have been re-written since 
+   * the previous checkpoint (delta), instead of all VBlocks. 
+   * Flags of all vertices are always archived.
+   * @param delta
+   */
+  public void setDeltaCheckPoint(boolean delta) {
+	  conf.setBoolean("bsp.checkpoint.delta", delta);
+  }
+  
+  /** Return false as default */
+  public boolean isDeltaCheckPoint() {
+	  return conf.getBoolean("bsp.checkpoint.delta", false);
+  }
+  
+  /**
+   * Set the number of checkpoints in one chain, i.e., one full 
+   * checkpoint followed by (interval-1) delta checkpoints. 
+   * A full checkpoint compacts the chain and old ones are deleted. 
+   * Valid only if delta checkpoint is enabled.
+   * @param interval
+   */
+  public void setCheckPointCompactInterval(int interval) {
+	  conf.setInt("bsp.checkpoint.compact.interval", interval);
+  }
+  
+  /** Return 5 as default */
+  public int getCheckPointCompactInterval() {
+	  return Math.max(1, conf.getInt("bsp.checkpoint.compact.interval", 5));
+  }
+  
+  /**
+   * Upload checkpoints by a background thread overlapped with
+   * the next superstep, instead of blocking all tasks.
+   * A checkpoint is available for recovery only after all tasks
+   * have reported that their uploads are durable.
+   * @param async
+   */
+  public void setAsyncCheckPoint(boolean async) {
+	  conf.setBoolean("bsp.checkpoint.async", async);
+  }
+  
+  /** Return false as default */
+  public boolean isAsyncCheckPoint() {
+	  return conf.getBoolean("bsp.checkpoint.async", false);
+  }
+  
   /**
    * Assume that some tasks fail at the given superstep to simulate 
    * the failure in real scenrios. No failure happens if the parameter 
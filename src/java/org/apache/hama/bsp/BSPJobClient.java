@@ -455,6 +455,13 @@ public class BSPJobClient extends Configured implements Tool {
       job.setWorkingDirectory(fs.getWorkingDirectory());
     }
 
+    if (job.getMirrorDegree() > 0 && !job.isMirrorEnabled()) {
+      LOG.warn("bsp.mirror.degree is ignored, mirrors only work for "
+          + "Push/Pull without checkpoints and mini-supersteps, but "
+          + "BspStyle=" + job.getBspStyle() + ", CheckPoint.Policy="
+          + job.getCheckPointPolicy());
+    }
+
     int splitNum = writeSplits(job, submitSplitFile);
     job.set("bsp.job.split.file", submitSplitFile.toString());
     
@@ -9,7 +9,13 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -24,6 +30,7 @@ import org.apache.hama.ipc.MasterProtocol;
 import org.apache.hama.monitor.TaskInformation;
 import org.apache.hama.myhama.api.BSP;
 import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MessageSink;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.comm.CommunicationServer;
 import org.apache.hama.myhama.comm.MiniSuperStepCommand;
@@ -33,6 +40,7 @@ import org.apache.hama.myhama.graph.GraphDataServer;
 import org.apache.hama.myhama.graph.GraphDataServerDisk;
 import org.apache.hama.myhama.graph.GraphDataServerMem;
 import org.apache.hama.myhama.graph.MsgDataServer;
+import org.apache.hama.myhama.graph.VerBlockBeta;
 import org.apache.hama.myhama.util.Counters;
 import org.apache.hama.myhama.util.GraphContext;
 import org.apache.hama.myhama.util.MiniCounters;
@@ -123,6 +131,133 @@ public class BSPTask<V, W, M, I> extends Task {
 	/** runtime statistics at the first mini-superstep */
 	private MiniCounters minicounters;
 	
+	/** number of threads updating vertices of one VBlock */
+	private int computeThreadNum;
+	/** number of vertices updated in parallel as a batch */
+	private int computeBatchSize;
+	/** one {@link BSP} instance per compute thread, bsps[0] is bsp */
+	private BSP<V, W, M, I>[] bsps;
+	private ExecutorService computePool;
+	/** per-slot variables of one batch, only used if computeThreadNum > 1 */
+	private GraphRecord<V, W, M, I>[] batchGraphs;
+	private boolean[] batchActive;
+	private int[] batchDegree;
+	private int[] batchEstimate;
+	private MsgRecord<M>[] batchMsgs;
+	/** records reused by getMsg(), one per slot of the batch */
+	private MsgRecord<M>[] batchReadMsgs;
+	/** messages to be pushed per slot, [from, to) of the buffer, or null */
+	private OutMsgBuffer<M>[] batchOutBufs;
+	private int[] batchOutFrom, batchOutTo;
+	/** one buffer per compute thread */
+	private OutMsgBuffer<M>[] computeOutBufs;
+	/** the record reused by getMsg() if vertices are updated by one thread */
+	private MsgRecord<M> readMsg;
+	/** the maximum ratio of active vertices to run the sparse path */
+	private float sparseRatio;
+	/** ids of active vertices in the VBlock updated by the sparse path */
+	private int[] sparseVids;
+	
+	/**
+	 * Keep messages emitted by one {@link UpdateThread} in primitive 
+	 * arrays, until they are pushed by the task thread in the original 
+	 * order of vertices. The buffer is reused across batches.
+	 */
+	private static class OutMsgBuffer<M> implements MessageSink<M> {
+		private int[] srcIds = new int[64], dstIds = new int[64];
+		private Object[] values = new Object[64];
+		private int size = 0;
+		
+		public void clear() {
+			Arrays.fill(this.values, 0, this.size, null);
+			this.size = 0;
+		}
+		
+		public int size() {
+			return this.size;
+		}
+		
+		@Override
+		public void emit(int srcId, int dstId, M msgValue) {
+			if (this.size == this.srcIds.length) {
+				this.srcIds = Arrays.copyOf(this.srcIds, 2*this.size);
+				this.dstIds = Arrays.copyOf(this.dstIds, 2*this.size);
+				this.values = Arrays.copyOf(this.values, 2*this.size);
+			}
+			this.srcIds[this.size] = srcId;
+			this.dstIds[this.size] = dstId;
+			this.values[this.size++] = msgValue;
+		}
+		
+		@Override
+		public void emit(MsgRecord<M> msg) {
+			emit(msg.getSrcVerId(), msg.getDstVerId(), msg.getMsgValue());
+		}
+		
+		/** Emit messages in [from, to) into "sink". */
+		@SuppressWarnings("unchecked")
+		public void emitTo(MessageSink<M> sink, int from, int to) {
+			for (int i = from; i < to; i++) {
+				sink.emit(this.srcIds[i], this.dstIds[i], (M)this.values[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Update vertices in slots [start, end) of the current batch 
+	 * by one {@link BSP} instance. Only user-defined functions are 
+	 * invoked here. Reading/saving vertices, updating flags and counters, 
+	 * and pushing messages are done by the task thread in the original 
+	 * order of vertices.
+	 */
+	private class UpdateThread implements Callable<Boolean> {
+		private BSP<V, W, M, I> worker;
+		private GraphContext<V, W, M, I>[] contexts;
+		private int start, end;
+		private boolean push;
+		private OutMsgBuffer<M> out;
+		
+		public UpdateThread(BSP<V, W, M, I> _worker, 
+				GraphContext<V, W, M, I>[] _contexts, 
+				int _start, int _end, boolean _push, OutMsgBuffer<M> _out) {
+			this.worker = _worker;
+			this.contexts = _contexts;
+			this.start = _start;
+			this.end = _end;
+			this.push = _push;
+			this.out = _out;
+		}
+		
+		@Override
+		public Boolean call() {
+			this.out.clear();
+			for (int i = this.start; i < this.end; i++) {
+				GraphContext<V, W, M, I> context = this.contexts[i];
+				context.reset();
+				batchOutBufs[i] = null;
+				if (!batchActive[i]) {
+					context.voteToHalt();
+					continue;
+				}
+				
+				context.initialize(batchGraphs[i], batchMsgs[i], jobAgg, 
+						true, batchDegree[i]);
+				this.worker.update(context);
+				if (context.isRespond()) {
+					batchEstimate[i] = 
+						this.worker.estimateNumberOfMessages(context);
+					if (this.push) {
+						batchOutFrom[i] = this.out.size();
+						graphDataServer.getMessages(this.worker, context, this.out);
+						batchOutTo[i] = this.out.size();
+						batchOutBufs[i] = this.out;
+					}
+				}
+			}
+			return true;
+		}
+	}
+	
 	public BSPTask() {
 		
 	}
@@ -184,6 +319,7 @@ public class BSPTask<V, W, M, I> extends Task {
 	 * @param job
 	 * @param host
 	 */
+	@SuppressWarnings("unchecked")
 	private void initialize(BSPJob _job, String _hostName, 
 			BSPTaskTrackerProtocol umbilical) throws Exception {
 		job = _job;
@@ -232,6 +368,39 @@ public class BSPTask<V, W, M, I> extends Task {
 		
 		miniSuperStep = job.isMiniSuperStep();
 		minicounters = new MiniCounters();
+		
+		computeThreadNum = job.getNumComputeThreads();
+		computeBatchSize = job.getComputeBatchSize();
+		sparseRatio = job.getSparseUpdateRatio();
+		bsps = (BSP<V, W, M, I>[]) new BSP<?, ?, ?, ?>[computeThreadNum];
+		bsps[0] = bsp;
+		for (int t = 1; t < computeThreadNum; t++) {
+			bsps[t] = (BSP<V, W, M, I>) 
+				ReflectionUtils.newInstance(job.getConf().getClass(
+					"bsp.work.class", BSP.class), job.getConf());
+		}
+		if (computeThreadNum > 1) {
+			computePool = Executors.newFixedThreadPool(computeThreadNum);
+			batchGraphs = 
+				(GraphRecord<V, W, M, I>[]) new GraphRecord<?, ?, ?, ?>[computeBatchSize];
+			for (int i = 0; i < computeBatchSize; i++) {
+				batchGraphs[i] = graphDataServer.newGraphRecord();
+			}
+			batchActive = new boolean[computeBatchSize];
+			batchDegree = new int[computeBatchSize];
+			batchEstimate = new int[computeBatchSize];
+			batchMsgs = (MsgRecord<M>[]) new MsgRecord<?>[computeBatchSize];
+			batchReadMsgs = (MsgRecord<M>[]) new MsgRecord<?>[computeBatchSize];
+			batchOutBufs = (OutMsgBuffer<M>[]) new OutMsgBuffer<?>[computeBatchSize];
+			batchOutFrom = new int[computeBatchSize];
+			batchOutTo = new int[computeBatchSize];
+			computeOutBufs = (OutMsgBuffer<M>[]) new OutMsgBuffer<?>[computeThreadNum];
+			for (int t = 0; t < computeThreadNum; t++) {
+				computeOutBufs[t] = new OutMsgBuffer<M>();
+			}
+			LOG.info("update vertices by " + computeThreadNum 
+					+ " threads, batch size=" + computeBatchSize);
+		}
 	}
 	
 	/**
@@ -251,6 +420,7 @@ public class BSPTask<V, W, M, I> extends Task {
 				commServer.getPort(), commServer.getAddress(), 
 				graphDataServer.getByteOfOneMessage(), 
 				graphDataServer.isAccumulated());
+		taskInfo.setBlkMinIds(graphDataServer.getEdgeBalancedBlkMinIds());
 		
 		LOG.info("enter the buildRouteTable() barrier");
 		jobServer.buildRouteTable(jobId, taskInfo);
@@ -282,6 +452,12 @@ public class BSPTask<V, W, M, I> extends Task {
 		msgDataServer.init(job, taskInfo.getBlkLen(), taskInfo.getBlkNum(), 
 				graphDataServer.getLocBucMinIds(), parId, 
 				getRootDir(umbilical), miniSuperStep);
+		readMsg = msgDataServer.newMsgRecord();
+		if (computeThreadNum > 1) {
+			for (int i = 0; i < computeBatchSize; i++) {
+				batchReadMsgs[i] = msgDataServer.newMsgRecord();
+			}
+		}
 		graphDataServer.bindMsgDataServer(msgDataServer);
 		commServer.bindMsgDataServer(msgDataServer);
 		commServer.bindGraphData(graphDataServer, taskInfo.getBlkNum());
@@ -290,6 +466,8 @@ public class BSPTask<V, W, M, I> extends Task {
 		jobServer.registerTask(jobId, taskInfo);
 		commServer.suspend();
 		LOG.info("leave the registerTask() barrier");
+		//all tasks are ready, delivered before the first superstep barrier
+		graphDataServer.sendMirrorEdges();
 	}
 	
 	/**
@@ -355,8 +533,17 @@ public class BSPTask<V, W, M, I> extends Task {
 			case REDO:
 		  	case START:
 		  		graphDataServer.setUncompletedIteration(-1); //disable
+		  		if (job.isAsyncCheckPoint() 
+		  				&& ssc.getCommandType()==Constants.CommandType.START) {
+		  			graphDataServer.deleteBefCheckPoint(
+		  					ssc.getAvailableCheckPointVersion());
+		  		}
 		  		break;
 		  	case ARCHIVE:
+		  		if (job.isAsyncCheckPoint()) {
+		  			graphDataServer.deleteBefCheckPoint(
+		  					ssc.getAvailableCheckPointVersion());
+		  		}
 		  		graphDataServer.archiveCheckPoint(iteNum, iteNum);
 		  		graphDataServer.setUncompletedIteration(-1); //disable
 		  		break;
@@ -407,6 +594,7 @@ public class BSPTask<V, W, M, I> extends Task {
 		ssr.setCounters(this.counters);
 		ssr.setTaskAgg(this.taskAgg);
 		ssr.setActVerNumBucs(this.taskInfo.getRespondVerNumBlks());
+		ssr.setCheckPointVersion(this.graphDataServer.getDurableCheckPoint());
 		//LOG.info("local information is as follows:\n" + ssr.toString());
 		
 		LOG.info("enter the finishSuperStep() barrier");
@@ -475,6 +663,17 @@ public class BSPTask<V, W, M, I> extends Task {
 	 * @throws Exception
 	 */
 	private long runBucket(int bucketId) throws Exception {
+		if (this.sparseRatio > 0 && this.graphDataServer.isSparseSupported()) {
+			int sparseNum = getSparseVertices(bucketId);
+			if (sparseNum >= 0 && this.graphDataServer
+					.openGraphDataStreamSparse(bucketId, iteNum)) {
+				return runBucketSparse(bucketId, sparseNum);
+			}
+		}
+		if (this.computeThreadNum > 1) {
+			return runBucketParallel(bucketId);
+		}
+		
 		long bucStaTime, bucEndTime;
 		bucStaTime = System.currentTimeMillis();
 		GraphContext<V, W, M, I> context = 
@@ -488,44 +687,220 @@ public class BSPTask<V, W, M, I> extends Task {
 		while (this.graphDataServer.hasNextGraphRecord(bucketId)) {
 			graph = null;
 			graph = this.graphDataServer.getNextGraphRecord(bucketId);
-			context.reset();
-			if (isActive(bucketId, graph.getVerId())) {
-				MsgRecord<M> msg = this.msgDataServer.getMsg(bucketId, graph.getVerId());
-				context.initialize(graph, msg, this.jobAgg, true, 
-						this.graphDataServer.getDegree(graph.getVerId()));
-				
-				this.bsp.update(context); //execute the local computation
-				this.taskAgg += context.getVertexAgg();
-				this.counters.addCounter(COUNTER.Vert_Active, 1);
+			if (!updateGraphRecord(bucketId, graph, context)) {
+				break;
+			}
+		}
+		
+		this.graphDataServer.closeGraphDataStream(bucketId, iteNum);
+		bucEndTime = System.currentTimeMillis();
+		return (bucEndTime-bucStaTime);
+	}
+	
+	/**
+	 * Execute the local computation for a VBlock where only a few 
+	 * vertices are active, i.e., only active vertices collected by 
+	 * getSparseVertices() are read and saved, in ascending order. 
+	 * Results are identical to runBucket().
+	 * @param bucketId
+	 * @param num #active vertices in sparseVids
+	 * @return
+	 * @throws Exception
+	 */
+	private long runBucketSparse(int bucketId, int num) throws Exception {
+		long bucStaTime, bucEndTime;
+		bucStaTime = System.currentTimeMillis();
+		GraphContext<V, W, M, I> context = 
+			new GraphContext<V, W, M, I>(this.parId, this.job, 
+					this.iteNum, this.curIteStyle, 
+					this.commServer.getCommRouteTable());
+		context.setVBlockId(bucketId);
+		
+		for (int i = 0; i < num; i++) {
+			GraphRecord<V, W, M, I> graph = 
+				this.graphDataServer.getGraphRecord(bucketId, this.sparseVids[i]);
+			if (!updateGraphRecord(bucketId, graph, context)) {
+				break;
+			}
+		}
+		
+		this.graphDataServer.closeGraphDataStream(bucketId, iteNum);
+		bucEndTime = System.currentTimeMillis();
+		return (bucEndTime-bucStaTime);
+	}
+	
+	/**
+	 * Collect ids of active vertices in the given VBlock into sparseVids, 
+	 * if their ratio does not exceed sparseRatio.
+	 * @param bucketId
+	 * @return #active vertices, or -1 if the sparse path should not be used
+	 */
+	private int getSparseVertices(int bucketId) {
+		VerBlockBeta beta = this.graphDataServer.getVerBlkBeta(bucketId);
+		int limit = (int)(beta.getVerNum()*this.sparseRatio);
+		if (limit <= 0) {
+			return -1;
+		}
+		if (this.sparseVids == null || this.sparseVids.length < limit) {
+			this.sparseVids = new int[limit];
+		}
+		
+		int num = 0;
+		for (int vid = beta.getVerMinId(); vid <= beta.getVerMaxId(); vid++) {
+			if (isActive(bucketId, vid)) {
+				if (num == limit) {
+					return -1;
+				}
+				this.sparseVids[num++] = vid;
+			}
+		}
+		return num;
+	}
+	
+	/**
+	 * Update one vertex read from the given VBlock and then save it.
+	 * @param bucketId
+	 * @param graph
+	 * @param context
+	 * @return false if a connection error is found
+	 * @throws Exception
+	 */
+	private boolean updateGraphRecord(int bucketId, 
+			GraphRecord<V, W, M, I> graph, 
+			GraphContext<V, W, M, I> context) throws Exception {
+		context.reset();
+		if (isActive(bucketId, graph.getVerId())) {
+			MsgRecord<M> msg = 
+				this.msgDataServer.getMsg(bucketId, graph.getVerId(), this.readMsg);
+			context.initialize(graph, msg, this.jobAgg, true, 
+					this.graphDataServer.getDegree(graph.getVerId()));
+			
+			this.bsp.update(context); //execute the local computation
+			this.taskAgg += context.getVertexAgg();
+			this.counters.addCounter(COUNTER.Vert_Active, 1);
+			
+			if (context.isRespond()) {
+				this.counters.addCounter(COUNTER.Vert_Respond, 1);
+				this.minicounters.addCounter(MINICOUNTER.Msg_Estimate, 
+						this.bsp.estimateNumberOfMessages(context));
+				this.minicounters.addCounter(MINICOUNTER.Byte_RandReadVert, 
+						this.graphDataServer.getNumOfFragmentsMini(graph.getVerId()));
+				this.graphDataServer.putMirrorValue(graph);
 				
-				if (context.isRespond()) {
-					this.counters.addCounter(COUNTER.Vert_Respond, 1);
-					this.minicounters.addCounter(MINICOUNTER.Msg_Estimate, 
-							this.bsp.estimateNumberOfMessages(context));
-					this.minicounters.addCounter(MINICOUNTER.Byte_RandReadVert, 
-							this.graphDataServer.getNumOfFragmentsMini(graph.getVerId()));
-					
-					//(this.miniSuperStep) to simulate original PUSH without mini-barriers
-					if (this.preIteStyle==Constants.STYLE.PUSH && 
-							this.curIteStyle==Constants.STYLE.PUSH && (!this.miniSuperStep)) {
-						MsgRecord<M>[] msgs = this.bsp.getMessages(context);
-						if (msgs != null) {
-							this.commServer.pushMsgData(graph.getVerId(), msgs, failedTaskIds, 
-									getUpdateModel()==UpdateModel.UpdateAndConfinedMsgPush);
-						}
-						msgs = null;
-						if (commServer.findConnectionError()) {
-							break;
+				//(this.miniSuperStep) to simulate original PUSH without mini-barriers
+				if (this.preIteStyle==Constants.STYLE.PUSH && 
+						this.curIteStyle==Constants.STYLE.PUSH && (!this.miniSuperStep)) {
+					MessageSink<M> sink = this.commServer.startPushMsgData(failedTaskIds, 
+							getUpdateModel()==UpdateModel.UpdateAndConfinedMsgPush);
+					this.graphDataServer.getMessages(this.bsp, context, sink);
+					this.commServer.endPushMsgData();
+					if (commServer.findConnectionError()) {
+						return false;
+					}
+				}
+			}
+			msg = null;
+		} else {
+			context.voteToHalt();
+		}
+		this.graphDataServer.saveGraphRecord(bucketId, iteNum, 
+				context.isActive(), context.isRespond());
+		this.counters.addCounter(COUNTER.Vert_Read, 1);
+		return true;
+	}
+	
+	/**
+	 * Execute the local computation for a real hash bucket by 
+	 * multiple threads. Vertices are read into a batch by the task 
+	 * thread, updated by {@link UpdateThread}s in parallel, and then 
+	 * saved in the original order. Thus, the VBlock files are still 
+	 * accessed sequentially and results are identical to runBucket(). 
+	 * @param bucketId
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	private long runBucketParallel(int bucketId) throws Exception {
+		long bucStaTime, bucEndTime;
+		bucStaTime = System.currentTimeMillis();
+		GraphContext<V, W, M, I>[] contexts = 
+			(GraphContext<V, W, M, I>[]) new GraphContext<?, ?, ?, ?>[this.computeBatchSize];
+		for (int i = 0; i < this.computeBatchSize; i++) {
+			contexts[i] = new GraphContext<V, W, M, I>(this.parId, this.job, 
+					this.iteNum, this.curIteStyle, 
+					this.commServer.getCommRouteTable());
+			contexts[i].setVBlockId(bucketId);
+		}
+		//(this.miniSuperStep) to simulate original PUSH without mini-barriers
+		boolean push = (this.preIteStyle==Constants.STYLE.PUSH && 
+				this.curIteStyle==Constants.STYLE.PUSH && (!this.miniSuperStep));
+		ArrayList<Future<Boolean>> futures = 
+			new ArrayList<Future<Boolean>>(this.computeThreadNum);
+		boolean error = false;
+		this.graphDataServer.openGraphDataStream(bucketId, iteNum);
+		
+		while (!error && this.graphDataServer.hasNextGraphRecord(bucketId)) {
+			int num = 0;
+			while (num < this.computeBatchSize 
+					&& this.graphDataServer.hasNextGraphRecord(bucketId)) {
+				GraphRecord<V, W, M, I> graph = 
+					this.graphDataServer.getNextGraphRecord(bucketId, 
+							this.batchGraphs[num]);
+				this.batchActive[num] = isActive(bucketId, graph.getVerId());
+				this.batchMsgs[num] = this.batchActive[num]? 
+					this.msgDataServer.getMsg(bucketId, graph.getVerId(), 
+							this.batchReadMsgs[num]):null;
+				this.batchDegree[num] = 
+					this.graphDataServer.getDegree(graph.getVerId());
+				num++;
+			}
+			
+			int step = (num+this.computeThreadNum-1) / this.computeThreadNum;
+			futures.clear();
+			for (int t = 0, start = 0; start < num; t++, start += step) {
+				futures.add(this.computePool.submit(new UpdateThread(this.bsps[t], 
+						contexts, start, Math.min(num, start+step), push, 
+						this.computeOutBufs[t])));
+			}
+			for (Future<Boolean> future: futures) {
+				future.get();
+			}
+			
+			for (int i = 0; i < num; i++) {
+				GraphContext<V, W, M, I> context = contexts[i];
+				int vid = this.batchGraphs[i].getVerId();
+				if (this.batchActive[i]) {
+					this.taskAgg += context.getVertexAgg();
+					this.counters.addCounter(COUNTER.Vert_Active, 1);
+					if (context.isRespond()) {
+						this.counters.addCounter(COUNTER.Vert_Respond, 1);
+						this.minicounters.addCounter(MINICOUNTER.Msg_Estimate, 
+								this.batchEstimate[i]);
+						this.minicounters.addCounter(MINICOUNTER.Byte_RandReadVert, 
+								this.graphDataServer.getNumOfFragmentsMini(vid));
+						this.graphDataServer.putMirrorValue(this.batchGraphs[i]);
+						if (push) {
+							if (this.batchOutBufs[i] != null) {
+								MessageSink<M> sink = this.commServer.startPushMsgData(
+										failedTaskIds, 
+										getUpdateModel()==UpdateModel.UpdateAndConfinedMsgPush);
+								this.batchOutBufs[i].emitTo(sink, 
+										this.batchOutFrom[i], this.batchOutTo[i]);
+								this.commServer.endPushMsgData();
+							}
+							this.batchOutBufs[i] = null;
+							if (commServer.findConnectionError()) {
+								error = true;
+								break;
+							}
 						}
 					}
+					this.batchMsgs[i] = null;
 				}
-				msg = null;
-			} else {
-				context.voteToHalt();
+				this.graphDataServer.saveGraphRecord(bucketId, iteNum, 
+						this.batchGraphs[i], context.isActive(), context.isRespond());
+				this.counters.addCounter(COUNTER.Vert_Read, 1);
 			}
-			this.graphDataServer.saveGraphRecord(bucketId, iteNum, 
-					context.isActive(), context.isRespond());
-			this.counters.addCounter(COUNTER.Vert_Read, 1);
 		}
 		
 		this.graphDataServer.closeGraphDataStream(bucketId, iteNum);
@@ -610,7 +985,9 @@ public class BSPTask<V, W, M, I> extends Task {
 		int bucNum = this.taskInfo.getBlkNum();
 		
 		this.reportTimer.force();
-		this.bsp.superstepSetup(context);
+		for (BSP<V, W, M, I> b: this.bsps) {
+			b.superstepSetup(context);
+		}
 		if (this.curIteStyle == Constants.STYLE.PUSH) {
 			this.graphDataServer.setUseEdgesInPush(context.isUseEdgesInPush());
 		}
@@ -652,7 +1029,9 @@ public class BSPTask<V, W, M, I> extends Task {
 			hbInfo.append("\tpullMsgTime=" + msgTime + "ms");
 			
 			context.setVBlockId(bucketId);
-			this.bsp.vBlockSetup(context);;
+			for (BSP<V, W, M, I> b: this.bsps) {
+				b.vBlockSetup(context);
+			}
 			if (isUpdateVBlock(bucketId, context.getVBlockUpdateRule(), msgNum)) {
 				hbInfo.append("\tType=Normal");
 				compTime = runBucket(bucketId);
@@ -663,7 +1042,9 @@ public class BSPTask<V, W, M, I> extends Task {
 			}
 			report.completeWorkload();
 			msgDataServer.clearAftBucket();
-			bsp.vBlockCleanup(context);
+			for (BSP<V, W, M, I> b: this.bsps) {
+				b.vBlockCleanup(context);
+			}
 		}
 		
 		this.taskInfo.setRespondVerNumBlks(this.graphDataServer.getRespondVerNumOfBlks());
@@ -706,6 +1087,9 @@ public class BSPTask<V, W, M, I> extends Task {
 				this.switchToPush(); //surviving tasks, under PUSH, failure recovery
 			}
 			
+			long mirrorMsgNum = this.graphDataServer.sendMirrorValues(iteNum);
+			this.commServer.updateCounters(0L, 0L, 0L, 0L, 0L, 
+					mirrorMsgNum, mirrorMsgNum, 0L, 0L, 0L);
 			if ((this.curIteStyle==Constants.STYLE.PUSH) || miniPush) {
 				this.commServer.pushFlushMsgData();
 			}
@@ -713,8 +1097,12 @@ public class BSPTask<V, W, M, I> extends Task {
 		
 		iteEndTime = System.currentTimeMillis();
 		this.counters.addCounter(COUNTER.Time_Pull, totalMsgTime);
+		this.counters.addCounter(COUNTER.Time_Pull_Hidden, 
+				this.commServer.getPullHiddenTime());
 		this.counters.addCounter(COUNTER.Time_Ite, (iteEndTime-iteStaTime));
-		this.bsp.superstepCleanup(context);
+		for (BSP<V, W, M, I> b: this.bsps) {
+			b.superstepCleanup(context);
+		}
 		LOG.info(hbInfo.toString());
 		LOG.info("complete local computations");
 	}
@@ -776,11 +1164,10 @@ public class BSPTask<V, W, M, I> extends Task {
 						context.reset();
 						context.initialize(graph, null, this.jobAgg, true, 
 								this.graphDataServer.getDegree(graph.getVerId()));
-						MsgRecord<M>[] msgs = this.bsp.getMessages(context);
-						if (msgs != null) {
-							this.commServer.pushMsgData(graph.getVerId(), msgs, failedTaskIds, flag);
-						}
-						msgs = null;
+						MessageSink<M> sink = 
+							this.commServer.startPushMsgData(failedTaskIds, flag);
+						this.bsp.getMessages(context, sink);
+						this.commServer.endPushMsgData();
 					}
 				}
 				
@@ -816,7 +1203,9 @@ public class BSPTask<V, W, M, I> extends Task {
 			GraphContext<V, W, M, I> context = 
 				new GraphContext<V, W, M, I>(this.parId, job, -1, this.curIteStyle, 
 						this.commServer.getCommRouteTable());
-			this.bsp.taskSetup(context);
+			for (BSP<V, W, M, I> b: this.bsps) {
+				b.taskSetup(context);
+			}
 			
 			/** run the job iteration by iteration */
 			while (true) {
@@ -848,7 +1237,9 @@ public class BSPTask<V, W, M, I> extends Task {
 			GraphContext<V, W, M, I> context = 
 				new GraphContext<V, W, M, I>(this.parId, job, -1, this.curIteStyle, 
 						this.commServer.getCommRouteTable());
-			this.bsp.taskCleanup(context);
+			for (BSP<V, W, M, I> b: this.bsps) {
+				b.taskCleanup(context);
+			}
 			
 			try {
 				clear();
@@ -971,6 +1362,10 @@ public class BSPTask<V, W, M, I> extends Task {
 				this.commServer.getMsgNetActualNum());
 		this.counters.addCounter(COUNTER.Msg_Disk, 
 				this.commServer.getMsgOnDisk());
+		this.counters.addCounter(COUNTER.Time_Push_Stall, 
+				this.commServer.getPushStallTime());
+		this.counters.addCounter(COUNTER.Push_InFlight_Max, 
+				this.commServer.getPushInFlightMax());
 		
 		this.counters.addCounter(COUNTER.Mem_Used, 
 				this.memUsage);
@@ -982,6 +1377,9 @@ public class BSPTask<V, W, M, I> extends Task {
 		this.msgDataServer.close();
 		this.commServer.close();
 		this.reportTimer.stop();
+		if (this.computePool != null) {
+			this.computePool.shutdownNow();
+		}
 	}
 	
 	private String getRootDir(BSPTaskTrackerProtocol umbilical) 
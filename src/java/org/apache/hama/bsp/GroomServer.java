@@ -52,6 +52,8 @@ import org.apache.hama.Constants;
 import org.apache.hama.HamaConfiguration;
 import org.apache.hama.ipc.MasterProtocol;
 import org.apache.hama.ipc.WorkerProtocol;
+import org.apache.hama.monitor.HardwareBenchmark;
+import org.apache.hama.monitor.HardwareProfile;
 import org.apache.hama.myhama.util.LocalFileOperation;
 import org.apache.hama.myhama.util.TaskReportContainer;
 import org.apache.log4j.LogManager;
@@ -97,6 +99,8 @@ public class GroomServer implements Runnable, WorkerProtocol,
   //change in version-0.2.4 change the "maxCurrentTasks=1" to "maxTasks=5"
   private int maxTaskSlot = 1;
   private int usedTaskSlot=0;
+  /** disk and network throughputs measured at startup */
+  private HardwareProfile hardware = null;
   
   //the BSPPeerForJob to JobID
   LaunchThread launchT = new LaunchThread();
@@ -140,6 +144,14 @@ public class GroomServer implements Runnable, WorkerProtocol,
     }
     // check local disk
     checkLocalDir(getLocalDir());
+    if (conf.getBoolean(Constants.HardwareInfo.Calibrate, false)) {
+    	try {
+    		this.hardware = new HardwareBenchmark(conf, 
+    				getLocalDir(), localHostname).run();
+    	} catch (IOException e) {
+    		LOG.error("Fail to measure the hardware throughputs", e);
+    	}
+    }
 
     this.maxTaskSlot = conf.getInt(Constants.MAX_TASKS, 1);
     LOG.info("max task slots is : " + this.maxTaskSlot);
@@ -203,9 +215,11 @@ public class GroomServer implements Runnable, WorkerProtocol,
     if (-1 == rpcPort || null == rpcAddr)
       throw new IllegalArgumentException("Error rpc address " + rpcAddr
           + " port" + rpcPort);
-    if (!this.masterClient.register(new GroomServerStatus(groomServerName,
+    GroomServerStatus gss = new GroomServerStatus(groomServerName,
             getPeerName(), GroomRPCForJob, cloneAndResetRunningTaskStatuses(), 
-            0, maxTaskSlot, usedTaskSlot, 0, this.rpcServer))) {
+            0, maxTaskSlot, usedTaskSlot, 0, this.rpcServer);
+    gss.setHardwareProfile(this.hardware);
+    if (!this.masterClient.register(gss)) {
           LOG.error("There is a problem in establishing communication"
               + " link with BSPMaster");
           throw new IOException("There is a problem in establishing"
@@ -419,6 +433,7 @@ public class GroomServer implements Runnable, WorkerProtocol,
 	    	  GroomServerStatus gss = new GroomServerStatus(groomServerName, 
 	    			  getPeerName(), GroomRPCForJob, reportList, 0,
 	    			  maxTaskSlot, usedTaskSlot, 0, this.rpcServer);
+	    	  gss.setHardwareProfile(this.hardware);
 	    	  try {
 	    		  boolean ret = masterClient.report(new Directive(gss));
 	    		  if(!ret){
@@ -34,6 +34,7 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableFactories;
 import org.apache.hadoop.io.WritableFactory;
+import org.apache.hama.monitor.HardwareProfile;
 
 /**
  * A GroomServerStatus is a BSP primitive. Keeps info on a BSPMaster. The
@@ -63,6 +64,8 @@ public class GroomServerStatus implements Writable {
   private int taskSlots;
   private int runningTasks;
   private int finishedTasks;
+  /** measured throughputs, null if not calibrated */
+  private HardwareProfile hardware;
 
   volatile long lastSeen;
 
@@ -153,6 +156,18 @@ public class GroomServerStatus implements Writable {
 	return finishedTasks;
   }
   
+  public void setHardwareProfile(HardwareProfile _hardware) {
+	  hardware = _hardware;
+  }
+  
+  /**
+   * Get disk and network throughputs measured by this GroomServer.
+   * @return null if they are not measured
+   */
+  public HardwareProfile getHardwareProfile() {
+	  return hardware;
+  }
+  
   /**
    * Return the current MapTask count
    */
@@ -235,6 +250,12 @@ public class GroomServerStatus implements Writable {
     	jobid.readFields(in);
     	peerNameReports.put(jobid, Text.readString(in));
     }
+    if (in.readBoolean()) {
+    	hardware = new HardwareProfile();
+    	hardware.readFields(in);
+    } else {
+    	hardware = null;
+    }
     taskReports.clear();
     int numTasks = in.readInt();
     TaskStatus status;
@@ -264,6 +285,10 @@ public class GroomServerStatus implements Writable {
     	e.getKey().write(out);
     	Text.writeString(out, e.getValue());
     }  
+    out.writeBoolean(hardware != null);
+    if (hardware != null) {
+    	hardware.write(out);
+    }
     out.writeInt(taskReports.size());
     for (TaskStatus taskStatus : taskReports) {
       taskStatus.write(out);
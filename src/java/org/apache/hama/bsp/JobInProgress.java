@@ -37,13 +37,17 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hama.Constants;
 import org.apache.hama.Constants.CommandType;
 import org.apache.hama.bsp.BSPJobClient.RawSplit;
 import org.apache.hama.bsp.TaskStatus.State;
 import org.apache.hama.ipc.CommunicationServerProtocol;
+import org.apache.hama.monitor.HardwareProfile;
 import org.apache.hama.monitor.JobInformation;
 import org.apache.hama.monitor.JobMonitor;
+import org.apache.hama.monitor.StyleSwitchContext;
+import org.apache.hama.monitor.StyleSwitchPolicy;
 import org.apache.hama.monitor.TaskInformation;
 import org.apache.hama.myhama.comm.MiniSuperStepCommand;
 import org.apache.hama.myhama.comm.SuperStepCommand;
@@ -105,7 +109,9 @@ class JobInProgress {
 		new ConcurrentHashMap<TaskAttemptID, Float>();
 	
 	private Constants.STYLE preIteStyle, curIteStyle;
-	private int switchCounter = 0;
+	/** decide the style of the next superstep */
+	private StyleSwitchPolicy stylePolicy;
+	private StyleSwitchContext styleContext;
 	private int byteOfOneMessage = 0;
 	private boolean isAccumulated = false;
 	private int recMsgBuf = 0;
@@ -128,7 +134,10 @@ class JobInProgress {
 	//private float seqWriteSpeed = 2414*ONE_KB;
 	private float seqReadSpeed = 2415*ONE_KB;
 	private float netSpeed = 112*ONE_KB*ONE_KB;    
-	private double lastCombineRatio = 0.0;
+	/** use throughputs measured by GroomServers instead of configured ones */
+	private boolean useMeasuredSpeed = false;
+	/** switch from PULL to PUSH if miniQ is less than it */
+	private double miniQThreshold = Constants.HardwareInfo.Def_MiniQ_Threshold;
 	
 	/**
 	 * Record failed tasks. Now only failures between beginSuperStep() 
@@ -136,6 +145,12 @@ class JobInProgress {
 	 */
 	private HashSet<Integer> failedTaskIds;
 	private int recoveryIteNum = 0;
+	/**
+	 * The checkpoint being archived in background (-1 if none), 
+	 * and the number of tasks which have reported it is durable.
+	 */
+	private int pendingCkp = -1;
+	private AtomicInteger durableCkpCounter = new AtomicInteger(0);
 
 	public JobInProgress(BSPJobID _jobId, Path _jobFile, BSPMaster _master,
 			Configuration _conf) throws IOException {
@@ -151,6 +166,8 @@ class JobInProgress {
 		this.netSpeed = 
 			_conf.getFloat(Constants.HardwareInfo.Network_ThroughPut, 
 				Constants.HardwareInfo.Def_Network_ThroughPut)*ONE_KB*ONE_KB;
+		this.useMeasuredSpeed = 
+			_conf.getBoolean(Constants.HardwareInfo.Calibrate, false);
 		LOG.info(print("=*", 38) + "=");
 /*		LOG.info("hardware info " 
 				+ "\nrandom.read.throughput = " + randReadSpeed/ONE_KB + " KB/s" 
@@ -181,7 +198,15 @@ class JobInProgress {
 		maxIteNum = job.getNumSuperStep(); 
 		taskNum = job.getNumBspTask();
 		recMsgBuf = job.getMsgRecBufSize();
+		updateMiniQThreshold();
 		jobMonitor = new JobMonitor(maxIteNum, taskNum);
+		styleContext = new StyleSwitchContext(jobMonitor, job.getBspStyle(), 
+				(long)taskNum*recMsgBuf);
+		styleContext.setSpeeds(randWriteSpeed, randReadSpeed, 
+				seqReadSpeed, netSpeed);
+		stylePolicy = ReflectionUtils.newInstance(
+				job.getStyleSwitchPolicyClass(), conf);
+		stylePolicy.initialize(job, MyLOG);
 		initialize();
 		
 		status = new JobStatus(jobId, profile.getUser(),
@@ -572,8 +597,8 @@ class JobInProgress {
 			case 3: mssc.setStyle(Constants.STYLE.PUSH); break;
 			} */
 			
-			//-230 for neu, -25 for amazon
-			if ((miniQ<-230.0) || (miniQ==0.0)) {
+			//-230 for neu, -25 for amazon, see updateMiniQThreshold()
+			if ((miniQ<this.miniQThreshold) || (miniQ==0.0)) {
 				mssc.setStyle(Constants.STYLE.PUSH);
 			} else {
 				mssc.setStyle(Constants.STYLE.PULL);
@@ -583,6 +608,70 @@ class JobInProgress {
 		return mssc;
 	}
 	
+	/**
+	 * Replace configured throughputs by those measured by GroomServers 
+	 * running tasks of this job. The minimum throughput is used since 
+	 * the slowest node dominates the runtime of one superstep. 
+	 * Read throughputs are replaced only if they are measured without 
+	 * the page cache on all nodes. The network throughput is measured 
+	 * over the loopback interface, so the configured one is always kept.
+	 */
+	private void loadMeasuredSpeed() {
+		HashSet<String> hosts = new HashSet<String>();
+		for (String host: this.jobInfo.getHostNames()) {
+			hosts.add(host);
+		}
+		
+		HardwareProfile slowest = null;
+		int counter = 0;
+		for (GroomServerStatus gss: this.master.groomServerStatusKeySet()) {
+			HardwareProfile hp = gss.getHardwareProfile();
+			String host = gss.getPeerName().split(":")[0];
+			if (hp==null || !hosts.contains(host)) {
+				continue;
+			}
+			slowest = (slowest==null)? hp:slowest.min(hp);
+			counter++;
+		}
+		if (slowest == null) {
+			LOG.warn(jobId.toString() + " no measured throughput is available, "
+					+ "use the configured ones");
+			return;
+		}
+		
+		this.randWriteSpeed = slowest.getRandWriteThroughPut()*ONE_KB;
+		if (slowest.isReadUncached()) {
+			this.randReadSpeed = slowest.getRandReadThroughPut()*ONE_KB;
+			this.seqReadSpeed = slowest.getSeqReadThroughPut()*ONE_KB;
+		} else {
+			LOG.warn(jobId.toString() + " measured read throughputs may hit " 
+					+ "the page cache, use the configured ones");
+		}
+		updateMiniQThreshold();
+		this.styleContext.setSpeeds(randWriteSpeed, randReadSpeed, 
+				seqReadSpeed, netSpeed);
+		LOG.info(jobId.toString() + " uses throughputs measured on " 
+				+ counter + " nodes (minimum)\n" + slowest 
+				+ "\nminiQ threshold = " + this.miniQThreshold);
+	}
+	
+	/**
+	 * The default threshold -230 is tuned on the local cluster. 
+	 * Costs in miniQ are in seconds and shrink as disks become faster, 
+	 * so the default is scaled by the sequential read throughput, 
+	 * e.g., about -30 for the Amazon cluster (the tuned value is -25). 
+	 */
+	private void updateMiniQThreshold() {
+		String threshold = this.conf.get(Constants.HardwareInfo.MiniQ_Threshold);
+		if (threshold != null) {
+			this.miniQThreshold = Double.parseDouble(threshold);
+		} else {
+			this.miniQThreshold = Constants.HardwareInfo.Def_MiniQ_Threshold 
+				* (Constants.HardwareInfo.Def_Seq_Read_ThroughPut*ONE_KB) 
+				/ this.seqReadSpeed;
+		}
+	}
+	
 	/** Build route-table by loading the first record of each task */
 	public void buildRouteTable(TaskInformation tif) {
 		/*LOG.info("[ROUTETABLE] tid=" + tif.getTaskId() 
@@ -591,6 +680,7 @@ class JobInProgress {
 				+ " port=" + tif.getPort());*/
 		this.byteOfOneMessage = tif.getByteOfOneMessage();
 		this.isAccumulated = tif.isAccumulated();
+		this.styleContext.setMessageInfo(byteOfOneMessage, isAccumulated);
 		this.jobInfo.buildInfo(tif.getTaskId(), tif);
 		InetSocketAddress address = 
 			new InetSocketAddress(tif.getHostName(), tif.getPort());
@@ -674,6 +764,9 @@ class JobInProgress {
 			
 			this.loadDataTime = 
 				System.currentTimeMillis() - this.startTime;
+			if (this.useMeasuredSpeed) {
+				loadMeasuredSpeed();
+			}
 			this.status.setRunState(JobStatus.RUNNING);
 			LOG.info(jobId.toString() + " starts with BspStyle=" 
 					+ job.getBspStyle());
@@ -697,7 +790,12 @@ class JobInProgress {
 				CommandType type = 
 					this.jobInfo.getCommand(curIteNum).getCommandType();
 				if (type == CommandType.ARCHIVE) {
-					this.jobInfo.setAvailableCheckPoint(curIteNum);
+					if (job.isAsyncCheckPoint()) {
+						//available after all tasks report it is durable
+						this.pendingCkp = curIteNum;
+					} else {
+						this.jobInfo.setAvailableCheckPoint(curIteNum);
+					}
 					double time = (System.currentTimeMillis()-this.startTimeIte) / 1000.0;
 					this.jobMonitor.accumulateCheckPointTime(time);
 					this.startTimeIte = System.currentTimeMillis();
@@ -754,6 +852,9 @@ class JobInProgress {
 			this.jobMonitor.updateMonitorRecovery(size, parId, ssr.getTaskAgg(), 
 					ssr.getCounters());
 		} else {
+			if (this.pendingCkp>0 && ssr.getCheckPointVersion()>this.pendingCkp) {
+				this.durableCkpCounter.incrementAndGet();
+			}
 			this.jobInfo.updateRespondVerNumOfBlks(parId, ssr.getActVerNumBucs());
 			this.jobMonitor.updateMonitor(curIteNum, parId, ssr.getTaskAgg(), 
 					ssr.getCounters());
@@ -764,6 +865,23 @@ class JobInProgress {
 		if (finished==this.taskNum) {
 			this.reportCounter.set(0);
 			
+			/** 
+			 * The checkpoint archived in background is available only if 
+			 * all tasks have completed it. Otherwise, check it again at 
+			 * the next superstep, or give it up if failures happen.
+			 */
+			if (this.pendingCkp > 0) {
+				if (this.status.getRunState() == JobStatus.RESTART) {
+					this.pendingCkp = -1;
+				} else if (this.durableCkpCounter.get() == this.taskNum) {
+					this.jobInfo.setAvailableCheckPoint(this.pendingCkp);
+					LOG.info(jobId.toString() + " checkpoint version-" 
+							+ (this.pendingCkp+1) + " is available");
+					this.pendingCkp = -1;
+				}
+				this.durableCkpCounter.set(0);
+			}
+			
 			/** failures happen */
 			if (this.status.getRunState() == JobStatus.RESTART) {
 				LOG.warn(this.jobId + " fails");
@@ -861,9 +979,9 @@ class JobInProgress {
 
 	private SuperStepCommand getNextSuperStepCommand() {
 		SuperStepCommand ssc = new SuperStepCommand();
+		ssc.setAvailableCheckPointVersion(
+				jobInfo.getAvailableCheckPoint()+1);
 		if (this.status.getRunState() == JobStatus.RECOVERY) {
-			ssc.setAvailableCheckPointVersion(
-					jobInfo.getAvailableCheckPoint()+1);
 			if ((recoveryIteNum+1) == curIteNum) {
 				//all tasks re-execute the failed iteration
 				ssc.setCommandType(CommandType.REDO);
@@ -899,102 +1017,13 @@ class JobInProgress {
 			this.curIteStyle = this.jobInfo.getMiniCommand(curIteNum).getStyle(); 
 			this.preIteStyle = this.curIteStyle;
 			//this.curIteStyle = this.preIteStyle; //simulate original PUSH without mini-barriers
-		} else if (this.curIteNum > 2) {
-			long diskMsgNum = 
-				this.jobMonitor.getProducedMsgNum(curIteNum)
-				-(this.taskNum*this.recMsgBuf);
-			diskMsgNum = diskMsgNum<0? 0:diskMsgNum;
-			double diskMsgWriteCost = 
-				(diskMsgNum*this.byteOfOneMessage) / this.randWriteSpeed;
-			
-			long seqDiskByteDiff = this.jobMonitor.getByteOfPush(curIteNum) 
-				- diskMsgNum*this.byteOfOneMessage 
-				- (this.jobMonitor.getByteOfPull(curIteNum) 
-						- this.jobMonitor.getByteOfVertInPull(curIteNum));
-			double diskReadCostDiff = seqDiskByteDiff/seqReadSpeed
-				- jobMonitor.getByteOfVertInPull(curIteNum)/randReadSpeed;
-			
-			double reducedNetMsgNum = 
-				(double)jobMonitor.getReducedNetMsgNum(curIteNum);
-			if (curIteStyle == Constants.STYLE.PUSH) {
-				reducedNetMsgNum = 
-					jobMonitor.getProducedMsgNum(curIteNum) * lastCombineRatio;
-			} else {
-				lastCombineRatio = 
-					reducedNetMsgNum / jobMonitor.getProducedMsgNum(curIteNum);
-			}
-			double reducedNetCost = 
-				isAccumulated? (reducedNetMsgNum*byteOfOneMessage)/netSpeed 
-						: (reducedNetMsgNum*4)/netSpeed;
-			
-			Q = diskMsgWriteCost + diskReadCostDiff + reducedNetCost; //push-pull
-
-			/** Set the change automically
-			 *  Suppose that:
-			 *  1 Starting style=style.Pull.
-			 *  2 When #act_vertices is increasing, style.Pull is always performed, 
-			 *    because the growing speed is usually fast, 
-			 *    which means frequent switching operations are not cost effective.
-			 *  3 Otherwise, switch dynamically:
-			 *    1) if Q >= 0
-			 *          switch from push to pull.
-			 *    2) else
-			 *          switch from pull to push.
-			 *    3) specially, the switching function is closed 
-			 *       if |Q|<=2.0, this is because the switching benefit 
-			 *       is so tiny (negligible) that switching is not cost effective.
-			 * */
-			if (this.jobMonitor.getActVerNum(curIteNum) < 
-					this.jobMonitor.getActVerNum(curIteNum-1)) { //decreasing
-				if (this.preIteStyle==this.curIteStyle) {
-					this.preIteStyle = this.curIteStyle;
-					if (this.job.getBspStyle()==Constants.STYLE.Hybrid 
-							&& Math.abs(Q)>2.0) {
-						if (Q >= 0.0) {
-							this.curIteStyle = Constants.STYLE.PULL;
-						} else {
-							this.curIteStyle = Constants.STYLE.PUSH;
-						}
-					}
-				} else {
-					Q = this.jobInfo.getQ(curIteNum-1);
-					this.preIteStyle = this.curIteStyle;
-				}
-			} else {
-				Q = 0.0;
-				this.preIteStyle = this.curIteStyle;
-			}
-			
-			/*this.preIteStyle = this.curIteStyle;
-			if (curIteNum >= 5) {
-				this.curIteStyle = Constants.STYLE.PUSH;
-			}*/
 		} else {
+			this.styleContext.update(curIteNum, preIteStyle, curIteStyle, 
+					(System.currentTimeMillis()-startTimeIte)/1000.0);
+			Constants.STYLE nextStyle = this.stylePolicy.decide(styleContext);
 			this.preIteStyle = this.curIteStyle;
-		}
-		
-		/**
-		 * About the switchCounter value:
-		 * 1) switchCounter=1 (old style): prepare to switch at the next iteration, 
-		 *    but the current iteration is old style);
-		 * 2) switchCounter=2 (new style): switching from old to new style (collected 
-		 *    info. may not be accurate);
-		 * 3) switchCounter=3 (new style): do a complete iteration using the new 
-		 *    style (collected info. is accurate);
-		 * Thus, the switching interval w=2.
-		 */
-		if (this.switchCounter != 0) {
-			this.switchCounter++;
-			if (this.switchCounter == 3) {
-				this.switchCounter = 0;
-			}
-		}
-		if (this.preIteStyle!=this.curIteStyle) {
-			if (this.switchCounter != 0) {
-				this.curIteStyle = this.preIteStyle; //invalid switch
-			} else {
-				this.switchCounter++;
-			}
+			this.curIteStyle = nextStyle;
+			Q = this.stylePolicy.getMetricQ();
 		}
 		
 		//for the next superstep
@@ -1022,7 +1051,8 @@ class JobInProgress {
 	private boolean isCheckPoint() {
 		int interval = job.getCheckPointInterval();
 		if (job.getCheckPointPolicy()==Constants.CheckPoint.Policy.None 
-				|| !job.isGraphDataOnDisk() || interval<=0) {
+				|| !job.isGraphDataOnDisk() || interval<=0 
+				|| this.pendingCkp>0) {
 			return false;
 		} else {
 			//dynamically checkpoint
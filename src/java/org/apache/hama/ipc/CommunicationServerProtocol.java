@@ -5,11 +5,13 @@ package org.apache.hama.ipc;
 
 import java.io.Closeable;
 
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hama.Constants;
 import org.apache.hama.bsp.BSPRPCProtocolVersion;
 import org.apache.hama.monitor.JobInformation;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.comm.MiniSuperStepCommand;
+import org.apache.hama.myhama.comm.MsgBatch;
 import org.apache.hama.myhama.comm.MsgPack;
 import org.apache.hama.myhama.comm.SuperStepCommand;
 
@@ -45,6 +47,43 @@ public interface CommunicationServerProtocol<V, W, M, I>
 	 */
 	public MsgPack<V, W, M, I> obtainMsgData(int _toTaskId, int _toBlkId, int _iteNum);
 	
+	/**
+	 * Obtain {@link MsgRecord} from tasks which contain edges, like 
+	 * obtainMsgData(), but for a list of {@link VBlock}s, which are 
+	 * responded one by one from _toBlkIds[_cursor], to save round-trips. 
+	 * Packs of one VBlock are merged into one pack. The response stops 
+	 * when at most _maxPackNum packs or _maxByte bytes of messages are 
+	 * collected, and its cursor tells where the next call continues. 
+	 * The request state within one VBlock is kept by the source task.
+	 * @param _toTaskId id of task to which messages are sent
+	 * @param _toBlkIds local ids of {@link VBlock}s to which messages are sent 
+	 * @param _cursor index of the first VBlock to be responded
+	 * @param _iteNum
+	 * @param _maxPackNum
+	 * @param _maxByte
+	 * @return null if error
+	 */
+	public MsgBatch<V, W, M, I> obtainMsgBatch(int _toTaskId, int[] _toBlkIds, 
+			int _cursor, int _iteNum, int _maxPackNum, int _maxByte);
+	
+	/**
+	 * Receive edges of hubs mirrored on this task, once after loading.
+	 * @param srcParId
+	 * @param edges
+	 * @return #edges, -1 if error
+	 */
+	public long recMirrorEdges(int srcParId, BytesWritable edges);
+	
+	/**
+	 * Receive values of hubs mirrored on this task, 
+	 * once per source task at the end of a superstep.
+	 * @param srcParId
+	 * @param _iteNum
+	 * @param values
+	 * @return #messages generated by mirrors for push, -1 if error
+	 */
+	public long recMirrorValues(int srcParId, int _iteNum, BytesWritable values);
+	
 	/**
 	 * Set route table information and then quit the synchronization barrier 
 	 * initiated by {@link MasterProtocol}.buildRouteTable().
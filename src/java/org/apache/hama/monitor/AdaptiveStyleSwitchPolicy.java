@@ -0,0 +1,162 @@
+package org.apache.hama.monitor;
+
+import org.apache.hama.Constants;
+import org.apache.hama.bsp.BSPJob;
+import org.apache.hama.myhama.util.JobLog;
+
+/**
+ * AdaptiveStyleSwitchPolicy learns the runtime of one superstep
+ * under each style online. The runtime is modeled as a linear function
+ * of byte volumes (MB):
+ *   T_push = c0 + c1*diskMsgWrite + c2*seqRead + c3*(net+reducedNet)
+ *   T_pull = c0 + c1*randRead + c2*seqRead + c3*net
+ * Coefficients start from the analytic ones (1/throughput), i.e., the
+ * same as {@link StaticStyleSwitchPolicy}, and then are corrected by
+ * recursive least squares with a forgetting factor, using the actual
+ * runtime of each superstep performed by the style.
+ *
+ * The next style is the one with the shorter predicted runtime, if the
+ * gain is larger than the recent prediction error. Supersteps where the
+ * style is switching are not used to learn, and no new switch happens
+ * until one complete superstep has been performed by the new style.
+ * Each decision and its prediction error are logged into the job log.
+ */
+public class AdaptiveStyleSwitchPolicy implements StyleSwitchPolicy {
+	private static final int DIM = 4;
+	private static final double ONE_MB = 1024.0 * 1024.0;
+	/** weight of previous observations */
+	private static final double FORGET = 0.9;
+	/** the minimal gain (ratio of the predicted runtime) to switch */
+	private static final double MIN_GAIN = 0.05;
+	
+	private JobLog log;
+	private boolean initialized = false;
+	/** coefficients and covariance: [0] for PUSH and [1] for PULL */
+	private double[][] theta = new double[2][];
+	private double[][][] cov = new double[2][][];
+	/** runtime of the next superstep predicted by the last decision */
+	private double[] predicted = new double[] {-1.0, -1.0};
+	/** smoothed squared prediction error, seconds^2 */
+	private double errSquare = 0.0;
+	private double Q = 0.0;
+	
+	@Override
+	public void initialize(BSPJob job, JobLog _log) {
+		log = _log;
+	}
+
+	/** Initialize coefficients by throughputs (bytes/s). */
+	private void initCoefficients(StyleSwitchContext context) {
+		double net = ONE_MB / context.getNetSpeed();
+		double seq = ONE_MB / context.getSeqReadSpeed();
+		theta[0] = new double[] {0.0,
+				ONE_MB/context.getRandWriteSpeed(), seq, net};
+		theta[1] = new double[] {0.0,
+				ONE_MB/context.getRandReadSpeed(), seq, net};
+		for (int s = 0; s < 2; s++) {
+			cov[s] = new double[DIM][DIM];
+			cov[s][0][0] = 100.0; //intercept, seconds
+			for (int i = 1; i < DIM; i++) {
+				cov[s][i][i] = 1.0;
+			}
+		}
+		initialized = true;
+	}
+	
+	private static int index(Constants.STYLE style) {
+		return style==Constants.STYLE.PUSH? 0:1;
+	}
+
+	/** Features of the given style, MB. */
+	private double[] features(StyleSwitchContext context, int s) {
+		if (s == 0) {
+			return new double[] {1.0,
+					context.getDiskMsgByte()/ONE_MB,
+					context.getPushSeqByte()/ONE_MB,
+					(context.getNetByte()+context.getReducedNetByte())/ONE_MB};
+		} else {
+			return new double[] {1.0,
+					context.getPullRandByte()/ONE_MB,
+					context.getPullSeqByte()/ONE_MB,
+					context.getNetByte()/ONE_MB};
+		}
+	}
+	
+	private double predict(int s, double[] x) {
+		double y = 0.0;
+		for (int i = 0; i < DIM; i++) {
+			y += theta[s][i] * x[i];
+		}
+		return y;
+	}
+
+	/** One step of recursive least squares. */
+	private void learn(int s, double[] x, double y) {
+		double[][] P = cov[s];
+		double[] Px = new double[DIM];
+		double denom = FORGET;
+		for (int i = 0; i < DIM; i++) {
+			for (int j = 0; j < DIM; j++) {
+				Px[i] += P[i][j] * x[j];
+			}
+			denom += x[i] * Px[i];
+		}
+		double err = y - predict(s, x);
+		for (int i = 0; i < DIM; i++) {
+			//runtime never decreases with more bytes
+			theta[s][i] = Math.max(0.0, theta[s][i] + Px[i]/denom*err);
+		}
+		for (int i = 0; i < DIM; i++) {
+			for (int j = 0; j < DIM; j++) {
+				P[i][j] = (P[i][j] - Px[i]*Px[j]/denom) / FORGET;
+			}
+		}
+	}
+	
+	@Override
+	public Constants.STYLE decide(StyleSwitchContext context) {
+		if (!initialized) {
+			initCoefficients(context);
+		}
+		int iteNum = context.getIteNum();
+		int cur = index(context.getCurStyle());
+		double[][] x = new double[][] {features(context, 0), features(context, 1)};
+		StringBuffer sb = new StringBuffer();
+		sb.append("superstep-" + iteNum + " " + context.getCurStyle()
+				+ ", runtime=" + context.getIteTime() + "s");
+		
+		/** audit the last prediction */
+		if (predicted[cur] >= 0.0) {
+			double err = context.getIteTime() - predicted[cur];
+			errSquare = FORGET*errSquare + (1.0-FORGET)*err*err;
+			sb.append(", predicted=" + predicted[cur] + "s, error=" + err + "s");
+		}
+		boolean stable = (context.getPreStyle()==context.getCurStyle());
+		if (stable && iteNum > 1) {
+			learn(cur, x[cur], context.getIteTime());
+		}
+		
+		/** predict the next superstep by volumes of the completed one */
+		predicted[0] = Math.max(0.0, predict(0, x[0]));
+		predicted[1] = Math.max(0.0, predict(1, x[1]));
+		Q = predicted[0] - predicted[1];
+		int next = cur;
+		double gain = predicted[cur] - predicted[1-cur];
+		double margin = Math.max(MIN_GAIN*predicted[cur], Math.sqrt(errSquare));
+		if (context.getBspStyle()==Constants.STYLE.Hybrid && stable
+				&& iteNum>1 && gain>margin) {
+			next = 1 - cur;
+		}
+		Constants.STYLE nextStyle = next==0? Constants.STYLE.PUSH:Constants.STYLE.PULL;
+		
+		sb.append("; next: push=" + predicted[0] + "s, pull=" + predicted[1]
+				+ "s, margin=" + margin + "s, style=" + nextStyle);
+		log.info(sb.toString());
+		return nextStyle;
+	}
+	
+	@Override
+	public double getMetricQ() {
+		return Q;
+	}
+}
@@ -0,0 +1,244 @@
+package org.apache.hama.monitor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hama.Constants;
+import org.apache.hama.HamaConfiguration;
+
+/**
+ * HardwareBenchmark measures throughputs of the local disk under
+ * "bsp.local.dir" and the network stack, which are used by
+ * {@link JobInProgress} to estimate costs of PUSH and PULL.
+ * (1) disk: sequential/random reads/writes of one file
+ *     with 16KB blocks, i.e., the same pattern as fio tests;
+ * (2) network: streaming data through a socket bound to the local host.
+ * Reads hit the OS page cache unless the file is much larger than the 
+ * memory, so read throughputs are flagged as uncached only if the file 
+ * is at least twice the physical memory, see 
+ * {@link HardwareProfile}.isReadUncached(). The network figure does 
+ * not include the physical link. Both are only reported for reference 
+ * otherwise, and {@link JobInProgress} keeps the configured values.
+ *
+ * It is invoked by {@link GroomServer} at startup,
+ * or run on demand: HardwareBenchmark [localDir] [bytes]
+ */
+public class HardwareBenchmark {
+	private static final Log LOG = LogFactory.getLog(HardwareBenchmark.class);
+	private static final int ONE_KB = 1024;
+
+	private String localDir;
+	private String hostName;
+	private long bytes;
+	private int blkSize = Constants.HardwareInfo.Calibrate_Block_Size;
+	private byte[] buf;
+
+	public HardwareBenchmark(Configuration conf, String _localDir,
+			String _hostName) {
+		localDir = _localDir;
+		hostName = _hostName;
+		bytes = conf.getLong(Constants.HardwareInfo.Calibrate_Bytes,
+				Constants.HardwareInfo.Def_Calibrate_Bytes);
+		bytes = Math.max(blkSize, bytes - bytes%blkSize);
+		buf = new byte[blkSize];
+		new Random(17L).nextBytes(buf);
+	}
+
+	/**
+	 * Measure all throughputs.
+	 * @return
+	 * @throws IOException
+	 */
+	public HardwareProfile run() throws IOException {
+		File dir = new File(localDir);
+		dir.mkdirs();
+		File f = new File(dir, "calibrate-" + System.nanoTime());
+		float seqWrite, seqRead, randWrite, randRead;
+		try {
+			seqWrite = writeSeq(f);
+			seqRead = readSeq(f);
+			randWrite = writeRand(f);
+			randRead = readRand(f);
+		} finally {
+			f.delete();
+		}
+		float network = stream();
+		
+		long memory = getPhysicalMemory();
+		boolean uncached = memory>0L && bytes>=2*memory;
+		if (!uncached) {
+			LOG.warn("read throughputs are upper bounds, " + bytes 
+					+ " bytes may be cached by " + memory + " bytes memory, " 
+					+ "set " + Constants.HardwareInfo.Calibrate_Bytes 
+					+ " to at least twice the memory to measure them");
+		}
+
+		HardwareProfile profile = new HardwareProfile(randRead, randWrite,
+				seqRead, seqWrite, network, uncached);
+		LOG.info("measured hardware info, " + bytes + " bytes\n" + profile);
+		return profile;
+	}
+
+	/**
+	 * Return the physical memory in bytes from /proc/meminfo.
+	 * @return -1 if unknown, e.g., not on Linux
+	 */
+	private long getPhysicalMemory() {
+		try {
+			BufferedReader reader = 
+				new BufferedReader(new FileReader("/proc/meminfo"));
+			try {
+				String line;
+				while ((line=reader.readLine()) != null) {
+					if (line.startsWith("MemTotal:")) {
+						String[] fields = line.trim().split("\\s+");
+						return Long.parseLong(fields[1]) * ONE_KB;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			LOG.warn("unknown physical memory: " + e.getMessage());
+		}
+		return -1L;
+	}
+
+	/** KB/s */
+	private float toKBps(long _bytes, long nanos) {
+		return (float) (_bytes / (double)ONE_KB
+				/ (Math.max(1L, nanos) / 1000000000.0));
+	}
+
+	private float writeSeq(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		long start = System.nanoTime();
+		try {
+			for (long pos = 0; pos < bytes; pos += blkSize) {
+				raf.write(buf);
+			}
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+		return toKBps(bytes, System.nanoTime()-start);
+	}
+
+	private float readSeq(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		long start = System.nanoTime();
+		try {
+			for (long pos = 0; pos < bytes; pos += blkSize) {
+				raf.readFully(buf);
+			}
+		} finally {
+			raf.close();
+		}
+		return toKBps(bytes, System.nanoTime()-start);
+	}
+
+	private float writeRand(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		Random rd = new Random(19L);
+		long blkNum = bytes / blkSize;
+		long start = System.nanoTime();
+		try {
+			for (long i = 0; i < blkNum; i++) {
+				raf.seek((long)(rd.nextDouble()*blkNum) * blkSize);
+				raf.write(buf);
+			}
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+		return toKBps(bytes, System.nanoTime()-start);
+	}
+
+	private float readRand(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		Random rd = new Random(23L);
+		long blkNum = bytes / blkSize;
+		long start = System.nanoTime();
+		try {
+			for (long i = 0; i < blkNum; i++) {
+				raf.seek((long)(rd.nextDouble()*blkNum) * blkSize);
+				raf.readFully(buf);
+			}
+		} finally {
+			raf.close();
+		}
+		return toKBps(bytes, System.nanoTime()-start);
+	}
+
+	/** MB/s */
+	private float stream() throws IOException {
+		final ServerSocket server = new ServerSocket();
+		server.bind(new InetSocketAddress(InetAddress.getByName(hostName), 0));
+		final IOException[] error = new IOException[1];
+		Thread sender = new Thread() {
+			public void run() {
+				try {
+					Socket s = new Socket(server.getInetAddress(),
+							server.getLocalPort());
+					OutputStream out = s.getOutputStream();
+					for (long pos = 0; pos < bytes; pos += blkSize) {
+						out.write(buf);
+					}
+					out.flush();
+					s.close();
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			}
+		};
+
+		long received = 0L, start;
+		try {
+			sender.start();
+			Socket s = server.accept();
+			start = System.nanoTime();
+			byte[] rBuf = new byte[blkSize];
+			InputStream in = s.getInputStream();
+			int len;
+			while ((len=in.read(rBuf)) > 0) {
+				received += len;
+			}
+			s.close();
+			sender.join();
+		} catch (InterruptedException e) {
+			throw new IOException(e.toString());
+		} finally {
+			server.close();
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+		return toKBps(received, System.nanoTime()-start) / ONE_KB;
+	}
+
+	public static void main(String[] args) throws Exception {
+		HamaConfiguration conf = new HamaConfiguration();
+		String dir = args.length>0? args[0]:conf.get("bsp.local.dir");
+		if (args.length > 1) {
+			conf.setLong(Constants.HardwareInfo.Calibrate_Bytes,
+					Long.parseLong(args[1]));
+		}
+		HardwareProfile profile =
+			new HardwareBenchmark(conf, dir,
+					InetAddress.getLocalHost().getHostName()).run();
+		System.out.println(profile);
+	}
+}
@@ -0,0 +1,115 @@
+package org.apache.hama.monitor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * HardwareProfile keeps disk and network throughputs of one node
+ * measured by {@link HardwareBenchmark}. Units are the same as
+ * {@link Constants}.HardwareInfo, i.e., KB/s for disks and MB/s
+ * for the network.
+ */
+public class HardwareProfile implements Writable {
+	private float randRead, randWrite;
+	private float seqRead, seqWrite;
+	private float network;
+	/** reads are measured on a file larger than the page cache */
+	private boolean readUncached;
+
+	public HardwareProfile() {
+
+	}
+
+	public HardwareProfile(float _randRead, float _randWrite,
+			float _seqRead, float _seqWrite, float _network, 
+			boolean _readUncached) {
+		randRead = _randRead;
+		randWrite = _randWrite;
+		seqRead = _seqRead;
+		seqWrite = _seqWrite;
+		network = _network;
+		readUncached = _readUncached;
+	}
+
+	/** KB/s */
+	public float getRandReadThroughPut() {
+		return randRead;
+	}
+
+	/** KB/s */
+	public float getRandWriteThroughPut() {
+		return randWrite;
+	}
+
+	/** KB/s */
+	public float getSeqReadThroughPut() {
+		return seqRead;
+	}
+
+	/** KB/s */
+	public float getSeqWriteThroughPut() {
+		return seqWrite;
+	}
+
+	/** MB/s, over the loopback interface */
+	public float getNetworkThroughPut() {
+		return network;
+	}
+	
+	/**
+	 * Are read throughputs measured without the OS page cache? 
+	 * If not, they are upper bounds and should not be used.
+	 * @return
+	 */
+	public boolean isReadUncached() {
+		return readUncached;
+	}
+
+	/**
+	 * Return a new profile with the minimum of each throughput,
+	 * i.e., the slowest node dominates the runtime of a superstep.
+	 * @param other
+	 * @return
+	 */
+	public HardwareProfile min(HardwareProfile other) {
+		return new HardwareProfile(Math.min(randRead, other.randRead),
+				Math.min(randWrite, other.randWrite),
+				Math.min(seqRead, other.seqRead),
+				Math.min(seqWrite, other.seqWrite),
+				Math.min(network, other.network), 
+				readUncached && other.readUncached);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		randRead = in.readFloat();
+		randWrite = in.readFloat();
+		seqRead = in.readFloat();
+		seqWrite = in.readFloat();
+		network = in.readFloat();
+		readUncached = in.readBoolean();
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeFloat(randRead);
+		out.writeFloat(randWrite);
+		out.writeFloat(seqRead);
+		out.writeFloat(seqWrite);
+		out.writeFloat(network);
+		out.writeBoolean(readUncached);
+	}
+
+	@Override
+	public String toString() {
+		return "random.read.throughput = " + randRead + " KB/s"
+			+ "\nrandom.write.throughput = " + randWrite + " KB/s"
+			+ "\nsequential.read.throughput = " + seqRead + " KB/s"
+			+ "\nsequential.write.throughput = " + seqWrite + " KB/s"
+			+ "\nnetwork.throughput = " + network + " MB/s (loopback)"
+			+ "\nreads are measured without page cache: " + readUncached;
+	}
+}
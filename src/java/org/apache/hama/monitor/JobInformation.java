@@ -26,7 +26,8 @@ public class JobInformation implements Writable {
 	
 	private int blkNumOfJob = 0; //total #VBlocks of this job
 	private int[] blkNumOfTasks;  //#VBlocks of each task
-	private int[] blkLenOfTasks;  //#vertices in one VBlock at each task
+	private int[] blkLenOfTasks;  //max #vertices in one VBlock at each task
+	private int[][] blkMinIdsOfTasks; //min vertex id of each VBlock
 	/** the beginning global idx of VBlocks at each task */
 	private int[] headBlkIdxOfTasks; 
 	
@@ -36,6 +37,8 @@ public class JobInformation implements Writable {
 	// Only available in JobInProgress
 	//=====================================
 	
+	/** VBlock boundaries reported by tasks, null if not reported */
+	private int[][] repBlkMinIds;
 	private int[] verNumOfBlks;
 	/** number of responding source vertices of each VBlock */
 	private int[] resVerNumOfBlks;
@@ -67,6 +70,8 @@ public class JobInformation implements Writable {
 		this.blkNumOfJob = 0;
 		this.blkNumOfTasks = new int[_taskNum];
 		this.blkLenOfTasks = new int[_taskNum];
+		this.blkMinIdsOfTasks = new int[_taskNum][];
+		this.repBlkMinIds = new int[_taskNum][];
 		this.headBlkIdxOfTasks = new int[_taskNum];
 		
 		commands = new ArrayList<SuperStepCommand>(); 
@@ -87,6 +92,7 @@ public class JobInformation implements Writable {
 		this.verMinIds[taskId] = tInfo.getVerMinId();
 		this.ports[taskId] = tInfo.getPort();
 		this.hostNames[taskId] = tInfo.getHostName();
+		this.repBlkMinIds[taskId] = tInfo.getBlkMinIds();
 	}
 	
 	/**
@@ -100,9 +106,9 @@ public class JobInformation implements Writable {
 		
 		for (int i = 0; i < taskNum; i++) {
 			this.blkNumOfTasks[i] = this.job.getNumBucketsPerTask();
-			this.blkLenOfTasks[i] = 
-				(int)Math.ceil((double)
-						(verMaxIds[i]-verMinIds[i]+1)/this.blkNumOfTasks[i]);
+			this.blkMinIdsOfTasks[i] = isValidBlkMinIds(i)? 
+					this.repBlkMinIds[i]:getEvenBlkMinIds(i);
+			this.blkLenOfTasks[i] = getMaxBlkLen(i);
 			this.blkNumOfJob += this.blkNumOfTasks[i];
 		}
 		
@@ -137,6 +143,45 @@ public class JobInformation implements Writable {
 		}
 	}
 	
+	/**
+	 * Are VBlock boundaries reported by the given task, e.g., balanced by 
+	 * edges, consistent with its vertex range and #VBlocks?
+	 */
+	private boolean isValidBlkMinIds(int tid) {
+		int[] mins = this.repBlkMinIds[tid];
+		if (mins==null || mins.length!=this.blkNumOfTasks[tid] 
+				|| mins[0]!=this.verMinIds[tid]) {
+			return false;
+		}
+		for (int bid = 1; bid < mins.length; bid++) {
+			if (mins[bid]<=mins[bid-1] || mins[bid]>this.verMaxIds[tid]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** VBlocks with the same #vertices, except the last one. */
+	private int[] getEvenBlkMinIds(int tid) {
+		int blkNum = this.blkNumOfTasks[tid];
+		int blkLen = (int)Math.ceil((double)
+				(verMaxIds[tid]-verMinIds[tid]+1)/blkNum);
+		int[] mins = new int[blkNum];
+		for (int bid = 0; bid < blkNum; bid++) {
+			mins[bid] = this.verMinIds[tid] + bid*blkLen;
+		}
+		return mins;
+	}
+	
+	private int getMaxBlkLen(int tid) {
+		int[] mins = this.blkMinIdsOfTasks[tid];
+		int max = this.verMaxIds[tid] - mins[mins.length-1] + 1;
+		for (int bid = 1; bid < mins.length; bid++) {
+			max = Math.max(max, mins[bid]-mins[bid-1]);
+		}
+		return max;
+	}
+	
 	private void initVerIdAndNums(int _verNum) {
 		int[] tmpMin = new int[taskNum], tmpId = new int[taskNum];
 		for (int i = 0; i < taskNum; i++) {
@@ -241,18 +286,53 @@ public class JobInformation implements Writable {
 		return this.blkNumOfTasks[taskId];
 	}
 	
+	/**
+	 * Get the maximum #vertices in one VBlock on the given task.
+	 * @param taskId
+	 * @return
+	 */
 	public int getBlkLenOfTasks(int taskId) {
 		return this.blkLenOfTasks[taskId];
 	}
 	
 	/**
-	 * Get the local VBlock index on the given task, for a vertex vid.
+	 * Get the minimum vertex ids of all VBlocks on the given task.
+	 * @param taskId
+	 * @return
+	 */
+	public int[] getBlkMinIdsOfTasks(int taskId) {
+		return this.blkMinIdsOfTasks[taskId];
+	}
+	
+	/**
+	 * Get the local VBlock index on the given task, for a vertex vid, 
+	 * by binary search since VBlocks may have different lengths.
 	 * @param taskId
 	 * @param vId
 	 * @return
 	 */
 	public int getLocalBlkIdx(int tid, int vid) {
-		return (vid-this.verMinIds[tid])/this.blkLenOfTasks[tid];
+		int[] mins = this.blkMinIdsOfTasks[tid];
+		int low = 0, high = mins.length - 1;
+		while (low < high) {
+			int mid = (low+high+1) >>> 1;
+			if (mins[mid] <= vid) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Get the minimum vertex id of the given VBlock on the given task.
+	 * @param tid
+	 * @param bid
+	 * @return
+	 */
+	public int getBlkMinId(int tid, int bid) {
+		return this.blkMinIdsOfTasks[tid][bid];
 	}
 	
 	/**
@@ -405,6 +485,7 @@ public class JobInformation implements Writable {
 		this.hostNames = new String[taskNum];
 		this.blkNumOfTasks = new int[this.taskNum];
 		this.blkLenOfTasks = new int[this.taskNum];
+		this.blkMinIdsOfTasks = new int[this.taskNum][];
 		this.headBlkIdxOfTasks = new int[this.taskNum];
 		for (int i = 0; i < taskNum; i++) {
 			taskIds[i] = in.readInt();
@@ -416,6 +497,10 @@ public class JobInformation implements Writable {
 			this.blkNumOfTasks[i] = in.readInt();
 			this.blkLenOfTasks[i] = in.readInt();
 			this.headBlkIdxOfTasks[i] = in.readInt();
+			this.blkMinIdsOfTasks[i] = new int[this.blkNumOfTasks[i]];
+			for (int j = 0; j < this.blkNumOfTasks[i]; j++) {
+				this.blkMinIdsOfTasks[i][j] = in.readInt();
+			}
 		}
 		
 		this.ckpVersion = in.readInt();
@@ -441,6 +526,9 @@ public class JobInformation implements Writable {
 			out.writeInt(this.blkNumOfTasks[i]);
 			out.writeInt(this.blkLenOfTasks[i]);
 			out.writeInt(this.headBlkIdxOfTasks[i]);
+			for (int j = 0; j < this.blkNumOfTasks[i]; j++) {
+				out.writeInt(this.blkMinIdsOfTasks[i][j]);
+			}
 		}
 		
 		out.writeInt(this.ckpVersion);
@@ -262,6 +262,15 @@ public class JobMonitor {
 		return this.counters_list.get(curIteNum-1).getCounter(COUNTER.Msg_Produced);
 	}
 	
+	/**
+	 * Return the number of network messages without combining/concatenating.
+	 * @param curIteNum
+	 * @return
+	 */
+	public long getNetMsgNum(int curIteNum) {
+		return this.counters_list.get(curIteNum-1).getCounter(COUNTER.Msg_Net);
+	}
+	
 	/**
 	 * Return the number of network messages due to combining/concatenating of pull.
 	 * @param curIteNum
@@ -375,6 +384,9 @@ public class JobMonitor {
 		sb.append(printCounterInfo(COUNTER.Msg_Net, false));
 		sb.append(printCounterInfo(COUNTER.Msg_Net_Actual, false));
 		sb.append(printCounterInfo(COUNTER.Msg_Disk, false));
+		sb.append(printCounterInfo(COUNTER.Time_Pull_Hidden, false));
+		sb.append(printCounterInfo(COUNTER.Time_Push_Stall, false));
+		sb.append(printCounterInfo(COUNTER.Push_InFlight_Max, false));
 	    
 		sb.append(printCounterInfo(COUNTER.Byte_Actual, false));
 		sb.append(printCounterInfo(COUNTER.Byte_Push, false));
@@ -0,0 +1,100 @@
+package org.apache.hama.monitor;
+
+import org.apache.hama.Constants;
+import org.apache.hama.bsp.BSPJob;
+import org.apache.hama.myhama.util.JobLog;
+
+/**
+ * StaticStyleSwitchPolicy switches styles by the analytic metric Q
+ * computed with configured or measured throughputs. This is the default
+ * {@link StyleSwitchPolicy}.
+ *
+ * Suppose that:
+ * 1 Starting style=style.Pull.
+ * 2 When #act_vertices is increasing, style.Pull is always performed,
+ *   because the growing speed is usually fast,
+ *   which means frequent switching operations are not cost effective.
+ * 3 Otherwise, switch dynamically:
+ *   1) if Q >= 0
+ *         switch from push to pull.
+ *   2) else
+ *         switch from pull to push.
+ *   3) specially, the switching function is closed
+ *      if |Q|<=2.0, this is because the switching benefit
+ *      is so tiny (negligible) that switching is not cost effective.
+ */
+public class StaticStyleSwitchPolicy implements StyleSwitchPolicy {
+	private JobLog log;
+	private double Q = 0.0;
+	/**
+	 * About the switchCounter value:
+	 * 1) switchCounter=1 (old style): prepare to switch at the next iteration,
+	 *    but the current iteration is old style);
+	 * 2) switchCounter=2 (new style): switching from old to new style (collected
+	 *    info. may not be accurate);
+	 * 3) switchCounter=3 (new style): do a complete iteration using the new
+	 *    style (collected info. is accurate);
+	 * Thus, the switching interval w=2.
+	 */
+	private int switchCounter = 0;
+	
+	@Override
+	public void initialize(BSPJob job, JobLog _log) {
+		log = _log;
+	}
+	
+	@Override
+	public Constants.STYLE decide(StyleSwitchContext context) {
+		int iteNum = context.getIteNum();
+		Constants.STYLE preStyle = context.getCurStyle();
+		Constants.STYLE nextStyle = context.getCurStyle();
+		double lastQ = Q;
+		Q = 0.0;
+		
+		if (iteNum > 2) {
+			Q = context.getAnalyticQ(); //push-pull
+			if (context.getActVerNum(iteNum)
+					< context.getActVerNum(iteNum-1)) { //decreasing
+				if (context.getPreStyle() == context.getCurStyle()) {
+					if (context.getBspStyle()==Constants.STYLE.Hybrid
+							&& Math.abs(Q)>2.0) {
+						if (Q >= 0.0) {
+							nextStyle = Constants.STYLE.PULL;
+						} else {
+							nextStyle = Constants.STYLE.PUSH;
+						}
+					}
+				} else {
+					Q = lastQ;
+				}
+			} else {
+				Q = 0.0;
+			}
+		}
+		
+		if (switchCounter != 0) {
+			switchCounter++;
+			if (switchCounter == 3) {
+				switchCounter = 0;
+			}
+		}
+		if (preStyle != nextStyle) {
+			if (switchCounter != 0) {
+				nextStyle = preStyle; //invalid switch
+			} else {
+				switchCounter++;
+			}
+		}
+		
+		if (nextStyle != preStyle) {
+			log.info("superstep-" + iteNum + " switch from " + preStyle
+					+ " to " + nextStyle + ", Q=" + Q);
+		}
+		return nextStyle;
+	}
+	
+	@Override
+	public double getMetricQ() {
+		return Q;
+	}
+}
@@ -0,0 +1,191 @@
+package org.apache.hama.monitor;
+
+import org.apache.hama.Constants;
+
+/**
+ * StyleSwitchContext collects statistics of one completed superstep for
+ * {@link StyleSwitchPolicy}, including the actual runtime and the volume
+ * of I/O and network bytes under both PUSH and PULL. Volumes of the style
+ * actually performed are accurate, while those of the other are estimated
+ * by tasks. It is created once per job by {@link JobInProgress} and
+ * updated at the end of each superstep.
+ */
+public class StyleSwitchContext {
+	private JobMonitor jobMonitor;
+	private Constants.STYLE bspStyle;
+	private long recMsgBufNum; //messages kept in memory by all tasks
+	private int byteOfOneMessage = 0;
+	private boolean isAccumulated = false;
+	/** bytes/s */
+	private float randWriteSpeed, randReadSpeed, seqReadSpeed, netSpeed;
+	
+	private int iteNum;
+	private Constants.STYLE preStyle, curStyle;
+	private double iteTime; //seconds
+	/** ratios of messages reduced by combining under pull and push */
+	private double lastCombineRatio = 0.0;
+	private double lastPushCombineRatio = 0.0;
+
+	/** push: messages randomly written onto disk */
+	private long diskMsgByte;
+	/** push: sequential reads of vertices, edges and messages */
+	private long pushSeqByte;
+	/** pull: random reads of source vertices */
+	private long pullRandByte;
+	/** pull: sequential reads of vertices and fragments */
+	private long pullSeqByte;
+	/** network bytes under pull */
+	private long netByte;
+	/** extra network bytes under push since fewer messages are combined */
+	private long reducedNetByte;
+	
+	public StyleSwitchContext(JobMonitor _jobMonitor,
+			Constants.STYLE _bspStyle, long _recMsgBufNum) {
+		jobMonitor = _jobMonitor;
+		bspStyle = _bspStyle;
+		recMsgBufNum = _recMsgBufNum;
+	}
+	
+	public void setMessageInfo(int _byteOfOneMessage, boolean _isAccumulated) {
+		byteOfOneMessage = _byteOfOneMessage;
+		isAccumulated = _isAccumulated;
+	}
+
+	/**
+	 * Set throughputs of disks and network, bytes/s.
+	 */
+	public void setSpeeds(float _randWrite, float _randRead,
+			float _seqRead, float _net) {
+		randWriteSpeed = _randWrite;
+		randReadSpeed = _randRead;
+		seqReadSpeed = _seqRead;
+		netSpeed = _net;
+	}
+
+	/**
+	 * Collect statistics of the given superstep which has been completed.
+	 * @param _iteNum
+	 * @param _preStyle style of the superstep before _iteNum
+	 * @param _curStyle style of the superstep _iteNum
+	 * @param _iteTime runtime of the superstep _iteNum, seconds
+	 */
+	public void update(int _iteNum, Constants.STYLE _preStyle,
+			Constants.STYLE _curStyle, double _iteTime) {
+		iteNum = _iteNum;
+		preStyle = _preStyle;
+		curStyle = _curStyle;
+		iteTime = _iteTime;
+		
+		long producedMsgNum = jobMonitor.getProducedMsgNum(iteNum);
+		long diskMsgNum = producedMsgNum - recMsgBufNum;
+		diskMsgNum = diskMsgNum<0? 0:diskMsgNum;
+		diskMsgByte = diskMsgNum * byteOfOneMessage;
+		pushSeqByte = jobMonitor.getByteOfPush(iteNum) - diskMsgByte;
+		pullRandByte = jobMonitor.getByteOfVertInPull(iteNum);
+		pullSeqByte = jobMonitor.getByteOfPull(iteNum) - pullRandByte;
+		
+		/** 
+		 * Messages are combined at the sender side under both styles, 
+		 * while the ratio of the style not performed is the latest one.
+		 */
+		double observed = (double)jobMonitor.getReducedNetMsgNum(iteNum);
+		double pullReduced, pushReduced;
+		if (curStyle == Constants.STYLE.PUSH) {
+			pushReduced = observed;
+			pullReduced = producedMsgNum * lastCombineRatio;
+			if (producedMsgNum > 0) {
+				lastPushCombineRatio = observed / producedMsgNum;
+			}
+		} else {
+			pullReduced = observed;
+			pushReduced = producedMsgNum * lastPushCombineRatio;
+			if (producedMsgNum > 0) {
+				lastCombineRatio = observed / producedMsgNum;
+			}
+		}
+		double reducedNetMsgNum = Math.max(0.0, pullReduced-pushReduced);
+		reducedNetByte = (long) (isAccumulated?
+				reducedNetMsgNum*byteOfOneMessage : reducedNetMsgNum*4);
+		long netMsgNum = jobMonitor.getNetMsgNum(iteNum)
+			- (long)pullReduced;
+		netByte = Math.max(0L, netMsgNum) * byteOfOneMessage;
+	}
+
+	/**
+	 * The analytic runtime difference between PUSH and PULL (seconds),
+	 * computed by configured or measured throughputs.
+	 * @return push-pull
+	 */
+	public double getAnalyticQ() {
+		double diskMsgWriteCost = diskMsgByte / randWriteSpeed;
+		double diskReadCostDiff = (pushSeqByte-pullSeqByte) / seqReadSpeed
+			- pullRandByte / randReadSpeed;
+		double reducedNetCost = reducedNetByte / netSpeed;
+		return diskMsgWriteCost + diskReadCostDiff + reducedNetCost;
+	}
+	
+	public Constants.STYLE getBspStyle() {
+		return bspStyle;
+	}
+	
+	public int getIteNum() {
+		return iteNum;
+	}
+	
+	public Constants.STYLE getPreStyle() {
+		return preStyle;
+	}
+	
+	public Constants.STYLE getCurStyle() {
+		return curStyle;
+	}
+
+	/** Runtime of the completed superstep, seconds. */
+	public double getIteTime() {
+		return iteTime;
+	}
+	
+	public int getActVerNum(int _iteNum) {
+		return jobMonitor.getActVerNum(_iteNum);
+	}
+	
+	public long getDiskMsgByte() {
+		return diskMsgByte;
+	}
+	
+	public long getPushSeqByte() {
+		return pushSeqByte;
+	}
+	
+	public long getPullRandByte() {
+		return pullRandByte;
+	}
+	
+	public long getPullSeqByte() {
+		return pullSeqByte;
+	}
+	
+	public long getNetByte() {
+		return netByte;
+	}
+	
+	public long getReducedNetByte() {
+		return reducedNetByte;
+	}
+	
+	public float getRandWriteSpeed() {
+		return randWriteSpeed;
+	}
+	
+	public float getRandReadSpeed() {
+		return randReadSpeed;
+	}
+	
+	public float getSeqReadSpeed() {
+		return seqReadSpeed;
+	}
+	
+	public float getNetSpeed() {
+		return netSpeed;
+	}
+}
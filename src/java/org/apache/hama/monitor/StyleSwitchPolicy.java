@@ -0,0 +1,38 @@
+package org.apache.hama.monitor;
+
+import org.apache.hama.Constants;
+import org.apache.hama.bsp.BSPJob;
+import org.apache.hama.myhama.util.JobLog;
+
+/**
+ * StyleSwitchPolicy decides the style (PUSH or PULL) of the next superstep
+ * for {@link Constants}.STYLE.Hybrid, based on statistics of the completed
+ * superstep. It is invoked by {@link JobInProgress} at the end of every
+ * failure-free superstep, and specified by
+ * {@link BSPJob}.setStyleSwitchPolicyClass().
+ */
+public interface StyleSwitchPolicy {
+
+	/**
+	 * Initialize this policy before the first superstep.
+	 * @param job
+	 * @param log job log used to record decisions
+	 */
+	public void initialize(BSPJob job, JobLog log);
+
+	/**
+	 * Decide the style of the next superstep. The previous style of the
+	 * next superstep is always the style of the completed one, i.e.,
+	 * context.getCurStyle().
+	 * @param context statistics of the completed superstep
+	 * @return the style of the next superstep
+	 */
+	public Constants.STYLE decide(StyleSwitchContext context);
+
+	/**
+	 * The metric used by the last decision, i.e., the estimated runtime
+	 * difference between PUSH and PULL (push-pull) in seconds.
+	 * @return
+	 */
+	public double getMetricQ();
+}
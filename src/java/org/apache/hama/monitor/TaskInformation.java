@@ -20,6 +20,8 @@ public class TaskInformation implements Writable {
 	private long edgeNum = 0L;
 	private int blkLen = 0;
 	private int blkNum = 0;
+	/** min vertex id of each local VBlock, reported before init() */
+	private int[] blkMinIds;
 	private long loadByte = 0L;
 	
 	private JobInformation jobInfo;
@@ -49,6 +51,7 @@ public class TaskInformation implements Writable {
 		this.verNum = verMaxId - verMinId + 1;
 		this.blkNum = jobInfo.getBlkNumOfTasks(taskId);
 		this.blkLen = jobInfo.getBlkLenOfTasks(taskId);
+		this.blkMinIds = jobInfo.getBlkMinIdsOfTasks(taskId);
 		this.resDepend = new boolean[blkNum][jobInfo.getBlkNumOfJob()];
 		this.verNumBlks = new int[blkNum];
 		this.resVerNumBlks = new int[blkNum];
@@ -82,6 +85,20 @@ public class TaskInformation implements Writable {
 		return this.blkNum;
 	}
 	
+	/**
+	 * Set VBlock boundaries chosen by this task, e.g., balanced by edges. 
+	 * They are adopted by {@link JobInformation} if consistent with the 
+	 * vertex range of this task, and replaced by the final ones in init().
+	 * @param _blkMinIds
+	 */
+	public void setBlkMinIds(int[] _blkMinIds) {
+		this.blkMinIds = _blkMinIds;
+	}
+	
+	public int[] getBlkMinIds() {
+		return this.blkMinIds;
+	}
+	
 	public void setVerNum(int _verNum) {
 		this.verNum = _verNum;
 	}
@@ -227,6 +244,15 @@ public class TaskInformation implements Writable {
 			this.resVerNumBlks = null;
 		}
 		
+		num = in.readInt();
+		if (num != 0) {
+			this.blkMinIds = new int[num];
+			for (int i = 0; i < num; i++) {
+				this.blkMinIds[i] = in.readInt();
+			}
+		} else {
+			this.blkMinIds = null;
+		}
 	}
 
 	@Override
@@ -272,5 +298,14 @@ public class TaskInformation implements Writable {
 		} else {
 			out.writeInt(0);
 		}
+		
+		if (this.blkMinIds != null) {
+			out.writeInt(this.blkMinIds.length);
+			for (int i = 0; i < this.blkMinIds.length; i++) {
+				out.writeInt(this.blkMinIds[i]);
+			}
+		} else {
+			out.writeInt(0);
+		}
 	}
 }
@@ -58,6 +58,16 @@ public abstract class BSP<V, W, M, I> implements BSPInterface<V, W, M, I> {
 		//do nothing as default.
 	}
 	
+	@Override
+	public void getMessages(Context<V, W, M, I> context, MessageSink<M> sink) {
+		MsgRecord<M>[] msgs = getMessages(context);
+		if (msgs != null) {
+			for (MsgRecord<M> msg: msgs) {
+				sink.emit(msg);
+			}
+		}
+	}
+	
 	@Override
 	public int estimateNumberOfMessages(Context<V, W, M, I> context) {
 		return 0;
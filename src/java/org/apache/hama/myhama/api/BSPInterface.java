@@ -66,6 +66,17 @@ public interface BSPInterface<V, W, M, I> {
 	 */
 	public MsgRecord<M>[] getMessages(Context<V, W, M, I> context);
 	
+	/**
+	 * Generate messages like getMessages(Context), but emit them into 
+	 * the given {@link MessageSink} instead of returning a new array. 
+	 * This function is invoked when responding pulling requests, and 
+	 * avoids allocating message records for every responding vertex. 
+	 * By default, it delegates to getMessages(Context).
+	 * @param context
+	 * @param sink
+	 */
+	public void getMessages(Context<V, W, M, I> context, MessageSink<M> sink);
+	
 	/**
 	 * Estimate the number of messages generated by the given vertex. 
 	 * Generally, the estimation depends on the (out-)degree and specific 
@@ -0,0 +1,42 @@
+/**
+ * copyright 2011-2016
+ */
+package org.apache.hama.myhama.api;
+
+/**
+ * DoubleSumCombiner sums up double message values, e.g., PageRank.
+ */
+public class DoubleSumCombiner extends PrimitiveMsgCombiner<Double> {
+	/** a NaN payload never produced by arithmetic operations */
+	private static final long EMPTY = 0x7ff00000deadbeefL;
+	
+	public DoubleSumCombiner() {
+		super(EMPTY);
+	}
+	
+	/** Combine a primitive value without boxing. Lock-free. */
+	public void combine(int index, double value) {
+		combineEncoded(index, Double.doubleToRawLongBits(value));
+	}
+	
+	/** Get the primitive sum of the index-th slot. */
+	public double get(int index) {
+		return Double.longBitsToDouble(getEncoded(index));
+	}
+	
+	@Override
+	protected long encode(Double value) {
+		return Double.doubleToRawLongBits(value);
+	}
+	
+	@Override
+	protected Double decode(long bits) {
+		return Double.longBitsToDouble(bits);
+	}
+	
+	@Override
+	protected long combineBits(long cur, long bits) {
+		return Double.doubleToRawLongBits(
+				Double.longBitsToDouble(cur) + Double.longBitsToDouble(bits));
+	}
+}
@@ -3,6 +3,7 @@ package org.apache.hama.myhama.api;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -173,6 +174,17 @@ public abstract class GraphRecord<V, W, M, I> {
 	 */
 	public abstract int getVerByte();
 	
+	/**
+	 * Return the bytes of one serialized vertex value if all values 
+	 * always have the same length, or -1 otherwise (default). 
+	 * Values can be located by offsets only if it is declared, 
+	 * which is required by the sparse update path.
+	 * @return
+	 */
+	public int getFixedVerByte() {
+		return -1;
+	}
+	
 	/**
 	 * Return the bytes of statistic data. 
 	 * For instance, the summ of original outer edges.
@@ -185,7 +197,7 @@ public abstract class GraphRecord<V, W, M, I> {
 	// Variables and operations in Fragments (i.e., elements of an EBlock)
 	//======================================================================
 	protected int edgeNum = 0;
-	protected Integer[] edgeIds;
+	protected int[] edgeIds;
 	protected W[] edgeWeights;
     
 	public void setEdgeNum(int _num) {
@@ -196,15 +208,52 @@ public abstract class GraphRecord<V, W, M, I> {
 		return edgeNum;
 	}
 	    
-	public void setEdges(Integer[] _edgeIds, W[] _edgeWeights) {
+	public void setEdges(int[] _edgeIds, W[] _edgeWeights) {
 		edgeIds = _edgeIds;
 		edgeWeights = _edgeWeights;
 		edgeNum = _edgeIds==null? 0:_edgeIds.length;
 	}
+	
+	/**
+	 * Set edges by boxed ids. 
+	 * Only kept as a compatibility adapter for old user-defined codes, 
+	 * ids are copied into a primitive array.
+	 * @param _edgeIds
+	 * @param _edgeWeights
+	 */
+	@Deprecated
+	public void setBoxedEdges(Integer[] _edgeIds, W[] _edgeWeights) {
+		int[] ids = null;
+		if (_edgeIds != null) {
+			ids = new int[_edgeIds.length];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = _edgeIds[i];
+			}
+		}
+		setEdges(ids, _edgeWeights);
+	}
 	    
-	public final Integer[] getEdgeIds() {
+	public final int[] getEdgeIds() {
 		return this.edgeIds;
 	}
+	
+	/**
+	 * Get boxed edge ids. 
+	 * Only kept as a compatibility adapter for old user-defined codes, 
+	 * a new array is created per invocation.
+	 * @return
+	 */
+	@Deprecated
+	public final Integer[] getBoxedEdgeIds() {
+		if (this.edgeIds == null) {
+			return null;
+		}
+		Integer[] ids = new Integer[this.edgeNum];
+		for (int i = 0; i < this.edgeNum; i++) {
+			ids[i] = this.edgeIds[i];
+		}
+		return ids;
+	}
 	    
 	public final W[] getEdgeWeights() {
 		return edgeWeights;
@@ -299,6 +348,234 @@ public abstract class GraphRecord<V, W, M, I> {
      */
     public void deserEdges(ByteBuffer eIn) 
 			throws EOFException, IOException { };
+    
+    /**
+     * Serialize #edges and edge ids by one bulk copy. 
+     * A fast path which can be invoked by serEdges() for 
+     * non-weighted graphs. The layout is 4 + 4*#edges bytes.
+     * 
+     * @param eOut
+     */
+    protected final void serEdgeIds(ByteBuffer eOut) {
+    	eOut.putInt(this.edgeNum);
+    	if (this.edgeNum > 0) {
+    		IntBuffer ib = eOut.asIntBuffer();
+    		ib.put(this.edgeIds, 0, this.edgeNum);
+    		eOut.position(eOut.position() + 4*this.edgeNum);
+    	}
+    }
+    
+    /**
+     * Deserialize #edges and edge ids written by serEdgeIds() 
+     * by one bulk copy.
+     * 
+     * @param eIn
+     */
+    protected final void deserEdgeIds(ByteBuffer eIn) {
+    	this.edgeNum = eIn.getInt();
+    	this.edgeIds = new int[this.edgeNum];
+    	if (this.edgeNum > 0) {
+    		IntBuffer ib = eIn.asIntBuffer();
+    		ib.get(this.edgeIds, 0, this.edgeNum);
+    		eIn.position(eIn.position() + 4*this.edgeNum);
+    	}
+    }
+    
+    /**
+     * Serialize outer edges of one EBlock fragment in the compressed 
+     * layout, used if {@link BSPJob}.setCompressEBlock(true): 
+     * varint(#edges), then edge ids sorted in ascending order, 
+     * gap-encoded from _minId and varint-coded, and then weights 
+     * written by serEdgeWeights() in the same order. 
+     * Note that edges of this record are sorted.
+     * 
+     * @param eOut
+     * @param _minId the minimum vertex id of the destination VBlock
+     * @throws EOFException
+     * @throws IOException
+     */
+    public final void serEdgesCompressed(ByteBuffer eOut, int _minId) 
+    		throws EOFException, IOException {
+    	sortEdges();
+    	putVarInt(eOut, this.edgeNum);
+    	int pre = _minId;
+    	for (int i = 0; i < this.edgeNum; i++) {
+    		putVarInt(eOut, this.edgeIds[i]-pre);
+    		pre = this.edgeIds[i];
+    	}
+    	if (this.edgeWeights != null) {
+    		serEdgeWeights(eOut);
+    	}
+    }
+    
+    /**
+     * Return the bytes of outer edges written by serEdgesCompressed(), 
+     * computed without serializing them. Edges of this record are 
+     * sorted as serEdgesCompressed() does.
+     * 
+     * @param _minId the minimum vertex id of the destination VBlock
+     * @return
+     */
+    public final int getEdgeByteCompressed(int _minId) {
+    	sortEdges();
+    	int bytes = getVarIntByte(this.edgeNum);
+    	int pre = _minId;
+    	for (int i = 0; i < this.edgeNum; i++) {
+    		bytes += getVarIntByte(this.edgeIds[i]-pre);
+    		pre = this.edgeIds[i];
+    	}
+    	if (this.edgeWeights != null) {
+    		bytes += getEdgeWeightByte();
+    	}
+    	return bytes;
+    }
+    
+    /**
+     * Can outer edges be written by serEdgesCompressed()? 
+     * True if edges are not weighted, or serEdgeWeights() is 
+     * overrided by the user-defined {@link GraphRecord}.
+     * @return
+     */
+    public boolean isCompressEdgeSupported() {
+    	if (getWeightArray(1) == null) {
+    		return true;
+    	}
+    	for (Class<?> c = getClass(); c != GraphRecord.class; 
+    			c = c.getSuperclass()) {
+    		try {
+    			c.getDeclaredMethod("serEdgeWeights", ByteBuffer.class);
+    			return true;
+    		} catch (NoSuchMethodException e) {
+    			//not declared by this class, try its super class
+    		}
+    	}
+    	return false;
+    }
+    
+    /**
+     * Deserialize outer edges written by serEdgesCompressed(). 
+     * Ids are decoded into a primitive array directly.
+     * 
+     * @param eIn
+     * @param _minId the minimum vertex id of the destination VBlock
+     * @throws EOFException
+     * @throws IOException
+     */
+    public final void deserEdgesCompressed(ByteBuffer eIn, int _minId) 
+    		throws EOFException, IOException {
+    	this.edgeNum = getVarInt(eIn);
+    	this.edgeIds = new int[this.edgeNum];
+    	int pre = _minId;
+    	for (int i = 0; i < this.edgeNum; i++) {
+    		pre += getVarInt(eIn);
+    		this.edgeIds[i] = pre;
+    	}
+    	this.edgeWeights = getWeightArray(this.edgeNum);
+    	if (this.edgeWeights != null) {
+    		deserEdgeWeights(eIn);
+    	}
+    }
+    
+    /**
+     * Serialize edge weights of the compressed layout. 
+     * This must be overrided if edges are weighted and 
+     * {@link BSPJob}.setCompressEBlock(true).
+     * 
+     * @param eOut
+     * @throws EOFException
+     * @throws IOException
+     */
+    protected void serEdgeWeights(ByteBuffer eOut) 
+    		throws EOFException, IOException {
+    	throw new IOException(getClass().getName() 
+    			+ " has weighted edges but does not override serEdgeWeights()" 
+    			+ ", disable bsp.eblock.compress or implement it");
+    }
+    
+    /**
+     * Return the bytes written by serEdgeWeights(). 
+     * By default, weights take as many bytes as in serEdges(), 
+     * i.e., getEdgeByte() minus #edges and edge ids (4 bytes each). 
+     * This should be overrided if serEdgeWeights() writes weights 
+     * in another layout.
+     * @return
+     */
+    protected int getEdgeWeightByte() {
+    	return getEdgeByte() - 4 - 4*this.edgeNum;
+    }
+    
+    /**
+     * Deserialize edge weights of the compressed layout into 
+     * edgeWeights, which is allocated by getWeightArray(#edges).
+     * 
+     * @param eIn
+     * @throws EOFException
+     * @throws IOException
+     */
+    protected void deserEdgeWeights(ByteBuffer eIn) 
+    		throws EOFException, IOException {
+    	throw new IOException(getClass().getName() 
+    			+ " has weighted edges but does not override deserEdgeWeights()" 
+    			+ ", disable bsp.eblock.compress or implement it");
+    }
+    
+    /** 
+     * Sort edges by ids in place, weights are moved together. 
+     * The arrays are not replaced, because they may be shared with 
+     * an {@link EdgeFragmentEntry} or another record by initialize().
+     */
+    private void sortEdges() {
+    	boolean sorted = true;
+    	for (int i = 1; i < this.edgeNum && sorted; i++) {
+    		sorted = this.edgeIds[i-1] <= this.edgeIds[i];
+    	}
+    	if (sorted) {
+    		return;
+    	}
+    	if (this.edgeWeights == null) {
+    		Arrays.sort(this.edgeIds, 0, this.edgeNum);
+    		return;
+    	}
+    	
+    	long[] keys = new long[this.edgeNum]; //(id, index)
+    	for (int i = 0; i < this.edgeNum; i++) {
+    		keys[i] = (((long)this.edgeIds[i]) << 32) | i;
+    	}
+    	Arrays.sort(keys);
+    	W[] weights = Arrays.copyOf(this.edgeWeights, this.edgeNum);
+    	for (int i = 0; i < this.edgeNum; i++) {
+    		this.edgeIds[i] = (int)(keys[i] >> 32);
+    		this.edgeWeights[i] = weights[(int)keys[i]];
+    	}
+    }
+    
+    private static void putVarInt(ByteBuffer out, int value) {
+    	while ((value & ~0x7F) != 0) {
+    		out.put((byte)((value & 0x7F) | 0x80));
+    		value >>>= 7;
+    	}
+    	out.put((byte)value);
+    }
+    
+    private static int getVarIntByte(int value) {
+    	int bytes = 1;
+    	while ((value & ~0x7F) != 0) {
+    		bytes++;
+    		value >>>= 7;
+    	}
+    	return bytes;
+    }
+    
+    private static int getVarInt(ByteBuffer in) {
+    	int value = 0;
+    	for (int shift = 0; ; shift += 7) {
+    		byte b = in.get();
+    		value |= (b & 0x7F) << shift;
+    		if (b >= 0) {
+    			return value;
+    		}
+    	}
+    }
 		
 			
    //==========================================================
@@ -358,61 +635,55 @@ public abstract class GraphRecord<V, W, M, I> {
 		int dstTid, dstBid, taskNum = commRT.getTaskNum();
 		int[] blkNumOfTask = commRT.getJobInformation().getBlkNumOfTasks();
 		boolean hasWeight = this.edgeWeights==null? false:true;
-		ArrayList<Integer>[][] idOfFragments = new ArrayList[taskNum][];
-		ArrayList<W>[][] weightOfFragments = null;
+		
+		//counting: #edges per fragment, and the fragment of each edge
+		int[][] counts = new int[taskNum][];
 		for (dstTid = 0; dstTid < taskNum; dstTid++) {
-			idOfFragments[dstTid] = new ArrayList[blkNumOfTask[dstTid]];
+			counts[dstTid] = new int[blkNumOfTask[dstTid]];
 		}
-		if (hasWeight) {
-			weightOfFragments = new ArrayList[taskNum][];
-			for (dstTid = 0; dstTid < taskNum; dstTid++) {
-				weightOfFragments[dstTid] = new ArrayList[blkNumOfTask[dstTid]];
-			}
-		}
-		
-		//decomposing
+		int[] tids = new int[this.edgeNum];
+		int[] bids = new int[this.edgeNum];
+		commRT.route(this.edgeIds, this.edgeNum, tids, bids);
 		for (int index = 0; index < this.edgeNum; index++) {
-			dstTid = commRT.getDstTaskId(this.edgeIds[index]);
-			dstBid = commRT.getDstLocalBlkIdx(dstTid, this.edgeIds[index]);
-			if (idOfFragments[dstTid][dstBid] == null) {
-				idOfFragments[dstTid][dstBid] = new ArrayList<Integer>(); 
-				if (hasWeight) {
-					weightOfFragments[dstTid][dstBid] = new ArrayList<W>();
-				}
-			}
-			idOfFragments[dstTid][dstBid].add(this.edgeIds[index]);
-			if (hasWeight) {
-				weightOfFragments[dstTid][dstBid].add(this.edgeWeights[index]);
-			}
+			counts[tids[index]][bids[index]]++;
 		}
 		
 		//constructing fragments
 		ArrayList<EdgeFragmentEntry<V,W,M,I>> result = 
 			new ArrayList<EdgeFragmentEntry<V,W,M,I>>();
+		EdgeFragmentEntry<V,W,M,I>[][] frags = 
+			(EdgeFragmentEntry<V,W,M,I>[][]) new EdgeFragmentEntry<?,?,?,?>[taskNum][];
 		for (dstTid = 0; dstTid < taskNum; dstTid++) {
+			frags[dstTid] = (EdgeFragmentEntry<V,W,M,I>[]) 
+				new EdgeFragmentEntry<?,?,?,?>[blkNumOfTask[dstTid]];
 			for (dstBid = 0; dstBid < blkNumOfTask[dstTid]; dstBid++) {
-				if (idOfFragments[dstTid][dstBid] != null) {
+				int num = counts[dstTid][dstBid];
+				if (num > 0) {
 					EdgeFragmentEntry<V,W,M,I> frag = 
 						new EdgeFragmentEntry<V,W,M,I>(
 								this.verId, this.srcBid, dstTid, dstBid);
-					
-					Integer[] tmpEdgeIds = 
-						new Integer[idOfFragments[dstTid][dstBid].size()];
-					idOfFragments[dstTid][dstBid].toArray(tmpEdgeIds);
-					W[] tmpEdgeWeights = null;
-					if (hasWeight) {
-						tmpEdgeWeights = 
-							getWeightArray(idOfFragments[dstTid][dstBid].size());
-						weightOfFragments[dstTid][dstBid].toArray(tmpEdgeWeights);
-					}
-					
+					frag.initialize(new int[num], 
+							hasWeight? getWeightArray(num):null);
 					taskInfo.updateRespondDependency(
-							dstTid, dstBid, this.verId, tmpEdgeIds.length);
-					frag.initialize(tmpEdgeIds, tmpEdgeWeights);
+							dstTid, dstBid, this.verId, num);
+					frags[dstTid][dstBid] = frag;
 					result.add(frag);
+					counts[dstTid][dstBid] = 0; //reused as the write cursor
 				}
 			}
 		}
+		
+		//filling edges in the original order
+		for (int index = 0; index < this.edgeNum; index++) {
+			dstTid = tids[index];
+			dstBid = bids[index];
+			int cursor = counts[dstTid][dstBid]++;
+			frags[dstTid][dstBid].getEdgeIds()[cursor] = this.edgeIds[index];
+			if (hasWeight) {
+				frags[dstTid][dstBid].getEdgeWeights()[cursor] = 
+					this.edgeWeights[index];
+			}
+		}
 
 		return result;
     }
@@ -432,8 +703,9 @@ public abstract class GraphRecord<V, W, M, I> {
 		}
 		int dstTid = -1, dstBid = -1, counter = 0;
 		for (int index = 0; index < this.edgeNum; index++) {
-			dstTid = commRT.getDstTaskId(this.edgeIds[index]);
-			dstBid = commRT.getDstLocalBlkIdx(dstTid, this.edgeIds[index]);
+			int g = commRT.getDstBlk(this.edgeIds[index]);
+			dstTid = commRT.getRouteTaskId(g);
+			dstBid = commRT.getRouteBlkIdx(g);
 			if (!hitFlag[dstTid][dstBid]) {
 				hitFlag[dstTid][dstBid] = true;
 				counter++;
@@ -0,0 +1,42 @@
+/**
+ * copyright 2011-2016
+ */
+package org.apache.hama.myhama.api;
+
+/**
+ * IntMinCombiner keeps the minimum int message value, 
+ * e.g., Connected Components.
+ */
+public class IntMinCombiner extends PrimitiveMsgCombiner<Integer> {
+	/** out of the int range */
+	private static final long EMPTY = Long.MAX_VALUE;
+	
+	public IntMinCombiner() {
+		super(EMPTY);
+	}
+	
+	/** Combine a primitive value without boxing. Lock-free. */
+	public void combine(int index, int value) {
+		combineEncoded(index, value);
+	}
+	
+	/** Get the primitive minimum of the index-th slot. */
+	public int get(int index) {
+		return (int)getEncoded(index);
+	}
+	
+	@Override
+	protected long encode(Integer value) {
+		return value.longValue();
+	}
+	
+	@Override
+	protected Integer decode(long bits) {
+		return (int)bits;
+	}
+	
+	@Override
+	protected long combineBits(long cur, long bits) {
+		return cur>bits? bits:cur;
+	}
+}
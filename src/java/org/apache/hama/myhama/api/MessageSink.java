@@ -0,0 +1,33 @@
+/**
+ * copyright 2011-2016
+ */
+package org.apache.hama.myhama.api;
+
+/**
+ * MessageSink receives messages generated by
+ * {@link BSPInterface}.getMessages(Context, MessageSink).
+ * Messages emitted into a sink are combined into reusable
+ * per-destination slots by the core engine, so that users
+ * do not need to allocate a new {@link MsgRecord} for each message.
+ *
+ * @param <M> message value
+ */
+public interface MessageSink<M> {
+
+	/**
+	 * Emit one message. The sink does not keep a reference
+	 * to the arguments except msgValue.
+	 * @param srcId
+	 * @param dstId
+	 * @param msgValue
+	 */
+	public void emit(int srcId, int dstId, M msgValue);
+
+	/**
+	 * Emit one message wrapped in a {@link MsgRecord}.
+	 * The record itself can be reused by the caller
+	 * right after this function returns.
+	 * @param msg
+	 */
+	public void emit(MsgRecord<M> msg);
+}
@@ -0,0 +1,84 @@
+/**
+ * copyright 2011-2016
+ */
+package org.apache.hama.myhama.api;
+
+/**
+ * MsgCombiner keeps combined message values for a range of 
+ * local destination vertices, one slot per vertex. It is an 
+ * optional replacement of the {@link MsgRecord} array used 
+ * to receive accumulated messages, see {@link UserTool}.getCombiner(). 
+ * Slots are accessed by multiple threads at the same time, so 
+ * combine() must be thread-safe without locking the whole combiner.
+ * 
+ * @param <M> message value
+ */
+public abstract class MsgCombiner<M> {
+	protected int capacity = 0;
+	
+	/**
+	 * Allocate slots.
+	 * @param _capacity the number of destination vertices
+	 */
+	public void initialize(int _capacity) {
+		this.capacity = _capacity;
+	}
+	
+	public int getCapacity() {
+		return this.capacity;
+	}
+	
+	/**
+	 * Combine a message value into the index-th slot. Thread-safe.
+	 * @param index
+	 * @param value
+	 */
+	public abstract void combine(int index, M value);
+	
+	/**
+	 * Combine the index-th slot of "src" into the index-th slot 
+	 * of this combiner, then reset the slot of "src". 
+	 * By default, the value is boxed once.
+	 * @param src
+	 * @param index
+	 */
+	public void combineFrom(MsgCombiner<M> src, int index) {
+		if (src.hasValue(index)) {
+			combine(index, src.getValue(index));
+			src.reset(index);
+		}
+	}
+	
+	/**
+	 * Does the index-th slot receive any message?
+	 * @param index
+	 * @return
+	 */
+	public abstract boolean hasValue(int index);
+	
+	/**
+	 * Get the combined value of the index-th slot.
+	 * @param index
+	 * @return null if no message is received.
+	 */
+	public abstract M getValue(int index);
+	
+	/**
+	 * Empty the index-th slot.
+	 * @param index
+	 */
+	public abstract void reset(int index);
+	
+	/** Empty all slots. Single-thread. */
+	public void clear() {
+		for (int i = 0; i < this.capacity; i++) {
+			reset(i);
+		}
+	}
+	
+	/**
+	 * Memory usage of all slots in bytes.
+	 * @return
+	 */
+	public abstract long getMemUsage();
+}
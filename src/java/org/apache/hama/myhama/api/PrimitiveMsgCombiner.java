@@ -0,0 +1,110 @@
+/**
+ * copyright 2011-2016
+ */
+package org.apache.hama.myhama.api;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * PrimitiveMsgCombiner keeps message values encoded as long bits 
+ * in an {@link AtomicLongArray}, instead of one {@link MsgRecord} 
+ * per vertex. Values are combined by compare-and-swap, thus no 
+ * monitor is acquired per message. An empty slot is marked by 
+ * a sentinel which never appears as an encoded value.
+ * 
+ * @param <M> message value
+ */
+public abstract class PrimitiveMsgCombiner<M> extends MsgCombiner<M> {
+	private AtomicLongArray values;
+	private final long empty;
+	
+	protected PrimitiveMsgCombiner(long _empty) {
+		this.empty = _empty;
+	}
+	
+	@Override
+	public void initialize(int _capacity) {
+		super.initialize(_capacity);
+		long[] init = new long[_capacity];
+		Arrays.fill(init, this.empty);
+		this.values = new AtomicLongArray(init);
+	}
+	
+	/** Encode a message value as long bits. */
+	protected abstract long encode(M value);
+	
+	/** Decode long bits as a message value. */
+	protected abstract M decode(long bits);
+	
+	/** Combine two encoded values. */
+	protected abstract long combineBits(long cur, long bits);
+	
+	/**
+	 * Encode a message value as long bits, 
+	 * e.g., to spill received messages compactly.
+	 * @param value
+	 * @return
+	 */
+	public final long toBits(M value) {
+		return encode(value);
+	}
+	
+	/**
+	 * Combine an encoded value into the index-th slot. Lock-free.
+	 * @param index
+	 * @param bits
+	 */
+	public final void combineEncoded(int index, long bits) {
+		long cur, next;
+		do {
+			cur = this.values.get(index);
+			next = (cur==this.empty)? bits:combineBits(cur, bits);
+		} while (!this.values.compareAndSet(index, cur, next));
+	}
+	
+	@Override
+	public void combine(int index, M value) {
+		combineEncoded(index, encode(value));
+	}
+	
+	@Override
+	public void combineFrom(MsgCombiner<M> src, int index) {
+		if (src instanceof PrimitiveMsgCombiner) {
+			PrimitiveMsgCombiner<M> p = (PrimitiveMsgCombiner<M>) src;
+			long bits = p.values.get(index);
+			if (bits != p.empty) {
+				combineEncoded(index, bits);
+				p.values.set(index, p.empty);
+			}
+		} else {
+			super.combineFrom(src, index);
+		}
+	}
+	
+	@Override
+	public boolean hasValue(int index) {
+		return this.values.get(index) != this.empty;
+	}
+	
+	/** Get the encoded value of the index-th slot. */
+	protected final long getEncoded(int index) {
+		return this.values.get(index);
+	}
+	
+	@Override
+	public M getValue(int index) {
+		long bits = this.values.get(index);
+		return bits==this.empty? null:decode(bits);
+	}
+	
+	@Override
+	public void reset(int index) {
+		this.values.set(index, this.empty);
+	}
+	
+	@Override
+	public long getMemUsage() {
+		return 8L * this.capacity;
+	}
+}
@@ -33,4 +33,17 @@ public abstract class UserTool<V, W, M, I> {
 	public boolean isAccumulated() {
 		return false;
 	}
+	
+	/**
+	 * Get a new {@link MsgCombiner} to receive accumulated messages 
+	 * in primitive arrays, instead of one {@link MsgRecord} per vertex. 
+	 * It makes sense only if isAccumulated() returns true, and its 
+	 * combining logic must be identical with {@link MsgRecord}.combiner(). 
+	 * For example, {@link DoubleSumCombiner} for PageRank.
+	 * 
+	 * @return null as default, i.e., use {@link MsgRecord}s.
+	 */
+	public MsgCombiner<M> getCombiner() {
+		return null;
+	}
 }
@@ -0,0 +1,59 @@
+package org.apache.hama.myhama.comm;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * ByteBufferPool keeps direct {@link ByteBuffer}s released by
+ * {@link MsgTransport}, so that they are reused across message packs
+ * instead of being allocated (and freed by GC) per pack.
+ * Thread-safe.
+ */
+public class ByteBufferPool {
+	private ConcurrentLinkedQueue<ByteBuffer> free =
+		new ConcurrentLinkedQueue<ByteBuffer>();
+	private int minCapacity;
+	private int maxNum;
+
+	/**
+	 * @param _minCapacity the minimum capacity of one buffer
+	 * @param _maxNum the maximum number of buffers kept in the pool
+	 */
+	public ByteBufferPool(int _minCapacity, int _maxNum) {
+		this.minCapacity = _minCapacity;
+		this.maxNum = _maxNum;
+	}
+
+	/**
+	 * Get a cleared buffer whose capacity >= _capacity.
+	 * Smaller buffers in the pool are dropped.
+	 * @param _capacity
+	 * @return
+	 */
+	public ByteBuffer acquire(int _capacity) {
+		ByteBuffer buf = null;
+		while ((buf=this.free.poll()) != null) {
+			if (buf.capacity() >= _capacity) {
+				buf.clear();
+				return buf;
+			}
+		}
+		
+		int capacity = this.minCapacity;
+		while (capacity>0 && capacity<_capacity) {
+			capacity <<= 1;
+		}
+		capacity = capacity<_capacity? _capacity:capacity;
+		return ByteBuffer.allocateDirect(capacity);
+	}
+
+	/**
+	 * Return a buffer into the pool.
+	 * @param buf
+	 */
+	public void release(ByteBuffer buf) {
+		if (buf != null && buf.isDirect() && this.free.size() < this.maxNum) {
+			this.free.offer(buf);
+		}
+	}
+}
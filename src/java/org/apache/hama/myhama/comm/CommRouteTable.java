@@ -13,6 +13,8 @@ import org.apache.hama.monitor.JobInformation;
 
 public class CommRouteTable<V, W, M, I> {
 	private static final Log LOG = LogFactory.getLog(CommRouteTable.class);
+	/** the maximum #slots of routeDir per VBlock */
+	private static final int ROUTE_DIR_FACTOR = 4;
 	private JobInformation jobInfo;
 	private BSPJob job;
 	private int parId;
@@ -20,7 +22,17 @@ public class CommRouteTable<V, W, M, I> {
 	private int bucNum;
 	private InetSocketAddress[] inetAddresses;
 	private int[] parIds, mins, maxs, lens;
-	private int maxLen;
+	
+	/** 
+	 * Immutable routing index over all VBlocks of the job, sorted by 
+	 * their minimum vertex ids. A VBlock is identified by its route 
+	 * index "g" in [0, #VBlocks). routeDir[s] is the first VBlock 
+	 * overlapping vertex ids [routeMinId+s*routeStride, +routeStride).
+	 */
+	private int[] blkMins; //blkMins[#VBlocks] is a sentinel
+	private int[] blkTids, blkBids;
+	private int[] routeDir;
+	private int routeMinId, routeStride;
 	private Map<InetSocketAddress, CommunicationServerProtocol<V, W, M, I>> 
 			comms = new HashMap<InetSocketAddress, 
 					CommunicationServerProtocol<V, W, M, I>>();
@@ -33,7 +45,7 @@ public class CommRouteTable<V, W, M, I> {
 		taskNum = job.getNumBspTask();
 		inetAddresses = new InetSocketAddress[taskNum];
 		parIds = new int[taskNum]; lens = new int[taskNum];
-		mins = new int[taskNum+1]; maxs = new int[taskNum];
+		mins = new int[taskNum]; maxs = new int[taskNum];
 	}
 	
 	public void initialilze(JobInformation _jobInfo) {
@@ -57,7 +69,7 @@ public class CommRouteTable<V, W, M, I> {
 		}
 		
 		resortRouteTable();
-		maxLen = findMaxLength();
+		buildRouteIndex();
 		
 		this.ckpJobDir = jobInfo.getCheckPointDirForJob();
 	}
@@ -90,36 +102,65 @@ public class CommRouteTable<V, W, M, I> {
 	/**
 	 * Get the destination task which vId belongs to.
 	 * If not found, the last task is returned as the default one.
+	 * Thread-safe.
 	 * @param vId
 	 * @return
 	 */
 	public int getDstTaskId(int vId) {
-		int counter = (vId - mins[0]) / maxLen;
-		try {
-			if(counter >= taskNum) {
-				return parIds[taskNum-1];
-			}
-			
-			mins[taskNum] = vId;
-			for (; vId > mins[counter]; counter++);
-			if (vId == mins[counter] && counter < taskNum) {
-				return parIds[counter];
-			} else {
-				return parIds[counter-1];
-			}
-		} catch (Exception e) {
-			LOG.error("getDstParId: vId=" + vId + " counter=" + counter, e);
+		int g = getDstBlk(vId);
+		if (g < 0) {
+			LOG.error("getDstParId: vId=" + vId + " is out of range");
 			return -1;
 		}
-		
-		/*int counter = 0;
-		int length = this.rangeMins.length - 1;
-		for (counter = 1; counter < length; counter++) {
-			if (vertexId < this.rangeMins[counter]) {
-				break;
-			}
+		return this.blkTids[g];
+	}
+	
+	/**
+	 * Get the route index of the VBlock which vId belongs to, 
+	 * from which both the task id and the local VBlock id are 
+	 * obtained by getRouteTaskId() and getRouteBlkIdx(). 
+	 * Ids after the last VBlock belong to the last one. Thread-safe.
+	 * @param vId
+	 * @return -1 if vId is less than the minimum vertex id
+	 */
+	public int getDstBlk(int vId) {
+		if (vId < this.routeMinId) {
+			return -1;
+		}
+		long slot = ((long)vId-this.routeMinId) / this.routeStride;
+		if (slot >= this.routeDir.length) {
+			return this.blkTids.length - 1;
+		}
+		int g = this.routeDir[(int)slot];
+		while (vId >= this.blkMins[g+1]) {
+			g++;
+		}
+		return g;
+	}
+	
+	public int getRouteTaskId(int g) {
+		return this.blkTids[g];
+	}
+	
+	public int getRouteBlkIdx(int g) {
+		return this.blkBids[g];
+	}
+	
+	/**
+	 * Route the first "num" vertices in vIds, i.e., fill the 
+	 * destination task ids and local VBlock ids into tids and bids.
+	 * Thread-safe.
+	 * @param vIds
+	 * @param num
+	 * @param tids
+	 * @param bids
+	 */
+	public void route(int[] vIds, int num, int[] tids, int[] bids) {
+		for (int i = 0; i < num; i++) {
+			int g = getDstBlk(vIds[i]);
+			tids[i] = g<0? -1:this.blkTids[g];
+			bids[i] = g<0? -1:this.blkBids[g];
 		}
-		return this.rangeParIds[counter - 1];*/
 	}
 	
 	/**
@@ -172,19 +213,60 @@ public class CommRouteTable<V, W, M, I> {
 	}
 	
 	/**
-	 * Find the max length among all partitions.
-	 * 
-	 * @return maxLength int
+	 * Build the routing index after resortRouteTable(). 
+	 * The stride of routeDir is the minimum VBlock length, except the 
+	 * last VBlock of each task, so that one slot overlaps a few VBlocks. 
+	 * It is bounded below so that routeDir has at most ROUTE_DIR_FACTOR 
+	 * slots per VBlock.
 	 */
-	private int findMaxLength() {
-		int result = 0;
+	private void buildRouteIndex() {
+		int total = 0;
 		for (int i = 0; i < taskNum; i++) {
-			if (result < lens[i]) {
-				result = lens[i];
+			total += jobInfo.getBlkNumOfTasks(parIds[i]);
+		}
+		blkMins = new int[total+1];
+		blkTids = new int[total];
+		blkBids = new int[total];
+		
+		int g = 0, stride = Integer.MAX_VALUE;
+		for (int i = 0; i < taskNum; i++) {
+			int blkNum = jobInfo.getBlkNumOfTasks(parIds[i]);
+			for (int b = 0; b < blkNum; b++, g++) {
+				blkMins[g] = jobInfo.getBlkMinId(parIds[i], b);
+				blkTids[g] = parIds[i];
+				blkBids[g] = b;
+				if (g > 0 && blkMins[g] > blkMins[g-1] 
+						&& blkTids[g-1] == blkTids[g]) {
+					stride = Math.min(stride, blkMins[g]-blkMins[g-1]);
+				}
+			}
+		}
+		if (stride == Integer.MAX_VALUE) {
+			//one VBlock per task, the last task may be shorter
+			for (int i = 0; i < taskNum-1; i++) {
+				if (lens[i] > 0) {
+					stride = Math.min(stride, lens[i]);
+				}
 			}
 		}
+		blkMins[total] = Integer.MAX_VALUE;
+		routeMinId = blkMins[0];
+		int maxId = maxs[taskNum-1];
+		routeStride = stride==Integer.MAX_VALUE? 
+				Math.max(1, maxId-routeMinId+1):stride;
+		//tiny VBlocks, e.g., balanced by edges, should not blow up routeDir
+		routeStride = Math.max(routeStride, 
+				(int)(((long)maxId-routeMinId+1)/(ROUTE_DIR_FACTOR*total)));
 		
-		return result;
+		routeDir = new int[(int)(((long)maxId-routeMinId)/routeStride) + 1];
+		g = 0;
+		for (int slot = 0; slot < routeDir.length; slot++) {
+			long lo = routeMinId + (long)slot*routeStride;
+			while (blkMins[g+1] <= lo) {
+				g++;
+			}
+			routeDir[slot] = g;
+		}
 	}
 	
 	/**
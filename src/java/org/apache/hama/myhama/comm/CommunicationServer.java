@@ -9,16 +9,19 @@ import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.RPC.Server;
 
@@ -28,6 +31,7 @@ import org.apache.hama.bsp.BSPJob;
 import org.apache.hama.bsp.TaskAttemptID;
 import org.apache.hama.ipc.CommunicationServerProtocol;
 import org.apache.hama.monitor.JobInformation;
+import org.apache.hama.myhama.api.MessageSink;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.graph.GraphDataServer;
 import org.apache.hama.myhama.graph.MsgDataServer;
@@ -53,6 +57,8 @@ public class CommunicationServer<V, W, M, I>
 	private int serverPort;
 	private Server server;
 	private CommRouteTable<V, W, M, I> commRT;
+	/** transfer {@link MsgPack}s over NIO channels, null if RPC is used */
+	private MsgTransport<V, W, M, I> transport;
 	
 	private volatile Integer mutex = 0;
 	private boolean hasNotify = false;
@@ -60,19 +66,37 @@ public class CommunicationServer<V, W, M, I>
 	private MiniSuperStepCommand mssc;
 	
 	private ExecutorService msgHandlePool;
-	private HashMap<Integer, Future<Boolean>> pushMsgResult;
-	private ArrayList<Future<Boolean>> pullMsgResult;
+	/** packs in flight per dstTask, the oldest first */
+	private HashMap<Integer, LinkedList<Future<Boolean>>> pushMsgResult;
+	private int pushWindow;
+	private long pushBudget;
+	/** bytes of packs in flight to all remote tasks, guarded by itself */
+	private long[] pushInFlightByte = new long[1];
+	private int[] pushInFlightMax; //[DstPartitionId]: #packs in flight
+	private long[] pushStallTime;  //[DstPartitionId]: milliseconds
+	private PushMsgSink pushSink = new PushMsgSink();
+	/** futures of pulling messages per local VBlock */
+	private HashMap<Integer, ArrayList<Future<Boolean>>> pullMsgResult;
+	/** the last future per source task, pulls from one task are serialized */
+	private HashMap<Integer, Future<Boolean>> pullLastResult;
 	private ArrayList<Integer>[] pullRoute; //pull messages from these tasks.
-	private AtomicInteger counter;
-	private Integer pullNum = 0;
+	private int pullNext = 0; //the next local VBlock to be pulled
+	private long[] pullStartTime, pullEndTime; //[local VBlock id]
+	/** pulling runtime, and the part overlapped with computations */
+	private long pull_latency = 0L, pull_hidden = 0L;
 	private int localBucNum;
+	/** max #packs merged into one response when pulling from remote tasks */
+	private int pullBatch;
+	/** max bytes of messages in one response when pulling from remote tasks */
+	private int pullBatchByte;
 	
 	private long io_byte = 0L, io_byte_vert, io_byte_log;
 	private long read_edge = 0L, read_fragment = 0L;
 	/** 
 	 * 1. msg_net: original network messages.
 	 * 2. msg_net_actual: actual network messages after being combined/concatenated. 
-	 *                    for push, .= msg_net, for pull, .<= msg_net.
+	 *                    .<= msg_net, for push, messages are combined at the 
+	 *                    sender side if they are accumulated.
 	 * 3. msg_disk: messages resident on disk (push).
 	 * 4. msg_rec: received messages. for push, .= msg_pro, for pull, .<= msg_pro.
 	 * */
@@ -88,6 +112,7 @@ public class CommunicationServer<V, W, M, I>
 		private int srcParId;
 		private InetSocketAddress srcAddr, dstAddr;
 		private MsgPack<V, W, M, I> msgPack;
+		private long byteSize;
 		
 		public PushMsgDataThread(int _srcParId, int _dstParId, 
 				MsgPack<V, W, M, I> _msgPack, InetSocketAddress _srcAddr, 
@@ -96,32 +121,46 @@ public class CommunicationServer<V, W, M, I>
 			this.srcAddr = _srcAddr; 
 			this.dstAddr = _dstAddr;
 			this.msgPack = _msgPack;
+			this.byteSize = _msgPack.getByteSize();
 		}
 		
 		public Boolean call() {
 			boolean done = false;
-			long _msg_rec = 0L, _msg_net = 0L, _msg_disk = 0L;
+			long _msg_rec = 0L, _msg_net = 0L, _msg_net_actual = 0L, _msg_disk = 0L;
 			try {
 				_msg_rec = this.msgPack.getMsgRecNum();
 				if (this.srcAddr.equals(this.dstAddr)) {
 					_msg_disk = 
 						recMsgData(this.srcParId, this.msgPack);
 				} else {
-					_msg_net = _msg_rec;
-					CommunicationServerProtocol<V, W, M, I> comm = 
-						commRT.getCommServer(this.dstAddr);
-					_msg_disk = 
-						comm.recMsgData(this.srcParId, this.msgPack);
+					//messages may have been combined before being sent
+					_msg_net = this.msgPack.getMsgProNum();
+					_msg_net_actual = _msg_rec;
+					if (transport != null) {
+						_msg_disk = 
+							transport.push(this.dstAddr, this.srcParId, this.msgPack);
+					} else {
+						CommunicationServerProtocol<V, W, M, I> comm = 
+							commRT.getCommServer(this.dstAddr);
+						_msg_disk = 
+							comm.recMsgData(this.srcParId, this.msgPack);
+					}
 				}
 				updateCounters(msgPack.getIOByte(), 0L, msgPack.getIOByteOfLoggedMsg(), 
-						0L, 0L, 0L, 0L, _msg_net, _msg_net, _msg_disk);
+						0L, 0L, 0L, 0L, _msg_net, _msg_net_actual, _msg_disk);
 				done = true;
 			} catch (UndeclaredThrowableException un) {
 				LOG.warn("communication exception is caught but ignored", un);
 				done = true;
 				connectionError = true;
+			} catch (IOException io) {
+				LOG.warn("communication exception is caught but ignored", io);
+				done = true;
+				connectionError = true;
 			} catch (Exception e) {
 				LOG.error("fatal unknown error", e);
+			} finally {
+				releasePushBudget(this.byteSize);
 			}
 			
 			this.msgPack = null;
@@ -130,22 +169,48 @@ public class CommunicationServer<V, W, M, I>
 		}
 	}
 	
+	/** Completed by {@link PullMsgDataThread} when one VBlock is pulled. */
+	private static class PullResult extends FutureTask<Boolean> {
+		private static final Callable<Boolean> NONE = new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return false;
+			}
+		};
+		
+		public PullResult() {
+			super(NONE);
+		}
+		
+		public void finish(boolean done) {
+			set(done);
+		}
+	}
+	
+	/** Pull messages to a list of local VBlocks from one source task. */
 	private class PullMsgDataThread implements Callable<Boolean> {
 		private int toTaskId;
-		private int toBlkId;
+		private int[] toBlkIds;
+		private PullResult[] results;
 		private int iteNum;
 		private InetSocketAddress fromAddr, toAddr;
-		private boolean isOver;
+		/** index of the VBlock being pulled in toBlkIds */
+		private int cursor;
+		/** pulling from the same source task for previous VBlocks */
+		private Future<Boolean> previous;
 		
-		@SuppressWarnings("unchecked")
-		public PullMsgDataThread(int _toTaskId, int _toBlkId, int _iteNum, 
-				InetSocketAddress _toAddr, InetSocketAddress _fromAddr) {
+		public PullMsgDataThread(int _toTaskId, int[] _toBlkIds, 
+				PullResult[] _results, int _iteNum, 
+				InetSocketAddress _toAddr, InetSocketAddress _fromAddr, 
+				Future<Boolean> _previous) {
 			toTaskId = _toTaskId;
-			toBlkId = _toBlkId;
+			toBlkIds = _toBlkIds;
+			results = _results;
 			iteNum = _iteNum;
 			toAddr = _toAddr;
 			fromAddr = _fromAddr;
-			isOver = false;
+			cursor = 0;
+			previous = _previous;
 		}
 		
 		@Override
@@ -153,57 +218,152 @@ public class CommunicationServer<V, W, M, I>
 			boolean done = false;
 			
 			try {
-				while (!isOver) {
-					long _msg_rec = 0L, _msg_net = 0L, _msg_net_actual = 0L;
-					MsgPack<V, W, M, I> recMsgPack = null;
-					if (toAddr.equals(fromAddr)) {
-						recMsgPack = 
-							obtainMsgData(toTaskId, toBlkId, iteNum);
-					} else {
-						CommunicationServerProtocol<V, W, M, I> comm = 
-							commRT.getCommServer(fromAddr);
-						recMsgPack = 
-							comm.obtainMsgData(toTaskId, toBlkId, iteNum);
-						_msg_net = recMsgPack.getMsgProNum();
-						_msg_net_actual = recMsgPack.getMsgRecNum();
+				/** 
+				 * the source task keeps the state of responding per requesting 
+				 * task, so VBlocks are pulled from it one by one. Errors of the 
+				 * previous pulling are reported by its own future.
+				 */
+				if (previous != null) {
+					try {
+						previous.get();
+					} catch (Exception e) {
+						//ignore
 					}
-					
-					_msg_rec = recMsgPack.getMsgRecNum();
-					updateCounters(recMsgPack.getIOByte(), 
-							recMsgPack.getIOByteOfVertInPull(), 
-							recMsgPack.getIOByteOfLoggedMsg(), 
-							recMsgPack.getReadEdgeNum(), 
-							recMsgPack.getReadFragNum(),
-							recMsgPack.getMsgProNum(), _msg_rec, 
-							_msg_net, _msg_net_actual, 0L);
-					/** 
-					 * Use .size() instead of getMsgRecNum(), 
-					 * the latter of subsequent @{link MsgPack}s is zero.
-					 **/
-					if (recMsgPack.size() > 0) {
-						msgDataServer.putIntoBuf(
-								toBlkId, iteNum, recMsgPack);
-					}
-					this.isOver = recMsgPack.isOver();
-					
-					recMsgPack = null;
-				} //while
+					previous = null;
+				}
+				
+				if (toAddr.equals(fromAddr)) {
+					pullLocal();
+				} else {
+					pullRemote();
+				}
 				
 				done = true;
 			} catch (UndeclaredThrowableException un) {
 				LOG.error("communication exception is caught but ignored", un);
 				done = true;
 				connectionError = true;
+			} catch (IOException io) {
+				LOG.error("communication exception is caught but ignored", io);
+				done = true;
+				connectionError = true;
 			} catch (NullPointerException nulle) {
 				LOG.error("fatal null pointer error", nulle);
 			} catch (Exception e) {
 				LOG.error("fatal unknown error", e);
 			} finally {
-				pullOver();
+				for (; cursor < toBlkIds.length; cursor++) {
+					finish(done);
+				}
 			}
 			
 			return done;
 		}
+		
+		/** Messages of the current VBlock have been pulled. */
+		private void finish(boolean done) {
+			pullOver(toBlkIds[cursor]);
+			results[cursor].finish(done);
+		}
+		
+		private void pullLocal() throws Exception {
+			for (; cursor < toBlkIds.length; cursor++) {
+				boolean isOver = false;
+				while (!isOver) {
+					MsgPack<V, W, M, I> recMsgPack = 
+						obtainMsgData(toTaskId, toBlkIds[cursor], iteNum);
+					receive(toBlkIds[cursor], recMsgPack, 0L, 0L);
+					isOver = recMsgPack.isOver();
+				}
+				finish(true);
+			}
+		}
+		
+		/** 
+		 * Each response continues from the cursor of the previous one, 
+		 * and VBlocks before the new cursor have been pulled.
+		 */
+		private void pullRemote() throws Exception {
+			CommunicationServerProtocol<V, W, M, I> comm = null;
+			if (transport == null) {
+				comm = commRT.getCommServer(fromAddr);
+			}
+			while (cursor < toBlkIds.length) {
+				MsgBatch<V, W, M, I> batch = null;
+				if (transport != null) {
+					batch = transport.obtain(fromAddr, toTaskId, toBlkIds, 
+							cursor, iteNum, pullBatch, pullBatchByte);
+				} else {
+					batch = comm.obtainMsgBatch(toTaskId, toBlkIds, 
+							cursor, iteNum, pullBatch, pullBatchByte);
+				}
+				if (batch == null) {
+					throw new Exception("fail to obtain messages from " 
+							+ fromAddr);
+				}
+				
+				try {
+					for (int i = 0; i < batch.size(); i++) {
+						MsgPack<V, W, M, I> recMsgPack = batch.getPack(i);
+						receive(batch.getBlkId(i), recMsgPack, 
+								recMsgPack.getMsgProNum(), 
+								recMsgPack.getMsgRecNum());
+					}
+				} finally {
+					if (transport != null) {
+						transport.release(batch);
+					}
+				}
+				for (; cursor < batch.getCursor(); cursor++) {
+					finish(true);
+				}
+			}
+		}
+		
+		private void receive(int _toBlkId, MsgPack<V, W, M, I> recMsgPack, 
+				long _msg_net, long _msg_net_actual) {
+			updateCounters(recMsgPack.getIOByte(), 
+					recMsgPack.getIOByteOfVertInPull(), 
+					recMsgPack.getIOByteOfLoggedMsg(), 
+					recMsgPack.getReadEdgeNum(), 
+					recMsgPack.getReadFragNum(),
+					recMsgPack.getMsgProNum(), recMsgPack.getMsgRecNum(), 
+					_msg_net, _msg_net_actual, 0L);
+			/** 
+			 * Use .size() instead of getMsgRecNum(), 
+			 * the latter of subsequent @{link MsgPack}s is zero.
+			 **/
+			if (recMsgPack.size() > 0) {
+				msgDataServer.putIntoBuf(_toBlkId, iteNum, recMsgPack);
+			}
+		}
+	}
+	
+	/** Generate messages along edges mirrored in one local VBlock. */
+	private class PullMirrorMsgThread implements Callable<Boolean> {
+		private int toBlkId;
+		private int iteNum;
+		
+		public PullMirrorMsgThread(int _toBlkId, int _iteNum) {
+			toBlkId = _toBlkId;
+			iteNum = _iteNum;
+		}
+		
+		@Override
+		public Boolean call() {
+			boolean done = false;
+			try {
+				long[] statis = graphDataServer.pullMirrorMsg(toBlkId, iteNum);
+				updateCounters(0L, 0L, 0L, statis[0], statis[1], 
+						statis[2], statis[3], 0L, 0L, 0L);
+				done = true;
+			} catch (Exception e) {
+				LOG.error("fatal unknown error", e);
+			} finally {
+				pullOver(toBlkId);
+			}
+			return done;
+		}
 	}
 	
 	public CommunicationServer (BSPJob job, int parId, TaskAttemptID taskId, int port) 
@@ -211,10 +371,21 @@ public class CommunicationServer<V, W, M, I>
 		this.conf = new HamaConfiguration();
 		this.parId = parId;
 		taskNum = job.getNumBspTask();
-		this.msgHandlePool = Executors.newFixedThreadPool(taskNum);
-		this.pushMsgResult = new HashMap<Integer, Future<Boolean>>(taskNum);
-		this.pullMsgResult = new ArrayList<Future<Boolean>>(taskNum);
-		LOG.info("start msg handle threads: " + taskNum);
+		this.pushWindow = Math.max(1, job.getMsgSendWindow());
+		this.pushBudget = job.getMsgSendBudget();
+		this.pullBatch = Math.max(1, job.getMsgPullBatch());
+		this.pullBatchByte = Math.max(1, job.getMsgPullBatchByte());
+		this.msgHandlePool = 
+			Executors.newFixedThreadPool(taskNum*this.pushWindow);
+		this.pushMsgResult = 
+			new HashMap<Integer, LinkedList<Future<Boolean>>>(taskNum);
+		this.pushInFlightMax = new int[taskNum];
+		this.pushStallTime = new long[taskNum];
+		this.pullMsgResult = new HashMap<Integer, ArrayList<Future<Boolean>>>();
+		this.pullLastResult = new HashMap<Integer, Future<Boolean>>(taskNum);
+		LOG.info("start msg handle threads: " + taskNum*this.pushWindow 
+				+ ", send window=" + this.pushWindow 
+				+ ", send budget=" + this.pushBudget + " bytes");
 		
 		this.commRT = new CommRouteTable<V, W, M, I>(job, this.parId);
 		this.bindAddr = job.get("host");
@@ -226,14 +397,20 @@ public class CommunicationServer<V, W, M, I>
 				this.peerAddr.getHostName(), this.peerAddr.getPort(), this.conf);
 		this.server.start();
 		LOG.info(this.peerAddr.getHostName() + ":" + this.peerAddr.getPort());
-		
-		this.counter = new AtomicInteger(0);
+		if (job.isNioMsgTransport()) {
+			this.transport = new MsgTransport<V, W, M, I>(this, 
+					conf.getInt(Constants.DATA_PORT_OFFSET, 
+							Constants.DEFAULT_DATA_PORT_OFFSET));
+			this.transport.start(this.peerAddr);
+		}
 	}
 	
 	public void bindGraphData(GraphDataServer<V, W, M, I> _graphDataServer, 
 			int _locBucNum) {
 		graphDataServer = _graphDataServer;
 		this.localBucNum = _locBucNum;
+		this.pullStartTime = new long[_locBucNum];
+		this.pullEndTime = new long[_locBucNum];
 	}
 	
 	public void bindMsgDataServer(MsgDataServer<V, W, M, I> _msgDataServer) {
@@ -249,51 +426,101 @@ public class CommunicationServer<V, W, M, I>
 	}
 	
 	/**
-	 * Push messages to target vertices. If target vertices reside in the task where 
-	 * messages are produced, messages are directly put into the receiving buffer. 
-	 * Otherwise, messages are sent via RPC. When recovering failures, surviving tasks 
-	 * only allow messages sent to restart tasks to be transmitted. 
-	 * @param msgData outgoing messages
+	 * Emit messages into sending buffers under Push, see pushMsgData(). 
+	 * Errors are kept and reported by endPushMsgData(). Single-thread.
+	 */
+	private class PushMsgSink implements MessageSink<M> {
+		private HashSet<Integer> filters;
+		private boolean flag;
+		private long msgNum = 0L;
+		private Exception error;
+		
+		@Override
+		public void emit(int srcId, int dstId, M msgValue) {
+			this.msgNum++;
+			if (this.error != null) {
+				return;
+			}
+			try {
+				pushMsgData(srcId, dstId, msgValue, this.filters, this.flag);
+			} catch (Exception e) {
+				this.error = e;
+			}
+		}
+		
+		@Override
+		public void emit(MsgRecord<M> msg) {
+			emit(msg.getSrcVerId(), msg.getDstVerId(), msg.getMsgValue());
+		}
+	}
+	
+	/**
+	 * Get the sink to push messages of one or more source vertices, 
+	 * which should be ended by endPushMsgData().
 	 * @param filters ids of failed tasks for filterring messages
 	 * @param flag true->filter messages
+	 * @return
 	 */
-	public void pushMsgData(int vid, MsgRecord<M>[] msgData, HashSet<Integer> filters, boolean flag) 
-			throws Exception {
-		int dstVid, dstPid, pro_msg = msgData.length;
+	public MessageSink<M> startPushMsgData(HashSet<Integer> filters, 
+			boolean flag) {
+		this.pushSink.filters = filters;
+		this.pushSink.flag = flag;
+		this.pushSink.msgNum = 0L;
+		this.pushSink.error = null;
+		return this.pushSink;
+	}
+	
+	/**
+	 * Count messages emitted into the sink since startPushMsgData(), 
+	 * and throw the first error when pushing them, if any.
+	 * @throws Exception
+	 */
+	public void endPushMsgData() throws Exception {
+		long pro_msg = this.pushSink.msgNum;
+		this.pushSink.msgNum = 0L;
 		updateCounters(0L, 0L, 0L, 0L, 0L, pro_msg, pro_msg, 0L, 0L, 0L);
-		
-		for(int idx = 0; idx < pro_msg; idx++) {
-			dstVid = msgData[idx].getDstVerId();
-			dstPid = commRT.getDstTaskId(dstVid);
-			if (flag) {
-				if (!filters.contains(dstPid)) {
-					continue;
-				}
-			}
-			
-			switch(this.msgDataServer.putIntoSendBuffer(dstPid, msgData[idx])) {
-			case NORMAL :
-				break;
-			case OVERFLOW :
-				MsgPack<V, W, M, I> msgPack = this.msgDataServer.getMsgPack(dstPid);
-				InetSocketAddress dstAddress = commRT.getInetSocketAddress(dstPid);
-				if (this.pushMsgResult.containsKey(dstPid)) {
-					Future<Boolean> monitor = this.pushMsgResult.remove(dstPid);
-					if (!monitor.isDone()) {
-						monitor.get();
-					}
-					if (monitor.get() == false) {
-						throw new Exception("ERROR");
-					}
-				}
-				startPushMsgDataThread(dstPid, dstAddress, msgPack);
-				msgPack = null;
-				break;
-			default : LOG.error("[sendMsgData] Fail send messages to Partition " 
-					+ dstPid);
-					throw new Exception("invalid BufferStatus");
+		if (this.pushSink.error != null) {
+			Exception e = this.pushSink.error;
+			this.pushSink.error = null;
+			throw e;
+		}
+	}
+	
+	/**
+	 * Push one message to the target vertex. If the target vertex resides in the task where 
+	 * the message is produced, messages are directly put into the receiving buffer. 
+	 * Otherwise, messages are sent via RPC or {@link MsgTransport}. 
+	 * When recovering failures, surviving tasks 
+	 * only allow messages sent to restart tasks to be transmitted. 
+	 * @param srcId
+	 * @param dstId
+	 * @param msgValue
+	 * @param filters ids of failed tasks for filterring messages
+	 * @param flag true->filter messages
+	 */
+	private void pushMsgData(int srcId, int dstId, M msgValue, 
+			HashSet<Integer> filters, boolean flag) throws Exception {
+		int dstPid = commRT.getDstTaskId(dstId);
+		if (flag) {
+			if (!filters.contains(dstPid)) {
+				return;
 			}
 		}
+		
+		switch(this.msgDataServer.putIntoSendBuffer(dstPid, 
+				srcId, dstId, msgValue)) {
+		case NORMAL :
+			break;
+		case OVERFLOW :
+			MsgPack<V, W, M, I> msgPack = this.msgDataServer.getMsgPack(dstPid);
+			InetSocketAddress dstAddress = commRT.getInetSocketAddress(dstPid);
+			startPushMsgDataThread(dstPid, dstAddress, msgPack);
+			msgPack = null;
+			break;
+		default : LOG.error("[sendMsgData] Fail send messages to Partition " 
+				+ dstPid);
+				throw new Exception("invalid BufferStatus");
+		}
 	}
 	
 	/**
@@ -314,15 +541,6 @@ public class CommunicationServer<V, W, M, I>
 					stop = false;
 					
 					InetSocketAddress dstAddress = commRT.getInetSocketAddress(dstTaskId);
-					if (this.pushMsgResult.containsKey(dstTaskId)) {
-						Future<Boolean> monitor = this.pushMsgResult.remove(dstTaskId);
-						if (!monitor.isDone()) {
-							monitor.get();
-						}
-						if (monitor.get() == false) {
-							throw new Exception("ERROR");
-						}
-					}
 					startPushMsgDataThread(dstTaskId, dstAddress, msgPack);
 				}//confined message pushing operation
 			}//one loop
@@ -346,20 +564,70 @@ public class CommunicationServer<V, W, M, I>
 		}
 		clearPushMsgResult();
 		this.msgDataServer.clearSendBuffer();
+		
+		StringBuffer sb = new StringBuffer();
+		for (int dstParId = 0; dstParId < taskNum; dstParId++) {
+			if (this.pushStallTime[dstParId] > 0) {
+				sb.append(" " + dstParId + ":" + this.pushStallTime[dstParId] 
+						+ "ms/" + this.pushInFlightMax[dstParId]);
+			}
+		}
+		if (sb.length() > 0) {
+			LOG.info("push stalls (dstTask:stallTime/maxInFlight)" + sb);
+		}
 	}
 	
 	/**
 	 * Clear the pushMsgResult at the end of one SuperStep.
 	 */
 	private void clearPushMsgResult() throws Exception {
-		for (Future<Boolean> e : this.pushMsgResult.values()) {
-			if (e.get() == false) {
-				throw new Exception("ERROR");
+		for (LinkedList<Future<Boolean>> window : this.pushMsgResult.values()) {
+			for (Future<Boolean> e : window) {
+				if (e.get() == false) {
+					throw new Exception("ERROR");
+				}
 			}
 		}
 		this.pushMsgResult.clear();
 	}
 	
+	/**
+	 * Wait until the oldest pack in flight to dstParId is done.
+	 * @return milliseconds blocked
+	 */
+	private long waitOldestPush(LinkedList<Future<Boolean>> window) 
+			throws Exception {
+		long start = System.currentTimeMillis();
+		if (window.removeFirst().get() == false) {
+			throw new Exception("ERROR");
+		}
+		return System.currentTimeMillis() - start;
+	}
+	
+	/**
+	 * Reserve bytes of one pack in the sending budget, blocking if 
+	 * it is exhausted. A pack is always allowed if nothing is in flight.
+	 * @return milliseconds blocked
+	 */
+	private long acquirePushBudget(long bytes) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		synchronized (this.pushInFlightByte) {
+			while (this.pushInFlightByte[0] > 0 
+					&& this.pushInFlightByte[0]+bytes > this.pushBudget) {
+				this.pushInFlightByte.wait();
+			}
+			this.pushInFlightByte[0] += bytes;
+		}
+		return System.currentTimeMillis() - start;
+	}
+	
+	private void releasePushBudget(long bytes) {
+		synchronized (this.pushInFlightByte) {
+			this.pushInFlightByte[0] -= bytes;
+			this.pushInFlightByte.notifyAll();
+		}
+	}
+	
 	/**
 	 * Pull messages from source vertices.
 	 * First, the system signals each essential source task to 
@@ -370,7 +638,7 @@ public class CommunicationServer<V, W, M, I>
 	 * this function returns the runtime cost of pulling operations. 
 	 * Note that messages on the requesting task will be directly put 
 	 * into {@link MsgDataServer}. Otherwise, messages are transmitted 
-	 * via RPC.
+	 * via RPC or {@link MsgTransport}.
 	 * @param _toBlkId id of local {@link VBlock} to which messages are sent
 	 * @param _iteNum
 	 * @return
@@ -383,39 +651,46 @@ public class CommunicationServer<V, W, M, I>
 		}
 		
 		long start = System.currentTimeMillis();
-		if (_toBlkId==0 || !this.msgDataServer.isAccumulated()) {
-			this.pullNum = this.pullRoute[_toBlkId].size();
-			for (int tid: this.pullRoute[_toBlkId]) {
-				InetSocketAddress fromAddress = commRT.getInetSocketAddress(tid);
-				startPullMsgDataThread(fromAddress, _toBlkId, _iteNum);
-			}
+		if (_toBlkId == 0) {
+			this.pullNext = 0;
 		}
-		
-		if (this.pullNum > 0) {
-			this.suspend(); //wait, until all msgs have been pulled for cur bucket.
+		if (this.pullNext <= _toBlkId) {
+			startPullMsgDataThreads(this.pullNext, _toBlkId+1, _iteNum);
+			this.pullNext = _toBlkId + 1;
 		}
 		
-		for (Future<Boolean> f: this.pullMsgResult) {
-			if (f.get() == false) {
-				throw new Exception("ERROR");
-			}
-		} //check if Exception happens when pulling.
-		this.pullMsgResult.clear();
+		ArrayList<Future<Boolean>> results = this.pullMsgResult.remove(_toBlkId);
+		if (results != null) {
+			for (Future<Boolean> f: results) {
+				if (f.get() == false) {
+					throw new Exception("ERROR");
+				}
+			} //check if Exception happens when pulling.
+		}
+		long blocked = System.currentTimeMillis() - start;
+		if (this.pullEndTime[_toBlkId] > 0L) {
+			long latency = 
+				this.pullEndTime[_toBlkId] - this.pullStartTime[_toBlkId];
+			this.pull_latency += latency;
+			this.pull_hidden += Math.max(0L, latency-blocked);
+		}
+		if (_toBlkId == this.localBucNum-1) {
+			LOG.info("superstep-" + _iteNum + " pulling runtime=" 
+					+ this.pull_latency + "ms, hidden behind computations=" 
+					+ this.pull_hidden + "ms");
+		}
 		
 		/**
-		 * When finding connection error, pre-fetching messages 
-		 * will invoke pullOver() one more time and then makes 
-		 * the local computation quit the suspend() barrier abnormally.
+		 * When finding connection error, the local computation will quit, 
+		 * so pre-fetching is unnecessary.
 		 */
-		if (this.msgDataServer.isAccumulated() && 
-				!findConnectionError()) {
-			this.msgDataServer.switchPreMsgToCache();
-			if ((_toBlkId+1)<this.localBucNum) {
-				this.pullNum = this.pullRoute[(_toBlkId+1)].size();
-				for (int tid: this.pullRoute[(_toBlkId+1)]) {
-					InetSocketAddress fromAddress = commRT.getInetSocketAddress(tid);
-					startPullMsgDataThread(fromAddress, (_toBlkId+1), _iteNum);
-				}
+		if (!findConnectionError()) {
+			this.msgDataServer.switchPreMsgToCache(_toBlkId);
+			int depth = this.msgDataServer.getPullPrefetchDepth();
+			int end = Math.min(_toBlkId+depth+1, this.localBucNum);
+			if (this.pullNext < end) {
+				startPullMsgDataThreads(this.pullNext, end, _iteNum);
+				this.pullNext = end;
 			}
 		}
 		
@@ -520,9 +795,9 @@ public class CommunicationServer<V, W, M, I>
 	
 	/**
 	 * Return #messages actually transferred via network. 
-	 * For style.Push, it is equal with getMsgNetNum();
-	 * for style.Pull, it should be less than getMsgNetNum() 
-	 * due to combining/cancatenating.
+	 * It should be less than getMsgNetNum() due to combining/cancatenating, 
+	 * for style.Push, only if messages are accumulated and combined 
+	 * before being sent.
 	 * @return
 	 */
 	public long getMsgNetActualNum() {
@@ -538,6 +813,31 @@ public class CommunicationServer<V, W, M, I>
 		return this.msg_disk;
 	}
 	
+	/**
+	 * Return the time (milliseconds) of suspending the computation 
+	 * because of the sending window or budget under style.Push.
+	 * @return
+	 */
+	public long getPushStallTime() {
+		long sum = 0L;
+		for (long stall: this.pushStallTime) {
+			sum += stall;
+		}
+		return sum;
+	}
+	
+	/**
+	 * Return the maximal #packs in flight to one dstTask under style.Push.
+	 * @return
+	 */
+	public long getPushInFlightMax() {
+		int max = 0;
+		for (int num: this.pushInFlightMax) {
+			max = Math.max(max, num);
+		}
+		return max;
+	}
+	
 	public void clearBefIte(int _iteNum) {
 		this.io_byte = 0L;
 		this.io_byte_vert = 0L;
@@ -549,6 +849,24 @@ public class CommunicationServer<V, W, M, I>
 		this.msg_net = 0L;
 		this.msg_net_actual = 0L;
 		this.msg_disk = 0L;
+		Arrays.fill(this.pushInFlightMax, 0);
+		Arrays.fill(this.pushStallTime, 0L);
+		
+		/** pulling left by a broken superstep must not touch new buffers */
+		for (ArrayList<Future<Boolean>> results: this.pullMsgResult.values()) {
+			for (Future<Boolean> f: results) {
+				try {
+					f.get();
+				} catch (Exception e) {
+					LOG.warn("discard pulled messages", e);
+				}
+			}
+		}
+		this.pullMsgResult.clear();
+		this.pullLastResult.clear();
+		this.pullNext = 0;
+		this.pull_latency = 0L;
+		this.pull_hidden = 0L;
 		
 		this.connectionError = false;
 	}
@@ -565,30 +883,98 @@ public class CommunicationServer<V, W, M, I>
 		return this.connectionError;
 	}
 	
+	/**
+	 * Send one pack in background. The compute thread is suspended only 
+	 * if pushWindow packs are in flight to dstParId, or the bytes in 
+	 * flight to all remote tasks exceed pushBudget.
+	 */
 	private void startPushMsgDataThread(int dstParId, InetSocketAddress dstAddr, 
-			MsgPack<V, W, M, I> msgPack) {
+			MsgPack<V, W, M, I> msgPack) throws Exception {
+		LinkedList<Future<Boolean>> window = this.pushMsgResult.get(dstParId);
+		if (window == null) {
+			window = new LinkedList<Future<Boolean>>();
+			this.pushMsgResult.put(dstParId, window);
+		}
+		long stall = 0L;
+		while (!window.isEmpty() && window.getFirst().isDone()) {
+			stall += waitOldestPush(window);
+		}
+		while (window.size() >= this.pushWindow) {
+			stall += waitOldestPush(window);
+		}
+		stall += acquirePushBudget(msgPack.getByteSize());
+		
 		Future<Boolean> future = this.msgHandlePool.submit(
 				new PushMsgDataThread(parId, dstParId, 
 						msgPack, peerAddr, dstAddr));
-		this.pushMsgResult.put(dstParId, future);
+		window.addLast(future);
+		this.pushStallTime[dstParId] += stall;
+		this.pushInFlightMax[dstParId] = 
+			Math.max(this.pushInFlightMax[dstParId], window.size());
 	}
 	
-	private void startPullMsgDataThread(InetSocketAddress _fromAddr, 
-			int _toBlkId, int _iteNum) {
-		Future<Boolean> future =
-			this.msgHandlePool.submit(new PullMsgDataThread(parId, _toBlkId, 
-					_iteNum, peerAddr, _fromAddr));
-		this.pullMsgResult.add(future);
+	/** 
+	 * Pull messages to local VBlocks in [_fromBlkId, _toBlkId) from all 
+	 * source tasks. VBlocks routed to the same source task are pulled 
+	 * by one thread, so that they share round-trips.
+	 */
+	private void startPullMsgDataThreads(int _fromBlkId, int _toBlkId, 
+			int _iteNum) {
+		HashMap<Integer, ArrayList<Integer>> blkIdsPerTask = 
+			new HashMap<Integer, ArrayList<Integer>>();
+		for (int bid = _fromBlkId; bid < _toBlkId; bid++) {
+			this.pullStartTime[bid] = System.currentTimeMillis();
+			this.pullEndTime[bid] = 0L;
+			this.pullMsgResult.put(bid, 
+					new ArrayList<Future<Boolean>>(this.pullRoute[bid].size()));
+			for (int tid: this.pullRoute[bid]) {
+				ArrayList<Integer> blkIds = blkIdsPerTask.get(tid);
+				if (blkIds == null) {
+					blkIds = new ArrayList<Integer>();
+					blkIdsPerTask.put(tid, blkIds);
+				}
+				blkIds.add(bid);
+			}
+		}
+		
+		for (int tid: blkIdsPerTask.keySet()) {
+			ArrayList<Integer> blkIds = blkIdsPerTask.get(tid);
+			int[] toBlkIds = new int[blkIds.size()];
+			PullResult[] results = new PullResult[blkIds.size()];
+			for (int i = 0; i < toBlkIds.length; i++) {
+				toBlkIds[i] = blkIds.get(i);
+				results[i] = new PullResult();
+				this.pullMsgResult.get(toBlkIds[i]).add(results[i]);
+			}
+			InetSocketAddress fromAddr = commRT.getInetSocketAddress(tid);
+			Future<Boolean> future =
+				this.msgHandlePool.submit(new PullMsgDataThread(parId, toBlkIds, 
+						results, _iteNum, peerAddr, fromAddr, 
+						this.pullLastResult.get(tid)));
+			this.pullLastResult.put(tid, future);
+		}
+		
+		for (int bid = _fromBlkId; bid < _toBlkId; bid++) {
+			if (this.graphDataServer.hasMirrors(bid)) {
+				this.pullMsgResult.get(bid).add(this.msgHandlePool.submit(
+						new PullMirrorMsgThread(bid, _iteNum)));
+			}
+		}
 	}
 	
-	public void pullOver() {
-		int cur = this.counter.incrementAndGet();
-		//LOG.info("counter=" + this.counter.get() + ", pullNum=" + this.pullNum);
-		if (cur == this.pullNum) {
-			this.counter.set(0);
-			//LOG.info("pullOver");
-			quit();
-		}
+	/** Record the time when one source task completes pulling. */
+	private synchronized void pullOver(int _toBlkId) {
+		this.pullEndTime[_toBlkId] = 
+			Math.max(this.pullEndTime[_toBlkId], System.currentTimeMillis());
+	}
+	
+	/**
+	 * Return the pulling runtime (milliseconds) hidden behind 
+	 * computations of previous VBlocks by pre-fetching.
+	 * @return
+	 */
+	public long getPullHiddenTime() {
+		return this.pull_hidden;
 	}
 	
 	@Override
@@ -602,11 +988,72 @@ public class CommunicationServer<V, W, M, I>
 		}
 	}
 	
+	@Override
+	public long recMirrorEdges(int srcParId, BytesWritable edges) {
+		try {
+			return this.graphDataServer.recMirrorEdges(edges);
+		} catch (Exception e) {
+			LOG.error("recMirrorEdges from task-" + srcParId, e);
+			return -1;
+		}
+	}
+	
+	@Override
+	public long recMirrorValues(int srcParId, int _iteNum, BytesWritable values) {
+		try {
+			//counted by the source task, see sendMirrorValues()
+			return this.graphDataServer.recMirrorValues(srcParId, _iteNum, values);
+		} catch (Exception e) {
+			LOG.error("recMirrorValues from task-" + srcParId, e);
+			return -1;
+		}
+	}
+	
 	@Override
 	public MsgPack<V, W, M, I> obtainMsgData(int _toTaskId, int _toBlkId, int _iteNum) {
 		return this.graphDataServer.getMsg(_toTaskId, _toBlkId, _iteNum);
 	}
 	
+	@Override
+	public MsgBatch<V, W, M, I> obtainMsgBatch(int _toTaskId, int[] _toBlkIds, 
+			int _cursor, int _iteNum, int _maxPackNum, int _maxByte) {
+		MsgBatch<V, W, M, I> batch = new MsgBatch<V, W, M, I>();
+		int cursor = _cursor, packNum = 0;
+		long bytes = 0L;
+		try {
+			while (cursor < _toBlkIds.length 
+					&& packNum < _maxPackNum && bytes < _maxByte) {
+				MsgPack<V, W, M, I> blkPack = null;
+				do {
+					MsgPack<V, W, M, I> pack = this.graphDataServer.getMsg(
+							_toTaskId, _toBlkIds[cursor], _iteNum);
+					if (pack == null) {
+						return null;
+					}
+					packNum++;
+					bytes += pack.getByteSize();
+					if (blkPack == null) {
+						blkPack = pack;
+					} else {
+						blkPack.append(pack);
+					}
+				} while (!blkPack.isOver() 
+						&& packNum < _maxPackNum && bytes < _maxByte);
+				
+				batch.add(_toBlkIds[cursor], blkPack);
+				if (blkPack.isOver()) {
+					cursor++;
+				}
+			}
+		} catch (IOException e) {
+			LOG.error("obtainMsgBatch", e);
+			return null;
+		}
+		
+		batch.setCursor(cursor);
+		return batch;
+	}
+	
 	@Override
 	public void setRouteTable(JobInformation jobInfo) {
 		this.commRT.initialilze(jobInfo);
@@ -674,6 +1121,9 @@ public class CommunicationServer<V, W, M, I>
 	@Override
 	public void close() {
 		this.server.stop();
+		if (this.transport != null) {
+			this.transport.close();
+		}
 		this.msgHandlePool.shutdownNow();
 	}
 	
@@ -0,0 +1,80 @@
+package org.apache.hama.myhama.comm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * MsgBatch is the response of pulling messages for a list of
+ * local VBlocks from one source task. It contains one {@link MsgPack}
+ * per VBlock which has been (partially) responded, and a cursor,
+ * i.e., the index of the VBlock in the list from which the next
+ * request continues. The list is over if the cursor reaches its end.
+ */
+public class MsgBatch<V, W, M, I> implements Writable {
+	private int cursor;
+	private ArrayList<Integer> blkIds = new ArrayList<Integer>();
+	private ArrayList<MsgPack<V, W, M, I>> packs =
+		new ArrayList<MsgPack<V, W, M, I>>();
+
+	public MsgBatch() {
+		this.cursor = 0;
+	}
+
+	public void setCursor(int _cursor) {
+		this.cursor = _cursor;
+	}
+
+	public int getCursor() {
+		return this.cursor;
+	}
+
+	/**
+	 * Add messages for the _blkId-th VBlock.
+	 * @param _blkId
+	 * @param pack
+	 */
+	public void add(int _blkId, MsgPack<V, W, M, I> pack) {
+		this.blkIds.add(_blkId);
+		this.packs.add(pack);
+	}
+
+	public int size() {
+		return this.packs.size();
+	}
+
+	public int getBlkId(int index) {
+		return this.blkIds.get(index);
+	}
+
+	public MsgPack<V, W, M, I> getPack(int index) {
+		return this.packs.get(index);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		this.cursor = in.readInt();
+		int num = in.readInt();
+		this.blkIds.clear();
+		this.packs.clear();
+		for (int i = 0; i < num; i++) {
+			this.blkIds.add(in.readInt());
+			MsgPack<V, W, M, I> pack = new MsgPack<V, W, M, I>();
+			pack.readFields(in);
+			this.packs.add(pack);
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(this.cursor);
+		out.writeInt(this.packs.size());
+		for (int i = 0; i < this.packs.size(); i++) {
+			out.writeInt(this.blkIds.get(i));
+			this.packs.get(i).write(out);
+		}
+	}
+}
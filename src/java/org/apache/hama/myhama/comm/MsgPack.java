@@ -1,21 +1,30 @@
 package org.apache.hama.myhama.comm;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hama.myhama.api.MsgCombiner;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.api.UserTool;
 
 public class MsgPack<V, W, M, I> implements Writable {
+	/** bytes of the header written by writeHeader() */
+	public static final int HEADER_BYTE = 8*7 + 1 + 4*2;
+	
 	private MsgRecord<M>[] msgData;
 	private int size; //#target vertices
 	private ByteArrayOutputStream bos;
 	private DataInputStream inputStream;
+	/** messages received by {@link MsgTransport} */
+	private ByteBuffer buffer;
 	private UserTool<V, W, M, I> userTool;
 	private long io_byte; //io bytes during pulling messages based on edges
 	private long io_pull_vert; //io bytes of reading source vertices when pulling messages
@@ -68,6 +77,8 @@ public class MsgPack<V, W, M, I> implements Writable {
 	
 	/**
 	 * Set messages and relative variables for local task.
+	 * Note that msgData may be a reused array longer than _size, 
+	 * so only its first _size elements are valid.
 	 * @param msgData
 	 * @param _size
 	 * @param _msgProNum
@@ -98,6 +109,20 @@ public class MsgPack<V, W, M, I> implements Writable {
 		this.loggedBytes = _loggedBytes;
 	}
 	
+	/**
+	 * Set messages kept in a buffer received by {@link MsgTransport}. 
+	 * The buffer is positioned at the first message, and it is kept 
+	 * until being released by {@link MsgTransport}.
+	 * @param _buffer
+	 */
+	public void setBuffer(ByteBuffer _buffer) {
+		this.buffer = _buffer;
+	}
+	
+	public ByteBuffer getBuffer() {
+		return this.buffer;
+	}
+	
 	public MsgRecord<M>[] get() throws IOException {
 		if (this.size > 0 && this.msgData == null) {
 			deserialize();
@@ -109,7 +134,16 @@ public class MsgPack<V, W, M, I> implements Writable {
 	public int size() {
 		return this.size;
 	}
-	
+
+	/**
+	 * Return bytes of serialized messages to be sent to a remote task,
+	 * zero for messages kept in memory for the local task.
+	 * @return
+	 */
+	public long getByteSize() {
+		return (this.size==0||this.bos==null)? 0L:this.bos.size();
+	}
+
 	public long getIOByte() {
 		return this.io_byte;
 	}
@@ -138,7 +172,11 @@ public class MsgPack<V, W, M, I> implements Writable {
 		return this.msg_rec;
 	}
 	
+	@SuppressWarnings("unchecked")
 	private void deserialize() throws IOException {
+		if (this.buffer != null) {
+			this.inputStream = getBufferStream();
+		}
 		this.msgData = (MsgRecord<M>[]) new MsgRecord[this.size];
 		for (int index = 0; index < this.size; index++) {
 			MsgRecord<M> msgRecord = this.userTool.getMsgRecord();
@@ -148,6 +186,194 @@ public class MsgPack<V, W, M, I> implements Writable {
 		this.inputStream = null;
 	}
 	
+	/**
+	 * Messages are encoded by serialize(DataOutputStream) on the sender, 
+	 * so the received buffer is decoded by deserialize(DataInputStream). 
+	 * Bytes of a direct buffer are copied into a heap array by one bulk 
+	 * get(), and then decoded from the array, instead of being read 
+	 * byte by byte from the direct buffer.
+	 * @return
+	 */
+	private DataInputStream getBufferStream() {
+		int length = this.buffer.remaining();
+		if (this.buffer.hasArray()) {
+			return new DataInputStream(new BytesInput(this.buffer.array(), 
+					this.buffer.arrayOffset()+this.buffer.position(), length));
+		}
+		byte[] bytes = new byte[length];
+		this.buffer.get(bytes);
+		return new DataInputStream(new BytesInput(bytes, 0, length));
+	}
+	
+	/** 
+	 * An unsynchronized {@link InputStream} over a byte array, 
+	 * since one pack is only decoded by one thread. 
+	 */
+	private static class BytesInput extends InputStream {
+		private byte[] bytes;
+		private int pos, end;
+		
+		public BytesInput(byte[] _bytes, int _offset, int _length) {
+			this.bytes = _bytes;
+			this.pos = _offset;
+			this.end = _offset + _length;
+		}
+		
+		@Override
+		public int read() {
+			return this.pos<this.end? (this.bytes[this.pos++]&0xff):-1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (this.pos >= this.end) {
+				return -1;
+			}
+			len = Math.min(len, this.end-this.pos);
+			System.arraycopy(this.bytes, this.pos, b, off, len);
+			this.pos += len;
+			return len;
+		}
+		
+		@Override
+		public long skip(long n) {
+			int len = (int)Math.max(0L, Math.min(n, this.end-this.pos));
+			this.pos += len;
+			return len;
+		}
+		
+		@Override
+		public int available() {
+			return this.end - this.pos;
+		}
+	}
+	
+	/**
+	 * Append messages and counters of another pack for the same remote 
+	 * request, so that several packs are transferred by one round-trip. 
+	 * Messages are copied from "other" and the over flag is inherited.
+	 * @param other
+	 * @throws IOException
+	 */
+	public void append(MsgPack<V, W, M, I> other) throws IOException {
+		this.io_byte += other.io_byte;
+		this.io_pull_vert += other.io_pull_vert;
+		this.loggedBytes += other.loggedBytes;
+		this.edge_read += other.edge_read;
+		this.fragment_read += other.fragment_read;
+		this.msg_pro += other.msg_pro;
+		this.msg_rec += other.msg_rec;
+		this.over = other.over;
+		
+		if (other.size > 0) {
+			if (this.bos == null || this.size == 0) {
+				this.bos = new ByteArrayOutputStream(other.bos.size());
+			}
+			other.bos.writeTo(this.bos);
+			this.size += other.size;
+		}
+	}
+	
+	/**
+	 * Decode messages kept in the received buffer one by one and combine 
+	 * them into slots of "combiner" directly, without creating 
+	 * {@link MsgRecord}s. The slot index is dstId-_verMinId.
+	 * @param combiner
+	 * @param _verMinId
+	 * @return false if messages are not kept in a buffer
+	 * @throws IOException
+	 */
+	public boolean combineInto(MsgCombiner<M> combiner, int _verMinId) 
+			throws IOException {
+		if (this.buffer == null) {
+			return false;
+		}
+		
+		DataInputStream in = getBufferStream();
+		MsgRecord<M> msgRecord = this.userTool.getMsgRecord();
+		for (int index = 0; index < this.size; index++) {
+			msgRecord.deserialize(in);
+			combiner.combine(msgRecord.getDstVerId()-_verMinId, 
+					msgRecord.getMsgValue());
+		}
+		return true;
+	}
+	
+	/**
+	 * Write the header into "out", i.e., the same fields as write() 
+	 * followed by the length of messages in bytes.
+	 * @param out
+	 */
+	public void writeHeader(ByteBuffer out) {
+		out.putLong(this.io_byte);
+		out.putLong(this.io_pull_vert);
+		out.putLong(this.loggedBytes);
+		out.putLong(this.edge_read);
+		out.putLong(this.fragment_read);
+		out.putLong(this.msg_pro);
+		out.putLong(this.msg_rec);
+		out.put((byte)(this.over? 1:0));
+		out.putInt(this.size);
+		out.putInt((this.size==0||this.bos==null)? 0:this.bos.size());
+	}
+	
+	/**
+	 * Read the header written by writeHeader().
+	 * @param in
+	 * @return the length of messages in bytes
+	 */
+	public int readHeader(ByteBuffer in) {
+		this.io_byte = in.getLong();
+		this.io_pull_vert = in.getLong();
+		this.loggedBytes = in.getLong();
+		this.edge_read = in.getLong();
+		this.fragment_read = in.getLong();
+		this.msg_pro = in.getLong();
+		this.msg_rec = in.getLong();
+		this.over = (in.get()==1);
+		this.size = in.getInt();
+		return in.getInt();
+	}
+	
+	/**
+	 * Write the header and messages into "channel" by one gathering 
+	 * write. Messages are written from the internal array of the 
+	 * {@link ByteArrayOutputStream} without being copied.
+	 * @param channel
+	 * @param header a buffer with HEADER_BYTE bytes remaining, 
+	 *        bytes already put into it are written before the header
+	 * @throws IOException
+	 */
+	public void writeTo(GatheringByteChannel channel, ByteBuffer header) 
+			throws IOException {
+		writeHeader(header);
+		header.flip();
+		final ByteBuffer[] bufs = new ByteBuffer[] {header, 
+				ByteBuffer.allocate(0)};
+		if (this.size > 0 && this.bos != null) {
+			this.bos.writeTo(new OutputStream() {
+				@Override
+				public void write(byte[] b, int off, int len) {
+					bufs[1] = ByteBuffer.wrap(b, off, len);
+				}
+				
+				@Override
+				public void write(int b) throws IOException {
+					throw new IOException("unexpected single byte");
+				}
+			});
+		}
+		while (bufs[0].hasRemaining() || bufs[1].hasRemaining()) {
+			channel.write(bufs);
+		}
+		
+		this.msgData = null;
+		this.bos = null;
+	}
+	
 	@Override
 	public void readFields(DataInput in) throws IOException {
 		this.io_byte = in.readLong();
@@ -164,8 +390,7 @@ public class MsgPack<V, W, M, I> implements Writable {
 		byte[] b = new byte[bytesLength];
 		
 		in.readFully(b);
-		ByteArrayInputStream bytes = new ByteArrayInputStream(b);
-		this.inputStream = new DataInputStream(bytes);
+		this.inputStream = new DataInputStream(new BytesInput(b, 0, b.length));
 	}
 
 	@Override
@@ -0,0 +1,436 @@
+package org.apache.hama.myhama.comm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hama.ipc.CommunicationServerProtocol;
+
+/**
+ * MsgTransport transfers {@link MsgPack}s between tasks over NIO
+ * {@link SocketChannel}s, instead of Hadoop RPC. It is the data plane of
+ * {@link CommunicationServer}, i.e., recMsgData() and obtainMsgBatch(),
+ * while other functions (the control plane) still use RPC. A pulling
+ * request is followed by its budgets and the list of VBlocks, and the
+ * response is a {@link MsgBatch}, i.e., the cursor and #packs followed
+ * by the id of the VBlock and one pack, repeatedly.
+ *
+ * (1) sending: the request, the header and messages of one pack are
+ *     written by one gathering write, and messages are not copied
+ *     from the {@link ByteArrayOutputStream} filled by producers;
+ * (2) receiving: messages are read into a pooled direct
+ *     {@link ByteBuffer}, and then decoded by receivers from it directly,
+ *     e.g., into {@link MsgCombiner}s;
+ * (3) connections: channels to each task are kept and reused by
+ *     sending threads, one request at a time per channel.
+ *
+ * The server listens on the port of {@link CommunicationServer}
+ * plus {@link Constants}.DATA_PORT_OFFSET.
+ */
+public class MsgTransport<V, W, M, I> {
+	private static final Log LOG = LogFactory.getLog(MsgTransport.class);
+	private static final int PUSH = 1;
+	private static final int OBTAIN = 2;
+	/** op, and four int arguments */
+	private static final int REQUEST_BYTE = 4 * 5;
+	/** OK/ERROR, the cursor and #packs of a {@link MsgBatch} */
+	private static final int BATCH_BYTE = 1 + 4 * 2;
+	private static final byte OK = 1;
+	private static final byte ERROR = 0;
+
+	private CommunicationServerProtocol<V, W, M, I> comm;
+	private int portOffset;
+
+	private ServerSocketChannel server;
+	private Thread acceptor;
+	private ExecutorService handlers;
+	private volatile boolean running = false;
+	/** channels accepted by the server */
+	private Set<SocketChannel> accepted =
+		Collections.synchronizedSet(new HashSet<SocketChannel>());
+	/** idle channels to each remote task */
+	private ConcurrentHashMap<InetSocketAddress,
+			ConcurrentLinkedQueue<SocketChannel>> idle =
+		new ConcurrentHashMap<InetSocketAddress,
+			ConcurrentLinkedQueue<SocketChannel>>();
+
+	private ByteBufferPool headerPool;
+	private ByteBufferPool dataPool;
+
+	/** Serve requests from one remote task. */
+	private class Handler implements Runnable {
+		private SocketChannel channel;
+		
+		public Handler(SocketChannel _channel) {
+			this.channel = _channel;
+		}
+		
+		@Override
+		public void run() {
+			ByteBuffer header = headerPool.acquire(
+					REQUEST_BYTE+BATCH_BYTE+4+MsgPack.HEADER_BYTE);
+			try {
+				while (running) {
+					header.clear();
+					header.limit(REQUEST_BYTE);
+					if (!readFully(this.channel, header, true)) {
+						break; //closed by the remote task
+					}
+					header.flip();
+					int op = header.getInt();
+					int arg0 = header.getInt(), arg1 = header.getInt(),
+						arg2 = header.getInt(), arg3 = header.getInt();
+					
+					if (op == PUSH) {
+						MsgPack<V, W, M, I> pack = receive(this.channel, header);
+						long result;
+						try {
+							result = comm.recMsgData(arg0, pack);
+						} finally {
+							release(pack);
+						}
+						header.clear();
+						header.putLong(result);
+						header.flip();
+						writeFully(this.channel, header);
+					} else if (op == OBTAIN) {
+						//arg1 VBlocks, arg2 cursor, arg3 iteNum
+						ByteBuffer body = headerPool.acquire(4*(2+arg1));
+						int maxPackNum, maxByte;
+						int[] blkIds = new int[arg1];
+						try {
+							body.limit(4*(2+arg1));
+							readFully(this.channel, body, false);
+							body.flip();
+							maxPackNum = body.getInt();
+							maxByte = body.getInt();
+							for (int i = 0; i < arg1; i++) {
+								blkIds[i] = body.getInt();
+							}
+						} finally {
+							headerPool.release(body);
+						}
+						
+						MsgBatch<V, W, M, I> batch = comm.obtainMsgBatch(
+								arg0, blkIds, arg2, arg3, maxPackNum, maxByte);
+						header.clear();
+						if (batch == null) {
+							header.put(ERROR);
+							header.flip();
+							writeFully(this.channel, header);
+						} else {
+							header.put(OK);
+							header.putInt(batch.getCursor()).putInt(batch.size());
+							if (batch.size() == 0) {
+								header.flip();
+								writeFully(this.channel, header);
+							}
+							for (int i = 0; i < batch.size(); i++) {
+								header.putInt(batch.getBlkId(i));
+								batch.getPack(i).writeTo(this.channel, header);
+								header.clear();
+							}
+						}
+					} else {
+						throw new IOException("invalid op " + op);
+					}
+				}
+			} catch (IOException e) {
+				if (running) {
+					LOG.warn("data channel is closed", e);
+				}
+			} catch (Exception e) {
+				LOG.error("fatal unknown error", e);
+			} finally {
+				headerPool.release(header);
+				accepted.remove(this.channel);
+				close(this.channel);
+			}
+		}
+	}
+
+	public MsgTransport(CommunicationServerProtocol<V, W, M, I> _comm, 
+			int _portOffset) {
+		this.comm = _comm;
+		this.portOffset = _portOffset;
+		this.headerPool = new ByteBufferPool(128, 1024);
+		this.dataPool = new ByteBufferPool(64*1024, 1024);
+	}
+
+	/**
+	 * Listen on the given address and serve requests in background.
+	 * @param addr address of {@link CommunicationServer}
+	 * @throws IOException
+	 */
+	public void start(InetSocketAddress addr) throws IOException {
+		InetSocketAddress dataAddr = getDataAddress(addr);
+		this.server = ServerSocketChannel.open();
+		this.server.socket().setReuseAddress(true);
+		this.server.socket().bind(dataAddr);
+		this.handlers = Executors.newCachedThreadPool();
+		this.running = true;
+		
+		this.acceptor = new Thread("MsgTransport acceptor " + dataAddr) {
+			@Override
+			public void run() {
+				while (running) {
+					try {
+						SocketChannel channel = server.accept();
+						channel.socket().setTcpNoDelay(true);
+						accepted.add(channel);
+						handlers.execute(new Handler(channel));
+					} catch (IOException e) {
+						if (running) {
+							LOG.error("accept", e);
+						}
+					}
+				}
+			}
+		};
+		this.acceptor.setDaemon(true);
+		this.acceptor.start();
+		LOG.info("data plane listens on " + dataAddr);
+	}
+
+	/**
+	 * Send one {@link MsgPack} to the task at "addr",
+	 * the same as {@link CommunicationServerProtocol}.recMsgData().
+	 * @param addr address of the remote {@link CommunicationServer}
+	 * @param srcParId
+	 * @param pack
+	 * @return #messages on disk
+	 * @throws IOException
+	 */
+	public long push(InetSocketAddress addr, int srcParId,
+			MsgPack<V, W, M, I> pack) throws IOException {
+		SocketChannel channel = borrow(addr);
+		ByteBuffer header = this.headerPool.acquire(
+				REQUEST_BYTE+MsgPack.HEADER_BYTE);
+		try {
+			header.putInt(PUSH).putInt(srcParId).putInt(0).putInt(0).putInt(0);
+			pack.writeTo(channel, header);
+			header.clear();
+			header.limit(8);
+			readFully(channel, header, false);
+			header.flip();
+			long result = header.getLong();
+			giveBack(addr, channel);
+			return result;
+		} catch (IOException e) {
+			close(channel);
+			throw e;
+		} finally {
+			this.headerPool.release(header);
+		}
+	}
+
+	/**
+	 * Obtain one {@link MsgBatch} from the task at "addr",
+	 * the same as {@link CommunicationServerProtocol}.obtainMsgBatch().
+	 * Messages are kept in pooled buffers, which should be
+	 * returned by release() after being decoded.
+	 * @param addr address of the remote {@link CommunicationServer}
+	 * @param _toTaskId
+	 * @param _toBlkIds
+	 * @param _cursor
+	 * @param _iteNum
+	 * @param _maxPackNum
+	 * @param _maxByte
+	 * @return
+	 * @throws Exception
+	 */
+	public MsgBatch<V, W, M, I> obtain(InetSocketAddress addr,
+			int _toTaskId, int[] _toBlkIds, int _cursor, int _iteNum, 
+			int _maxPackNum, int _maxByte) throws Exception {
+		SocketChannel channel = borrow(addr);
+		int reqByte = REQUEST_BYTE + 4*(2+_toBlkIds.length);
+		ByteBuffer header = this.headerPool.acquire(
+				Math.max(reqByte, 4+MsgPack.HEADER_BYTE));
+		MsgBatch<V, W, M, I> batch = new MsgBatch<V, W, M, I>();
+		try {
+			header.putInt(OBTAIN).putInt(_toTaskId).putInt(_toBlkIds.length)
+				.putInt(_cursor).putInt(_iteNum);
+			header.putInt(_maxPackNum).putInt(_maxByte);
+			for (int blkId: _toBlkIds) {
+				header.putInt(blkId);
+			}
+			header.flip();
+			writeFully(channel, header);
+			header.clear();
+			header.limit(1);
+			readFully(channel, header, false);
+			header.flip();
+			if (header.get() != OK) {
+				giveBack(addr, channel);
+				throw new Exception("fail to obtain messages from " + addr);
+			}
+			header.clear();
+			header.limit(BATCH_BYTE-1);
+			readFully(channel, header, false);
+			header.flip();
+			batch.setCursor(header.getInt());
+			int num = header.getInt();
+			for (int i = 0; i < num; i++) {
+				header.clear();
+				header.limit(4);
+				readFully(channel, header, false);
+				header.flip();
+				int blkId = header.getInt();
+				batch.add(blkId, receive(channel, header));
+			}
+			giveBack(addr, channel);
+			return batch;
+		} catch (IOException e) {
+			release(batch);
+			close(channel);
+			throw e;
+		} finally {
+			this.headerPool.release(header);
+		}
+	}
+
+	/**
+	 * Return the buffer of a {@link MsgPack} obtained by obtain().
+	 * @param pack
+	 */
+	public void release(MsgPack<V, W, M, I> pack) {
+		this.dataPool.release(pack.getBuffer());
+		pack.setBuffer(null);
+	}
+
+	/**
+	 * Return buffers of all {@link MsgPack}s in a {@link MsgBatch}.
+	 * @param batch
+	 */
+	public void release(MsgBatch<V, W, M, I> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			release(batch.getPack(i));
+		}
+	}
+
+	/** Read one {@link MsgPack} into a pooled buffer. */
+	private MsgPack<V, W, M, I> receive(SocketChannel channel,
+			ByteBuffer header) throws IOException {
+		header.clear();
+		header.limit(MsgPack.HEADER_BYTE);
+		readFully(channel, header, false);
+		header.flip();
+		MsgPack<V, W, M, I> pack = new MsgPack<V, W, M, I>();
+		int length = pack.readHeader(header);
+		if (length > 0) {
+			ByteBuffer data = this.dataPool.acquire(length);
+			try {
+				data.limit(length);
+				readFully(channel, data, false);
+			} catch (IOException e) {
+				this.dataPool.release(data);
+				throw e;
+			}
+			data.flip();
+			pack.setBuffer(data);
+		}
+		return pack;
+	}
+
+	private InetSocketAddress getDataAddress(InetSocketAddress addr) {
+		return new InetSocketAddress(addr.getHostName(),
+				addr.getPort()+this.portOffset);
+	}
+
+	private SocketChannel borrow(InetSocketAddress addr) throws IOException {
+		ConcurrentLinkedQueue<SocketChannel> queue = this.idle.get(addr);
+		if (queue != null) {
+			SocketChannel channel = queue.poll();
+			if (channel != null) {
+				return channel;
+			}
+		}
+		
+		SocketChannel channel = SocketChannel.open(getDataAddress(addr));
+		channel.socket().setTcpNoDelay(true);
+		return channel;
+	}
+
+	private void giveBack(InetSocketAddress addr, SocketChannel channel) {
+		ConcurrentLinkedQueue<SocketChannel> queue = this.idle.get(addr);
+		if (queue == null) {
+			this.idle.putIfAbsent(addr,
+					new ConcurrentLinkedQueue<SocketChannel>());
+			queue = this.idle.get(addr);
+		}
+		queue.offer(channel);
+	}
+
+	/**
+	 * Fill the remaining bytes of "buf".
+	 * @return false if the channel is closed before any byte is read
+	 *         and "allowClosed" is true.
+	 */
+	private static boolean readFully(SocketChannel channel, ByteBuffer buf,
+			boolean allowClosed) throws IOException {
+		boolean first = true;
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) < 0) {
+				if (first && allowClosed) {
+					return false;
+				}
+				throw new EOFException("data channel is closed by peer");
+			}
+			first = false;
+		}
+		return true;
+	}
+
+	private static void writeFully(SocketChannel channel, ByteBuffer buf)
+			throws IOException {
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+	}
+
+	private static void close(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			//ignore
+		}
+	}
+
+	/** Stop the server and close all channels. */
+	public void close() {
+		this.running = false;
+		try {
+			if (this.server != null) {
+				this.server.close();
+			}
+		} catch (IOException e) {
+			LOG.warn("close data plane", e);
+		}
+		synchronized (this.accepted) {
+			for (SocketChannel channel: this.accepted) {
+				close(channel);
+			}
+		}
+		if (this.handlers != null) {
+			this.handlers.shutdownNow();
+		}
+		for (ConcurrentLinkedQueue<SocketChannel> queue: this.idle.values()) {
+			for (SocketChannel channel: queue) {
+				close(channel);
+			}
+		}
+		this.idle.clear();
+	}
+}
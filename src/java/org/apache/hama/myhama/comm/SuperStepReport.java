@@ -12,6 +12,7 @@ public class SuperStepReport implements Writable {
 	private float taskAgg;
 	
 	private int[] actVerNumBucs;
+	private int ckpVersion = -1; //the most recent durable checkpoint
 	
 	public SuperStepReport() {
 		this.counters = new Counters();
@@ -41,6 +42,19 @@ public class SuperStepReport implements Writable {
 		return this.actVerNumBucs;
 	}
 	
+	public void setCheckPointVersion(int version) {
+		this.ckpVersion = version;
+	}
+	
+	/**
+	 * Get the most recent checkpoint version which has been 
+	 * completely archived by this task, -1 if none.
+	 * @return
+	 */
+	public int getCheckPointVersion() {
+		return this.ckpVersion;
+	}
+	
 	@Override
 	public void readFields(DataInput in) throws IOException {
 		this.counters.readFields(in);
@@ -51,6 +65,7 @@ public class SuperStepReport implements Writable {
 		for (int i = 0; i < locNum; i++) {
 			this.actVerNumBucs[i] = in.readInt();
 		}
+		this.ckpVersion = in.readInt();
 	}
 
 	@Override
@@ -63,6 +78,7 @@ public class SuperStepReport implements Writable {
 		for (int i = 0; i < locNum; i++) {
 			out.writeInt(this.actVerNumBucs[i]);
 		}
+		out.writeInt(this.ckpVersion);
 	}
 	
 	@Override
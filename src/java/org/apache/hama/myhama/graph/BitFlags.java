@@ -0,0 +1,238 @@
+package org.apache.hama.myhama.graph;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * BitFlags keeps one boolean flag per local vertex in long words,
+ * i.e., 64 flags per word instead of one byte per flag in boolean[].
+ * Flags in a range, e.g., all vertices of one VBlock, are filled,
+ * counted, iterated and serialized word by word.
+ *
+ * Flags in different words can be modified by different threads,
+ * but modifying flags in the same word is not thread-safe.
+ */
+public class BitFlags {
+	private static final int WORD_SHIFT = 6; //64 bits per word
+	private final long[] words;
+	private final int num;
+
+	/**
+	 * Construct "_num" flags, all of which are false.
+	 * @param _num
+	 */
+	public BitFlags(int _num) {
+		this.num = _num;
+		this.words = new long[(_num+63) >>> WORD_SHIFT];
+	}
+
+	private BitFlags(BitFlags other) {
+		this.num = other.num;
+		this.words = other.words.clone();
+	}
+
+	/** Return a snapshot of all flags. */
+	public BitFlags copy() {
+		return new BitFlags(this);
+	}
+
+	public int size() {
+		return this.num;
+	}
+
+	public boolean get(int idx) {
+		return (this.words[idx>>>WORD_SHIFT] & (1L<<idx)) != 0;
+	}
+
+	public void set(int idx, boolean flag) {
+		if (flag) {
+			this.words[idx>>>WORD_SHIFT] |= (1L<<idx);
+		} else {
+			this.words[idx>>>WORD_SHIFT] &= ~(1L<<idx);
+		}
+	}
+
+	/**
+	 * Set flags in [_fromIdx, _toIdx) as "flag".
+	 * @param _fromIdx inclusive
+	 * @param _toIdx exclusive
+	 * @param flag
+	 */
+	public void fill(int _fromIdx, int _toIdx, boolean flag) {
+		if (_fromIdx >= _toIdx) {
+			return;
+		}
+		int first = _fromIdx >>> WORD_SHIFT, last = (_toIdx-1) >>> WORD_SHIFT;
+		long firstMask = -1L << _fromIdx, lastMask = -1L >>> -_toIdx;
+		if (first == last) {
+			fillWord(first, firstMask&lastMask, flag);
+			return;
+		}
+
+		fillWord(first, firstMask, flag);
+		for (int w = first+1; w < last; w++) {
+			this.words[w] = flag? -1L:0L;
+		}
+		fillWord(last, lastMask, flag);
+	}
+
+	private void fillWord(int w, long mask, boolean flag) {
+		if (flag) {
+			this.words[w] |= mask;
+		} else {
+			this.words[w] &= ~mask;
+		}
+	}
+
+	/**
+	 * Count true flags in [_fromIdx, _toIdx) by popcount.
+	 * @param _fromIdx inclusive
+	 * @param _toIdx exclusive
+	 * @return
+	 */
+	public int cardinality(int _fromIdx, int _toIdx) {
+		if (_fromIdx >= _toIdx) {
+			return 0;
+		}
+		int first = _fromIdx >>> WORD_SHIFT, last = (_toIdx-1) >>> WORD_SHIFT;
+		long firstMask = -1L << _fromIdx, lastMask = -1L >>> -_toIdx;
+		if (first == last) {
+			return Long.bitCount(this.words[first] & firstMask & lastMask);
+		}
+
+		int count = Long.bitCount(this.words[first] & firstMask);
+		for (int w = first+1; w < last; w++) {
+			count += Long.bitCount(this.words[w]);
+		}
+		return count + Long.bitCount(this.words[last] & lastMask);
+	}
+
+	/**
+	 * Return the index of the first true flag at or after _fromIdx,
+	 * -1 if no such flag exists. Words with all flags false are skipped.
+	 * @param _fromIdx
+	 * @return
+	 */
+	public int nextSetBit(int _fromIdx) {
+		if (_fromIdx >= this.num) {
+			return -1;
+		}
+		int w = _fromIdx >>> WORD_SHIFT;
+		long word = this.words[w] & (-1L << _fromIdx);
+		while (true) {
+			if (word != 0) {
+				int idx = (w<<WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+				return idx<this.num? idx:-1;
+			}
+			if (++w == this.words.length) {
+				return -1;
+			}
+			word = this.words[w];
+		}
+	}
+
+	/**
+	 * Number of bytes required to serialize "_num" flags.
+	 * @param _num
+	 * @return
+	 */
+	public static int getNumOfBytes(int _num) {
+		return ((_num+63) >>> WORD_SHIFT) << 3;
+	}
+
+	/**
+	 * Write flags in [_fromIdx, _toIdx) into "out", 64 flags per long,
+	 * where the first flag is the lowest bit of the first long.
+	 * getNumOfBytes(_toIdx-_fromIdx) bytes are written.
+	 * @param out
+	 * @param _fromIdx inclusive
+	 * @param _toIdx exclusive
+	 */
+	public void write(ByteBuffer out, int _fromIdx, int _toIdx) {
+		for (int idx = _fromIdx; idx < _toIdx; idx += 64) {
+			int len = Math.min(64, _toIdx-idx);
+			long bits = getBits(idx);
+			out.putLong(len==64? bits:(bits & ((1L<<len)-1)));
+		}
+	}
+
+	/**
+	 * Read flags in [_fromIdx, _toIdx) written by write().
+	 * @param in
+	 * @param _fromIdx inclusive
+	 * @param _toIdx exclusive
+	 */
+	public void read(ByteBuffer in, int _fromIdx, int _toIdx) {
+		for (int idx = _fromIdx; idx < _toIdx; idx += 64) {
+			putBits(idx, in.getLong(), Math.min(64, _toIdx-idx));
+		}
+	}
+
+	/** Return 64 flags starting from idx, as the lowest bit. */
+	private long getBits(int idx) {
+		int w = idx >>> WORD_SHIFT, s = idx & 63;
+		long bits = this.words[w] >>> s;
+		if (s!=0 && w+1<this.words.length) {
+			bits |= this.words[w+1] << (64-s);
+		}
+		return bits;
+	}
+
+	/** Replace "len" flags starting from idx by the lowest bits. */
+	private void putBits(int idx, long bits, int len) {
+		long mask = len==64? -1L:((1L<<len)-1);
+		bits &= mask;
+		int w = idx >>> WORD_SHIFT, s = idx & 63;
+		this.words[w] = (this.words[w] & ~(mask<<s)) | (bits<<s);
+		if (s!=0 && s+len>64) {
+			int r = 64 - s;
+			this.words[w+1] = (this.words[w+1] & ~(mask>>>r)) | (bits>>>r);
+		}
+	}
+
+	/**
+	 * Serialize flags in [_fromIdx, _toIdx) into a local file by write().
+	 * @param _fromIdx inclusive
+	 * @param _toIdx exclusive
+	 * @param output
+	 * @return #bytes
+	 * @throws Exception
+	 */
+	public long serialize(int _fromIdx, int _toIdx, File output)
+			throws Exception {
+		long numOfBytes = getNumOfBytes(_toIdx-_fromIdx);
+		RandomAccessFile raf = new RandomAccessFile(output, "rw");
+		FileChannel fc = raf.getChannel();
+		MappedByteBuffer mbb =
+			fc.map(FileChannel.MapMode.READ_WRITE, 0L, numOfBytes);
+		write(mbb, _fromIdx, _toIdx);
+		fc.close();
+		raf.close();
+		return numOfBytes;
+	}
+
+	/**
+	 * Deserialize flags in [_fromIdx, _toIdx) from a local file
+	 * written by serialize().
+	 * @param _fromIdx inclusive
+	 * @param _toIdx exclusive
+	 * @param input
+	 * @return #bytes
+	 * @throws Exception
+	 */
+	public long deserialize(int _fromIdx, int _toIdx, File input)
+			throws Exception {
+		long numOfBytes = getNumOfBytes(_toIdx-_fromIdx);
+		RandomAccessFile raf = new RandomAccessFile(input, "r");
+		FileChannel fc = raf.getChannel();
+		MappedByteBuffer mbb =
+			fc.map(FileChannel.MapMode.READ_ONLY, 0L, numOfBytes);
+		read(mbb, _fromIdx, _toIdx);
+		fc.close();
+		raf.close();
+		return numOfBytes;
+	}
+}
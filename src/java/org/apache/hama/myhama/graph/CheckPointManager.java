@@ -1,47 +1,94 @@
 package org.apache.hama.myhama.graph;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hama.bsp.BSPJob;
 import org.apache.hama.bsp.TaskAttemptID;
-import org.apache.hama.myhama.io.KeyValueInputFormat;
-import org.apache.hama.myhama.io.RecordReader;
-import org.apache.hama.myhama.io.RecordWriter;
-import org.apache.hama.myhama.io.TextBSPFileOutputFormat;
 
 /**
- * A simple checkpointing-based fault-tolerance method. 
- * Data are archived periodically and then any failure 
+ * A simple checkpointing-based fault-tolerance method.
+ * Data are archived periodically and then any failure
  * can be recovered from the most recent available checkpoint.
- * 
+ *
+ * A checkpoint file is binary and streamed VBlock by VBlock:
+ * header: magic, format, prevVersion, compressed?, [codec], checksum?;
+ * VBlock: bid, verMinId, verNum, #flagBytes, actFlags, resFlags,
+ *         #valueBytes (-1 if values are not archived), [values], [crc32];
+ * end:    -1.
+ * Flags are written word by word by {@link BitFlags} and values are raw bytes
+ * of the local VBlock value file, i.e., written by serVerValue().
+ * Only VBlocks are compressed, the header never.
+ *
+ * A full checkpoint (prevVersion=-1) archives values of all VBlocks.
+ * A delta checkpoint only archives values of VBlocks re-written since
+ * prevVersion, but flags of all VBlocks. Checkpoints from the last full
+ * one to the most recent one form a chain, which is replayed from the
+ * newest to the oldest when loading. The chain is compacted by archiving
+ * a full checkpoint every {@link BSPJob}.getCheckPointCompactInterval().
+ *
  * @author zhigang
- * @version 0.2 (March 8, 2017)
+ * @version 0.3
  */
 public class CheckPointManager {
 	private static final Log LOG = LogFactory.getLog(CheckPointManager.class);
+	private static final int MAGIC = 0x48474350; //"HGCP"
+	private static final int FORMAT = 3;
+	private static final int END_OF_CKP = -1;
+	private static final int IO_BUF_SIZE = 64 * 1024;
+
 	private BSPJob jobConf;
 	private String ckpTaskDir;
 	private int lastCkpVersion; //the last checkpoint
-	
-	private RecordWriter<Text, Text> output;
-	private RecordReader<Text,Text> input;
-	
+	/** versions from the last full checkpoint to lastCkpVersion */
+	private ArrayList<Integer> chain;
+
+	private byte[] ioBuf; //reused to copy values
+	private byte[] flagBuf; //reused to pack flags
+	private CRC32 crc;
+	private boolean checksum;
+	private boolean isDelta;
+
+	private DataOutputStream output;
+	/** input streams of a chain, the newest first */
+	private ArrayList<DataInputStream> inputs;
+	private ArrayList<Boolean> inputChecksums;
+	private long ckpBytes; //bytes of vertex values and flags
+
 	/**
 	 * Construct CheckPointManager class.
 	 * @param _jobConf
 	 * @param _taskId
 	 * @param _ckpJobDir
 	 */
-	public CheckPointManager(BSPJob _jobConf, TaskAttemptID _taskId, 
+	public CheckPointManager(BSPJob _jobConf, TaskAttemptID _taskId,
 			String _ckpJobDir) throws Exception {
 		jobConf = _jobConf;
 		output = null;
-		input = null;
+		inputs = new ArrayList<DataInputStream>();
+		inputChecksums = new ArrayList<Boolean>();
 		lastCkpVersion = -1;
-		
+		chain = new ArrayList<Integer>();
+		ioBuf = new byte[IO_BUF_SIZE];
+		flagBuf = new byte[0];
+		crc = new CRC32();
+
 		Path path = new Path(_ckpJobDir, "task-"+_taskId.getIntegerId());
 		FileSystem fs = path.getFileSystem(jobConf.getConf());
 		if (fs.mkdirs(path)) {
@@ -49,89 +96,317 @@ public class CheckPointManager {
 		} else {
 			LOG.error("\nfail to create checkpoint dir:" + path.toString());
 		}
-		
+
 		ckpTaskDir = path.toString();
 	}
-	
+
 	/**
-	 * Prepare to archive a new checkpoint
+	 * Prepare to archive a new checkpoint. It is a delta one if
+	 * delta checkpoint is enabled and the current chain is not full.
 	 * @param _newVersion
+	 * @return true if only values of re-written VBlocks are required.
 	 * @throws Exception
 	 */
-	public void befArchive(int _newVersion) throws Exception {
+	public boolean befArchive(int _newVersion) throws Exception {
 		if (_newVersion < 0) {
-			return;
+			return false;
+		}
+		isDelta = jobConf.isDeltaCheckPoint() && (lastCkpVersion >= 0)
+			&& (chain.size() < jobConf.getCheckPointCompactInterval());
+
+		Path path = getPath(_newVersion);
+		FileSystem fs = path.getFileSystem(jobConf.getConf());
+		FSDataOutputStream out = fs.create(path, true);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT);
+		out.writeInt(isDelta? lastCkpVersion:-1);
+		out.writeBoolean(jobConf.isCompressCheckPoint());
+		Class<? extends CompressionCodec> codecClass = null;
+		if (jobConf.isCompressCheckPoint()) {
+			codecClass = jobConf.getCheckPointCompressCodec();
+			out.writeUTF(codecClass.getName());
 		}
-		TextBSPFileOutputFormat outputFormat = new TextBSPFileOutputFormat();
-		outputFormat.initialize(jobConf.getConf());
-		output = outputFormat.getRecordWriter(jobConf, getPath(_newVersion));
+		this.checksum = jobConf.isCheckPointChecksum();
+		out.writeBoolean(this.checksum);
+		//some codecs write their own header when creating the stream
+		OutputStream stream = out;
+		if (codecClass != null) {
+			CompressionCodec codec =
+				ReflectionUtils.newInstance(codecClass, jobConf.getConf());
+			stream = codec.createOutputStream(out);
+		}
+		output = new DataOutputStream(stream);
+		ckpBytes = 0L;
+		return isDelta;
 	}
-	
+
 	/**
-	 * Archive a vertex_id and vertex_value.
-	 * @param key
-	 * @param value
+	 * Archive one VBlock, including flags of vertices
+	 * in [_fromIdx, _fromIdx+_verNum) and the whole value file.
+	 * @param bid
+	 * @param verMinId
+	 * @param verNum
+	 * @param actFlag
+	 * @param resFlag
+	 * @param fromIdx index of the first vertex in flags
+	 * @param values value file of this VBlock, null if values
+	 *        are not changed since the previous checkpoint
 	 * @throws Exception
 	 */
-	public void archive(String key, String value) throws Exception {
-		output.write(new Text(key), new Text(value));
+	public void archiveBlock(int bid, int verMinId, int verNum,
+			BitFlags actFlag, BitFlags resFlag, int fromIdx,
+			ByteBuffer values) throws Exception {
+		int flagBytes = BitFlags.getNumOfBytes(verNum);
+		if (flagBuf.length < flagBytes) {
+			flagBuf = new byte[flagBytes];
+		}
+		crc.reset();
+		output.writeInt(bid);
+		output.writeInt(verMinId);
+		output.writeInt(verNum);
+		output.writeInt(flagBytes);
+		actFlag.write(ByteBuffer.wrap(flagBuf), fromIdx, fromIdx+verNum);
+		output.write(flagBuf, 0, flagBytes);
+		crc.update(flagBuf, 0, flagBytes);
+		resFlag.write(ByteBuffer.wrap(flagBuf), fromIdx, fromIdx+verNum);
+		output.write(flagBuf, 0, flagBytes);
+		crc.update(flagBuf, 0, flagBytes);
+
+		long valueBytes = values==null? -1L:values.remaining();
+		output.writeLong(valueBytes);
+		while (values!=null && values.hasRemaining()) {
+			int len = Math.min(ioBuf.length, values.remaining());
+			values.get(ioBuf, 0, len);
+			output.write(ioBuf, 0, len);
+			crc.update(ioBuf, 0, len);
+		}
+		if (checksum) {
+			output.writeLong(crc.getValue());
+		}
+		ckpBytes += (2L*flagBytes + Math.max(0L, valueBytes));
 	}
-	
+
 	/**
 	 * Cleanup after archiving checkpoint.
 	 * @param _newVersion
+	 * @return bytes of archived flags and values
 	 * @throws Exception
 	 */
-	public void aftArchive(int _newVersion) throws Exception {
-		output.close(this.jobConf);
-		
-		/** delete old checkpoint to save storage space */
-		if (lastCkpVersion > 0) {
-			Path delPath = getPath(lastCkpVersion);
-			FileSystem fs = delPath.getFileSystem(jobConf.getConf());
-			fs.delete(delPath, true);
-			fs.close();
-		}
-		
+	public long aftArchive(int _newVersion) throws Exception {
+		output.writeInt(END_OF_CKP);
+		output.close();
+
+		if (isDelta) {
+			chain.add(_newVersion);
+		} else {
+			/** delete the old chain to save storage space */
+			for (int version: chain) {
+				if (version > 0) {
+					Path delPath = getPath(version);
+					FileSystem fs = delPath.getFileSystem(jobConf.getConf());
+					fs.delete(delPath, true);
+				}
+			}
+			chain.clear();
+			chain.add(_newVersion);
+		}
+
 		output = null;
 		lastCkpVersion = _newVersion;
+		return ckpBytes;
 	}
-	
+
 	/**
-	 * Get {@link RecordReader} of an existing checkpoint file.
+	 * Open the chain of an existing checkpoint.
 	 * @param int the most recent available checkpoint version
-	 * @return NULL if no checkpoint is available
+	 * @return false if no checkpoint is available
 	 * @throws Exception
 	 */
-	public RecordReader<Text, Text> befLoad(int readyCkpVersion) throws Exception {
+	public boolean befLoad(int readyCkpVersion) throws Exception {
 		if (readyCkpVersion < 0) {
-			return null;
-		}
-		
-		KeyValueInputFormat inputFormat = new KeyValueInputFormat();
-		inputFormat.initialize(jobConf.getConf());
-		inputFormat.addCheckpointInputPath(jobConf, getPath(readyCkpVersion));
-		org.apache.hadoop.mapreduce.InputSplit split = inputFormat.getSplit(jobConf);
-		if (split == null) {
-			return null;
-		}
-		
-		input = inputFormat.createRecordReader(split, jobConf);
-		input.initialize(split, jobConf.getConf());
-		return input;
+			return false;
+		}
+
+		ArrayList<Integer> versions = new ArrayList<Integer>();
+		int version = readyCkpVersion;
+		while (version >= 0) {
+			Path path = getPath(version);
+			FileSystem fs = path.getFileSystem(jobConf.getConf());
+			if (!fs.exists(path)) {
+				if (version == readyCkpVersion) {
+					return false;
+				}
+				closeInputs();
+				throw new Exception("the checkpoint chain is broken: " + path);
+			}
+			versions.add(0, version);
+			version = openInput(fs.open(path), path);
+		}
+
+		chain = versions;
+		lastCkpVersion = readyCkpVersion;
+		ckpBytes = 0L;
+		return true;
 	}
-	
+
+	/**
+	 * Read the header and open one checkpoint file.
+	 * @return the previous version of this checkpoint, -1 if it is full.
+	 */
+	@SuppressWarnings("unchecked")
+	private int openInput(FSDataInputStream in, Path path) throws Exception {
+		if (in.readInt() != MAGIC) {
+			in.close();
+			throw new Exception("not a binary checkpoint file: " + path);
+		}
+		int format = in.readInt();
+		if (format != FORMAT) {
+			in.close();
+			throw new Exception("unsupported checkpoint format " + format
+					+ ": " + path);
+		}
+		int prevVersion = in.readInt();
+		Class<? extends CompressionCodec> codecClass = null;
+		if (in.readBoolean()) {
+			codecClass = (Class<? extends CompressionCodec>)
+				jobConf.getConf().getClassByName(in.readUTF());
+		}
+		inputChecksums.add(in.readBoolean());
+		//some codecs read their own header when creating the stream
+		InputStream stream = in;
+		if (codecClass != null) {
+			CompressionCodec codec =
+				ReflectionUtils.newInstance(codecClass, jobConf.getConf());
+			stream = codec.createInputStream(in);
+		}
+		inputs.add(new DataInputStream(stream));
+		return prevVersion;
+	}
+
+	/**
+	 * Load the next VBlock. Flags are unpacked into [fromIdx, fromIdx+verNum)
+	 * from the newest checkpoint. Values are taken from the newest checkpoint
+	 * which archives them, and directly written into the given local file.
+	 * @param bid expected VBlock id
+	 * @param verMinId expected minimum vertex id
+	 * @param verNum expected number of vertices
+	 * @param actFlag
+	 * @param resFlag
+	 * @param fromIdx index of the first vertex in flags
+	 * @param valueFile local value file of this VBlock
+	 * @throws Exception
+	 */
+	public void loadBlock(int bid, int verMinId, int verNum,
+			BitFlags actFlag, BitFlags resFlag, int fromIdx,
+			File valueFile) throws Exception {
+		boolean loaded = false;
+		for (int i = 0; i < inputs.size(); i++) {
+			DataInputStream input = inputs.get(i);
+			int ckpBid = input.readInt();
+			if (ckpBid == END_OF_CKP) {
+				throw new Exception("verify error: bid=" + bid
+						+ ", but the checkpoint ends");
+			}
+			int ckpVerMinId = input.readInt(), ckpVerNum = input.readInt();
+			if (ckpBid!=bid || ckpVerMinId!=verMinId || ckpVerNum!=verNum) {
+				throw new Exception("verify error: expected (bid, verMinId, verNum)=("
+						+ bid + ", " + verMinId + ", " + verNum + "), but ("
+						+ ckpBid + ", " + ckpVerMinId + ", " + ckpVerNum + ")");
+			}
+
+			int flagBytes = input.readInt();
+			if (flagBuf.length < flagBytes) {
+				flagBuf = new byte[flagBytes];
+			}
+			crc.reset();
+			input.readFully(flagBuf, 0, flagBytes);
+			crc.update(flagBuf, 0, flagBytes);
+			if (i == 0) {
+				actFlag.read(ByteBuffer.wrap(flagBuf), fromIdx, fromIdx+verNum);
+			}
+			input.readFully(flagBuf, 0, flagBytes);
+			crc.update(flagBuf, 0, flagBytes);
+			if (i == 0) {
+				resFlag.read(ByteBuffer.wrap(flagBuf), fromIdx, fromIdx+verNum);
+				ckpBytes += 2L*flagBytes;
+			}
+
+			long valueBytes = input.readLong();
+			if (valueBytes >= 0) {
+				if (loaded) {
+					copyValues(input, valueBytes, null); //skip
+				} else {
+					copyValues(input, valueBytes, valueFile);
+					ckpBytes += valueBytes;
+					loaded = true;
+				}
+			}
+			if (inputChecksums.get(i) && input.readLong()!=crc.getValue()) {
+				throw new IOException("checksum error of VBlock " + bid
+						+ " in the checkpoint version-" + chain.get(chain.size()-1-i));
+			}
+		}
+
+		if (!loaded) {
+			throw new Exception("verify error: values of VBlock " + bid
+					+ " are not archived in the checkpoint chain " + chain);
+		}
+	}
+
+	/**
+	 * Copy values from the checkpoint into a local file,
+	 * or skip them if the file is null.
+	 */
+	private void copyValues(DataInputStream input, long valueBytes,
+			File valueFile) throws IOException {
+		FileOutputStream fos = null;
+		if (valueFile != null) {
+			if (valueFile.exists()) {
+				valueFile.delete();
+			}
+			fos = new FileOutputStream(valueFile);
+		}
+		try {
+			long remaining = valueBytes;
+			while (remaining > 0) {
+				int len = (int)Math.min(ioBuf.length, remaining);
+				input.readFully(ioBuf, 0, len);
+				if (fos != null) {
+					fos.write(ioBuf, 0, len);
+				}
+				crc.update(ioBuf, 0, len);
+				remaining -= len;
+			}
+		} finally {
+			if (fos != null) {
+				fos.close();
+			}
+		}
+	}
+
 	/**
 	 * Cleanup after loading checkpoint.
+	 * @return bytes of loaded flags and values
 	 * @throws Exception
 	 */
-	public void aftLoad() throws Exception {
-		if (input != null) {
-			input.close();
-			input = null;
+	public long aftLoad() throws Exception {
+		for (DataInputStream input: inputs) {
+			if (input.readInt() != END_OF_CKP) {
+				LOG.warn("more VBlocks are archived than loaded");
+			}
 		}
+		closeInputs();
+		return ckpBytes;
 	}
 	
+	private void closeInputs() throws IOException {
+		for (DataInputStream input: inputs) {
+			input.close();
+		}
+		inputs.clear();
+		inputChecksums.clear();
+	}
+
 	/**
 	 * Get the outputpath for checkpoint file.
 	 * @param version
@@ -140,4 +415,4 @@ public class CheckPointManager {
 	private Path getPath(int version) {
 		return new Path(ckpTaskDir, "ckp-" + version);
 	}
-}
\ No newline at end of file
+}
@@ -12,7 +12,7 @@ import org.apache.hama.myhama.api.GraphRecord;
 public class EdgeFragment<V, W, M, I> {
 	protected int verId;
 	protected int edgeNum;
-	protected Integer[] edgeIds;
+	protected int[] edgeIds;
 	protected W[] edgeWeights;
 	
 	/**
@@ -21,7 +21,7 @@ public class EdgeFragment<V, W, M, I> {
 	 */
 	public EdgeFragment(int _verId) { verId = _verId; }
 	
-	public void initialize(Integer[] _edgeIds, W[] _edgeWeights) {
+	public void initialize(int[] _edgeIds, W[] _edgeWeights) {
 		edgeIds = _edgeIds;
 		edgeWeights = _edgeWeights;
 		edgeNum = _edgeIds==null? 0:edgeIds.length;
@@ -35,7 +35,7 @@ public class EdgeFragment<V, W, M, I> {
 		return this.verId;
 	}
 	
-	public Integer[] getEdgeIds() {
+	public int[] getEdgeIds() {
 		return this.edgeIds;
 	}
 	
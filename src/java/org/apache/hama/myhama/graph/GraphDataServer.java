@@ -4,6 +4,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -19,12 +20,15 @@ import org.apache.hama.bsp.TaskAttemptID;
 import org.apache.hama.monitor.TaskInformation;
 import org.apache.hama.myhama.api.BSP;
 import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MessageSink;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.api.UserTool;
 import org.apache.hama.myhama.comm.CommRouteTable;
 import org.apache.hama.myhama.comm.MsgPack;
 import org.apache.hama.myhama.io.InputFormat;
 import org.apache.hama.myhama.io.RecordReader;
+import org.apache.hama.myhama.util.Context;
+import org.apache.hama.myhama.util.GraphContext;
 
 /**
  * GraphDataServer used to manage graph data. 
@@ -38,6 +42,8 @@ import org.apache.hama.myhama.io.RecordReader;
  */
 public abstract class GraphDataServer<V, W, M, I> {
 	private static final Log LOG = LogFactory.getLog(GraphDataServer.class);
+	/** #vertices per bin of the degree histogram is 2^HIST_BIN_SHIFT */
+	private static final int HIST_BIN_SHIFT = 6;
 	
 	protected BSPJob job;
 	protected RecordReader<?,?> input; //used to load graph data
@@ -65,7 +71,7 @@ public abstract class GraphDataServer<V, W, M, I> {
 	 *  True as default.
 	 *  True: this source vertex needs to be updated/computed 
 	 *  */
-	protected boolean[] actFlag;
+	protected BitFlags actFlag;
 	/** 
 	 * Responding-flag, accessed by two threads. 
 	 * Flags at superstep t are read by getMsg(), i.e., pull-respond(), 
@@ -73,7 +79,7 @@ public abstract class GraphDataServer<V, W, M, I> {
 	 *   i.e., pull-request().
 	 * All flags are false by default.
 	 * True: this source vertex must send messages to its neighbors. */
-	protected boolean[][] resFlag;
+	protected BitFlags[] resFlag;
 	
 	protected GraphRecord<V, W, M, I> graph_rw;
 	protected Long read_adj_edge; //read edges in the adjacency list
@@ -92,6 +98,8 @@ public abstract class GraphDataServer<V, W, M, I> {
 	protected ArrayList<Integer>[] msgBufLen;
 	protected boolean[] proMsgOver;
 	protected int[] packageVersion;
+	/** reusable buffers to respond pulling requests, one per requesting task */
+	protected MsgResponseBuffer<V, W, M, I>[] resBufs;
 	/** memory usage */
 	protected long memUsedByMetaData = 0L; //including VBlocks and EBlocks
 	//the maximal memory usage for messages in b-pull
@@ -100,7 +108,7 @@ public abstract class GraphDataServer<V, W, M, I> {
 	protected CheckPointManager ckpMgr; //checkpoint
 	
 	protected int uncompletedIteration; //location where failures happen
-	protected MsgDataServer msgDataServer;
+	protected MsgDataServer<V, W, M, I> msgDataServer;
 	
 	/**
 	 * Skip the read operation of logged messages when recovering 
@@ -115,7 +123,13 @@ public abstract class GraphDataServer<V, W, M, I> {
 	protected long io_byte_flags; //for failure recovery
 	
 	protected int[] degree; //degree per vertex; out-degree for directed graph
+	/** VBlock boundaries balanced by edges, null if not required */
+	private int[] edgeBalancedBlkMinIds;
 	protected int[] fragments; //# of fragments per vertex (PULL/Hybrid)
+	/** mirrors of hubs, null if not required */
+	protected HubMirrorMgr<V, W, M, I> mirrorMgr;
+	/** reusable buffer to generate messages along mirrored edges */
+	private MsgResponseBuffer<V, W, M, I> mirrorResBuf;
 	
 	@SuppressWarnings("unchecked")
 	public GraphDataServer(int _taskId, BSPJob _job) {
@@ -179,6 +193,7 @@ public abstract class GraphDataServer<V, W, M, I> {
 	 * @param _commRT
 	 * @throws Exception
 	 */
+	@SuppressWarnings("unchecked")
 	public void initialize(TaskInformation taskInfo, 
 			final CommRouteTable<V, W, M, I> _commRT, 
 			TaskAttemptID taskAttId) throws Exception {
@@ -189,19 +204,18 @@ public abstract class GraphDataServer<V, W, M, I> {
 		int[] blkNumTask = commRT.getJobInformation().getBlkNumOfTasks();
 		int taskNum = commRT.getTaskNum();
 		verBlkMgr = new VerBlockMgr(taskInfo.getVerMinId(), 
-				taskInfo.getVerMaxId(), 
-				taskInfo.getBlkNum(), taskInfo.getBlkLen(), 
+				taskInfo.getVerMaxId(), taskInfo.getBlkMinIds(), 
 				taskNum, blkNumTask, bspStyle);
 		
 		//int blkNumJob = this.commRT.getJobInformation().getBlkNumOfJob();
 		
 		int verNum = this.verBlkMgr.getVerNum();
-		actFlag = new boolean[verNum]; Arrays.fill(actFlag, true);
+		actFlag = new BitFlags(verNum); actFlag.fill(0, verNum, true);
 		degree = new int[verNum];
 		fragments = new int[verNum];
-		resFlag = new boolean[2][];
-		resFlag[0] = new boolean[verNum]; Arrays.fill(resFlag[0], false);
-		resFlag[1] = new boolean[verNum]; Arrays.fill(resFlag[1], false);
+		resFlag = new BitFlags[2];
+		resFlag[0] = new BitFlags(verNum);
+		resFlag[1] = new BitFlags(verNum);
 		
 		this.io_byte_ver = 0L;
 		this.io_byte_ver_write = 0L;
@@ -219,19 +233,39 @@ public abstract class GraphDataServer<V, W, M, I> {
 			}
 			this.packageVersion = new int[sumOfBlkNum];
 			this.proMsgOver = new boolean[taskNum];
-			this.msgBufLen = new ArrayList[taskNum];
-			this.msgBuf = new ArrayList[taskNum];
+			this.msgBufLen = (ArrayList<Integer>[]) new ArrayList<?>[taskNum];
+			this.msgBuf = (ArrayList<ByteArrayOutputStream>[]) new ArrayList<?>[taskNum];
 			for (int i = 0; i < taskNum; i++) {
 				this.msgBufLen[i] = new ArrayList<Integer>();
 				this.msgBuf[i] = new ArrayList<ByteArrayOutputStream>();
 			}
+			this.resBufs = 
+				(MsgResponseBuffer<V, W, M, I>[]) new MsgResponseBuffer<?, ?, ?, ?>[taskNum];
+			for (int i = 0; i < taskNum; i++) {
+				this.resBufs[i] = 
+					new MsgResponseBuffer<V, W, M, I>(this.userTool, this.isAccumulated);
+			}
 		}
 		
 		ckpMgr = new CheckPointManager(this.job, taskAttId, 
 				this.commRT.getCheckPointDirForJob());
+		
+		if (this.job.getMirrorDegree() > 0) {
+			if (!this.job.isMirrorEnabled()) {
+				LOG.warn("mirrors are disabled, only available for " 
+						+ "Push/Pull without checkpoints, but BspStyle=" 
+						+ this.bspStyle);
+			} else {
+				this.mirrorMgr = new HubMirrorMgr<V, W, M, I>(
+						this.job.getMirrorDegree(), this.taskId, taskNum, 
+						taskInfo.getBlkNum(), this.userTool);
+				this.mirrorResBuf = 
+					new MsgResponseBuffer<V, W, M, I>(this.userTool, this.isAccumulated);
+			}
+		}
 	}
 	
-	public void bindMsgDataServer(MsgDataServer _msgDataServer) {
+	public void bindMsgDataServer(MsgDataServer<V, W, M, I> _msgDataServer) {
 		msgDataServer = _msgDataServer;
 	}
 	
@@ -251,12 +285,83 @@ public abstract class GraphDataServer<V, W, M, I> {
 			record.parseGraphData(input.getCurrentKey().toString(), 
 					input.getCurrentValue().toString());
 			id = record.getVerId();
+			if (this.job.isEdgeBalancedBlk()) {
+				this.edgeBalancedBlkMinIds = 
+					getEdgeBalancedBlkMinIds(id, record);
+			}
 		} else {
 			id = -1;
 		}
 		return id;
 	}
 	
+	/**
+	 * Get VBlock boundaries balanced by edges, computed by getVerMinId(). 
+	 * Null if not required or if there are too few vertices.
+	 * @return
+	 */
+	public int[] getEdgeBalancedBlkMinIds() {
+		return this.edgeBalancedBlkMinIds;
+	}
+	
+	/**
+	 * Scan the remaining records of the input split into a histogram of 
+	 * #edges (plus one per vertex) over bins of consecutive vertex ids, 
+	 * and then cut bins into VBlocks with nearly the same weight. 
+	 * A bin holding a few high-degree vertices is never split.
+	 * @param minId
+	 * @param record the first record, which has been parsed
+	 * @return
+	 * @throws Exception
+	 */
+	private int[] getEdgeBalancedBlkMinIds(int minId, 
+			GraphRecord<V, W, M, I> record) throws Exception {
+		long[] bins = new long[1024];
+		int binNum = 0;
+		long total = 0L;
+		do {
+			int vid = record.getVerId();
+			if (vid >= minId) {
+				int bin = (vid-minId) >>> HIST_BIN_SHIFT;
+				if (bin >= bins.length) {
+					bins = Arrays.copyOf(bins, Math.max(2*bins.length, bin+1));
+				}
+				long weight = record.getEdgeNum() + 1L;
+				bins[bin] += weight;
+				total += weight;
+				binNum = Math.max(binNum, bin+1);
+			}
+			if (!input.nextKeyValue()) {
+				break;
+			}
+			record.parseGraphData(input.getCurrentKey().toString(), 
+					input.getCurrentValue().toString());
+		} while (true);
+		
+		int blkNum = this.job.getNumBucketsPerTask();
+		if (binNum < blkNum) {
+			return null;
+		}
+		int[] mins = new int[blkNum];
+		mins[0] = minId;
+		long remain = total, acc = 0L, max = 0L;
+		for (int bin = 0, bid = 1; bin<binNum-1 && bid<blkNum; bin++) {
+			acc += bins[bin];
+			//the fair share of remaining VBlocks, or too few bins left
+			if (acc*(blkNum-bid+1) >= remain 
+					|| binNum-1-bin <= blkNum-bid) {
+				mins[bid++] = minId + ((bin+1)<<HIST_BIN_SHIFT);
+				remain -= acc;
+				max = Math.max(max, acc);
+				acc = 0L;
+			}
+		}
+		max = Math.max(max, remain);
+		LOG.info("edge-balanced VBlocks: #blocks=" + blkNum 
+				+ ", max weight=" + max + ", avg weight=" + total/blkNum);
+		return mins;
+	}
+	
 	/**
 	 * Get an integer array indicating the min vertex ids 
 	 * of each local VBlocks (i.e., buckets).
@@ -274,6 +379,15 @@ public abstract class GraphDataServer<V, W, M, I> {
 		return this.locMinVerIds;
 	}
 	
+	/**
+	 * Get metadata of the given local VBlock.
+	 * @param _bid
+	 * @return
+	 */
+	public VerBlockBeta getVerBlkBeta(int _bid) {
+		return this.verBlkMgr.getVerBlkBeta(_bid);
+	}
+	
 	/**
 	 * Get the number of responding source vertices of each VBlock.  
 	 * 
@@ -449,8 +563,8 @@ public abstract class GraphDataServer<V, W, M, I> {
 		int num = this.verBlkMgr.getVerBlkBeta(_bid).getVerNum();
 		int type = (_iteNum+1)%2;
 		int index = min - this.verBlkMgr.getVerMinId();
-		Arrays.fill(this.actFlag, index, (index+num), false);
-		Arrays.fill(this.resFlag[type], index, (index+num), false);
+		this.actFlag.fill(index, (index+num), false);
+		this.resFlag[type].fill(index, (index+num), false);
 		this.verBlkMgr.setBlkRespond(type, _bid, false);
 	}
 	
@@ -484,6 +598,278 @@ public abstract class GraphDataServer<V, W, M, I> {
 	public abstract void loadGraphData(TaskInformation taskInfo, 
 			BytesWritable rawSplit, String rawSplitClass) throws Exception;
 	
+	/**
+	 * Decompose a {@link GraphRecord} into fragments when loading. 
+	 * For a hub, only fragments targeted to the local task are 
+	 * returned, others are kept by {@link HubMirrorMgr} to be shipped 
+	 * to mirrors. Under Push, only hubs are decomposed.
+	 * @param graph
+	 * @param taskInfo
+	 * @return null if graph is not decomposed
+	 * @throws Exception
+	 */
+	protected ArrayList<EdgeFragmentEntry<V,W,M,I>> decompose(
+			GraphRecord<V, W, M, I> graph, TaskInformation taskInfo) 
+			throws Exception {
+		if (!isDecomposed(graph)) {
+			return null;
+		}
+		return putFragments(graph, graph.decompose(commRT, taskInfo));
+	}
+	
+	/**
+	 * Should graph be decomposed when loading? Thread-safe.
+	 * @param graph
+	 * @return
+	 */
+	protected boolean isDecomposed(GraphRecord<V, W, M, I> graph) {
+		return this.bspStyle!=Constants.STYLE.PUSH || isHub(graph);
+	}
+	
+	/** Is graph mirrored on remote tasks? Thread-safe. */
+	protected boolean isHub(GraphRecord<V, W, M, I> graph) {
+		return this.mirrorMgr!=null && this.mirrorMgr.isHub(graph.getEdgeNum());
+	}
+	
+	/**
+	 * Keep fragments of a hub for its mirrors, in the loading order.
+	 * @param graph
+	 * @param frags all fragments of graph
+	 * @return fragments to be kept in local EBlocks
+	 * @throws Exception
+	 */
+	protected ArrayList<EdgeFragmentEntry<V,W,M,I>> putFragments(
+			GraphRecord<V, W, M, I> graph, 
+			ArrayList<EdgeFragmentEntry<V,W,M,I>> frags) throws Exception {
+		return isHub(graph)? this.mirrorMgr.putHub(graph, frags):frags;
+	}
+	
+	/**
+	 * Ship edges of local hubs to their mirrors. 
+	 * Invoked after the registerTask() barrier, when all tasks 
+	 * are ready to receive them.
+	 * @throws Exception
+	 */
+	public void sendMirrorEdges() throws Exception {
+		if (this.mirrorMgr == null) {
+			return;
+		}
+		
+		for (int tid = 0; tid < this.commRT.getTaskNum(); tid++) {
+			BytesWritable edges = this.mirrorMgr.removeMirrorEdges(tid);
+			if (edges != null && this.commRT.getCommServer(
+					this.commRT.getInetSocketAddress(tid))
+					.recMirrorEdges(this.taskId, edges) < 0) {
+				throw new Exception("fail to ship mirrored edges to task-" + tid);
+			}
+		}
+		LOG.info("ship edges of " + this.mirrorMgr.getHubNum() 
+				+ " hubs to mirrors");
+	}
+	
+	/**
+	 * Keep edges of hubs mirrored on this task, shipped by one source task.
+	 * @param edges
+	 * @return #edges
+	 */
+	public long recMirrorEdges(BytesWritable edges) throws Exception {
+		return this.mirrorMgr.putMirrorEdges(edges);
+	}
+	
+	/**
+	 * Keep the value of a responding vertex for its mirrors, 
+	 * if it is a hub. Invoked by the computing thread.
+	 * @param graph
+	 * @throws Exception
+	 */
+	public void putMirrorValue(GraphRecord<V, W, M, I> graph) 
+			throws Exception {
+		if (this.mirrorMgr != null) {
+			this.mirrorMgr.putValue(graph);
+		}
+	}
+	
+	/**
+	 * Send values of responding hubs to their mirrors, one RPC per task, 
+	 * at the end of local computations.
+	 * @param _iteNum
+	 * @return #messages generated by mirrors under Push, which are 
+	 *         counted as produced by this task
+	 * @throws Exception
+	 */
+	public long sendMirrorValues(int _iteNum) throws Exception {
+		if (this.mirrorMgr == null) {
+			return 0L;
+		}
+		
+		long msgNum = 0L;
+		for (int tid = 0; tid < this.commRT.getTaskNum(); tid++) {
+			BytesWritable values = this.mirrorMgr.removeValues(tid);
+			if (values == null) {
+				continue;
+			}
+			long num = this.commRT.getCommServer(
+					this.commRT.getInetSocketAddress(tid))
+					.recMirrorValues(this.taskId, _iteNum, values);
+			if (num < 0) {
+				throw new Exception("fail to send values to mirrors on task-" + tid);
+			}
+			msgNum += num;
+		}
+		return msgNum;
+	}
+	
+	/**
+	 * Receive values of hubs sent by one source task at the _iteNum-th 
+	 * superstep. Under Push, messages along mirrored edges are generated 
+	 * and received immediately. Under Pull, values are kept until 
+	 * pullMirrorMsg() at the next superstep.
+	 * @param _srcParId
+	 * @param _iteNum
+	 * @param values
+	 * @return #messages generated under Push
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	public long recMirrorValues(int _srcParId, int _iteNum, 
+			BytesWritable values) throws Exception {
+		boolean push = (this.bspStyle==Constants.STYLE.PUSH);
+		HashMap<Integer, V> received = 
+			this.mirrorMgr.putValues(values, _iteNum, !push);
+		if (!push) {
+			return 0L;
+		}
+		
+		GraphContext<V, W, M, I> context = 
+			new GraphContext<V, W, M, I>(this.taskId, this.job, 
+					_iteNum, Constants.STYLE.PUSH, this.commRT);
+		final ArrayList<MsgRecord<M>> result = new ArrayList<MsgRecord<M>>();
+		/** records are kept by the receiving buffer, so each one is new */
+		MessageSink<M> sink = new MessageSink<M>() {
+			@Override
+			public void emit(int srcId, int dstId, M msgValue) {
+				MsgRecord<M> msg = userTool.getMsgRecord();
+				msg.initialize(srcId, dstId, msgValue);
+				result.add(msg);
+			}
+			
+			@Override
+			public void emit(MsgRecord<M> msg) {
+				emit(msg.getSrcVerId(), msg.getDstVerId(), msg.getMsgValue());
+			}
+		};
+		for (int bid = 0; bid < this.verBlkMgr.getBlkNum(); bid++) {
+			for (GraphRecord<V, W, M, I> mirror: this.mirrorMgr.getMirrors(bid)) {
+				V value = received.get(mirror.getVerId());
+				if (value == null) {
+					continue;
+				}
+				mirror.setVerValue(value);
+				context.reset();
+				context.initialize(mirror, null, 0.0f, true, 
+						this.mirrorMgr.getDegree(mirror.getVerId()));
+				this.bsp.getMessages(context, sink);
+			}
+		}
+		
+		if (result.size() > 0) {
+			MsgRecord<M>[] msgs = result.toArray(
+					(MsgRecord<M>[]) new MsgRecord<?>[result.size()]);
+			MsgPack<V, W, M, I> pack = new MsgPack<V, W, M, I>(this.userTool);
+			pack.setLocal(msgs, msgs.length, msgs.length, msgs.length, 0L);
+			if (this.msgDataServer.recMsgData(_srcParId, pack) < 0) {
+				throw new Exception("fail to receive messages of mirrors");
+			}
+		}
+		return result.size();
+	}
+	
+	/**
+	 * Does the given local VBlock have mirrored edges?
+	 * @param _bid
+	 * @return
+	 */
+	public boolean hasMirrors(int _bid) {
+		return this.mirrorMgr!=null && this.mirrorMgr.hasMirrors(_bid);
+	}
+	
+	/**
+	 * Generate messages along edges mirrored in the _bid-th local VBlock 
+	 * by values of hubs received at the previous superstep, and then put 
+	 * them into {@link MsgDataServer}, like messages pulled from source 
+	 * tasks by getMsg(). 
+	 * @param _bid
+	 * @param _iteNum
+	 * @return edge_read, fragment_read, msg_pro, msg_rec
+	 * @throws Exception
+	 */
+	public synchronized long[] pullMirrorMsg(int _bid, int _iteNum) 
+			throws Exception {
+		VerBlockBeta vBeta = this.verBlkMgr.getVerBlkBeta(_bid);
+		MsgResponseBuffer<V, W, M, I> resBuf = this.mirrorResBuf;
+		resBuf.prepare(vBeta.getVerMinId(), vBeta.getVerMaxId());
+		long[] statis = resBuf.getStatis();
+		GraphContext<V, W, M, I> context = 
+			resBuf.getContext(this.taskId, this.job, 
+					_iteNum, Constants.STYLE.PULL, this.commRT);
+		for (GraphRecord<V, W, M, I> mirror: this.mirrorMgr.getMirrors(_bid)) {
+			V value = this.mirrorMgr.getValue(mirror.getVerId(), _iteNum-1);
+			if (value == null) {
+				continue; //the hub does not respond
+			}
+			mirror.setVerValue(value);
+			statis[1] += mirror.getEdgeNum(); //edge_read
+			statis[2]++; //fragment_read
+			context.reset();
+			context.initialize(mirror, null, 0.0f, true, 
+					this.mirrorMgr.getDegree(mirror.getVerId()));
+			this.bsp.getMessages(context, resBuf);
+		}
+		
+		if (statis[5] > 0) {
+			MsgPack<V, W, M, I> pack = new MsgPack<V, W, M, I>(this.userTool);
+			pack.setLocal(resBuf.getLocalMsgs(), (int)statis[5], 
+					statis[3], statis[5], 0L);
+			if (!this.msgDataServer.putIntoBuf(_bid, _iteNum, pack)) {
+				throw new Exception("fail to receive messages of mirrors");
+			}
+		}
+		return new long[] {statis[1], statis[2], statis[3], statis[5]};
+	}
+	
+	/**
+	 * Generate messages of the vertex in context under Push. 
+	 * For a hub, only its local edges are used, since messages 
+	 * along other edges are generated by its mirrors. Edges of 
+	 * the {@link GraphRecord} are restored before returning.
+	 * @param worker
+	 * @param context
+	 * @param sink
+	 */
+	public void getMessages(BSP<V, W, M, I> worker, 
+			Context<V, W, M, I> context, MessageSink<M> sink) {
+		EdgeFragment<V, W, M, I> local = null;
+		GraphRecord<V, W, M, I> graph = context.getGraphRecord();
+		if (this.mirrorMgr != null) {
+			local = this.mirrorMgr.getLocalEdges(graph.getVerId());
+		}
+		if (local == null) {
+			worker.getMessages(context, sink);
+			return;
+		}
+		
+		int edgeNum = graph.getEdgeNum();
+		int[] edgeIds = graph.getEdgeIds();
+		W[] edgeWeights = graph.getEdgeWeights();
+		local.getForRespond(graph);
+		try {
+			worker.getMessages(context, sink);
+		} finally {
+			graph.setEdges(edgeIds, edgeWeights);
+			graph.setEdgeNum(edgeNum);
+		}
+	}
+	
 	/**
 	 * Get {@link MsgRecord}s based on the outbound edges in local task.
 	 * This function should be invoked by RPC to pull messages.
@@ -546,6 +932,9 @@ public abstract class GraphDataServer<V, W, M, I> {
 		}
 		
 		this.verBlkMgr.clearBefIte(_iteNum);
+		if (this.mirrorMgr != null) {
+			this.mirrorMgr.clearBefIte(_iteNum);
+		}
 		this.io_byte_ver = 0L;
 		this.io_byte_ver_write = 0L;
 		this.io_byte_info = 0L;
@@ -653,6 +1042,59 @@ public abstract class GraphDataServer<V, W, M, I> {
 	 */
 	public abstract void closeGraphDataStream(int _bid, int _iteNum) throws Exception;
 	
+	/**
+	 * Is the sparse path supported in the current superstep? 
+	 * It is checked before collecting active vertices for the sparse path.
+	 * @return
+	 */
+	public boolean isSparseSupported() {
+		return false;
+	}
+	
+	/**
+	 * Initialize the file variables of the given VBlock for the sparse 
+	 * path, where only vertices read by getGraphRecord() are updated and 
+	 * saved by saveGraphRecord(). Values of other vertices are carried 
+	 * over unchanged, and their responding flags are set as false. 
+	 * closeGraphDataStream() must be invoked after finishing.
+	 * @param _bid
+	 * @param _iteNum
+	 * @return false if the sparse path is not supported, 
+	 *         then openGraphDataStream() should be used instead
+	 * @throws Exception
+	 */
+	public boolean openGraphDataStreamSparse(int _bid, int _iteNum) 
+			throws Exception {
+		return false;
+	}
+	
+	/**
+	 * Get the {@link GraphRecord} of the given vertex in the sparse path. 
+	 * The shared read/write record of this server is reused, and it 
+	 * should be saved by saveGraphRecord() before reading another one.
+	 * @param _bid
+	 * @param _vid
+	 * @return
+	 * @throws Exception
+	 */
+	public GraphRecord<V, W, M, I> getGraphRecord(int _bid, int _vid) 
+			throws Exception {
+		throw new Exception("sparse path is not supported");
+	}
+	
+	/**
+	 * Set responding flags of vertices in the given VBlock as false 
+	 * before running the sparse path.
+	 * @param _bid
+	 * @param _iteNum
+	 */
+	protected void clearResFlagBuc(int _bid, int _iteNum) {
+		int min = this.verBlkMgr.getVerBlkBeta(_bid).getVerMinId();
+		int num = this.verBlkMgr.getVerBlkBeta(_bid).getVerNum();
+		int index = min - this.verBlkMgr.getVerMinId();
+		this.resFlag[(_iteNum+1)%2].fill(index, (index+num), false);
+	}
+	
 	/**
 	 * If the next {@link GraphRecord} exists, return true, else return false.
 	 * 
@@ -669,20 +1111,13 @@ public abstract class GraphDataServer<V, W, M, I> {
 	 * @return
 	 */
 	public boolean isActiveOfVBlock(int _bid) {
-		boolean result = false;
 		int head = 
 			this.verBlkMgr.getVerBlkBeta(_bid).getVerMinId() - this.verBlkMgr.getVerMinId();
 		int tail = 
 			this.verBlkMgr.getVerBlkBeta(_bid).getVerMaxId() - this.verBlkMgr.getVerMinId() + 1;
 		
-		for (int idx = head; idx < tail; idx++) {
-			if (actFlag[idx]) {
-				result = true;
-				break;
-			}
-		}
-		
-		return result;
+		int idx = actFlag.nextSetBit(head);
+		return (idx>=0 && idx<tail);
 	}
 	
 	/**
@@ -693,16 +1128,39 @@ public abstract class GraphDataServer<V, W, M, I> {
 	 */
 	public boolean isActive(int _vid) {
 		int index = _vid - this.verBlkMgr.getVerMinId(); //global index
-		return actFlag[index];
+		return actFlag.get(index);
 	}
 	
 	/**
 	 * Get the next {@link GraphRecord} from the local disk.
+	 * The shared read/write record of this server is reused.
 	 * 
 	 * @return
 	 */
-	public abstract GraphRecord<V, W, M, I> getNextGraphRecord(int _bid) 
-			throws Exception;
+	public GraphRecord<V, W, M, I> getNextGraphRecord(int _bid) 
+			throws Exception {
+		return getNextGraphRecord(_bid, graph_rw);
+	}
+	
+	/**
+	 * Get the next {@link GraphRecord} from the local disk and 
+	 * fill it into the given record. Used when vertices of one VBlock 
+	 * are updated by multiple threads, each of which owns its records.
+	 * 
+	 * @param _bid
+	 * @param record
+	 * @return the given record
+	 */
+	public abstract GraphRecord<V, W, M, I> getNextGraphRecord(int _bid, 
+			GraphRecord<V, W, M, I> record) throws Exception;
+	
+	/**
+	 * Create a new empty {@link GraphRecord} by {@link UserTool}.
+	 * @return
+	 */
+	public GraphRecord<V, W, M, I> newGraphRecord() {
+		return userTool.getGraphRecord();
+	}
 	
 	public int getDegree(int _vid) {
 		return degree[_vid-verBlkMgr.getVerMinId()];
@@ -754,7 +1212,19 @@ public abstract class GraphDataServer<V, W, M, I> {
 	 * and update the corresponding flag.
 	 * 
 	 */
+	public void saveGraphRecord(int _bid, int _iteNum, 
+			boolean _acFlag, boolean _upFlag) throws Exception {
+		saveGraphRecord(_bid, _iteNum, graph_rw, _acFlag, _upFlag);
+	}
+	
+	/**
+	 * Write the given {@link GraphRecord} onto the local disk 
+	 * and update the corresponding flag. Records of one VBlock 
+	 * must be saved in the same order as they are read.
+	 * 
+	 */
 	public abstract void saveGraphRecord(int _bid, int _iteNum, 
+			GraphRecord<V, W, M, I> record, 
 			boolean _acFlag, boolean _upFlag) throws Exception;
 	
 	/** 
@@ -773,7 +1243,7 @@ public abstract class GraphDataServer<V, W, M, I> {
 	 * Just used by {@link BSPTask.switchToPush()} 
 	 **/
 	public boolean isVertUpdatedSwitchToPush(int bid, int vid, int iteNum) {
-		return resFlag[iteNum%2][vid-this.verBlkMgr.getVerMinId()];
+		return resFlag[iteNum%2].get(vid-this.verBlkMgr.getVerMinId());
 	}
 	
 	/**
@@ -802,6 +1272,26 @@ public abstract class GraphDataServer<V, W, M, I> {
 		return 0;
 	}
 	
+	/**
+	 * Get the most recent checkpoint version which has been
+	 * completely archived, useful if checkpoints are archived
+	 * in background, i.e., {@link BSPJob}.isAsyncCheckPoint().
+	 * @return -1 if no checkpoint has been archived
+	 * @throws Exception if archiving in background fails
+	 */
+	public int getDurableCheckPoint() throws Exception {
+		return -1;
+	}
+	
+	/**
+	 * Delete out-of-date local files which are useless
+	 * since the given checkpoint version is available.
+	 * @param _version
+	 */
+	public void deleteBefCheckPoint(int _version) {
+	
+	}
+	
 	/**
 	 * Load the most recent available checkpoint.
 	 * Now it is implemented in {@link GraphDataServerDisk} only. 
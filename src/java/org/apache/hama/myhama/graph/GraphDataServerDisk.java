@@ -5,14 +5,20 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,7 +33,6 @@ import org.apache.hama.myhama.api.GraphRecord;
 import org.apache.hama.myhama.api.MsgRecord;
 import org.apache.hama.myhama.comm.MsgPack;
 import org.apache.hama.myhama.io.OutputFormat;
-import org.apache.hama.myhama.io.RecordReader;
 import org.apache.hama.myhama.io.RecordWriter;
 import org.apache.hama.myhama.util.GraphContext;
 
@@ -123,13 +128,47 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	private int[][] edgeBufLen;
 	private long[][] edgeBufByte;
 	private ExecutorService spillVerTh;
-	private ExecutorService spillEdgeTh;
+	private ExecutorService[] spillEdgeTh; //[tid%#writers]: EBlock writer
 	private Future<Boolean> spillVerThRe;
-	private Future<Boolean> spillEdgeThRe;
+	private Future<Boolean>[] spillEdgeThRe;
+	/** edge ids in EBlock files are gap-encoded and varint-coded */
+	private boolean compressEBlock;
+	private FragmentSizer sizer; //measure fragments of hubs
 	private long loadByte = 0L;
+	/** threads parsing and decomposing input lines in batches */
+	private int loadThreadNum, loadBatchSize;
+	private long loadLineNum = 0L;
+	/** busy time of loading stages: read, parse, build, spill v/e */
+	private long[] loadTime = new long[5];
 	
-	private BitBytes bitBytes;
 	private long rwResTime = 0L;
+	/** values of a VBlock have been re-written since the last checkpoint */
+	private boolean[] ckpDirty;
+	private ExecutorService ckpTh; //upload checkpoints in background
+	private Future<Boolean> ckpThRe;
+	private int durableCkpVersion = -1; //the most recent uploaded checkpoint
+	private int delLocalIdx = 1; //local files before it have been deleted
+	
+	/** read files of the next VBlocks ahead into the page cache */
+	private ExecutorService readAheadTh;
+	private ByteBuffer readAheadBuf; //only used by readAheadTh
+	private int readAheadNum = 0;
+	private int readAheadNext = 0; //the next VBlock to be read ahead
+	private Future<?>[] readAheadRe; //pending read-ahead of VBlocks
+	/** force new values to disk before closing value files */
+	private boolean writeSync;
+	/** force new values of closed VBlocks in background, if writeSync */
+	private ExecutorService writeBehindTh;
+	private LinkedList<Future<Boolean>> writeBehindRe;
+	private static final int Write_Behind_Max = 4; //pending flushes
+	private int sparseVerByte; //bytes of one value in the sparse path
+	/** 
+	 * vids re-written by the sparse path per VBlock at sparseIte[bid], 
+	 * i.e., value-(sparseIte+1) differs from value-sparseIte only in them 
+	 */
+	private int[][] sparseVids;
+	private int[] sparseVidNum;
+	private int[] sparseIte;
 	
 	/** used to read or write graph data during iteration computation */
 	private class VBlockFileHandler {
@@ -202,10 +241,34 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			return mbb_v_w;
 		}
 		
-		public void closeVerWriteHandler() throws IOException {
+		public void closeVerWriteHandler(boolean sync) throws IOException {
+			if (sync) {
+				mbb_v_w.force();
+			}
 			fc_v_w.close(); raf_v_w.close();
 		}
 		
+		/**
+		 * Flush new values to disk and then close the file by "flusher", 
+		 * so that disk writes overlap with updating the next VBlocks.
+		 * @param flusher
+		 * @return
+		 */
+		public Future<Boolean> closeVerWriteHandler(ExecutorService flusher) {
+			final RandomAccessFile raf = raf_v_w;
+			final FileChannel fc = fc_v_w;
+			final MappedByteBuffer mbb = mbb_v_w;
+			raf_v_w = null; fc_v_w = null; mbb_v_w = null;
+			return flusher.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					mbb.force();
+					fc.close(); raf.close();
+					return true;
+				}
+			});
+		}
+		
 		public void openInfoReadHandler(File f_info) throws IOException {
 			raf_info = new RandomAccessFile(f_info, "r");
 			fc_info = raf_info.getChannel();
@@ -236,7 +299,11 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			fc_adj.close(); raf_adj.close();
 		}
 	}
-	private VBlockFileHandler vbFile;
+	/** 
+	 * One handler per VBlock, so that streams of different VBlocks 
+	 * never share file channels or buffer positions.
+	 * */
+	private VBlockFileHandler[] vbFiles;
 	
 	/** 
 	 * Used to read VBlockFile and EBlockFile when responding pull requests.
@@ -246,7 +313,10 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		private int tid, reqBid, resBid; 
 		private RandomAccessFile raf_e, raf_v;
 		private FileChannel fc_e, fc_v;
-		private MappedByteBuffer mbb_e, mbb_v;
+		private MappedByteBuffer mbb_e;
+		private ByteBuffer mbb_v;
+		/** true: mbb_v is a view of values shared by all requesting tasks */
+		private boolean sharedV;
 		
 		private boolean ck; //has been ck, true
 		private int curLocVerId, counter;
@@ -316,13 +386,17 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		}
 		
 		/**
-		 * Open a channel to read the given vertex value file.
+		 * Open a channel to read the given vertex value file. 
+		 * Values shared by all requesting tasks are used if available, 
+		 * and then bytes of loading them are added into statis.
 		 * @param _bid
 		 * @param _iteNum
+		 * @param statis
 		 * @return true if successful, false otherwise (file does not exist)
 		 * @throws IOException
 		 */
-		public boolean openVerHandler(int _bid, int _iteNum) throws IOException {
+		public boolean openVerHandler(int _bid, int _iteNum, long[] statis) 
+				throws IOException {
 			File file = 
 				new File(getVerDir(_bid), Vert_File_Value_Prefix + _iteNum);
 			//LOG.warn(file);
@@ -332,18 +406,27 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			
 			if (hasOpenVerFile(_bid)) { return true; }
 			
-			file = 
-				new File(getVerDir(resBid), Vert_File_Value_Prefix + _iteNum);
+			mbb_v = getSharedVerValues(resBid, _iteNum, file, statis);
+			sharedV = (mbb_v != null);
+			if (sharedV) {
+				return true;
+			}
+			
 			raf_v = new RandomAccessFile(file, "r");
 			fc_v = raf_v.getChannel();
 			mbb_v = fc_v.map(FileChannel.MapMode.READ_ONLY, 0, fc_v.size());
 			return true;
 		}
 		
-		public MappedByteBuffer getVerHandler() { return mbb_v; }
+		public ByteBuffer getVerHandler() { return mbb_v; }
+		
+		public boolean isVerShared() { return sharedV; }
 		
 		public void closeVerHandler() throws IOException {
-			fc_v.close(); raf_v.close();
+			if (!sharedV) {
+				fc_v.close(); raf_v.close();
+			}
+			mbb_v = null;
 		}
 		
 		public void setCheckPoint(int _curLocVerId, 
@@ -376,6 +459,14 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		}
 	}
 	private VEBlockFileHandler<V, W, M, I>[] vebFile;//per requested task
+	/** 
+	 * Value files of VBlocks responding to more than one destination VBlock, 
+	 * read once and shared by pull requests from all tasks at one superstep. 
+	 * [bid]: values, null if they are not loaded.
+	 * */
+	private ByteBuffer[] sharedVerValues;
+	private int[] sharedVerIteNum; //[bid]: superstep of values, -1 means not shared
+	private long sharedVerByte = 0L, sharedVerBudget = 0L;
 	/** used to estimate #fragments in pull when running push */
 	private boolean[][] hitFlag; 
 	private long fragNumOfPull = 0L;
@@ -408,6 +499,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		
 		@Override
 		public Boolean call() throws IOException {
+			long start = System.currentTimeMillis();
 			File dir = getVerDir(this.bid);
 			File f_v = new File(dir, Vert_File_Value_Prefix + "1");
 			RandomAccessFile raf_v = new RandomAccessFile(f_v, "rw");
@@ -467,6 +559,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 				raf_adj.close();
 			}
 			gBuf = null;
+			addLoadTime(3, System.currentTimeMillis()-start);
 			return true;
 		}
 	}
@@ -497,6 +590,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		
 		@Override
 		public Boolean call() throws IOException {
+			long start = System.currentTimeMillis();
 			File dir = getEdgeDir(this.tid);
 			File file = getEdgeFile(dir, this.bid);
 			RandomAccessFile raf = new RandomAccessFile(file, "rw");
@@ -504,17 +598,173 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			MappedByteBuffer mbb = 
 				fc.map(FileChannel.MapMode.READ_WRITE, fc.size(), this.writeByte);
 			
+			int minId = getDstBlkMinId(this.tid, this.bid);
 			for (int i = 0; i < this.writeLen; i++) {
 				this.gBuf[i].serVerId(mbb);
-				this.gBuf[i].serEdges(mbb);
+				if (compressEBlock) {
+					this.gBuf[i].serEdgesCompressed(mbb, minId);
+				} else {
+					this.gBuf[i].serEdges(mbb);
+				}
 			}
 			
 			fc.close(); raf.close();
+			if (mbb.position() != this.writeByte) {
+				throw new IOException("EBlock " + this.bid + " of task " + this.tid 
+						+ " expects " + this.writeByte + " bytes but " 
+						+ mbb.position() + " bytes are written" 
+						+ ", please check getEdgeByte()");
+			}
 			gBuf = null;
+			addLoadTime(4, System.currentTimeMillis()-start);
 			return true;
 		}
 	}
 	
+	/**
+	 * Measure bytes of fragments in EBlock files. 
+	 * Compressed fragments are measured without being serialized, 
+	 * they are serialized only once by {@link SpillEdgeThread}. 
+	 * Not thread-safe, each loading thread owns one.
+	 */
+	private class FragmentSizer {
+		private GraphRecord<V, W, M, I> graph = userTool.getGraphRecord();
+		
+		public int getByte(EdgeFragmentEntry<V,W,M,I> frag) throws Exception {
+			this.graph.initialize(frag);
+			if (!compressEBlock) {
+				return VERTEX_ID_BYTE + this.graph.getEdgeByte();
+			}
+			return VERTEX_ID_BYTE + this.graph.getEdgeByteCompressed(
+					getDstBlkMinId(frag.getDstTid(), frag.getDstBid()));
+		}
+	}
+	
+	/**
+	 * A batch of input lines, parsed and decomposed by one loading thread. 
+	 * Vertices are built into local files by the task thread in the 
+	 * order of batches, thus files are identical with sequential loading.
+	 */
+	private class LoadBatch implements Callable<LoadBatch> {
+		private TaskInformation taskInfo;
+		private String[] keys, values;
+		private int size = 0;
+		private GraphRecord<V, W, M, I>[] graphs;
+		private int[] bids; //local VBlock ids
+		private ArrayList<EdgeFragmentEntry<V,W,M,I>>[] frags;
+		private int[][] fragBytes; //null for hubs
+		
+		@SuppressWarnings("unchecked")
+		public LoadBatch(int capacity, TaskInformation _taskInfo) {
+			this.taskInfo = _taskInfo;
+			this.keys = new String[capacity];
+			this.values = new String[capacity];
+			this.graphs = (GraphRecord<V, W, M, I>[]) new GraphRecord<?, ?, ?, ?>[capacity];
+			this.bids = new int[capacity];
+			this.frags = 
+				(ArrayList<EdgeFragmentEntry<V,W,M,I>>[]) new ArrayList<?>[capacity];
+			this.fragBytes = new int[capacity][];
+		}
+		
+		public boolean isFull() {
+			return this.size == this.keys.length;
+		}
+		
+		public int size() {
+			return this.size;
+		}
+		
+		public void add(String key, String value) {
+			this.keys[this.size] = key;
+			this.values[this.size] = value;
+			this.size++;
+		}
+		
+		@Override
+		public LoadBatch call() throws Exception {
+			long start = System.currentTimeMillis();
+			FragmentSizer fs = new FragmentSizer();
+			for (int i = 0; i < this.size; i++) {
+				GraphRecord<V, W, M, I> graph = userTool.getGraphRecord();
+				graph.parseGraphData(this.keys[i], this.values[i]);
+				this.keys[i] = null; this.values[i] = null;
+				this.bids[i] = commRT.getDstLocalBlkIdx(taskId, graph.getVerId());
+				graph.setSrcBlkId(this.bids[i]);
+				this.graphs[i] = graph;
+				
+				if (!isDecomposed(graph)) {
+					continue;
+				}
+				this.frags[i] = graph.decompose(commRT, this.taskInfo);
+				if (bspStyle!=Constants.STYLE.PUSH && !isHub(graph)) {
+					this.fragBytes[i] = new int[this.frags[i].size()];
+					for (int j = 0; j < this.fragBytes[i].length; j++) {
+						this.fragBytes[i][j] = fs.getByte(this.frags[i].get(j));
+					}
+				}
+			}
+			addLoadTime(1, System.currentTimeMillis()-start);
+			return this;
+		}
+	}
+	
+	/**
+	 * Read input lines ahead into batches, which are then submitted 
+	 * to loading threads. Futures of batches are put into a bounded 
+	 * queue in the reading order, ended by an empty batch. The empty 
+	 * batch is not put if reading is cancelled by interrupting, since 
+	 * nobody takes batches any more and the queue may be full.
+	 */
+	private class ReadInputThread implements Callable<Boolean> {
+		private TaskInformation taskInfo;
+		private ExecutorService parseTh;
+		private BlockingQueue<Future<LoadBatch>> parsed;
+		
+		public ReadInputThread(TaskInformation _taskInfo, 
+				ExecutorService _parseTh, 
+				BlockingQueue<Future<LoadBatch>> _parsed) {
+			this.taskInfo = _taskInfo;
+			this.parseTh = _parseTh;
+			this.parsed = _parsed;
+		}
+		
+		@Override
+		public Boolean call() throws Exception {
+			LoadBatch batch = null;
+			boolean cancelled = false;
+			try {
+				do {
+					long start = System.currentTimeMillis();
+					batch = new LoadBatch(loadBatchSize, this.taskInfo);
+					while (!batch.isFull() && input.nextKeyValue()) {
+						batch.add(input.getCurrentKey().toString(), 
+								input.getCurrentValue().toString());
+					}
+					loadLineNum += batch.size();
+					addLoadTime(0, System.currentTimeMillis()-start);
+					if (batch.size() > 0) {
+						this.parsed.put(this.parseTh.submit(batch));
+					}
+				} while (batch.size() > 0);
+			} catch (InterruptedException e) {
+				cancelled = true;
+				throw e;
+			} finally {
+				if (!cancelled) {
+					FutureTask<LoadBatch> over = new FutureTask<LoadBatch>(
+							new LoadBatch(0, this.taskInfo));
+					over.run();
+					this.parsed.put(over);
+				}
+			}
+			return true;
+		}
+	}
+	
+	private synchronized void addLoadTime(int stage, long time) {
+		this.loadTime[stage] += time;
+	}
+	
 	/**
 	 * Constructing the GraphDataServer object.
 	 * 
@@ -532,10 +782,21 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		sb.append(_job.isUseAdjEdgeInUpdate());
 		sb.append("\n  3) use graph information in update(): "); 
 		sb.append(_job.isUseGraphInfoInUpdate());
+		sb.append("\n  4) compress edges in EBlocks: "); 
+		sb.append(_job.isCompressEBlock());
 		LOG.info(sb.toString());
 	    createDir(_rootDir);
-	    
-	    bitBytes = new BitBytes();
+	    this.compressEBlock = _job.isCompressEBlock();
+	    if (this.compressEBlock 
+	    		&& !this.userTool.getGraphRecord().isCompressEdgeSupported()) {
+	    	this.compressEBlock = false;
+	    	LOG.warn("edges in EBlocks are not compressed, " 
+	    			+ this.userTool.getGraphRecord().getClass().getName() 
+	    			+ " has weighted edges but does not override " 
+	    			+ "serEdgeWeights() and deserEdgeWeights()");
+	    }
+	    this.loadThreadNum = _job.getNumLoadThreads();
+	    this.loadBatchSize = _job.getLoadBatchSize();
 	}
 	
 	private void createDir(String _rootDir) {
@@ -557,9 +818,37 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	
 	@Override
 	public void initMemOrDiskMetaData() throws Exception {
-		vbFile = new VBlockFileHandler();
-		verBuf = (GraphRecord<V, W, M, I>[]) new GraphRecord[Buf_Size];
+		vbFiles = (VBlockFileHandler[]) new GraphDataServerDisk<?, ?, ?, ?>
+			.VBlockFileHandler[this.verBlkMgr.getBlkNum()];
+		for (int bid = 0; bid < vbFiles.length; bid++) {
+			vbFiles[bid] = new VBlockFileHandler();
+		}
+		ckpDirty = new boolean[this.verBlkMgr.getBlkNum()];
+		Arrays.fill(ckpDirty, true);
+		sparseVids = new int[this.verBlkMgr.getBlkNum()][];
+		sparseVidNum = new int[this.verBlkMgr.getBlkNum()];
+		sparseIte = new int[this.verBlkMgr.getBlkNum()];
+		Arrays.fill(sparseIte, -1);
+		if (job.isAsyncCheckPoint()) {
+			ckpTh = Executors.newSingleThreadExecutor();
+		}
+		verBuf = (GraphRecord<V, W, M, I>[]) new GraphRecord<?, ?, ?, ?>[Buf_Size];
 		spillVerTh = Executors.newSingleThreadExecutor();
+		sharedVerValues = new ByteBuffer[this.verBlkMgr.getBlkNum()];
+		sharedVerIteNum = new int[this.verBlkMgr.getBlkNum()];
+		Arrays.fill(sharedVerIteNum, -1);
+		sharedVerBudget = job.getPullSharedScanBudget();
+		readAheadNum = job.getGraphPrefetchNum();
+		if (readAheadNum > 0) {
+			readAheadTh = Executors.newSingleThreadExecutor();
+			readAheadBuf = ByteBuffer.allocateDirect(1024*1024);
+			readAheadRe = new Future<?>[this.verBlkMgr.getBlkNum()];
+		}
+		writeSync = job.isGraphWriteSync();
+		if (writeSync && job.isGraphWriteBehind()) {
+			writeBehindTh = Executors.newSingleThreadExecutor();
+			writeBehindRe = new LinkedList<Future<Boolean>>();
+		}
 		spillVerThRe = null;
 		
 		int taskNum = this.commRT.getTaskNum();
@@ -567,40 +856,52 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		/** only used in pull or hybrid */
 		if (this.bspStyle != Constants.STYLE.PUSH) {
 			edgeBuf = 
-				(GraphRecord<V, W, M, I>[][][]) new GraphRecord[taskNum][][];
+				(GraphRecord<V, W, M, I>[][][]) new GraphRecord<?, ?, ?, ?>[taskNum][][];
 			edgeBufLen = new int[taskNum][];
 			edgeBufByte = new long[taskNum][];
 			
-			spillEdgeTh = Executors.newSingleThreadExecutor();
-			spillEdgeThRe = null;
+			/** one writer per destination task keeps EBlock files in order */
+			int writerNum = Math.min(taskNum, this.loadThreadNum);
+			spillEdgeTh = new ExecutorService[writerNum];
+			spillEdgeThRe = (Future<Boolean>[]) new Future<?>[writerNum];
+			for (int i = 0; i < writerNum; i++) {
+				spillEdgeTh[i] = Executors.newSingleThreadExecutor();
+			}
+			sizer = new FragmentSizer();
 			
 			this.hitFlag = new boolean[taskNum][];
 			int[] bucNumTask = commRT.getJobInformation().getBlkNumOfTasks();
 			for (int i = 0; i < taskNum; i++) {
 				edgeBuf[i] = 
-					(GraphRecord<V, W, M, I>[][]) new GraphRecord[bucNumTask[i]][];
+					(GraphRecord<V, W, M, I>[][]) new GraphRecord<?, ?, ?, ?>[bucNumTask[i]][];
 				edgeBufLen[i] = new int[bucNumTask[i]];
 				edgeBufByte[i] = new long[bucNumTask[i]];
 				for (int j = 0; j < bucNumTask[i]; j++) {
 					edgeBuf[i][j] = 
-						(GraphRecord<V, W, M, I>[]) new GraphRecord[Buf_Size];
+						(GraphRecord<V, W, M, I>[]) new GraphRecord<?, ?, ?, ?>[Buf_Size];
 				}
 				
 				this.hitFlag[i] = new boolean[bucNumTask[i]];
 			}
 		
 			this.vebFile = 
-				(VEBlockFileHandler<V, W, M, I>[]) 
-				new VEBlockFileHandler[taskNum];
+				(VEBlockFileHandler<V, W, M, I>[]) new GraphDataServerDisk<?, ?, ?, ?>
+				.VEBlockFileHandler<?, ?, ?, ?>[taskNum];
 			for (int i = 0; i < taskNum; i++) {
 				this.vebFile[i] = new VEBlockFileHandler<V, W, M, I>(i);
 			}
 		}
 	}
 	
-	private void putIntoEdgeBuf(ArrayList<EdgeFragmentEntry<V,W,M,I>> frags) 
-			throws Exception {
-		int vid = 0, tid = 0, bid = 0;
+	/**
+	 * Put fragments of one vertex into edgeBuf.
+	 * @param frags
+	 * @param fragBytes bytes of fragments, measured here if null
+	 * @throws Exception
+	 */
+	private void putIntoEdgeBuf(ArrayList<EdgeFragmentEntry<V,W,M,I>> frags, 
+			int[] fragBytes) throws Exception {
+		int vid = 0, tid = 0, bid = 0, idx = 0;
 		for (EdgeFragmentEntry<V,W,M,I> frag: frags) {
 			vid = frag.getVerId();
 			tid = frag.getDstTid();
@@ -610,30 +911,24 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			
 			edgeBuf[tid][bid][edgeBufLen[tid][bid]] = graph;
 			edgeBufLen[tid][bid]++;
-			edgeBufByte[tid][bid] += (VERTEX_ID_BYTE + graph.getEdgeByte()); 
+			int fragByte = 
+				fragBytes!=null? fragBytes[idx++]:this.sizer.getByte(frag);
+			edgeBufByte[tid][bid] += fragByte; 
 			
 			
 			verBlkMgr.updateBlkFragmentLenAndNum(frag.getSrcBid(), 
-					tid, bid, vid, VERTEX_ID_BYTE+graph.getEdgeByte());
+					tid, bid, vid, fragByte);
 			edgeBlkMgr.updateBucNum(tid, bid, 1, graph.getEdgeNum());
 			for (int eid: graph.getEdgeIds()) {
 				edgeBlkMgr.updateBucEdgeIdBound(tid, bid, eid);
 			}
 			
 			if (edgeBufLen[tid][bid] >= Buf_Size) {
-				if ((this.spillEdgeThRe!=null) 
-						&& (this.spillEdgeThRe.isDone())) {
-					this.spillEdgeThRe.get();
-				}
-				
-				this.spillEdgeThRe = 
-					this.spillEdgeTh.submit(new SpillEdgeThread(
-							tid, bid, edgeBufLen[tid][bid], 
-							edgeBufByte[tid][bid], edgeBuf[tid][bid]));
+				spillEdgeBuf(tid, bid);
 				
 				edgeBuf[tid][bid] = null;
 				edgeBuf[tid][bid] = 
-					(GraphRecord<V, W, M, I>[]) new GraphRecord[Buf_Size];
+					(GraphRecord<V, W, M, I>[]) new GraphRecord<?, ?, ?, ?>[Buf_Size];
 				edgeBufLen[tid][bid] = 0;
 				edgeBufByte[tid][bid] = 0L;
 			}
@@ -642,6 +937,31 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		}
 	}
 	
+	/**
+	 * Spill edgeBuf[_tid][_bid] by the writer of task _tid, 
+	 * so that spills of one EBlock file are appended in order.
+	 * @param _tid
+	 * @param _bid
+	 * @throws Exception
+	 */
+	private void spillEdgeBuf(int _tid, int _bid) throws Exception {
+		int w = _tid % this.spillEdgeTh.length;
+		if ((this.spillEdgeThRe[w]!=null) 
+				&& (this.spillEdgeThRe[w].isDone())) {
+			this.spillEdgeThRe[w].get();
+		}
+		
+		this.spillEdgeThRe[w] = 
+			this.spillEdgeTh[w].submit(new SpillEdgeThread(
+					_tid, _bid, edgeBufLen[_tid][_bid], 
+					edgeBufByte[_tid][_bid], edgeBuf[_tid][_bid]));
+	}
+	
+	/** Edge ids of one EBlock file are encoded from this id. */
+	private int getDstBlkMinId(int _dstTid, int _dstBid) {
+		return this.commRT.getJobInformation().getBlkMinId(_dstTid, _dstBid);
+	}
+	
 	private File getEdgeDir(int _tid) {
 		File dir = 
 			new File(this.edgeDir, Edge_Dir_Task_Prefix+Integer.toString(_tid));
@@ -661,24 +981,20 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		for (int i = 0; i < taskNum; i++) {
 			for (int j = 0; j < bucNumTask[i]; j++) {
 				if (edgeBufLen[i][j] > 0) {
-					if ((this.spillEdgeThRe!=null) 
-							&& (this.spillEdgeThRe.isDone())) {
-						this.spillEdgeThRe.get();
-					}
-					
-					this.spillEdgeThRe = 
-						this.spillEdgeTh.submit(new SpillEdgeThread(i, j, 
-								edgeBufLen[i][j], edgeBufByte[i][j], 
-								edgeBuf[i][j]));
-					this.spillEdgeThRe.get();
+					spillEdgeBuf(i, j);
 				}
 			}
 		}
+		for (int w = 0; w < this.spillEdgeTh.length; w++) {
+			if (this.spillEdgeThRe[w] != null) {
+				this.spillEdgeThRe[w].get();
+			}
+			this.spillEdgeTh[w].shutdown();
+		}
 		
 		edgeBuf = null;
 		edgeBufLen = null;
 		edgeBufByte = null;
-		this.spillEdgeTh.shutdown();
 		this.spillEdgeThRe = null;
 	}
 	
@@ -702,7 +1018,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			
 			verBuf = null;
 			graph = null;
-			verBuf = (GraphRecord<V, W, M, I>[]) new GraphRecord[Buf_Size];
+			verBuf = (GraphRecord<V, W, M, I>[]) new GraphRecord<?, ?, ?, ?>[Buf_Size];
 			verBufLen = 0;
 			valBufByte = 0;
 			infoBufByte = 0;
@@ -733,7 +1049,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		}
 		
 		verBuf = null;
-		verBuf = (GraphRecord<V, W, M, I>[]) new GraphRecord[Buf_Size];
+		verBuf = (GraphRecord<V, W, M, I>[]) new GraphRecord<?, ?, ?, ?>[Buf_Size];
 		verBufLen = 0;
 		valBufByte = 0;
 		infoBufByte = 0;
@@ -754,6 +1070,16 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		this.spillVerThRe = null;
 	}
 	
+	/** Stop spilling threads without waiting for them if loading fails. */
+	private void abortSpill() {
+		this.spillVerTh.shutdownNow();
+		if (this.spillEdgeTh != null) {
+			for (ExecutorService writer: this.spillEdgeTh) {
+				writer.shutdownNow();
+			}
+		}
+	}
+	
 	@Override
 	public void loadGraphData(TaskInformation taskInfo, BytesWritable rawSplit, 
 			String rawSplitClass) throws Exception {
@@ -761,36 +1087,61 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		long edgeNum = 0L;
 		initInputSplit(rawSplit, rawSplitClass);
 		
+		/** pipeline: read ahead -> parse & decompose -> build local files */
+		ExecutorService readTh = Executors.newSingleThreadExecutor();
+		ExecutorService parseTh = Executors.newFixedThreadPool(this.loadThreadNum);
+		BlockingQueue<Future<LoadBatch>> parsed = 
+			new LinkedBlockingQueue<Future<LoadBatch>>(2*this.loadThreadNum);
+		Future<Boolean> readRe = 
+			readTh.submit(new ReadInputThread(taskInfo, parseTh, parsed));
+		
 		int curBid = 0, bid = -1, vid = 0;
-		while (input.nextKeyValue()) {
-			GraphRecord<V, W, M, I> graph = this.userTool.getGraphRecord();
-			graph.parseGraphData(input.getCurrentKey().toString(), 
-					input.getCurrentValue().toString());
-			vid = graph.getVerId();
-			edgeNum += graph.getEdgeNum();
-			degree[vid-this.verBlkMgr.getVerMinId()] = graph.getEdgeNum();
-			curBid = commRT.getDstLocalBlkIdx(taskId, vid);
-			bid = bid<0? curBid:bid;
-			graph.setSrcBlkId(curBid);
-			
-			if (bid != curBid) {
-				flushVerBuf(bid);
-				bid = curBid;
+		try {
+			LoadBatch batch = parsed.take().get();
+			while (batch.size() > 0) {
+				long start = System.currentTimeMillis();
+				for (int i = 0; i < batch.size(); i++) {
+					GraphRecord<V, W, M, I> graph = batch.graphs[i];
+					batch.graphs[i] = null;
+					vid = graph.getVerId();
+					edgeNum += graph.getEdgeNum();
+					degree[vid-this.verBlkMgr.getVerMinId()] = graph.getEdgeNum();
+					curBid = batch.bids[i];
+					bid = bid<0? curBid:bid;
+					
+					if (bid != curBid) {
+						flushVerBuf(bid);
+						bid = curBid;
+					}
+					putIntoVerBuf(graph, curBid);
+					
+					ArrayList<EdgeFragmentEntry<V,W,M,I>> frags = batch.frags[i];
+					batch.frags[i] = null;
+					if (frags != null) {
+						frags = putFragments(graph, frags);
+					}
+					if (this.bspStyle != Constants.STYLE.PUSH) {
+						fragments[vid-this.verBlkMgr.getVerMinId()] = frags.size();
+						putIntoEdgeBuf(frags, batch.fragBytes[i]);
+						batch.fragBytes[i] = null;
+						frags = null;
+					}
+					graph = null;
+				}
+				addLoadTime(2, System.currentTimeMillis()-start);
+				batch = parsed.take().get();
 			}
-			putIntoVerBuf(graph, curBid);
-			
+			readRe.get();
+			clearVerBuf(curBid);
 			if (this.bspStyle != Constants.STYLE.PUSH) {
-				ArrayList<EdgeFragmentEntry<V,W,M,I>> frags = 
-					graph.decompose(commRT, taskInfo);
-				fragments[vid-this.verBlkMgr.getVerMinId()] = frags.size();
-				putIntoEdgeBuf(frags);
-				frags = null;
+				clearEdgeBuf();
 			}
-			graph = null;
-		}
-		clearVerBuf(curBid);
-		if (this.bspStyle != Constants.STYLE.PUSH) {
-			clearEdgeBuf();
+		} catch (Exception e) {
+			abortSpill();
+			throw e;
+		} finally {
+			readTh.shutdownNow();
+			parseTh.shutdownNow();
 		}
 		this.verBlkMgr.setEdgeNum(edgeNum);
 		this.verBlkMgr.loadOver(this.bspStyle, this.commRT.getTaskNum(), 
@@ -815,6 +1166,20 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		long endTime = System.currentTimeMillis();
 		LOG.info("load graph, " 
 				+ (endTime-startTime)/1000.0 + " seconds");
+		StringBuffer sb = new StringBuffer("busy time of loading stages, ");
+		sb.append(this.loadLineNum); sb.append(" lines:");
+		String[] stages = {"read input", "parse & decompose", "build", 
+				"spill vertices", "spill edges"};
+		int[] threads = {1, this.loadThreadNum, 1, 1, 
+				this.spillEdgeTh==null? 0:this.spillEdgeTh.length};
+		for (int i = 0; i < stages.length; i++) {
+			sb.append("\n  "); sb.append(stages[i]); 
+			sb.append(" ("); sb.append(threads[i]); sb.append(" threads): "); 
+			sb.append(this.loadTime[i]); sb.append(" ms, "); 
+			sb.append(this.loadLineNum*1000/Math.max(1L, this.loadTime[i])); 
+			sb.append(" lines/s");
+		}
+		LOG.info(sb.toString());
 	}
 	
 	@Override
@@ -896,11 +1261,9 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 				return pack;
 				//there is no edge target to _tid
 			}
-			//io, edge_read, fragment_read, msg_pro, msg_rec, dstVerHasMsg, io_vert.
-			long[] statis = new long[7];
-			/** create cache whose capacity = the number of destination vertices */
-			MsgRecord<M>[] cache = 
-				(MsgRecord<M>[]) new MsgRecord[toVerMaxId-toVerMinId+1];
+			/** reuse the buffer whose capacity >= the number of destination vertices */
+			MsgResponseBuffer<V, W, M, I> resBuf = this.resBufs[_toTaskId];
+			resBuf.prepare(toVerMinId, toVerMaxId);
 			int fromBlkId = this.vebFile[_toTaskId].getResBid();
 			this.vebFile[_toTaskId].openEdgeHandler(_toBlkId);
 			for (; fromBlkId < this.verBlkMgr.getBlkNum(); fromBlkId++) {
@@ -911,7 +1274,8 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 				}
 				
 				int attemptedIteNum = _iteNum;
-				while (!this.vebFile[_toTaskId].openVerHandler(fromBlkId, attemptedIteNum)) {
+				while (!this.vebFile[_toTaskId].openVerHandler(fromBlkId, 
+						attemptedIteNum, resBuf.getStatis())) {
 					attemptedIteNum++;
 					//LOG.warn("iteNum=" + _iteNum + ", attemptedIteNum=" + attemptedIteNum);
 					if (attemptedIteNum > getUncompletedIteration()) {
@@ -922,11 +1286,10 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 					}
 				}
 				
-				//cache: pass-by-reference
-				this.getMsgFromOneVBlock(statis, fromBlkId, 
+				this.getMsgFromOneVBlock(resBuf, fromBlkId, 
 						this.vebFile[_toTaskId].getVerHandler(), 
 						this.vebFile[_toTaskId].getEdgeHandler(), 
-						type, _toTaskId, _toBlkId, _iteNum, cache, toVerMinId);
+						type, _toTaskId, _toBlkId, _iteNum);
 				if (this.vebFile[_toTaskId].hasCheckPoint()) {
 					break;
 				}
@@ -936,7 +1299,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 				this.vebFile[_toTaskId].closeEdgeHandler();
 			}
 			
-			return packMsg(_toTaskId, _toBlkId, cache, statis);
+			return packMsg(_toTaskId, _toBlkId, resBuf);
 		} catch (Exception e) {
 			LOG.error("getMsg", e);
 			return null;
@@ -945,28 +1308,31 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	
 	/**
 	 * Get {@link MsgRecord}s for each {@link VerMiniBucBeta} bucket.
+	 * Messages are emitted into resBuf, whose context and graph 
+	 * record are reused.
+	 * @param resBuf
 	 * @param resBid
-	 * @param mbb_s
-	 * @param mbb
+	 * @param mbb_v
+	 * @param mbb_e
 	 * @param type
 	 * @param _tid
 	 * @param _bid
-	 * @param cache
-	 * @param dstVerMinId
 	 * @return
 	 * @throws Exception
 	 */
-	private void getMsgFromOneVBlock(long[] statis, int resBid, 
-			MappedByteBuffer mbb_v, MappedByteBuffer mbb_e, 
-			int type, int _tid, int _bid, int _iteNum, 
-			MsgRecord<M>[] cache, int dstVerMinId) throws IOException {
+	private void getMsgFromOneVBlock(MsgResponseBuffer<V, W, M, I> resBuf, 
+			int resBid, ByteBuffer mbb_v, MappedByteBuffer mbb_e, 
+			int type, int _tid, int _bid, int _iteNum) throws IOException {
 		int curLocVerId = 0, counter = 0; 
 		int skip = 0, curLocVerPos = 0;
 		int verMinId = this.verBlkMgr.getVerMinId();
+		long[] statis = resBuf.getStatis();
+		//bytes of shared values have been counted when they are loaded
+		boolean countVerByte = !this.vebFile[_tid].isVerShared();
 		GraphContext<V, W, M, I> context = 
-			new GraphContext<V, W, M, I>(this.taskId, this.job, 
+			resBuf.getContext(this.taskId, this.job, 
 					_iteNum, Constants.STYLE.PULL/*this.preIteStyle*/, this.commRT);
-		GraphRecord<V, W, M, I> graph = this.userTool.getGraphRecord();
+		GraphRecord<V, W, M, I> graph = resBuf.getGraphRecord();
 		
 		/** recover the scenario */
 		if (this.vebFile[_tid].hasCheckPoint()) {
@@ -984,10 +1350,15 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		}
 			
 		int fragNum = vBeta.getFragmentNum(_tid, _bid);
+		int dstMinId = getDstBlkMinId(_tid, _bid);
 		for (; counter < fragNum; counter++) {
 			skip = 0;
 			graph.deserVerId(mbb_e); 
-			graph.deserEdges(mbb_e); //deserialize edges 
+			if (this.compressEBlock) {
+				graph.deserEdgesCompressed(mbb_e, dstMinId);
+			} else {
+				graph.deserEdges(mbb_e); //deserialize edges 
+			}
 			statis[1] += graph.getEdgeNum(); //edge_read
 			statis[2]++; //fragment_read
 			
@@ -1000,7 +1371,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 				mbb_v.position(curLocVerPos + skip*graph.getVerByte());
 			}
 				
-			if (!resFlag[type][curLocVerId-verMinId]) {
+			if (!resFlag[type].get(curLocVerId-verMinId)) {
 				curLocVerPos = mbb_v.position();
 				mbb_v.position(curLocVerPos + graph.getVerByte());
 				curLocVerId++;
@@ -1010,28 +1381,13 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			}
 			
 			graph.deserVerValue(mbb_v); //deserialize value
-			statis[0] += graph.getVerByte(); //io for value
-			statis[6] += graph.getVerByte(); 
+			if (countVerByte) {
+				statis[0] += graph.getVerByte(); //io for value
+				statis[6] += graph.getVerByte(); 
+			}
 			context.reset();
 			context.initialize(graph, null, 0.0f, true, getDegree(graph.getVerId()));
-			MsgRecord<M>[] msgs = this.bsp.getMessages(context);
-			if (msgs != null) {
-				statis[3] += msgs.length; //msg_pro
-				for (MsgRecord<M> msg: msgs) {
-					int index = msg.getDstVerId() - dstVerMinId;
-					if (cache[index] == null) {
-						cache[index] = msg;
-						statis[4]++; //msg_rec
-						statis[5]++; //dstVerHasMsg
-					} else {
-						cache[index].collect(msg);
-						if (!this.isAccumulated) {
-							statis[4]++; //msg_rec
-						}
-					}
-				}
-				msgs = null;
-			}
+			this.bsp.getMessages(context, resBuf); //msg_pro, msg_rec, dstVerHasMsg
 				
 			if (!this.isAccumulated && statis[4]>this.job.getMsgPackSize()) {
 				this.vebFile[_tid].setCheckPoint(curLocVerId, counter);
@@ -1040,6 +1396,56 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		}
 	}
 	
+	/**
+	 * Return a private view of values in the value file of the _bid-th 
+	 * VBlock, which are shared by requests from all tasks at the _iteNum-th 
+	 * superstep. The file is read into memory by the first request and 
+	 * then its bytes are added into statis, instead of being read again 
+	 * by each destination VBlock.
+	 * @return null if this VBlock responds to only one destination 
+	 *         VBlock or the budget is exhausted.
+	 */
+	private ByteBuffer getSharedVerValues(int _bid, int _iteNum, File file, 
+			long[] statis) throws IOException {
+		if (this.sharedVerBudget <= 0L) {
+			return null;
+		}
+		
+		synchronized (this.sharedVerValues) {
+			if (this.sharedVerIteNum[_bid] == _iteNum) {
+				ByteBuffer values = this.sharedVerValues[_bid];
+				return values==null? null:values.duplicate();
+			}
+			
+			this.sharedVerIteNum[_bid] = _iteNum;
+			this.sharedVerValues[_bid] = null;
+			long len = file.length();
+			if (this.verBlkMgr.getVerBlkBeta(_bid).getFragmentDstNum() < 2 
+					|| this.sharedVerByte+len > this.sharedVerBudget) {
+				return null;
+			}
+			
+			ByteBuffer values = ByteBuffer.allocate((int)len);
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			FileChannel fc = raf.getChannel();
+			try {
+				while (values.hasRemaining()) {
+					if (fc.read(values) < 0) {
+						throw new IOException("unexpected end of " + file);
+					}
+				}
+			} finally {
+				fc.close(); raf.close();
+			}
+			values.flip();
+			this.sharedVerValues[_bid] = values;
+			this.sharedVerByte += len;
+			statis[0] += len; //io for values
+			statis[6] += len;
+			return values.duplicate();
+		}
+	}
+	
 	/**
 	 * For confined recovery with logged messages, directly read messages.
 	 * @param toTaskId
@@ -1088,7 +1494,8 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	}
 	
 	private MsgPack<V, W, M, I> packMsg(int toTaskId, int toBlkId, 
-			MsgRecord<M>[] cache, long[] _statis) throws IOException {
+			MsgResponseBuffer<V, W, M, I> resBuf) throws IOException {
+		long[] _statis = resBuf.getStatis();
 		MsgPack<V, W, M, I> msgPack = new MsgPack<V, W, M, I>(userTool); //message pack
 		msgPack.setEdgeInfo(_statis[0], _statis[6], _statis[1], _statis[2]);
 		long memUsage = 0L;
@@ -1099,16 +1506,10 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		if (_statis[5] > 0) {
 			/** msg for local task, send all messages by one pack. */
 			if (toTaskId == this.taskId) {
-				MsgRecord<M>[] tmp = 
-					(MsgRecord<M>[]) new MsgRecord[(int)_statis[5]];
-				int vCounter = 0;
-				
-				for (MsgRecord<M> msg: cache) {
-					if (msg != null) {
-						tmp[vCounter++] = msg;
-						memUsage += msg.getMsgByte();
-						msg = null;
-					}
+				MsgRecord<M>[] tmp = resBuf.getLocalMsgs();
+				int vCounter = (int)_statis[5];
+				for (int i = 0; i < vCounter; i++) {
+					memUsage += tmp[i].getMsgByte();
 				}
 				
 				if ((job.getCheckPointPolicy()
@@ -1118,8 +1519,8 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 					ByteArrayOutputStream bytes = 
 						new ByteArrayOutputStream(this.job.getMsgPackSize());
 					DataOutputStream stream = new DataOutputStream(bytes);
-					for (MsgRecord<M> msg: tmp) {
-						msg.serialize(stream);
+					for (int i = 0; i < vCounter; i++) {
+						tmp[i].serialize(stream);
 					}
 					stream.close();	bytes.close();
 					this.packageVersion[toGlobalBlkIdx]++;
@@ -1128,7 +1529,6 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 							version, _statis, vCounter, Constants.STYLE.PULL);
 				}
 				
-				cache = null;
 				//now, we use #dstVert as #recMsg
 				msgPack.setLocal(tmp, vCounter, _statis[3], _statis[5], loggedBytes); 
 				if (!this.vebFile[toTaskId].hasCheckPoint()) {
@@ -1145,13 +1545,13 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 				ByteArrayOutputStream bytes = 
 					new ByteArrayOutputStream(this.job.getMsgPackSize());
 				DataOutputStream stream = new DataOutputStream(bytes);
-				for (MsgRecord<M> msg: cache) {
+				for (int i = 0; i < resBuf.getRange(); i++) {
+					MsgRecord<M> msg = resBuf.get(i);
 					if (msg == null) continue;
 				
 					msg.serialize(stream);
 					vCounter++;
 					mCounter += msg.getNumOfMsgValues(); //mCounter >= vCounter
-					msg = null;
 				
 					if (mCounter == packSize) {
 						stream.close();	bytes.close();
@@ -1175,7 +1575,6 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 						stream = new DataOutputStream(bytes);
 					} //pack
 				} //loop all messages
-				cache = null;
 			
 				if (vCounter > 0) {
 					stream.close();
@@ -1221,9 +1620,23 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	
 	@Override
 	public void clearBefIteMemOrDisk(int _iteNum) throws Exception {
-		vbFile.clearBefIte();
-		for (VEBlockFileHandler veb: vebFile) {
-			veb.clearBefIte();
+		waitWriteBehind(0);
+		this.readAheadNext = 0;
+		if (this.readAheadRe != null) {
+			Arrays.fill(this.readAheadRe, null);
+		}
+		for (VBlockFileHandler vb: vbFiles) {
+			vb.clearBefIte();
+		}
+		if (this.vebFile != null) { //null under Push
+			for (VEBlockFileHandler<V, W, M, I> veb: vebFile) {
+				veb.clearBefIte();
+			}
+		}
+		if (this.sharedVerValues != null) {
+			Arrays.fill(this.sharedVerValues, null);
+			Arrays.fill(this.sharedVerIteNum, -1);
+			this.sharedVerByte = 0L;
 		}
 		
 		/** 
@@ -1261,9 +1674,13 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	public void clearAftIte(int _iteNum, int flagOpt) throws Exception {
 		super.clearAftIte(_iteNum, flagOpt);
 		io_byte_flags = 0L;
-		vbFile.clearAftIte();
-		for (VEBlockFileHandler veb: vebFile) {
-			veb.clearAftIte();
+		for (VBlockFileHandler vb: vbFiles) {
+			vb.clearAftIte();
+		}
+		if (this.vebFile != null) { //null under Push
+			for (VEBlockFileHandler<V, W, M, I> veb: vebFile) {
+				veb.clearAftIte();
+			}
 		}
 		
 		if (flagOpt == 1) { 
@@ -1325,7 +1742,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	 * @throws Exception
 	 */
 	private long serializeFlags(File dir, String filename, boolean allTrue, 
-			int fromIdx, int toIdx, boolean[] flags) throws Exception {
+			int fromIdx, int toIdx, BitFlags flags) throws Exception {
 		long bytes = 0L;
 		File flagFile = null;
 		
@@ -1344,8 +1761,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			if (flagFile.exists()) {
 				flagFile.delete();
 			}
-			bytes = bitBytes.serialize(flags, fromIdx, toIdx, flagFile, 
-					this.verBlkMgr.getVerMinId());
+			bytes = flags.serialize(fromIdx, toIdx, flagFile);
 		}
 		
 		return bytes;
@@ -1374,16 +1790,9 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			fstr = Vert_File_ResFlag_Prefix + _iteNum;
 			bytes += deserialize(dir, fstr, fromIdx, toIdx, resFlag[type]);
 			
-			for (int flagIdx = fromIdx; flagIdx < toIdx; flagIdx++) {
-				if (actFlag[flagIdx]) {
-					verBlkMgr.setBlkActive(bid, actFlag[flagIdx]);
-					verBlkMgr.incActiveVerNum(bid);
-				}
-				if (resFlag[type][flagIdx]) {
-					verBlkMgr.setBlkRespond(type, bid, resFlag[type][flagIdx]);
-					verBlkMgr.incRespondVerNum(bid);
-				}
-			}
+			verBlkMgr.addActiveVerNum(bid, actFlag.cardinality(fromIdx, toIdx));
+			verBlkMgr.addRespondVerNum(type, bid, 
+					resFlag[type].cardinality(fromIdx, toIdx));
 		}
 		return bytes;
 	}
@@ -1399,7 +1808,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	 * @throws Exception
 	 */
 	private long deserialize(File dir, String filename, 
-			int fromIdx, int toIdx, boolean[] flags) throws Exception {
+			int fromIdx, int toIdx, BitFlags flags) throws Exception {
 		long bytes = 0L;
 		
 		File f = new File(dir, filename);
@@ -1407,15 +1816,14 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			File ftrue = new File(dir, filename+Vert_File_Flag_Suffix);
 			if (ftrue.exists()) {
 				/** All flags should be set to true. */
-				Arrays.fill(flags, fromIdx, toIdx, true);
+				flags.fill(fromIdx, toIdx, true);
 			} else {
 				/** None of flags is true. */
-				Arrays.fill(flags, fromIdx, toIdx, false);
+				flags.fill(fromIdx, toIdx, false);
 			}
 		} else {
-			/** Deserializing flags one by one. */
-			bytes += bitBytes.deserialize(flags, fromIdx, toIdx, f, 
-					this.verBlkMgr.getVerMinId());
+			/** Deserializing flags word by word. */
+			bytes += flags.deserialize(fromIdx, toIdx, f);
 		}
 		return bytes;
 	}
@@ -1434,7 +1842,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		File dir = getVerDir(_bid);
 		
 		int attemptedIteNum = _iteNum;
-		while (!this.vbFile.openVerReadHandler(
+		while (!this.vbFiles[_bid].openVerReadHandler(
 				new File(dir, Vert_File_Value_Prefix+attemptedIteNum))) {
 			attemptedIteNum++;
 			//LOG.warn("iteNum=" + _iteNum + ", attemptedIteNum=" + attemptedIteNum);
@@ -1448,7 +1856,7 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		
 		if (this.loadAdjEdge) {
 			File f_adj = new File(dir, Vert_File_Adj);
-			this.vbFile.openAdjReadHandler(f_adj);
+			this.vbFiles[_bid].openAdjReadHandler(f_adj);
 			this.io_byte_adj += f_adj.length();
 		}
 	}
@@ -1506,9 +1914,9 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	@Override
 	public void closeGraphDataStreamSwitchToPush(int _bid, int _iteNum) 
 			throws Exception {
-		this.vbFile.closeVerReadHandler();
+		this.vbFiles[_bid].closeVerReadHandler();
 		if (this.loadAdjEdge) {
-			this.vbFile.closeAdjReadHandler();
+			this.vbFiles[_bid].closeAdjReadHandler();
 		}
 	}
 	
@@ -1516,11 +1924,11 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	public GraphRecord<V, W, M, I> getNextGraphRecordSwitchToPush(int _bid) 
 			throws Exception {
 		graph_rw.setVerId(this.verBlkMgr.getVerBlkBeta(_bid).getVerId());
-		graph_rw.deserVerValue(this.vbFile.getVerReadHandler());
+		graph_rw.deserVerValue(this.vbFiles[_bid].getVerReadHandler());
 		io_byte_ver += (VERTEX_ID_BYTE + graph_rw.getVerByte());
 		
 		if (this.loadAdjEdge) {
-			graph_rw.deserEdges(this.vbFile.getAdjReadHandler()); //read-only
+			graph_rw.deserEdges(this.vbFiles[_bid].getAdjReadHandler()); //read-only
 			read_adj_edge += graph_rw.getEdgeNum(); 
 		} else {
 			graph_rw.setEdges(null, null);
@@ -1529,27 +1937,124 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		return graph_rw;
 	}
 	
+	/** Read files of one VBlock sequentially, only to fill the page cache. */
+	private class ReadAheadThread implements Callable<Boolean> {
+		private File[] files;
+		
+		public ReadAheadThread(File[] _files) {
+			this.files = _files;
+		}
+		
+		@Override
+		public Boolean call() {
+			for (File f: this.files) {
+				if (Thread.currentThread().isInterrupted()) {
+					return false; //the VBlock is skipped
+				}
+				if (f == null || !f.exists()) {
+					continue;
+				}
+				try {
+					RandomAccessFile raf = new RandomAccessFile(f, "r");
+					FileChannel fc = raf.getChannel();
+					try {
+						readAheadBuf.clear();
+						while (fc.read(readAheadBuf) >= 0) {
+							readAheadBuf.clear();
+						}
+					} finally {
+						fc.close(); raf.close();
+					}
+				} catch (ClosedByInterruptException e) {
+					return false; //the VBlock is skipped
+				} catch (IOException e) {
+					//read-ahead is only a hint, e.g., the file has been renamed
+					LOG.warn("[ReadAheadThread] " + f, e);
+				}
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Read files of VBlocks after _bid ahead in background, at most 
+	 * readAheadNum VBlocks, while _bid is being updated. Every VBlock 
+	 * is read ahead at most once per superstep, and it is cancelled by 
+	 * skipBucket() if the VBlock is skipped.
+	 * @param _bid
+	 * @param _iteNum
+	 */
+	private void readAhead(int _bid, int _iteNum) {
+		if (this.readAheadTh == null) {
+			return;
+		}
+		this.readAheadNext = Math.max(this.readAheadNext, _bid+1);
+		int end = Math.min(_bid+this.readAheadNum, this.verBlkMgr.getBlkNum()-1);
+		for (; this.readAheadNext <= end; this.readAheadNext++) {
+			File dir = getVerDir(this.readAheadNext);
+			File[] files = new File[3];
+			files[0] = new File(dir, Vert_File_Value_Prefix + _iteNum);
+			if (this.loadGraphInfo) {
+				files[1] = new File(dir, Vert_File_Info);
+			}
+			if (this.loadAdjEdge) {
+				files[2] = new File(dir, Vert_File_Adj);
+			}
+			this.readAheadRe[this.readAheadNext] = 
+				this.readAheadTh.submit(new ReadAheadThread(files));
+		}
+	}
+	
+	@Override
+	public void skipBucket(int _parId, int _bid, int _iteNum) {
+		super.skipBucket(_parId, _bid, _iteNum);
+		if (this.readAheadRe != null && this.readAheadRe[_bid] != null) {
+			this.readAheadRe[_bid].cancel(true);
+			this.readAheadRe[_bid] = null;
+		}
+	}
+	
+	/**
+	 * Block until at most _pending background flushes are left.
+	 * @param _pending
+	 * @throws Exception if one flush fails
+	 */
+	private void waitWriteBehind(int _pending) throws Exception {
+		if (this.writeBehindRe == null) {
+			return;
+		}
+		while (this.writeBehindRe.size() > _pending) {
+			this.writeBehindRe.removeFirst().get();
+		}
+	}
+	
 	@Override
 	public void openGraphDataStream(int _bid, int _iteNum) throws Exception {
+		readAhead(_bid, _iteNum);
+		if (this.readAheadRe != null) {
+			this.readAheadRe[_bid] = null;
+		}
 		File dir = getVerDir(_bid);
 		File fvr = new File(dir, Vert_File_Value_Prefix + _iteNum);
-		this.vbFile.openVerReadHandler(fvr);
+		this.vbFiles[_bid].openVerReadHandler(fvr);
 		
 		File finfo = new File(dir, Vert_File_Info);
 		if (this.loadGraphInfo) {
 			//curIteStyle=Pull and graphInfo is required
-			this.vbFile.openInfoReadHandler(finfo);
+			this.vbFiles[_bid].openInfoReadHandler(finfo);
 			io_byte_info += finfo.length();
 		}
 		
 		File fadj = new File(dir, Vert_File_Adj);
 		if (this.loadAdjEdge) {
-			this.vbFile.openAdjReadHandler(fadj);
+			this.vbFiles[_bid].openAdjReadHandler(fadj);
 			this.io_byte_adj += fadj.length();
 		}
 		
 		File fvw = new File(dir, Vert_File_Value_Prefix + (_iteNum+1));
-		this.vbFile.openVerWriteHandler(fvw);
+		this.vbFiles[_bid].openVerWriteHandler(fvw);
+		this.ckpDirty[_bid] = true;
+		this.sparseIte[_bid] = -1; //all values are re-written
 		
 		if (this.estimatePullByteFlag) {
 			//curIteStyle=Push
@@ -1567,44 +2072,166 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		}
 	}
 	
+	/**
+	 * The sparse path is supported only if variables of one vertex can be 
+	 * located by offsets, i.e., neither "info" nor "adj" is read and 
+	 * values are declared to have the same length by 
+	 * {@link GraphRecord#getFixedVerByte()}.
+	 */
+	@Override
+	public boolean isSparseSupported() {
+		return !this.loadGraphInfo && !this.loadAdjEdge 
+			&& this.graph_rw.getFixedVerByte() > 0;
+	}
+	
+	/**
+	 * Only values of updated vertices are re-written in place into the 
+	 * new value file, which is created in one of two ways. 
+	 * (1) Without checkpoints, if the previous superstep also updated 
+	 * this VBlock by the sparse path, the file of two supersteps ago 
+	 * (value-(_iteNum-1)) is not needed any more. It is renamed to 
+	 * value-(_iteNum+1), and vertices re-written at the previous 
+	 * superstep are patched from value-_iteNum, so nothing is copied 
+	 * in bulk. value-_iteNum is kept intact for pull requests. 
+	 * (2) Otherwise, the old file is copied in the kernel, since old 
+	 * files are preserved for recovering failures.
+	 */
+	@Override
+	public boolean openGraphDataStreamSparse(int _bid, int _iteNum) 
+			throws Exception {
+		int verNum = this.verBlkMgr.getVerBlkBeta(_bid).getVerNum();
+		File dir = getVerDir(_bid);
+		File fvr = new File(dir, Vert_File_Value_Prefix + _iteNum);
+		if (!isSparseSupported() || verNum == 0 || !fvr.exists()) {
+			return false;
+		}
+		
+		long bytes = fvr.length();
+		int verByte = this.graph_rw.getFixedVerByte();
+		if (bytes != (long)verNum*verByte) {
+			LOG.warn("skip the sparse path of VBlock " + _bid 
+					+ ", the declared value length " + verByte 
+					+ " does not match " + bytes + " bytes of " + verNum 
+					+ " vertices");
+			return false;
+		}
+		File fvw = new File(dir, Vert_File_Value_Prefix + (_iteNum+1));
+		if (fvw.exists()) {
+			fvw.delete();
+		}
+		File fvo = new File(dir, Vert_File_Value_Prefix + (_iteNum-1));
+		boolean reuse = 
+			job.getCheckPointPolicy()==Constants.CheckPoint.Policy.None 
+			&& this.sparseIte[_bid]==(_iteNum-1) 
+			&& fvo.length()==bytes && fvo.renameTo(fvw);
+		if (!reuse) {
+			RandomAccessFile src = new RandomAccessFile(fvr, "r");
+			RandomAccessFile dst = new RandomAccessFile(fvw, "rw");
+			try {
+				FileChannel fcSrc = src.getChannel(), fcDst = dst.getChannel();
+				long copied = 0L;
+				while (copied < bytes) {
+					copied += fcSrc.transferTo(copied, bytes-copied, fcDst);
+				}
+			} finally {
+				src.close(); dst.close();
+			}
+			io_byte_ver += 2*bytes; //copy values
+			io_byte_ver_write += bytes;
+		}
+		
+		this.vbFiles[_bid].openVerReadHandler(fvr);
+		this.vbFiles[_bid].openVerWriteHandler(fvw, bytes);
+		if (reuse) {
+			//bring values re-written at the previous superstep up to date
+			ByteBuffer in = this.vbFiles[_bid].getVerReadHandler().duplicate();
+			ByteBuffer out = this.vbFiles[_bid].getVerWriteHandler().duplicate();
+			int minId = this.verBlkMgr.getVerBlkBeta(_bid).getVerMinId();
+			int[] vids = this.sparseVids[_bid];
+			for (int i = 0; i < this.sparseVidNum[_bid]; i++) {
+				int pos = (vids[i]-minId) * verByte;
+				in.limit(pos+verByte).position(pos);
+				out.position(pos);
+				out.put(in);
+			}
+			io_byte_ver += 2L * this.sparseVidNum[_bid] * verByte;
+		}
+		this.sparseVerByte = verByte;
+		this.sparseIte[_bid] = _iteNum;
+		this.sparseVidNum[_bid] = 0;
+		this.ckpDirty[_bid] = true;
+		clearResFlagBuc(_bid, _iteNum);
+		return true;
+	}
+	
+	@Override
+	public GraphRecord<V, W, M, I> getGraphRecord(int _bid, int _vid) 
+			throws Exception {
+		int pos = (_vid-this.verBlkMgr.getVerBlkBeta(_bid).getVerMinId()) 
+			* this.sparseVerByte;
+		if (this.sparseVids[_bid] == null) {
+			this.sparseVids[_bid] = new int[16];
+		} else if (this.sparseVidNum[_bid] == this.sparseVids[_bid].length) {
+			this.sparseVids[_bid] = Arrays.copyOf(this.sparseVids[_bid], 
+					2*this.sparseVidNum[_bid]);
+		}
+		this.sparseVids[_bid][this.sparseVidNum[_bid]++] = _vid;
+		graph_rw.setVerId(_vid);
+		MappedByteBuffer mbb = this.vbFiles[_bid].getVerReadHandler();
+		mbb.position(pos);
+		graph_rw.deserVerValue(mbb);
+		this.vbFiles[_bid].getVerWriteHandler().position(pos);
+		io_byte_ver += (VERTEX_ID_BYTE + graph_rw.getVerByte());
+		graph_rw.setEdges(null, null);
+		return graph_rw;
+	}
+	
 	@Override
 	public void closeGraphDataStream(int _bid, int _iteNum) throws Exception {
-		this.vbFile.closeVerReadHandler();
+		this.vbFiles[_bid].closeVerReadHandler();
 		if (this.loadGraphInfo) {
-			this.vbFile.closeInfoReadHandler();
+			this.vbFiles[_bid].closeInfoReadHandler();
 		}
 		if (this.loadAdjEdge) {
-			this.vbFile.closeAdjReadHandler();
+			this.vbFiles[_bid].closeAdjReadHandler();
+		}
+		if (this.writeBehindTh != null) {
+			waitWriteBehind(Write_Behind_Max-1);
+			this.writeBehindRe.add(
+					this.vbFiles[_bid].closeVerWriteHandler(this.writeBehindTh));
+		} else {
+			this.vbFiles[_bid].closeVerWriteHandler(this.writeSync);
 		}
-		this.vbFile.closeVerWriteHandler();
 	}
 	
 	@Override
-	public GraphRecord<V, W, M, I> getNextGraphRecord(int _bid) throws Exception {
-		graph_rw.setVerId(this.verBlkMgr.getVerBlkBeta(_bid).getVerId());
-		graph_rw.deserVerValue(this.vbFile.getVerReadHandler());
-		io_byte_ver += (VERTEX_ID_BYTE + graph_rw.getVerByte());
+	public GraphRecord<V, W, M, I> getNextGraphRecord(int _bid, 
+			GraphRecord<V, W, M, I> record) throws Exception {
+		record.setVerId(this.verBlkMgr.getVerBlkBeta(_bid).getVerId());
+		record.deserVerValue(this.vbFiles[_bid].getVerReadHandler());
+		io_byte_ver += (VERTEX_ID_BYTE + record.getVerByte());
 		
 		if (this.loadGraphInfo) {
-			graph_rw.deserGraphInfo(this.vbFile.getInfoReadHandler()); //read-only
+			record.deserGraphInfo(this.vbFiles[_bid].getInfoReadHandler()); //read-only
 		}
 		if (this.loadAdjEdge) {
-			graph_rw.deserEdges(this.vbFile.getAdjReadHandler()); //read-only
-			read_adj_edge += graph_rw.getEdgeNum(); 
+			record.deserEdges(this.vbFiles[_bid].getAdjReadHandler()); //read-only
+			read_adj_edge += record.getEdgeNum(); 
 		} else {
-			graph_rw.setEdges(null, null);
+			record.setEdges(null, null);
 		}
 		
-		return graph_rw;
+		return record;
 	}
 	
 	@Override
 	public void saveGraphRecord(int _bid, int _iteNum, 
+			GraphRecord<V, W, M, I> record, 
 			boolean _acFlag, boolean _resFlag) throws Exception {
-		int index = graph_rw.getVerId() - this.verBlkMgr.getVerMinId(); //global index
+		int index = record.getVerId() - this.verBlkMgr.getVerMinId(); //global index
 		int type = (_iteNum+1)%2;
-		actFlag[index] = _acFlag;
-		resFlag[type][index] = _resFlag;
+		actFlag.set(index, _acFlag);
+		resFlag[type].set(index, _resFlag);
 		
 		if (_acFlag) {
 			this.verBlkMgr.setBlkActive(_bid, _acFlag);
@@ -1616,13 +2243,13 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 			this.verBlkMgr.incRespondVerNum(_bid);
 			
 			if (this.estimatePullByteFlag) {
-				this.fragNumOfPull += graph_rw.getFragmentNum(commRT, hitFlag);
+				this.fragNumOfPull += record.getFragmentNum(commRT, hitFlag);
 			}
 		}
 		
-		graph_rw.serVerValue(this.vbFile.getVerWriteHandler());
-		io_byte_ver += (graph_rw.getVerByte()); //only write value
-		io_byte_ver_write += (graph_rw.getVerByte());
+		record.serVerValue(this.vbFiles[_bid].getVerWriteHandler());
+		io_byte_ver += (record.getVerByte()); //only write value
+		io_byte_ver_write += (record.getVerByte());
 	}
 	
 	@Override
@@ -1637,37 +2264,37 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
         for (int bid = 0; bid < verBlkMgr.getBlkNum(); bid++) {
         	File dir = getVerDir(bid);
     		File f_v_r = new File(dir, Vert_File_Value_Prefix + _iteNum);
-    		vbFile.openVerReadHandler(f_v_r);
+    		vbFiles[bid].openVerReadHandler(f_v_r);
     		
     		if (job.isUseGraphInfoInUpdate()) {
     			File f_info = new File(dir, Vert_File_Info);
-        		vbFile.openInfoReadHandler(f_info);
+        		vbFiles[bid].openInfoReadHandler(f_info);
     		}
     		if (job.isUseAdjEdgeInUpdate()) {
     			File f_adj = new File(dir, Vert_File_Adj);
-    			vbFile.openAdjReadHandler(f_adj);
+    			vbFiles[bid].openAdjReadHandler(f_adj);
     		}
         	
     		int blkVertNum = verBlkMgr.getVerBlkBeta(bid).getVerNum();
     		int blkMinId = verBlkMgr.getVerBlkBeta(bid).getVerMinId();
             
     		for (int idx = 0; idx < blkVertNum; idx++) {
-    			graph_rw.deserVerValue(vbFile.getVerReadHandler());
+    			graph_rw.deserVerValue(vbFiles[bid].getVerReadHandler());
     			if (job.isUseGraphInfoInUpdate()) {
-    				graph_rw.deserGraphInfo(vbFile.getInfoReadHandler());
+    				graph_rw.deserGraphInfo(vbFiles[bid].getInfoReadHandler());
     			}
     			if (job.isUseAdjEdgeInUpdate()) {
-    				graph_rw.deserEdges(vbFile.getAdjReadHandler());
+    				graph_rw.deserEdges(vbFiles[bid].getAdjReadHandler());
     			}
     			output.write(new Text(Integer.toString(blkMinId+idx)), 
     					new Text(graph_rw.getFinalValue().toString()));
     		}
-    		vbFile.closeVerReadHandler();
+    		vbFiles[bid].closeVerReadHandler();
     		if (job.isUseGraphInfoInUpdate()) {
-    			vbFile.closeInfoReadHandler();
+    			vbFiles[bid].closeInfoReadHandler();
     		}
     		if (job.isUseAdjEdgeInUpdate()) {
-    			vbFile.closeAdjReadHandler();
+    			vbFiles[bid].closeAdjReadHandler();
     		}
     		saveNum += blkVertNum;
         }
@@ -1676,64 +2303,190 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 		return saveNum;
 	}
 	
+	/**
+	 * Archive one checkpoint. Flags and value files to be archived are 
+	 * captured when it is constructed. Thus, it can run in background 
+	 * while the next superstep modifies flags and renames value files. 
+	 * Dirty bits of archived VBlocks are cleared when captured, and are 
+	 * set again if archiving fails, because the next delta checkpoint 
+	 * is still based on the previous available one.
+	 */
+	public class ArchiveCheckPointThread implements Callable<Boolean> {
+		private int version;
+		private boolean isDelta;
+		private BitFlags ckpActFlag;
+		private BitFlags ckpResFlag;
+		/** value files of VBlocks to be archived, null for skipped ones */
+		private FileChannel[] fcs;
+		/** VBlocks whose dirty bits are cleared by this checkpoint */
+		private boolean[] archived;
+		private int ckpNum = 0, ckpBlkNum = 0;
+		private long startTime;
+		
+		public ArchiveCheckPointThread(int _version, int _iteNum, 
+				boolean _isDelta) throws Exception {
+			this.startTime = System.currentTimeMillis();
+			this.version = _version;
+			this.isDelta = _isDelta;
+			this.ckpActFlag = actFlag.copy();
+			this.ckpResFlag = resFlag[_iteNum%2].copy();
+			this.fcs = new FileChannel[verBlkMgr.getBlkNum()];
+			this.archived = new boolean[verBlkMgr.getBlkNum()];
+			
+			for (int bid = 0; bid < verBlkMgr.getBlkNum(); bid++) {
+				if (_isDelta && !ckpDirty[bid]) {
+					continue; //values are the same as the previous checkpoint
+				}
+				File f_v_r = 
+					new File(getVerDir(bid), Vert_File_Value_Prefix + _iteNum);
+				if (!f_v_r.exists()) {
+					closeAll();
+					restoreDirty();
+					throw new Exception("Fail to find file:\n" + f_v_r.toString());
+				}
+				//an open channel is not affected by renaming or deleting the file
+				this.fcs[bid] = new RandomAccessFile(f_v_r, "r").getChannel();
+				ckpDirty[bid] = false;
+				this.archived[bid] = true;
+				this.ckpNum += verBlkMgr.getVerBlkBeta(bid).getVerNum();
+				this.ckpBlkNum++;
+			}
+		}
+		
+		public int getArchivedVerNum() {
+			return this.ckpNum;
+		}
+		
+		@Override
+		public Boolean call() throws Exception {
+			int taskMinId = verBlkMgr.getVerMinId();
+			long ckpBytes = 0L;
+			try {
+				for (int bid = 0; bid < this.fcs.length; bid++) {
+					int blkVertNum = verBlkMgr.getVerBlkBeta(bid).getVerNum();
+					int blkMinId = verBlkMgr.getVerBlkBeta(bid).getVerMinId();
+					MappedByteBuffer values = null;
+					if (this.fcs[bid] != null) {
+						values = this.fcs[bid].map(FileChannel.MapMode.READ_ONLY, 
+								0L, this.fcs[bid].size());
+					}
+					//values have been serialized by serVerValue(), copy them directly
+					ckpMgr.archiveBlock(bid, blkMinId, blkVertNum, 
+							this.ckpActFlag, this.ckpResFlag, blkMinId-taskMinId, 
+							values);
+					if (this.fcs[bid] != null) {
+						this.fcs[bid].close();
+						this.fcs[bid] = null;
+					}
+				}
+				ckpBytes = ckpMgr.aftArchive(this.version);
+			} catch (Exception e) {
+				restoreDirty();
+				throw e;
+			} finally {
+				closeAll();
+			}
+			
+			durableCkpVersion = this.version;
+			long endTime = System.currentTimeMillis();
+			LOG.info("\narchive " + this.ckpNum + " vertices of " + this.ckpBlkNum 
+					+ " VBlocks (" + ckpBytes + " bytes) into " 
+					+ (this.isDelta? "delta":"full") + " checkpoint, " 
+					+ (endTime-this.startTime)/1000.0 + " seconds, version-" 
+					+ this.version);
+			return true;
+		}
+		
+		/**
+		 * Values of archived VBlocks are not available yet, so they must 
+		 * be archived again by the next checkpoint. Only true is written 
+		 * and then concurrent updates of the next superstep are kept.
+		 */
+		private void restoreDirty() {
+			for (int bid = 0; bid < this.archived.length; bid++) {
+				if (this.archived[bid]) {
+					ckpDirty[bid] = true;
+				}
+			}
+		}
+		
+		private void closeAll() throws IOException {
+			for (int bid = 0; bid < this.fcs.length; bid++) {
+				if (this.fcs[bid] != null) {
+					this.fcs[bid].close();
+					this.fcs[bid] = null;
+				}
+			}
+		}
+	}
+	
 	@Override
 	public int archiveCheckPoint(int _version, int _iteNum) throws Exception {
-		long startTime = System.currentTimeMillis();
-
-		this.ckpMgr.befArchive(_version);
-		int ckpNum = 0;        
-		int type = _iteNum % 2;
-		int flagIdx = 0;
-		int taskMinId = verBlkMgr.getVerMinId();
-		StringBuffer sb = new StringBuffer();
-		
-        for (int bid = 0; bid < verBlkMgr.getBlkNum(); bid++) {
-        	File dir = getVerDir(bid);
-    		File f_v_r = new File(dir, Vert_File_Value_Prefix + _iteNum);
-    		vbFile.openVerReadHandler(f_v_r);
-        	
-    		int blkVertNum = verBlkMgr.getVerBlkBeta(bid).getVerNum();
-    		int blkMinId = verBlkMgr.getVerBlkBeta(bid).getVerMinId();
-    		int vertId = 0;
-    		for (int idx = 0; idx < blkVertNum; idx++) {
-    			vertId = blkMinId + idx;
-    			flagIdx = vertId - taskMinId;
-    			graph_rw.deserVerValue(vbFile.getVerReadHandler());
-    			sb.setLength(0);
-    			sb.append(actFlag[flagIdx]? 1:0);
-    			sb.append(resFlag[type][flagIdx]? 1:0);
-    			sb.append(graph_rw.getVerValue().toString());
-        		this.ckpMgr.archive(Integer.toString(vertId), sb.toString());
-    		}
-    		vbFile.closeVerReadHandler();
-    		ckpNum += blkVertNum;
-        }
-        
-        ckpMgr.aftArchive(_version);
-        
-        /**
-         * Delete out-of-date local disk files with suffix id less 
-         * than _iteNum. 
-         */
-        for (int delIdx = 1; delIdx < _iteNum; delIdx++) {
-        	for (int bid = 0; bid < verBlkMgr.getBlkNum(); bid++) {
-        		File dir = getVerDir(bid);
-        		
-        		deleteLocalFile(dir, Vert_File_Value_Prefix+delIdx);
-        		deleteLocalFile(dir, Vert_File_ActFlag_Prefix+delIdx);
-        		deleteLocalFile(dir, Vert_File_ResFlag_Prefix+delIdx);
-        		deleteLocalFile(dir, Vert_File_ActFlag_Prefix+delIdx 
-        				+Vert_File_Flag_Suffix);
-        		deleteLocalFile(dir, Vert_File_ResFlag_Prefix+delIdx 
-        				+Vert_File_Flag_Suffix);
-        	}
-        	msgDataServer.clearLoggedMsg(delIdx);
-        }
-        
-        long endTime = System.currentTimeMillis();
-		LOG.info("\narchive " + ckpNum + " vertices into checkpoint, " 
-				+ (endTime-startTime)/1000.0 + " seconds, version-" + _version);
-		return ckpNum;
+		waitCheckPoint(); //the chain is extended one by one
+		waitWriteBehind(0); //values to be archived have been flushed
+		boolean isDelta = this.ckpMgr.befArchive(_version);
+		ArchiveCheckPointThread ckp = 
+			new ArchiveCheckPointThread(_version, _iteNum, isDelta);
+		
+		if (this.ckpTh != null) {
+			/**
+			 * Value files of _iteNum are not modified any more, 
+			 * so they are uploaded while computing the next superstep. 
+			 * Out-of-date local files are deleted by deleteBefCheckPoint() 
+			 * after the checkpoint becomes available.
+			 */
+			this.ckpThRe = this.ckpTh.submit(ckp);
+			LOG.info("\nstart archiving " + ckp.getArchivedVerNum() 
+					+ " vertices into checkpoint in background, version-" 
+					+ _version);
+		} else {
+			ckp.call();
+			deleteBefCheckPoint(_iteNum);
+		}
+		return ckp.getArchivedVerNum();
+	}
+	
+	/**
+	 * Block until the background checkpoint upload, if any, completes.
+	 * @throws Exception if the upload fails
+	 */
+	private void waitCheckPoint() throws Exception {
+		if (this.ckpThRe != null) {
+			Future<Boolean> re = this.ckpThRe;
+			this.ckpThRe = null;
+			re.get();
+		}
+	}
+	
+	@Override
+	public int getDurableCheckPoint() throws Exception {
+		if ((this.ckpThRe!=null) && (this.ckpThRe.isDone())) {
+			waitCheckPoint();
+		}
+		return this.durableCkpVersion;
+	}
+	
+	@Override
+	public void deleteBefCheckPoint(int _version) {
+		/**
+		 * Delete out-of-date local disk files with suffix id less 
+		 * than _version. 
+		 */
+		for (int delIdx = this.delLocalIdx; delIdx < _version; delIdx++) {
+			for (int bid = 0; bid < verBlkMgr.getBlkNum(); bid++) {
+				File dir = getVerDir(bid);
+				
+				deleteLocalFile(dir, Vert_File_Value_Prefix+delIdx);
+				deleteLocalFile(dir, Vert_File_ActFlag_Prefix+delIdx);
+				deleteLocalFile(dir, Vert_File_ResFlag_Prefix+delIdx);
+				deleteLocalFile(dir, Vert_File_ActFlag_Prefix+delIdx 
+						+Vert_File_Flag_Suffix);
+				deleteLocalFile(dir, Vert_File_ResFlag_Prefix+delIdx 
+						+Vert_File_Flag_Suffix);
+			}
+			msgDataServer.clearLoggedMsg(delIdx);
+		}
+		this.delLocalIdx = Math.max(this.delLocalIdx, _version);
 	}
 	
 	private void deleteLocalFile(File dir, String filename) {
@@ -1746,73 +2499,60 @@ public class GraphDataServerDisk<V, W, M, I> extends GraphDataServer<V, W, M, I>
 	@Override
 	public int loadCheckPoint(int iteNum, int ckpVersion) throws Exception {
 		long startTime = System.currentTimeMillis();
-		RecordReader<Text,Text> reader = ckpMgr.befLoad(ckpVersion);
 		int ckpNum = 0;
-		if (reader == null) {
+		if (!ckpMgr.befLoad(ckpVersion)) {
 			return ckpNum;
 		}
 		
 		int type = iteNum % 2;
-		int bid = 0, vid = 0, vIdx = 0, flagIdx = 0;
-		int blkSize = verBlkMgr.getVerBlkBeta(bid).getVerNum();
-		GraphRecord[] buf = new GraphRecord[blkSize];
-		long bytes = 0L;
-		while (reader.nextKeyValue()) {
-			buf[vIdx] = userTool.getGraphRecord();
-			vid = Integer.parseInt(reader.getCurrentKey().toString());
-			flagIdx = vid - verBlkMgr.getVerMinId();
-			String ckpValue = reader.getCurrentValue().toString();
-			actFlag[flagIdx] = ckpValue.charAt(0)=='1'? true:false;
-			resFlag[type][flagIdx] = ckpValue.charAt(1)=='1'? true:false;
-			buf[vIdx].parseVerValue(ckpValue.substring(2));
-			bytes += buf[vIdx].getVerByte();
-			if (actFlag[flagIdx]) {
-				verBlkMgr.setBlkActive(bid, actFlag[flagIdx]);
-				verBlkMgr.incActiveVerNum(bid);
-			}
-			if (resFlag[type][flagIdx]) {
-				verBlkMgr.setBlkRespond(type, bid, resFlag[type][flagIdx]);
-				verBlkMgr.incRespondVerNum(bid);
-			}
+		int taskMinId = verBlkMgr.getVerMinId();
+		for (int bid = 0; bid < verBlkMgr.getBlkNum(); bid++) {
+			int blkVertNum = verBlkMgr.getVerBlkBeta(bid).getVerNum();
+			int blkMinId = verBlkMgr.getVerBlkBeta(bid).getVerMinId();
+			int fromIdx = blkMinId - taskMinId;
+			File fvw = new File(getVerDir(bid), Vert_File_Value_Prefix + iteNum);
+			//bulk-load the value file, without parsing each vertex
+			ckpMgr.loadBlock(bid, blkMinId, blkVertNum, 
+					actFlag, resFlag[type], fromIdx, fvw);
+			ckpDirty[bid] = false;
+			sparseIte[bid] = -1;
 			
-			vIdx++;
-			ckpNum++;
-			if (vIdx == blkSize) {
-				File dir = getVerDir(bid);
-				File fvw = new File(dir, Vert_File_Value_Prefix + iteNum);
-				if (fvw.exists()) {
-					fvw.delete();
-				}
-				vbFile.openVerWriteHandler(fvw, bytes);
-				for (GraphRecord record: buf) {
-					record.serVerValue(vbFile.getVerWriteHandler());
-				}
-				vbFile.closeVerWriteHandler();
-				
-				bid++;
-				vIdx = 0;
-				bytes = 0L;
-				if (bid < verBlkMgr.getBlkNum()) {
-					blkSize = verBlkMgr.getVerBlkBeta(bid).getVerNum();
-					buf = new GraphRecord[blkSize];
-				}
-			}
+			int toIdx = fromIdx + blkVertNum;
+			verBlkMgr.addActiveVerNum(bid, actFlag.cardinality(fromIdx, toIdx));
+			verBlkMgr.addRespondVerNum(type, bid, 
+					resFlag[type].cardinality(fromIdx, toIdx));
+			ckpNum += blkVertNum;
 		}
 		
-		if (bid != verBlkMgr.getBlkNum()) {
-			throw new Exception("verify error: bid=" + bid 
-					+ ", but actual #blocks=" + verBlkMgr.getBlkNum());
-		}
-		buf = null;
-		ckpMgr.aftLoad();
+		long ckpBytes = ckpMgr.aftLoad();
 		long endTime = System.currentTimeMillis();
-		LOG.info("\nload " + ckpNum + " vertices from checkpoint, " 
+		LOG.info("\nload " + ckpNum + " vertices (" + ckpBytes 
+				+ " bytes) from checkpoint, " 
 				+ (endTime-startTime)/1000.0 + " seconds, version-" + ckpVersion);
 		return ckpNum;
 	}
 	
 	@Override
 	public void close() {
+		if (this.ckpTh != null) {
+			try {
+				waitCheckPoint();
+			} catch (Exception e) {
+				LOG.error("[close] archive checkpoint", e);
+			}
+			this.ckpTh.shutdown();
+		}
+		if (this.writeBehindTh != null) {
+			try {
+				waitWriteBehind(0);
+			} catch (Exception e) {
+				LOG.error("[close] flush values", e);
+			}
+			this.writeBehindTh.shutdown();
+		}
+		if (this.readAheadTh != null) {
+			this.readAheadTh.shutdownNow();
+		}
 		LOG.info("read/write flags: " 
 				+ this.rwResTime/1000.0 + " seconds");
 	}
@@ -177,12 +177,12 @@ public class GraphDataServerMem<V, W, M, I>
 	@Override
 	public void initMemOrDiskMetaData() throws Exception {
 		int locBucNum = this.verBlkMgr.getBlkNum();
-		int locBucLen = this.verBlkMgr.getBlkLen();
 		this.vBlocks = 
 			(VertexTripleInMem<V, W, M, I>[][]) new VertexTripleInMem[locBucNum][];
 		for (int locBid = 0; locBid < locBucNum; locBid++) {
-			this.vBlocks[locBid] = 
-				(VertexTripleInMem<V, W, M, I>[]) new VertexTripleInMem[locBucLen];
+			int locBucLen = this.verBlkMgr.getVerBlkBeta(locBid).getVerNum();
+			this.vBlocks[locBid] = (VertexTripleInMem<V, W, M, I>[]) 
+				new VertexTripleInMem[Math.max(0, locBucLen)];
 		}
 		this.tripleIdx = 0;
 		this.vBlockExchFlag = new boolean[locBucNum];
@@ -260,9 +260,9 @@ public class GraphDataServerMem<V, W, M, I>
 			
 			putIntoVerBuf(graph, bid, idxs[bid]);
 			idxs[bid]++;
+			ArrayList<EdgeFragmentEntry<V,W,M,I>> frags = 
+				decompose(graph, taskInfo);
 			if (this.bspStyle != Constants.STYLE.PUSH) {
-				ArrayList<EdgeFragmentEntry<V,W,M,I>> frags = 
-					graph.decompose(commRT, taskInfo);
 				fragments[vid-this.verBlkMgr.getVerMinId()] = frags.size();
 				putIntoEdgeBuf(frags); 
 			}
@@ -319,11 +319,9 @@ public class GraphDataServerMem<V, W, M, I>
 		if (srcVerNum == 0) {
 			return new MsgPack<V, W, M, I>(this.userTool); //no edge
 		}
-		/** create cache whose capacity = the number of destination vertices */
-		MsgRecord<M>[] cache = 
-			(MsgRecord<M>[]) new MsgRecord[dstVerMaxId-dstVerMinId+1];
-		//io, edge_read, fragment_read, msg_pro, msg_rec, dstVerHasMsg, io_vert.
-		long[] statis = new long[7];
+		/** reuse the buffer whose capacity >= the number of destination vertices */
+		MsgResponseBuffer<V, W, M, I> resBuf = this.resBufs[_tid];
+		resBuf.prepare(dstVerMinId, dstVerMaxId);
 		
 		try {
 			for (int resBid = 0; resBid < this.verBlkMgr.getBlkNum(); resBid++) {
@@ -332,19 +330,19 @@ public class GraphDataServerMem<V, W, M, I>
 					continue; //skip the whole hash bucket
 				}
 				
-				//cache: pass-by-reference
-				this.getMsgFromOneVBlock(statis, resBid, 
-						type, _tid, _bid, _iteNum, cache, dstVerMinId);
+				this.getMsgFromOneVBlock(resBuf, resBid, 
+						type, _tid, _bid, _iteNum);
 			}
 			
-			return packMsg(_tid, cache, statis);
+			return packMsg(_tid, resBuf);
 		} catch (IOException ioe) {
 			return null;
 		}
 	}
 	
-	private MsgPack<V, W, M, I> packMsg(int reqTid, MsgRecord<M>[] cache, long[] _statis) 
+	private MsgPack<V, W, M, I> packMsg(int reqTid, MsgResponseBuffer<V, W, M, I> resBuf) 
 		throws IOException {
+		long[] _statis = resBuf.getStatis();
 		MsgPack<V, W, M, I> msgPack = new MsgPack<V, W, M, I>(userTool); //message pack
 		msgPack.setEdgeInfo(_statis[0], _statis[6], _statis[1], _statis[2]);
 		long memUsage = 0L;
@@ -352,16 +350,11 @@ public class GraphDataServerMem<V, W, M, I>
 		if (_statis[5] > 0) {
 			/** msg for local task, send all messages by one pack. */
 			if (reqTid == this.taskId) {
-				MsgRecord<M>[] tmp = (MsgRecord<M>[]) new MsgRecord[(int)_statis[5]];
-				int vCounter = 0;
-				for (MsgRecord<M> msg: cache) {
-					if (msg != null) {
-						tmp[vCounter++] = msg;
-						memUsage += msg.getMsgByte();
-						msg = null;
-					}
+				MsgRecord<M>[] tmp = resBuf.getLocalMsgs();
+				int vCounter = (int)_statis[5];
+				for (int i = 0; i < vCounter; i++) {
+					memUsage += tmp[i].getMsgByte();
 				}
-				cache = null;
 				//now, we use #dstVert as #recMsg
 				msgPack.setLocal(tmp, vCounter, _statis[3], _statis[5], 0L);
 				this.proMsgOver[reqTid] = true;
@@ -373,13 +366,13 @@ public class GraphDataServerMem<V, W, M, I>
 				ByteArrayOutputStream bytes = 
 					new ByteArrayOutputStream(this.job.getMsgPackSize());
 				DataOutputStream stream = new DataOutputStream(bytes);
-				for (MsgRecord<M> msg: cache) {
+				for (int i = 0; i < resBuf.getRange(); i++) {
+					MsgRecord<M> msg = resBuf.get(i);
 					if (msg == null) continue;
 					
 					msg.serialize(stream);
 					vCounter++;
 					mCounter += msg.getNumOfMsgValues(); //mCounter >= vCounter
-					msg = null;
 					
 					if (mCounter == packSize) {
 						stream.close();	bytes.close();
@@ -393,7 +386,6 @@ public class GraphDataServerMem<V, W, M, I>
 						stream = new DataOutputStream(bytes);
 					} //pack
 				} //loop all messages
-				cache = null;
 				
 				if (vCounter > 0) {
 					stream.close();
@@ -426,32 +418,34 @@ public class GraphDataServerMem<V, W, M, I>
 	
 	/**
 	 * Get {@link MsgRecord}s for one VBlock.
+	 * Messages are emitted into resBuf, whose context and graph 
+	 * record are reused.
+	 * @param resBuf
 	 * @param resBid
 	 * @param type
 	 * @param _tid
 	 * @param _bid
-	 * @param cache
-	 * @param dstVerMinId
 	 * @return
 	 * @throws Exception
 	 */
-	private void getMsgFromOneVBlock(long[] statis, int resBid, 
-			int type, int _tid, int _bid, int _iteNum, 
-			MsgRecord<M>[] cache, int dstVerMinId) throws IOException {
+	private void getMsgFromOneVBlock(MsgResponseBuffer<V, W, M, I> resBuf, 
+			int resBid, int type, int _tid, int _bid, int _iteNum) 
+			throws IOException {
 		int dstBucIdx = 
 			this.commRT.getJobInformation().getGlobalBlkIdx(_tid, _bid);
 		int verMinId = this.verBlkMgr.getVerMinId();
+		long[] statis = resBuf.getStatis();
 		GraphContext<V, W, M, I> context = 
-			new GraphContext<V, W, M, I>(this.taskId, this.job, 
+			resBuf.getContext(this.taskId, this.job, 
 					_iteNum, this.preIteStyle, this.commRT);
-		GraphRecord<V, W, M, I> graph = this.userTool.getGraphRecord();
+		GraphRecord<V, W, M, I> graph = resBuf.getGraphRecord();
 		
 		for (EdgeFragment<V, W, M, I> frag : this.eBlocks[resBid][dstBucIdx]) {
 			frag.getForRespond(graph);
 			statis[1] += graph.getEdgeNum(); // edge_read
 			statis[2]++; // fragment_read
 
-			if (!resFlag[type][graph.getVerId()-verMinId]) {
+			if (!resFlag[type].get(graph.getVerId()-verMinId)) {
 				continue;
 			}
 			this.vBlocks[resBid][graph.getVerId()-this.locMinVerIds[resBid]]
@@ -459,23 +453,8 @@ public class GraphDataServerMem<V, W, M, I>
 			
 			context.reset();
 			context.initialize(graph, null, -1.0f, true, getDegree(graph.getVerId()));
-			MsgRecord<M>[] msgs = this.bsp.getMessages(context);
-			if (msgs != null) {
-				statis[3] += msgs.length; // msg_pro
-				for (MsgRecord<M> msg : msgs) {
-					int index = msg.getDstVerId() - dstVerMinId;
-					if (cache[index] == null) {
-						cache[index] = msg;
-						statis[4]++; // msg_rec
-						statis[5]++; // dstVerHasMsg
-					} else {
-						cache[index].collect(msg);
-						if (!this.isAccumulated) {
-							statis[4]++; // msg_rec
-						}
-					}
-				}//put messages into one sub send-buffer(BS_{i})
-			}
+			//put messages into one sub send-buffer(BS_{i})
+			this.bsp.getMessages(context, resBuf);
 		}//respond pull requests for one VBlock
 	}
 	
@@ -512,28 +491,29 @@ public class GraphDataServerMem<V, W, M, I>
 	}
 	
 	@Override
-	public GraphRecord<V, W, M, I> getNextGraphRecord(int _bid) 
-			throws Exception {
-		graph_rw.setVerId(this.verBlkMgr.getVerBlkBeta(_bid).getVerId());
-		this.vBlocks[_bid][tripleIdx].getForUpdate(graph_rw);
+	public GraphRecord<V, W, M, I> getNextGraphRecord(int _bid, 
+			GraphRecord<V, W, M, I> record) throws Exception {
+		record.setVerId(this.verBlkMgr.getVerBlkBeta(_bid).getVerId());
+		this.vBlocks[_bid][tripleIdx].getForUpdate(record);
 		this.tripleIdx++;
-		return graph_rw;
+		return record;
 	}
 	
 	@Override
 	public void saveGraphRecord(int _bid, int _iteNum, 
+			GraphRecord<V, W, M, I> record, 
 			boolean _acFlag, boolean _upFlag) throws Exception {
-		int index = graph_rw.getVerId() - this.verBlkMgr.getVerMinId(); //global index
+		int index = record.getVerId() - this.verBlkMgr.getVerMinId(); //global index
 		int type = (_iteNum+1)%2;
-		actFlag[index] = _acFlag;
-		resFlag[type][index] = _upFlag;
+		actFlag.set(index, _acFlag);
+		resFlag[type].set(index, _upFlag);
 		if (_upFlag) {
 			this.verBlkMgr.setBlkRespond(type, _bid, _upFlag);
 			this.verBlkMgr.incRespondVerNum(_bid);
 		}
 		
-		this.vBlocks[_bid][graph_rw.getVerId()-
-		                      this.locMinVerIds[_bid]].putAftUpdate(graph_rw);
+		this.vBlocks[_bid][record.getVerId()-
+		                      this.locMinVerIds[_bid]].putAftUpdate(record);
 	}
 	
 	@Override
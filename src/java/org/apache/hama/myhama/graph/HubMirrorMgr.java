@@ -0,0 +1,310 @@
+package org.apache.hama.myhama.graph;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.UserTool;
+
+/**
+ * HubMirrorMgr manages mirrors of hubs, i.e., vertices with at least
+ * {@link BSPJob}.getMirrorDegree() out-edges. Edges and values are
+ * serialized by {@link GraphRecord}.serEdges() and serVerValue().
+ *
+ * (1) source side: edges of a local hub are decomposed as usual, but
+ *     fragments targeted to a remote task are shipped to that task
+ *     once after loading, instead of being kept in local EBlocks.
+ *     At each superstep, the value of a responding hub is sent to
+ *     each remote task with its mirrors only once;
+ * (2) target side: mirrored fragments are kept in memory per local
+ *     VBlock, and messages along them are generated locally with
+ *     the received value, as if they were produced by the source task.
+ *
+ * @param <V> vertex value
+ * @param <W> edge weight
+ * @param <M> message value
+ * @param <I> graph information
+ */
+public class HubMirrorMgr<V, W, M, I> {
+	private int degree;
+	private int taskId;
+	private UserTool<V, W, M, I> userTool;
+	private GraphRecord<V, W, M, I> scratchRecord;
+	private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+	/** hub id -> ids of remote tasks with its mirrors */
+	private HashMap<Integer, int[]> mirrorTids = new HashMap<Integer, int[]>();
+	/** hub id -> edges to local vertices, used to push messages */
+	private HashMap<Integer, EdgeFragment<V, W, M, I>> localEdges =
+		new HashMap<Integer, EdgeFragment<V, W, M, I>>();
+	/** fragments to be shipped to each remote task */
+	private ByteArrayOutputStream[] edgeOut;
+	/** values of responding hubs to be sent to each remote task */
+	private ByteArrayOutputStream[] valueOut;
+
+	/** mirrored fragments per local VBlock */
+	private ArrayList<GraphRecord<V, W, M, I>>[] mirrors;
+	/** hub id -> degree, of hubs mirrored on this task */
+	private HashMap<Integer, Integer> mirrorDegrees = new HashMap<Integer, Integer>();
+	/** hub id -> value received at superstep t, kept in values[t%2] */
+	private HashMap<Integer, V>[] values;
+
+	@SuppressWarnings("unchecked")
+	public HubMirrorMgr(int _degree, int _taskId, int _taskNum, int _blkNum,
+			UserTool<V, W, M, I> _userTool) {
+		this.degree = _degree;
+		this.taskId = _taskId;
+		this.userTool = _userTool;
+		this.scratchRecord = _userTool.getGraphRecord();
+
+		this.edgeOut = new ByteArrayOutputStream[_taskNum];
+		this.valueOut = new ByteArrayOutputStream[_taskNum];
+		this.mirrors = 
+			(ArrayList<GraphRecord<V, W, M, I>>[]) new ArrayList<?>[_blkNum];
+		for (int i = 0; i < _blkNum; i++) {
+			this.mirrors[i] = new ArrayList<GraphRecord<V, W, M, I>>();
+		}
+		this.values = (HashMap<Integer, V>[]) new HashMap<?, ?>[2];
+		this.values[0] = new HashMap<Integer, V>();
+		this.values[1] = new HashMap<Integer, V>();
+	}
+
+	public boolean isHub(int _edgeNum) {
+		return _edgeNum >= this.degree;
+	}
+
+	/**
+	 * Keep fragments of a hub targeted to the local task, and serialize
+	 * others to be shipped by removeMirrorEdges().
+	 * @param graph
+	 * @param frags all fragments of graph
+	 * @return fragments targeted to the local task
+	 * @throws IOException
+	 */
+	public ArrayList<EdgeFragmentEntry<V,W,M,I>> putHub(
+			GraphRecord<V, W, M, I> graph,
+			ArrayList<EdgeFragmentEntry<V,W,M,I>> frags) throws IOException {
+		ArrayList<EdgeFragmentEntry<V,W,M,I>> locals =
+			new ArrayList<EdgeFragmentEntry<V,W,M,I>>();
+		ArrayList<Integer> tids = new ArrayList<Integer>();
+		int localNum = 0;
+		for (EdgeFragmentEntry<V,W,M,I> frag: frags) {
+			int tid = frag.getDstTid();
+			if (tid == this.taskId) {
+				locals.add(frag);
+				localNum += frag.getEdgeIds().length;
+				continue;
+			}
+
+			if (!tids.contains(tid)) {
+				tids.add(tid);
+			}
+			this.scratchRecord.initialize(frag);
+			ensureScratch(12 + this.scratchRecord.getEdgeByte());
+			this.scratch.putInt(frag.getVerId());
+			this.scratch.putInt(frag.getDstBid());
+			this.scratch.putInt(graph.getEdgeNum());
+			this.scratchRecord.serEdges(this.scratch);
+			write(this.edgeOut, tid);
+		}
+		if (tids.isEmpty()) {
+			return locals;
+		}
+
+		int[] array = new int[tids.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = tids.get(i);
+		}
+		this.mirrorTids.put(graph.getVerId(), array);
+
+		int[] ids = new int[localNum];
+		W[] weights = graph.getEdgeWeights()==null?
+				null:graph.getWeightArray(localNum);
+		int cursor = 0;
+		for (EdgeFragmentEntry<V,W,M,I> frag: locals) {
+			int num = frag.getEdgeIds().length;
+			System.arraycopy(frag.getEdgeIds(), 0, ids, cursor, num);
+			if (weights != null) {
+				System.arraycopy(frag.getEdgeWeights(), 0, weights, cursor, num);
+			}
+			cursor += num;
+		}
+		EdgeFragment<V, W, M, I> local =
+			new EdgeFragment<V, W, M, I>(graph.getVerId());
+		local.initialize(ids, weights);
+		this.localEdges.put(graph.getVerId(), local);
+		return locals;
+	}
+
+	/**
+	 * Return local edges of a hub with mirrors, null for other vertices.
+	 * @param _vid
+	 * @return
+	 */
+	public EdgeFragment<V, W, M, I> getLocalEdges(int _vid) {
+		return this.localEdges.get(_vid);
+	}
+
+	public int getHubNum() {
+		return this.mirrorTids.size();
+	}
+
+	/**
+	 * Remove and return fragments to be shipped to the given task.
+	 * @param _tid
+	 * @return null if nothing is mirrored on _tid
+	 */
+	public BytesWritable removeMirrorEdges(int _tid) {
+		return remove(this.edgeOut, _tid);
+	}
+
+	/**
+	 * Serialize the value of a responding vertex for its mirrors,
+	 * if it is a hub with mirrors. Invoked by the computing thread.
+	 * @param graph
+	 * @throws IOException
+	 */
+	public void putValue(GraphRecord<V, W, M, I> graph) throws IOException {
+		int[] tids = this.mirrorTids.get(graph.getVerId());
+		if (tids == null) {
+			return;
+		}
+		ensureScratch(4 + graph.getVerByte());
+		this.scratch.putInt(graph.getVerId());
+		graph.serVerValue(this.scratch);
+		for (int tid: tids) {
+			write(this.valueOut, tid);
+		}
+	}
+
+	/**
+	 * Remove and return values to be sent to the given task.
+	 * @param _tid
+	 * @return null if no hub mirrored on _tid responds
+	 */
+	public BytesWritable removeValues(int _tid) {
+		return remove(this.valueOut, _tid);
+	}
+
+	/**
+	 * Keep fragments shipped by one source task.
+	 * @param edges
+	 * @return #edges
+	 * @throws IOException
+	 */
+	public synchronized long putMirrorEdges(BytesWritable edges)
+			throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(edges.getBytes(), 0, edges.getLength());
+		long edgeNum = 0L;
+		while (in.hasRemaining()) {
+			GraphRecord<V, W, M, I> mirror = this.userTool.getGraphRecord();
+			mirror.setVerId(in.getInt());
+			int bid = in.getInt();
+			this.mirrorDegrees.put(mirror.getVerId(), in.getInt());
+			mirror.deserEdges(in);
+			this.mirrors[bid].add(mirror);
+			edgeNum += mirror.getEdgeNum();
+		}
+		return edgeNum;
+	}
+
+	/**
+	 * Deserialize values sent by one source task at the _iteNum-th
+	 * superstep. They are also kept until the next superstep if required.
+	 * @param _values
+	 * @param _iteNum
+	 * @param keep
+	 * @return hub id -> value
+	 * @throws IOException
+	 */
+	public HashMap<Integer, V> putValues(BytesWritable _values, int _iteNum,
+			boolean keep) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(_values.getBytes(), 0, _values.getLength());
+		HashMap<Integer, V> received = new HashMap<Integer, V>();
+		while (in.hasRemaining()) {
+			GraphRecord<V, W, M, I> graph = this.userTool.getGraphRecord();
+			int vid = in.getInt();
+			graph.deserVerValue(in);
+			received.put(vid, graph.getVerValue());
+		}
+		if (keep) {
+			synchronized (this.values) {
+				this.values[_iteNum%2].putAll(received);
+			}
+		}
+		return received;
+	}
+
+	/**
+	 * Get the value of a hub received at the _iteNum-th superstep.
+	 * @param _vid
+	 * @param _iteNum
+	 * @return null if the hub did not respond
+	 */
+	public V getValue(int _vid, int _iteNum) {
+		synchronized (this.values) {
+			return this.values[_iteNum%2].get(_vid);
+		}
+	}
+
+	public boolean hasMirrors(int _bid) {
+		return !this.mirrors[_bid].isEmpty();
+	}
+
+	/**
+	 * Get fragments mirrored in the given local VBlock.
+	 * Read-only after loading.
+	 * @param _bid
+	 * @return
+	 */
+	public ArrayList<GraphRecord<V, W, M, I>> getMirrors(int _bid) {
+		return this.mirrors[_bid];
+	}
+
+	/** Get the degree of a hub mirrored on this task. */
+	public int getDegree(int _vid) {
+		return this.mirrorDegrees.get(_vid);
+	}
+
+	/**
+	 * Prepare to receive values at the _iteNum-th superstep.
+	 * Values of the previous superstep are still kept.
+	 * @param _iteNum
+	 */
+	public void clearBefIte(int _iteNum) {
+		synchronized (this.values) {
+			this.values[_iteNum%2].clear();
+		}
+		for (int i = 0; i < this.valueOut.length; i++) {
+			this.valueOut[i] = null;
+		}
+	}
+
+	private void ensureScratch(int capacity) {
+		if (this.scratch.capacity() < capacity) {
+			this.scratch = ByteBuffer.allocate(capacity);
+		}
+		this.scratch.clear();
+	}
+
+	/** Append bytes in scratch into out[tid]. */
+	private void write(ByteArrayOutputStream[] out, int tid) {
+		if (out[tid] == null) {
+			out[tid] = new ByteArrayOutputStream();
+		}
+		out[tid].write(this.scratch.array(), 0, this.scratch.position());
+	}
+
+	private BytesWritable remove(ByteArrayOutputStream[] out, int tid) {
+		if (out[tid] == null) {
+			return null;
+		}
+		BytesWritable bytes = new BytesWritable(out[tid].toByteArray());
+		out[tid] = null;
+		return bytes;
+	}
+}
@@ -11,10 +11,12 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -27,7 +29,9 @@ import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hama.Constants;
 import org.apache.hama.Constants.BufferStatus;
 import org.apache.hama.bsp.BSPJob;
+import org.apache.hama.myhama.api.MsgCombiner;
 import org.apache.hama.myhama.api.MsgRecord;
+import org.apache.hama.myhama.api.PrimitiveMsgCombiner;
 import org.apache.hama.myhama.api.UserTool;
 import org.apache.hama.myhama.comm.MsgPack;
 import org.apache.hama.myhama.util.LocalFileOperation;
@@ -109,6 +113,51 @@ public class MsgDataServer<V, W, M, I> {
 		}
 	}
 	
+	/**
+	 * Open-addressing index from target vertex ids to positions of 
+	 * messages in the sendBuffer of one destination task. 
+	 * Used to combine messages before sending under PUSH.
+	 */
+	private static class SendBufIndex {
+		private int[] keys;
+		private int[] positions; //position+1, 0 means an empty slot
+		private int mask;
+		private int shift; //32-log2(capacity), keep high bits of the hash
+		
+		public SendBufIndex(int expected) {
+			int capacity = 16;
+			while (capacity < 2*expected) {
+				capacity <<= 1;
+			}
+			this.keys = new int[capacity];
+			this.positions = new int[capacity];
+			this.mask = capacity - 1;
+			this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+		}
+		
+		/**
+		 * Get the position of the message sent to dstId, 
+		 * or put "pos" if not found. 
+		 * @return the existing position, or -1 if "pos" is put
+		 */
+		public int getOrPut(int dstId, int pos) {
+			int slot = (dstId * 0x9E3779B9) >>> this.shift;
+			while (this.positions[slot] != 0) {
+				if (this.keys[slot] == dstId) {
+					return this.positions[slot] - 1;
+				}
+				slot = (slot+1) & this.mask;
+			}
+			this.keys[slot] = dstId;
+			this.positions[slot] = pos + 1;
+			return -1;
+		}
+		
+		public void clear() {
+			Arrays.fill(this.positions, 0);
+		}
+	}
+	
 	private BSPJob jobConf;
 	private Constants.STYLE bspStyle;
 	private boolean isAccumulated;
@@ -127,12 +176,37 @@ public class MsgDataServer<V, W, M, I> {
 	private long pre_msgNum;
 	private long pre_cacheMem;
 	
+	/** 
+	 * used instead of cache and pre_cache if the user-defined 
+	 * {@link MsgCombiner} is available for accumulated messages 
+	 **/
+	private MsgCombiner<M> combiner;
+	private MsgCombiner<M> pre_combiner;
+	private int msgByte;
+	
+	/** 
+	 * used in pull with pre-fetching: messages to the bid-th VBlock are 
+	 * pre-fetched into the (bid%pullDepth)-th slot, while updating 
+	 * previous VBlocks. The 0-th slot is pre_cache/pre_combiner. 
+	 * pullDepth=0 means messages are pulled into cache directly.
+	 **/
+	private MsgRecord<M>[][] pre_caches; //[slot]
+	private MsgCombiner<M>[] pre_combiners; //[slot]
+	private long[] pre_msgNums; //[slot]
+	private int pullDepth = 0;
+	
 	/** used in push */
 	private int parId = -1;
 	private int taskNum = 0;
 	private int MESSAGE_SEND_BUFFER_THRESHOLD;
 	private int MESSAGE_RECEIVE_BUFFER_THRESHOLD;
 	private ArrayList<MsgRecord<M>>[] sendBuffer; //[DstPartitionId]: msgs
+	/** combine messages in sendBuffer, null if not accumulated */
+	private SendBufIndex[] sendBufIndex; //[DstPartitionId]
+	private long[] sendBufMsgNum; //[DstPartitionId]: #msgs before combining
+	/** records of sendBuffer which have been serialized, reused later */
+	private ArrayList<MsgRecord<M>> sendFree = new ArrayList<MsgRecord<M>>();
+	private MsgRecord<M> sendScratch; //wrap a message to be combined
 	private int[] packageVersion; //for logging outgoing messages (fault-tolerance)
 	
 	/**                                                    _ 
@@ -165,7 +239,6 @@ public class MsgDataServer<V, W, M, I> {
 	/** messages being pulled at the current iteration (fault-tolerance) */
 	private File msgDataCurIteOutgoingPullDir;
 	
-	private int locVerMinId = -1;
 	private int locBucLen = -1;
 	private int locBucNum = -1;
 	private boolean[][] locBucHitFlags; //[srcParId]: local_bucket_ids
@@ -174,6 +247,11 @@ public class MsgDataServer<V, W, M, I> {
 	private MsgRecord<M>[][] incomedBuffer; //[SrcParBucId]: <dstId, msgValue>
 	private int[] incomingBufLen; //[SrcParBucId]: the length of incomingBuffer
 	private long[] incomingBufByte;
+	/** 
+	 * [SrcParId]: serialize {@link MsgPack}s from one source task, 
+	 * since several packs may be in flight per destination.
+	 */
+	private Object[] recLocks;
 	
 	private ExecutorService locMemPullExecutor;
 	private Future<Boolean> locMemPullResult;
@@ -189,6 +267,7 @@ public class MsgDataServer<V, W, M, I> {
 		
 	}
 	
+	@SuppressWarnings("unchecked")
 	public void init(BSPJob job, int _bucLen, int _bucNum, int[] _verMinIds, 
 			int _parId, String _rootDir, boolean miniSuperStep) {
 		jobConf = job;
@@ -196,9 +275,12 @@ public class MsgDataServer<V, W, M, I> {
 		bspStyle = job.getBspStyle();
 		taskNum = job.getNumBspTask();
 		packageVersion = new int[taskNum];
+		recLocks = new Object[taskNum];
+		for (int i = 0; i < taskNum; i++) {
+			recLocks[i] = new Object();
+		}
 		
 		localFileOpt = new LocalFileOperation();
-		cache = (MsgRecord<M>[]) new MsgRecord[_bucLen];
 		verMinIds = _verMinIds;
 		locBucLen = _bucLen;
 		locBucNum = _bucNum;
@@ -209,21 +291,51 @@ public class MsgDataServer<V, W, M, I> {
 	    	ReflectionUtils.newInstance(job.getConf().getClass(
 	    		Constants.USER_JOB_TOOL_CLASS, UserTool.class), job.getConf());
 		this.isAccumulated = userTool.isAccumulated();
-		for (int i = 0; i < _bucLen; i++) {
-			cache[i] = userTool.getMsgRecord();
+		this.msgByte = userTool.getMsgRecord().getMsgByte();
+		if (this.isAccumulated) {
+			this.combiner = userTool.getCombiner();
+		}
+		if (this.combiner != null) {
+			this.combiner.initialize(_bucLen);
+			LOG.info("use " + this.combiner.getClass().getSimpleName() 
+					+ " to receive messages");
+		} else {
+			cache = (MsgRecord<M>[]) new MsgRecord<?>[_bucLen];
+			for (int i = 0; i < _bucLen; i++) {
+				cache[i] = userTool.getMsgRecord();
+			}
 		}
 		this.msgNum = 0L;
 		this.io_byte = 0L;
 		
 		createMsgDir(new File(_rootDir));
 		
-		/** used in push or pull/hybrid&accumulated **/
-		if (this.bspStyle!=Constants.STYLE.PULL 
-				|| this.isAccumulated) {
-			this.pre_cache = (MsgRecord<M>[]) new MsgRecord[this.locBucLen];
+		/** used in push or pull/hybrid with pre-fetching **/
+		if (this.bspStyle != Constants.STYLE.PUSH) {
+			this.pullDepth = getPullDepth(job, _bucLen);
+		}
+		int slotNum = 
+			Math.max(this.pullDepth, this.bspStyle!=Constants.STYLE.PULL? 1:0);
+		if (slotNum > 0) {
 			this.pre_msgNum = 0L;
-			for (int i = 0; i < _bucLen; i++) {
-				this.pre_cache[i] = userTool.getMsgRecord();
+			this.pre_msgNums = new long[slotNum];
+			if (this.combiner != null) {
+				this.pre_combiners = 
+					(MsgCombiner<M>[]) new MsgCombiner<?>[slotNum];
+				for (int slot = 0; slot < slotNum; slot++) {
+					this.pre_combiners[slot] = userTool.getCombiner();
+					this.pre_combiners[slot].initialize(_bucLen);
+				}
+				this.pre_combiner = this.pre_combiners[0];
+			} else {
+				this.pre_caches = 
+					(MsgRecord<M>[][]) new MsgRecord<?>[slotNum][this.locBucLen];
+				for (int slot = 0; slot < slotNum; slot++) {
+					for (int i = 0; i < _bucLen; i++) {
+						this.pre_caches[slot][i] = userTool.getMsgRecord();
+					}
+				}
+				this.pre_cache = this.pre_caches[0];
 			}
 		}
 		
@@ -244,12 +356,21 @@ public class MsgDataServer<V, W, M, I> {
 			LOG.info(sb.toString());
 			
 			/** used in push: send messages */
-			this.sendBuffer = new ArrayList[this.taskNum];
+			this.sendBuffer = 
+				(ArrayList<MsgRecord<M>>[]) new ArrayList<?>[this.taskNum];
 			for (int index = 0; index < this.taskNum; index++) {
 				this.sendBuffer[index] = new ArrayList<MsgRecord<M>>();
 			}
+			this.sendBufMsgNum = new long[this.taskNum];
+			if (this.isAccumulated && job.isSendCombine()) {
+				this.sendBufIndex = new SendBufIndex[this.taskNum];
+				for (int index = 0; index < this.taskNum; index++) {
+					this.sendBufIndex[index] = 
+						new SendBufIndex(MESSAGE_SEND_BUFFER_THRESHOLD);
+				}
+				LOG.info("combine messages before sending them under PUSH");
+			}
 			
-			this.locVerMinId = verMinIds[0];
 			this.locBucHitFlags = new boolean[this.taskNum][this.locBucNum];
 			for (int tid = 0; tid < this.taskNum; tid++) {
 				Arrays.fill(this.locBucHitFlags[tid], false);
@@ -257,8 +378,8 @@ public class MsgDataServer<V, W, M, I> {
 			
 			/** used in push: receive messages */
 			int length = this.taskNum * this.locBucNum;
-		    this.incomingBuffer = (MsgRecord<M>[][]) new MsgRecord[length][];
-		    this.incomedBuffer = (MsgRecord<M>[][])new MsgRecord[length][];
+		    this.incomingBuffer = (MsgRecord<M>[][]) new MsgRecord<?>[length][];
+		    this.incomedBuffer = (MsgRecord<M>[][])new MsgRecord<?>[length][];
 		    this.incomingBufLen = new int[length];
 		    this.incomingBufByte = new long[length];
 		    
@@ -346,6 +467,42 @@ public class MsgDataServer<V, W, M, I> {
 		this.pre_msgNum += _locMsgNum;
 	}
 	
+	private synchronized void addPreMsgNum(int slot, long _msgNum) {
+		this.pre_msgNums[slot] += _msgNum;
+	}
+	
+	/**
+	 * Compute the number of VBlocks pre-fetched under style.Pull. 
+	 * The configured depth is reduced if the pre-fetching slots 
+	 * exceed the memory budget, but accumulated messages are always 
+	 * pre-fetched for the next VBlock.
+	 */
+	private int getPullDepth(BSPJob job, int _bucLen) {
+		int depth = Math.max(0, job.getMsgPullPrefetchDepth());
+		if (this.isAccumulated) {
+			depth = Math.max(1, depth);
+		}
+		long slotByte = (long)_bucLen * 
+			(this.combiner!=null? this.msgByte:(this.msgByte+16)); //object header
+		int maxDepth = (int)Math.min(Integer.MAX_VALUE, 
+				job.getMsgPullPrefetchMem() / Math.max(1L, slotByte));
+		if (depth > maxDepth) {
+			depth = this.isAccumulated? Math.max(1, maxDepth):maxDepth;
+			LOG.warn("reduce the pre-fetching depth to " + depth 
+					+ " due to the memory budget");
+		}
+		LOG.info("pre-fetch messages for " + depth + " VBlocks in pull");
+		return depth;
+	}
+	
+	/** 
+	 * Return the number of VBlocks whose messages are pre-fetched 
+	 * while updating the current VBlock under style.Pull. 
+	 **/
+	public int getPullPrefetchDepth() {
+		return this.pullDepth;
+	}
+	
 	public synchronized void addIOByte(long _io) {
 		this.io_byte += _io;
 	}
@@ -357,8 +514,32 @@ public class MsgDataServer<V, W, M, I> {
 	//===============================================================
 	//       Used for push: manage sending and receiving messages
 	//===============================================================
-	/** Put messages into the sendBuffer and return the status of buffer */
-	public BufferStatus putIntoSendBuffer(int dstPid, MsgRecord<M> msg) {
+	/** 
+	 * Put messages into the sendBuffer and return the status of buffer. 
+	 * For accumulated messages, a message is combined into the one 
+	 * already in the buffer with the same target vertex, if any. 
+	 * Otherwise, it is copied into a record owned by the buffer, 
+	 * which is reused after being serialized for a remote task. 
+	 * Single-thread.
+	 */
+	public BufferStatus putIntoSendBuffer(int dstPid, 
+			int srcId, int dstId, M msgValue) {
+		this.sendBufMsgNum[dstPid]++;
+		if (this.sendBufIndex != null) {
+			int pos = this.sendBufIndex[dstPid].getOrPut(dstId, 
+					this.sendBuffer[dstPid].size());
+			if (pos >= 0) {
+				if (this.sendScratch == null) {
+					this.sendScratch = this.userTool.getMsgRecord();
+				}
+				this.sendScratch.initialize(srcId, dstId, msgValue);
+				this.sendBuffer[dstPid].get(pos).combiner(this.sendScratch);
+				return BufferStatus.NORMAL;
+			}
+		}
+		MsgRecord<M> msg = this.sendFree.isEmpty()? this.userTool.getMsgRecord()
+				: this.sendFree.remove(this.sendFree.size()-1);
+		msg.initialize(srcId, dstId, msgValue);
 		this.sendBuffer[dstPid].add(msg);
 		
 		if (this.sendBuffer[dstPid].size() 
@@ -388,7 +569,7 @@ public class MsgDataServer<V, W, M, I> {
 		int vCounter = loadOutgoingMsg(messages, dstTaskId, packageVersion[dstTaskId]-1, 
 					statis, Constants.STYLE.PUSH);
 		msgPack.setEdgeInfo(statis[0], 0L, 0L, 0L);
-		msgPack.setRemote(messages, vCounter, 0L, vCounter, 0L);
+		msgPack.setRemote(messages, vCounter, vCounter, vCounter, 0L);
 		packageVersion[dstTaskId]--;
 		
 		messages = null;
@@ -398,6 +579,7 @@ public class MsgDataServer<V, W, M, I> {
 	}
 	
 	/** Get one {@link MsgPack} and then clear the related buffer under PUSH */
+	@SuppressWarnings("unchecked")
 	public MsgPack<V, W, M, I> getMsgPack(int dstPid) throws Exception {
 		MsgPack<V, W, M, I> msgPack = 
 			new MsgPack<V, W, M, I>(userTool); //message pack
@@ -412,7 +594,7 @@ public class MsgDataServer<V, W, M, I> {
 		
 		if (this.parId == dstPid) {
 			MsgRecord<M>[] msgData = 
-				(MsgRecord<M>[]) new MsgRecord[this.sendBuffer[dstPid].size()];
+				(MsgRecord<M>[]) new MsgRecord<?>[this.sendBuffer[dstPid].size()];
 			for (MsgRecord<M> msg: this.sendBuffer[dstPid]) {
 				msgData[counter++] = msg;
 				mem += msg.getMsgByte();
@@ -441,7 +623,8 @@ public class MsgDataServer<V, W, M, I> {
 			}
 			
 			msgPack.setEdgeInfo(0L, 0L, 0L, 0L);
-			msgPack.setLocal(msgData, counter, 0L, counter, loggedBytes);
+			msgPack.setLocal(msgData, counter, this.sendBufMsgNum[dstPid], 
+					counter, loggedBytes);
 			
 			msgData = null;
 		} else {
@@ -470,12 +653,22 @@ public class MsgDataServer<V, W, M, I> {
 			}
 			
 			msgPack.setEdgeInfo(0L, 0L, 0L, 0L);
-			msgPack.setRemote(bytes, counter, 0L, counter, loggedBytes);
+			msgPack.setRemote(bytes, counter, this.sendBufMsgNum[dstPid], 
+					counter, loggedBytes);
 			
 			bytes = null;
+			//records sent to the local task are kept by the receiver
+			for (MsgRecord<M> msg: this.sendBuffer[dstPid]) {
+				msg.reset();
+				this.sendFree.add(msg);
+			}
 		}
 		
 		this.sendBuffer[dstPid].clear();
+		this.sendBufMsgNum[dstPid] = 0L;
+		if (this.sendBufIndex != null) {
+			this.sendBufIndex[dstPid].clear();
+		}
 		this.memUsage.updateSendBuf(dstPid, mem);
 		
 		return msgPack;
@@ -490,6 +683,10 @@ public class MsgDataServer<V, W, M, I> {
 	public void clearSendBuffer() {
 		for (int idx = 0; idx < taskNum; idx++) {
 			sendBuffer[idx].clear();
+			sendBufMsgNum[idx] = 0L;
+			if (sendBufIndex != null) {
+				sendBufIndex[idx].clear();
+			}
 			packageVersion[idx] = 0;
 		}
 	}
@@ -498,44 +695,49 @@ public class MsgDataServer<V, W, M, I> {
 	 *  Receive messages, used in push.
 	 *  Store them in incomingBuffer first, 
 	 *  and spill the buffer targeted to one bucket 
-	 *  onto disk if it is overflow.
+	 *  onto disk if it is overflow. 
+	 *  Packs from the same source task are stored one by one, 
+	 *  but they are decoded concurrently.
 	 *  
 	 * @param srcParId
 	 * @param pack
 	 * 
 	 * @return #messages on disk, or -1 if any exception happens.
 	 */
+	@SuppressWarnings("unchecked")
 	public long recMsgData(int srcParId, MsgPack<V, W, M, I> pack) {
 		int bid = -1, pbid = -1;
 		long msgCountOnDisk = 0L;
 		
 		try {
 			pack.setUserTool(this.userTool);
-			for (MsgRecord<M> msg: pack.get()) {
-				bid = (msg.getDstVerId()-this.locVerMinId) / this.locBucLen;
-				pbid = srcParId * this.locBucNum + bid;
-				if (!this.locBucHitFlags[srcParId][bid]) {
-					this.locBucHitFlags[srcParId][bid] = true;
-				}
+			MsgRecord<M>[] msgData = pack.get();
+			synchronized (this.recLocks[srcParId]) {
+				for (MsgRecord<M> msg: msgData) {
+					bid = getLocalBlkIdx(msg.getDstVerId());
+					pbid = srcParId * this.locBucNum + bid;
+					if (!this.locBucHitFlags[srcParId][bid]) {
+						this.locBucHitFlags[srcParId][bid] = true;
+					}
 				
-				this.incomingBuffer[pbid][this.incomingBufLen[pbid]] = msg;
-				this.incomingBufLen[pbid]++;
-				this.incomingBufByte[pbid] += msg.getMsgByte();
+					this.incomingBuffer[pbid][this.incomingBufLen[pbid]] = msg;
+					this.incomingBufLen[pbid]++;
+					this.incomingBufByte[pbid] += msg.getMsgByte();
 				
-				if (this.incomingBufLen[pbid] >= MESSAGE_RECEIVE_BUFFER_THRESHOLD) {
-					File dir = this.getMsgDirBlock(msgDataCurIteIncomingDir, bid);
-					msgCountOnDisk = this.incomingBufLen[pbid];
+					if (this.incomingBufLen[pbid] >= MESSAGE_RECEIVE_BUFFER_THRESHOLD) {
+						File dir = this.getMsgDirBlock(msgDataCurIteIncomingDir, bid);
+						msgCountOnDisk = 
+							spillReceivedMsgToDisk(dir, srcParId, this.incomingBuffer[pbid], 
+								this.incomingBufLen[pbid], this.incomingBufByte[pbid]);
+						this.memUsage.updateIncomingBuf(pbid, this.incomingBufByte[pbid]);
 					
-					spillReceivedMsgToDisk(dir, srcParId, this.incomingBuffer[pbid], 
-							this.incomingBufLen[pbid], this.incomingBufByte[pbid]);
-					this.memUsage.updateIncomingBuf(pbid, this.incomingBufByte[pbid]);
+						this.incomingBuffer[pbid] = null; 
 					
-					this.incomingBuffer[pbid] = null; 
-					
-					this.incomingBuffer[pbid] = 
-						(MsgRecord<M>[]) new MsgRecord[MESSAGE_RECEIVE_BUFFER_THRESHOLD];
-					this.incomingBufLen[pbid] = 0;
-					this.incomingBufByte[pbid] = 0;
+						this.incomingBuffer[pbid] = 
+							(MsgRecord<M>[]) new MsgRecord<?>[MESSAGE_RECEIVE_BUFFER_THRESHOLD];
+						this.incomingBufLen[pbid] = 0;
+						this.incomingBufByte[pbid] = 0;
+					}
 				}
 			}
 			
@@ -684,9 +886,16 @@ public class MsgDataServer<V, W, M, I> {
 	 * Spill received messages from source task with id as srcParId to some 
 	 * {@link VBlock} (indicated by "dir") onto disk, used in Push. This function 
 	 * is thread-safe because {@link MsgPack}s from a specific source task to the
-	 * specific {@link VBlock} are transmitted in a serialized manner.
+	 * specific {@link VBlock} are stored in a serialized manner.
+	 * 
+	 * Accumulated messages are sorted by target vertex ids and combined in 
+	 * memory first, and then appended as one run: #messages followed by 
+	 * messages. If {@link PrimitiveMsgCombiner} is available, each message 
+	 * is written as the delta of its target id (var-length) and the 
+	 * encoded value, otherwise, it is serialized by {@link MsgRecord}. 
+	 * @return #messages written onto disk
 	 * */
-	private boolean spillReceivedMsgToDisk(File dir, int srcParId, 
+	private int spillReceivedMsgToDisk(File dir, int srcParId, 
 			MsgRecord<M>[] messages, int length, long bytes) 
 			throws FileNotFoundException, IOException {		
 		File dataFile = getMsgDataFile(dir, srcParId);
@@ -694,29 +903,96 @@ public class MsgDataServer<V, W, M, I> {
 		
 		RandomAccessFile ra = new RandomAccessFile(dataFile, "rw");
 		FileChannel fc = ra.getChannel();
-		MappedByteBuffer mbb = 
-			fc.map(FileChannel.MapMode.READ_WRITE, ra.length(), bytes);
+		if (!this.isAccumulated) {
+			MappedByteBuffer mbb = 
+				fc.map(FileChannel.MapMode.READ_WRITE, ra.length(), bytes);
+			for (int i = 0; i < length; i++) {
+				messages[i].serialize(mbb);
+			}
+			fc.close();	ra.close();
+			return length;
+		}
 		
-		for (int i = 0; i < length; i++) {
-			messages[i].serialize(mbb);
+		Arrays.sort(messages, 0, length, DST_ID_ORDER);
+		int num = 0;
+		for (int i = 1; i < length; i++) {
+			if (messages[i].getDstVerId() == messages[num].getDstVerId()) {
+				messages[num].combiner(messages[i]);
+			} else {
+				messages[++num] = messages[i];
+			}
 		}
+		num = length>0? num+1:0;
 		
+		ByteBuffer buf = null;
+		if (this.pre_combiner instanceof PrimitiveMsgCombiner) {
+			PrimitiveMsgCombiner<M> prim = (PrimitiveMsgCombiner<M>) this.pre_combiner;
+			buf = ByteBuffer.allocate(4 + num*(5+8));
+			buf.putInt(num);
+			int preId = 0;
+			for (int i = 0; i < num; i++) {
+				putVInt(buf, messages[i].getDstVerId()-preId);
+				buf.putLong(prim.toBits(messages[i].getMsgValue()));
+				preId = messages[i].getDstVerId();
+			}
+		} else {
+			buf = ByteBuffer.allocate((int)(4 + bytes));
+			buf.putInt(num);
+			for (int i = 0; i < num; i++) {
+				messages[i].serialize(buf);
+			}
+		}
+		buf.flip();
+		fc.position(fc.size());
+		while (buf.hasRemaining()) {
+			fc.write(buf);
+		}
 		fc.close();	ra.close();
 		
-		messages = null;
-		
-		return true;
+		return num;
+	}
+	
+	/** Order messages by target vertex ids. */
+	private static final Comparator<MsgRecord<?>> DST_ID_ORDER = 
+		new Comparator<MsgRecord<?>>() {
+			@Override
+			public int compare(MsgRecord<?> m1, MsgRecord<?> m2) {
+				int id1 = m1.getDstVerId(), id2 = m2.getDstVerId();
+				return id1<id2? -1:(id1==id2? 0:1);
+			}
+	};
+	
+	/** Put a non-negative int by 7 bits per byte. */
+	private static void putVInt(ByteBuffer buf, int value) {
+		while ((value & ~0x7F) != 0) {
+			buf.put((byte)((value&0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte)value);
+	}
+	
+	/** Get an int put by putVInt(). */
+	private static int getVInt(ByteBuffer buf) {
+		int value = 0, shift = 0;
+		byte b;
+		do {
+			b = buf.get();
+			value |= (b&0x7F) << shift;
+			shift += 7;
+		} while ((b&0x80) != 0);
+		return value;
 	}
 	
 	/** Switch messages pushed from the previous iteration into Incomed buffer, 
 	 * to be processed. And then clear Incoming buffer. */
+	@SuppressWarnings("unchecked")
 	private void switchIncomingToIncomed() {
 		int length = this.taskNum * this.locBucNum;
 		for (int pbid = 0; pbid < length; pbid++) {
 			this.incomedBuffer[pbid] = null;
 			if (this.incomingBufLen[pbid] > 0) {
 				this.incomedBuffer[pbid] = 
-					(MsgRecord<M>[]) new MsgRecord[this.incomingBufLen[pbid]];
+					(MsgRecord<M>[]) new MsgRecord<?>[this.incomingBufLen[pbid]];
 				for (int i = 0; i < this.incomingBufLen[pbid]; i++) {
 					this.incomedBuffer[pbid][i] = this.incomingBuffer[pbid][i];
 				}
@@ -734,23 +1010,51 @@ public class MsgDataServer<V, W, M, I> {
 	 * Single-thread.
 	 */
 	public void switchPreMsgToCache() {
-		if (this.pre_msgNum == 0L) {
-			return;
+		this.pre_msgNum = switchToCache(0, this.pre_msgNum);
+	}
+	
+	/** 
+	 * Switch messages pre-fetched for the _bid-th VBlock from remote 
+	 * source-tasks into cache, used in pull. Single-thread.
+	 */
+	public void switchPreMsgToCache(int _bid) {
+		if (this.pullDepth == 0) {
+			return; //messages have been pulled into cache directly
+		}
+		int slot = _bid % this.pullDepth;
+		this.pre_msgNums[slot] = switchToCache(slot, this.pre_msgNums[slot]);
+	}
+	
+	/** Move messages in the given slot into cache, and return zero. */
+	private long switchToCache(int slot, long _preMsgNum) {
+		if (_preMsgNum == 0L) {
+			return 0L;
 		} else {
-			this.msgNum = this.pre_msgNum;
+			this.msgNum = _preMsgNum;
 		}
 		
-		for (int i = 0; i < this.locBucLen; i++) {
-			if (this.pre_cache[i].isValid()) {
-				this.cache[i].collect(this.pre_cache[i]);
-				this.pre_cacheMem += this.pre_cache[i].getMsgByte();
-				this.pre_cache[i].reset();
+		if (this.combiner != null) {
+			MsgCombiner<M> preCombiner = this.pre_combiners[slot];
+			for (int i = 0; i < this.locBucLen; i++) {
+				if (preCombiner.hasValue(i)) {
+					this.combiner.combineFrom(preCombiner, i);
+					this.pre_cacheMem += this.msgByte;
+				}
+			}
+		} else {
+			MsgRecord<M>[] preCache = this.pre_caches[slot];
+			for (int i = 0; i < this.locBucLen; i++) {
+				if (preCache[i].isValid()) {
+					this.cache[i].collect(preCache[i]);
+					this.pre_cacheMem += preCache[i].getMsgByte();
+					preCache[i].reset();
+				}
 			}
 		}
 		
-		this.pre_msgNum = 0L;
 		this.memUsage.updatePreCache(this.pre_cacheMem);
 		this.pre_cacheMem = 0L;
+		return 0L;
 	}
 	
 	/**
@@ -846,19 +1150,35 @@ public class MsgDataServer<V, W, M, I> {
 			MsgPack<V, W, M, I> recMsgPack) {
 		try {
 			recMsgPack.setUserTool(userTool);
-			if (this.isAccumulated) {
-				this.addPreMsgNum(recMsgPack.getMsgRecNum());
-				int index = 0;
-				for (MsgRecord<M> msg: recMsgPack.get()) {
+			if (this.pullDepth > 0) {
+				int slot = _bid % this.pullDepth;
+				MsgCombiner<M> preCombiner = 
+					this.combiner!=null? this.pre_combiners[slot]:null;
+				this.addPreMsgNum(slot, recMsgPack.getMsgRecNum());
+				int index = 0, size = recMsgPack.size();
+				if (preCombiner != null 
+						&& recMsgPack.combineInto(preCombiner, verMinIds[_bid])) {
+					return true; //decoded from the network buffer directly
+				}
+				MsgRecord<M>[] msgs = recMsgPack.get();
+				for (int i = 0; i < size; i++) {
+					MsgRecord<M> msg = msgs[i];
 					index = msg.getDstVerId() - verMinIds[_bid];
-					/** Lock for each target vertex, 
-					 * different ones may be processed at the same time */
-					this.pre_cache[index].collect(msg);
+					if (preCombiner != null) {
+						/** Lock-free */
+						preCombiner.combine(index, msg.getMsgValue());
+					} else {
+						/** Lock for each target vertex, 
+						 * different ones may be processed at the same time */
+						this.pre_caches[slot][index].collect(msg);
+					}
 				}
 			} else {
 				this.addMsgNum(recMsgPack.getMsgRecNum()); //synchronize method
-				int index = 0;
-				for (MsgRecord<M> msg: recMsgPack.get()) {
+				int index = 0, size = recMsgPack.size();
+				MsgRecord<M>[] msgs = recMsgPack.get();
+				for (int i = 0; i < size; i++) {
+					MsgRecord<M> msg = msgs[i];
 					index = msg.getDstVerId() - verMinIds[_bid];
 					/** Lock for each target vertex, 
 					 * different ones may be processed at the same time */
@@ -882,6 +1202,7 @@ public class MsgDataServer<V, W, M, I> {
 	 * Also, the receiving buffer should be cleared and created.
 	 * Single-Thread.
 	 **/
+	@SuppressWarnings("unchecked")
 	public void clearBefIte(int _iteNum, Constants.STYLE _preIteStyle, 
 			Constants.STYLE _curIteStyle, boolean miniSuperStep) 
 			throws Exception {
@@ -889,11 +1210,17 @@ public class MsgDataServer<V, W, M, I> {
 		int cur_IteNum = _iteNum, next_IteNum = _iteNum+1;
 		
 		clearBefBucket();
-		/** used in push or pull/hybrid&accumulated **/
-		if (this.bspStyle!=Constants.STYLE.PULL 
-				|| this.isAccumulated) {
-			for (int i = 0; i < this.locBucLen; i++) {
-				this.pre_cache[i].reset();
+		/** used in push or pull/hybrid with pre-fetching **/
+		if (this.pre_msgNums != null) {
+			for (int slot = 0; slot < this.pre_msgNums.length; slot++) {
+				if (this.pre_combiners != null) {
+					this.pre_combiners[slot].clear();
+				} else {
+					for (int i = 0; i < this.locBucLen; i++) {
+						this.pre_caches[slot][i].reset();
+					}
+				}
+				this.pre_msgNums[slot] = 0;
 			}
 			this.pre_msgNum = 0;
 			this.pre_cacheMem = 0;
@@ -936,7 +1263,7 @@ public class MsgDataServer<V, W, M, I> {
 			for (int index = 0; index < length; index++) {
 				this.incomingBuffer[index] = null;
 				this.incomingBuffer[index] = 
-					(MsgRecord<M>[]) new MsgRecord[MESSAGE_RECEIVE_BUFFER_THRESHOLD];
+					(MsgRecord<M>[]) new MsgRecord<?>[MESSAGE_RECEIVE_BUFFER_THRESHOLD];
 				this.incomingBufLen[index] = 0;
 				this.incomingBufByte[index] = 0;
 			}
@@ -1015,8 +1342,12 @@ public class MsgDataServer<V, W, M, I> {
 	 * Single-thread.
 	 **/
 	public void clearBefBucket() {
-		for (int i = 0; i < this.cache.length; i++) {
-			this.cache[i].reset();
+		if (this.combiner != null) {
+			this.combiner.clear();
+		} else {
+			for (int i = 0; i < this.cache.length; i++) {
+				this.cache[i].reset();
+			}
 		}
 		this.msgNum = 0L;
 		this.cacheMem = 0L;
@@ -1026,14 +1357,53 @@ public class MsgDataServer<V, W, M, I> {
 		this.memUsage.updateCache(this.cacheMem);
 	}
 	
+	/** 
+	 * Get the local VBlock index of _vid by binary search, 
+	 * since VBlocks may have different lengths.
+	 */
+	private int getLocalBlkIdx(int _vid) {
+		int low = 0, high = this.locBucNum - 1;
+		while (low < high) {
+			int mid = (low+high+1) >>> 1;
+			if (this.verMinIds[mid] <= _vid) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+	
 	/** Has messages targeted to the _vid? */
 	public boolean hasMsg(int _bid, int _vid) {
+		if (this.combiner != null) {
+			return this.combiner.hasValue(_vid-verMinIds[_bid]);
+		}
 		return this.cache[_vid-verMinIds[_bid]].isValid();
 	}
 	
-	/** Get messages targeted to the _vid. null is returned if no messages */
-	public MsgRecord<M> getMsg(int _bid, int _vid) {
+	/** Create a {@link MsgRecord} owned by one reader of getMsg(). */
+	public MsgRecord<M> newMsgRecord() {
+		return this.userTool.getMsgRecord();
+	}
+	
+	/** 
+	 * Get messages targeted to the _vid. null is returned if no messages. 
+	 * If {@link MsgCombiner} is used, the combined value is put into 
+	 * _msg which is then returned, thus one reader can reuse one 
+	 * {@link MsgRecord} created by newMsgRecord() for all vertices.
+	 **/
+	public MsgRecord<M> getMsg(int _bid, int _vid, MsgRecord<M> _msg) {
 		int index = _vid - verMinIds[_bid];
+		if (this.combiner != null) {
+			if (!this.combiner.hasValue(index)) {
+				return null;
+			}
+			MsgRecord<M> msg = _msg;
+			msg.initialize(-1, _vid, this.combiner.getValue(index));
+			this.cacheMem += this.msgByte;
+			return msg;
+		}
 		if (this.cache[index].isValid()) {
 			this.cacheMem += this.cache[index].getMsgByte();
 			return this.cache[index];
@@ -1098,8 +1468,13 @@ public class MsgDataServer<V, W, M, I> {
 							index < incomedBuffer[srcPBID].length; index++) {
 						dstId = incomedBuffer[srcPBID][index].getDstVerId();
 						msgIndex = dstId - this.startIndex;
-						pre_cache[msgIndex].collect(
-								incomedBuffer[srcPBID][index].clone());
+						if (pre_combiner != null) {
+							pre_combiner.combine(msgIndex, 
+									incomedBuffer[srcPBID][index].getMsgValue());
+						} else {
+							pre_cache[msgIndex].collect(
+									incomedBuffer[srcPBID][index].clone());
+						}
 					}
 					addPreMsgNum(incomedBuffer[srcPBID].length);
 					//incomedBuffer[srcPBID] = null; //clear at clearAftIte
@@ -1138,12 +1513,43 @@ public class MsgDataServer<V, W, M, I> {
 				int dstId = -1, msgIndex = 0;
 				long counter = 0L;
 				
+				if (isAccumulated) {
+					/** runs are sorted, so slots are updated sequentially */
+					PrimitiveMsgCombiner<M> prim = 
+						(pre_combiner instanceof PrimitiveMsgCombiner)? 
+								(PrimitiveMsgCombiner<M>)pre_combiner:null;
+					while (mbb.hasRemaining()) {
+						int num = mbb.getInt();
+						dstId = 0;
+						for (int i = 0; i < num; i++) {
+							if (prim != null) {
+								dstId += getVInt(mbb);
+								prim.combineEncoded(dstId-this.startIndex, mbb.getLong());
+								continue;
+							}
+							MsgRecord<M> message = userTool.getMsgRecord();
+							message.deserialize(mbb);
+							msgIndex = message.getDstVerId() - this.startIndex;
+							if (pre_combiner != null) {
+								pre_combiner.combine(msgIndex, message.getMsgValue());
+							} else {
+								pre_cache[msgIndex].collect(message);
+							}
+						}
+						counter += num;
+					}
+				}
+				
 				while (mbb.hasRemaining()) {
 					MsgRecord<M> message = userTool.getMsgRecord();
 					message.deserialize(mbb);
 					dstId = message.getDstVerId();
 					msgIndex = dstId - this.startIndex;
-					pre_cache[msgIndex].collect(message);
+					if (pre_combiner != null) {
+						pre_combiner.combine(msgIndex, message.getMsgValue());
+					} else {
+						pre_cache[msgIndex].collect(message);
+					}
 					counter++;
 					message = null;
 				}
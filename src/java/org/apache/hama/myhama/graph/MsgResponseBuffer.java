@@ -0,0 +1,254 @@
+package org.apache.hama.myhama.graph;
+
+import java.util.Arrays;
+
+import org.apache.hama.Constants;
+import org.apache.hama.bsp.BSPJob;
+import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MessageSink;
+import org.apache.hama.myhama.api.MsgCombiner;
+import org.apache.hama.myhama.api.MsgRecord;
+import org.apache.hama.myhama.api.UserTool;
+import org.apache.hama.myhama.comm.CommRouteTable;
+import org.apache.hama.myhama.util.GraphContext;
+
+/**
+ * MsgResponseBuffer collects messages generated when responding
+ * pulling requests from one task. Requests from the same task are
+ * served one by one, thus slots per destination vertex, the
+ * {@link GraphContext} and the {@link GraphRecord} are kept and
+ * reused across requests, instead of being allocated per request.
+ * For accumulated messages with a {@link MsgCombiner}, values are
+ * combined into its primitive slots, and {@link MsgRecord}s are only
+ * used as reusable views when messages are packed.
+ *
+ * @param <V> vertex value
+ * @param <W> edge weight
+ * @param <M> message value
+ * @param <I> graph information
+ */
+public class MsgResponseBuffer<V, W, M, I> implements MessageSink<M> {
+	private UserTool<V, W, M, I> userTool;
+	private boolean isAccumulated;
+
+	private GraphContext<V, W, M, I> context;
+	private GraphRecord<V, W, M, I> graph;
+
+	private MsgRecord<M>[] slots; //one slot per destination vertex
+	private MsgRecord<M>[] locals; //valid slots, sent to the local task
+	private MsgRecord<M> scratch; //wrap messages emitted by values
+	/** primitive slots instead of "slots", null if not available */
+	private MsgCombiner<M> combiner;
+	private int[] srcIds; //srcId of the first message per combiner slot
+	private int dstVerMinId = 0;
+	private int range = 0;
+
+	/** io, edge_read, fragment_read, msg_pro, msg_rec, dstVerHasMsg, io_vert */
+	private long[] statis = new long[7];
+
+	@SuppressWarnings("unchecked")
+	public MsgResponseBuffer(UserTool<V, W, M, I> _userTool, boolean _isAccumulated) {
+		this.userTool = _userTool;
+		this.isAccumulated = _isAccumulated;
+		this.slots = (MsgRecord<M>[]) new MsgRecord<?>[0];
+		this.locals = (MsgRecord<M>[]) new MsgRecord<?>[0];
+		if (_isAccumulated) {
+			this.combiner = _userTool.getCombiner();
+		}
+		if (this.combiner != null) {
+			this.combiner.initialize(0);
+			this.srcIds = new int[0];
+		}
+	}
+
+	/**
+	 * Prepare for a new request whose destination vertices
+	 * are in [_dstVerMinId, _dstVerMaxId].
+	 * Slots filled by the previous request are reset.
+	 * @param _dstVerMinId
+	 * @param _dstVerMaxId
+	 */
+	@SuppressWarnings("unchecked")
+	public void prepare(int _dstVerMinId, int _dstVerMaxId) {
+		for (int i = 0; i < this.range; i++) {
+			if (this.combiner != null) {
+				this.combiner.reset(i);
+			} else if (this.slots[i] != null) {
+				this.slots[i].reset();
+			}
+		}
+		Arrays.fill(this.statis, 0L);
+
+		this.dstVerMinId = _dstVerMinId;
+		this.range = _dstVerMaxId - _dstVerMinId + 1;
+		if (this.combiner != null) {
+			if (this.combiner.getCapacity() < this.range) {
+				this.combiner.initialize(this.range);
+				this.srcIds = new int[this.range];
+			}
+		} else if (this.slots.length < this.range) {
+			MsgRecord<M>[] tmp = (MsgRecord<M>[]) new MsgRecord<?>[this.range];
+			System.arraycopy(this.slots, 0, tmp, 0, this.slots.length);
+			this.slots = tmp;
+		}
+	}
+
+	/**
+	 * Get the reusable {@link GraphContext} for the given superstep.
+	 */
+	public GraphContext<V, W, M, I> getContext(int taskId, BSPJob job,
+			int iteNum, Constants.STYLE style, CommRouteTable<V, W, M, I> commRT) {
+		if (this.context == null) {
+			this.context =
+				new GraphContext<V, W, M, I>(taskId, job, iteNum, style, commRT);
+		} else {
+			this.context.setSuperstep(iteNum, style);
+		}
+		return this.context;
+	}
+
+	/**
+	 * Get the reusable {@link GraphRecord}.
+	 */
+	public GraphRecord<V, W, M, I> getGraphRecord() {
+		if (this.graph == null) {
+			this.graph = this.userTool.getGraphRecord();
+		}
+		return this.graph;
+	}
+
+	/**
+	 * io, edge_read, fragment_read, msg_pro, msg_rec, dstVerHasMsg, io_vert.
+	 * @return
+	 */
+	public long[] getStatis() {
+		return this.statis;
+	}
+
+	/** The number of destination vertices of the current request. */
+	public int getRange() {
+		return this.range;
+	}
+
+	/**
+	 * Get the message sent to the index-th destination vertex.
+	 * @param index
+	 * @return null if no message is available.
+	 */
+	public MsgRecord<M> get(int index) {
+		if (this.combiner != null) {
+			if (!this.combiner.hasValue(index)) {
+				return null;
+			}
+			if (this.scratch == null) {
+				this.scratch = this.userTool.getMsgRecord();
+			}
+			this.scratch.initialize(this.srcIds[index], 
+					this.dstVerMinId+index, this.combiner.getValue(index));
+			return this.scratch; //a view, valid until the next call
+		}
+		MsgRecord<M> slot = this.slots[index];
+		return (slot!=null&&slot.isValid())? slot:null;
+	}
+
+	/**
+	 * Collect all valid slots into a reusable array for the local task.
+	 * The array may be longer than the number of valid slots,
+	 * i.e., statis[5], so only its first statis[5] elements make sense.
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public MsgRecord<M>[] getLocalMsgs() {
+		if (this.locals.length < this.statis[5]) {
+			this.locals = (MsgRecord<M>[]) new MsgRecord<?>[(int)this.statis[5]];
+		}
+		int vCounter = 0;
+		for (int i = 0; i < this.range; i++) {
+			if (this.combiner != null) {
+				if (this.combiner.hasValue(i)) {
+					if (this.slots.length <= vCounter) {
+						this.slots = Arrays.copyOf(this.slots, 
+								Math.max(2*this.slots.length, vCounter+1));
+					}
+					if (this.slots[vCounter] == null) {
+						this.slots[vCounter] = this.userTool.getMsgRecord();
+					}
+					this.slots[vCounter].initialize(this.srcIds[i], 
+							this.dstVerMinId+i, this.combiner.getValue(i));
+					this.locals[vCounter] = this.slots[vCounter++];
+				}
+				continue; //"slots" are reused as views of the combiner
+			}
+			MsgRecord<M> slot = this.slots[i];
+			if (slot!=null && slot.isValid()) {
+				this.locals[vCounter++] = slot;
+			}
+		}
+		return this.locals;
+	}
+
+	@Override
+	public void emit(int srcId, int dstId, M msgValue) {
+		if (this.combiner != null) {
+			combine(srcId, dstId, msgValue);
+			return;
+		}
+		MsgRecord<M> slot = slot(dstId);
+		if (slot.isValid()) {
+			if (this.scratch == null) {
+				this.scratch = this.userTool.getMsgRecord();
+			}
+			this.scratch.initialize(srcId, dstId, msgValue);
+			collect(slot, this.scratch);
+		} else {
+			first(slot, srcId, dstId, msgValue);
+		}
+	}
+
+	@Override
+	public void emit(MsgRecord<M> msg) {
+		if (this.combiner != null) {
+			combine(msg.getSrcVerId(), msg.getDstVerId(), msg.getMsgValue());
+			return;
+		}
+		MsgRecord<M> slot = slot(msg.getDstVerId());
+		if (slot.isValid()) {
+			collect(slot, msg);
+		} else {
+			first(slot, msg.getSrcVerId(), msg.getDstVerId(), msg.getMsgValue());
+		}
+	}
+
+	private void combine(int srcId, int dstId, M msgValue) {
+		this.statis[3]++; //msg_pro
+		int index = dstId - this.dstVerMinId;
+		if (!this.combiner.hasValue(index)) {
+			this.srcIds[index] = srcId;
+			this.statis[4]++; //msg_rec
+			this.statis[5]++; //dstVerHasMsg
+		}
+		this.combiner.combine(index, msgValue);
+	}
+
+	private MsgRecord<M> slot(int dstId) {
+		this.statis[3]++; //msg_pro
+		int index = dstId - this.dstVerMinId;
+		if (this.slots[index] == null) {
+			this.slots[index] = this.userTool.getMsgRecord();
+		}
+		return this.slots[index];
+	}
+
+	private void first(MsgRecord<M> slot, int srcId, int dstId, M msgValue) {
+		slot.initialize(srcId, dstId, msgValue);
+		this.statis[4]++; //msg_rec
+		this.statis[5]++; //dstVerHasMsg
+	}
+
+	private void collect(MsgRecord<M> slot, MsgRecord<M> msg) {
+		slot.collect(msg);
+		if (!this.isAccumulated) {
+			this.statis[4]++; //msg_rec
+		}
+	}
+}
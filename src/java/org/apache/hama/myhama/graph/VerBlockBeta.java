@@ -144,6 +144,23 @@ public class VerBlockBeta {
 				0:this.fragNum[_dstTid][_dstBid];
 	}
 	
+	/**
+	 * Get the number of destination VBlocks on all tasks, which 
+	 * fragments of this VBlock are sent to.
+	 * @return
+	 */
+	public int getFragmentDstNum() {
+		int num = 0;
+		if (this.bspStyle != Constants.STYLE.PUSH) {
+			for (int[] nums: this.fragNum) {
+				for (int n: nums) {
+					num += n>0? 1:0;
+				}
+			}
+		}
+		return num;
+	}
+	
 	/**
 	 * Get the total number of fragments whose source vertices 
 	 * belong to this VBlock.
@@ -169,6 +186,10 @@ public class VerBlockBeta {
 		actVerNum++;
 	}
 	
+	public void addActiveVerNum(int num) {
+		actVerNum += num;
+	}
+	
 	public void setRespond(int type, boolean flag) {
 		this.respond[type] = flag;
 	}
@@ -194,6 +215,10 @@ public class VerBlockBeta {
 		this.resVerNum++;
 	}
 	
+	public void addRespondVerNum(int num) {
+		this.resVerNum += num;
+	}
+	
 	/**
 	 * Get the number of source vertices eager to 
 	 * send messages to their target vertices, 
@@ -16,7 +16,7 @@ import org.apache.hama.Constants;
 public class VerBlockMgr {
 	private static final Log LOG = LogFactory.getLog(VerBlockMgr.class);
 	private int blkNum;
-	private int blkLen;
+	private int blkLen; //the maximum length
 	private int verMinId, verMaxId; //source vids in local task
 	private int verNum; //number of source vertices in local task
 	private long edgeNum; //number of outgoing edges in local task
@@ -27,30 +27,26 @@ public class VerBlockMgr {
 	 * VerBlockMgr
 	 * @param _verMinId
 	 * @param _verMaxId
-	 * @param _blkNum
-	 * @param _blkLen
+	 * @param _blkMinIds min vertex id of each VBlock, 
+	 *                   i.e., VBlocks may have different lengths
 	 */
-	public VerBlockMgr(int _verMinId, int _verMaxId, int _blkNum, int _blkLen, 
+	public VerBlockMgr(int _verMinId, int _verMaxId, int[] _blkMinIds, 
 			int _taskNum, int[] _blkNumTask, Constants.STYLE bspStyle) {
 		verMinId = _verMinId;
 		verMaxId = _verMaxId;
 		verNum = _verMaxId - _verMinId + 1;
-        blkNum = _blkNum;
-        blkLen = _blkLen;
+        blkNum = _blkMinIds.length;
+        blkLen = 0;
         
-        int sum = _verMinId;
-        blocks = new VerBlockBeta[_blkNum];
-        LOG.info("initialize VerBlkMgr with #blocks=" + _blkNum);
-        for (int bid = 0; bid < _blkNum; bid++) {
-        	int tmpLen = blkLen;
-        	if (bid == (blkNum-1)) {
-        		tmpLen = _verMaxId - sum + 1;
-        	}
-        	
-        	//distribute mini bucket evenly
-        	blocks[bid] = new VerBlockBeta(bid, sum, (sum+tmpLen-1), tmpLen, 
+        blocks = new VerBlockBeta[blkNum];
+        LOG.info("initialize VerBlkMgr with #blocks=" + blkNum);
+        for (int bid = 0; bid < blkNum; bid++) {
+        	int min = _blkMinIds[bid];
+        	int max = bid==(blkNum-1)? _verMaxId:(_blkMinIds[bid+1]-1);
+        	int tmpLen = max - min + 1;
+        	blocks[bid] = new VerBlockBeta(bid, min, max, tmpLen, 
         			_taskNum, _blkNumTask, bspStyle);
-        	sum += tmpLen;
+        	blkLen = Math.max(blkLen, tmpLen);
         }
 	}
 	
@@ -110,6 +106,19 @@ public class VerBlockMgr {
 		this.blocks[bid].incActiveVerNum();
 	}
 	
+	/**
+	 * Add the number of active vertices in a VBlock, e.g., counted 
+	 * from loaded flags, and mark it active if the number is positive.
+	 * @param bid
+	 * @param num
+	 */
+	public void addActiveVerNum(int bid, int num) {
+		if (num > 0) {
+			this.blocks[bid].setActive(true);
+			this.blocks[bid].addActiveVerNum(num);
+		}
+	}
+	
 	/**
 	 * Set the responding flag for a {@link VerBlockBeta}.
 	 * @param type
@@ -128,6 +137,20 @@ public class VerBlockMgr {
 		this.blocks[bid].incRespondVerNum();
 	}
 	
+	/**
+	 * Add the number of responding vertices in a VBlock, e.g., counted 
+	 * from loaded flags, and mark it responding if the number is positive.
+	 * @param type
+	 * @param bid
+	 * @param num
+	 */
+	public void addRespondVerNum(int type, int bid, int num) {
+		if (num > 0) {
+			this.blocks[bid].setRespond(type, true);
+			this.blocks[bid].addRespondVerNum(num);
+		}
+	}
+	
 	/**
 	 * In the loadGraphData() function of {@link GraphDataServer}, 
 	 * it should be invoked after finishing loading graph data from HDFS, 
@@ -7,7 +7,7 @@ public class VertexTriple<V, W, M, I> {
 	protected int verId;
 	protected V verValue;
 	protected I graphInfo;
-	protected Integer[] eIds; //adj edges
+	protected int[] eIds; //adj edges
 	protected W[] eWeights; //adj edges
 	
 	public VertexTriple(int _verId, V _verValue, I _graphInfo) {
@@ -16,7 +16,7 @@ public class VertexTriple<V, W, M, I> {
 		graphInfo = _graphInfo;
 	}
 	
-	public void setAdjEdges(Integer[] _eIds, W[] _eWeights) {
+	public void setAdjEdges(int[] _eIds, W[] _eWeights) {
 		eIds = _eIds;
 		eWeights = _eWeights;
 	}
@@ -41,7 +41,7 @@ public class VertexTriple<V, W, M, I> {
 		return eIds==null? 0:eIds.length;
 	}
 	
-	public final Integer[] getEdgeIds() {
+	public final int[] getEdgeIds() {
 		return eIds;
 	}
 	
@@ -173,13 +173,14 @@ public abstract class BSPFileInputFormat<K, V> extends InputFormat<K, V> {
     @Override
     public List<InputSplit> getSplits(BSPJob job) throws IOException {
         List<InputSplit> splits = new ArrayList<InputSplit>();
+        boolean splitPerFile = job.isInputSplitPerFile();
         for (FileStatus file : listStatus(job)) {
             Path path = file.getPath();
             FileSystem fs = path.getFileSystem(job.getConf());
             long length = file.getLen();
             BlockLocation[] blkLocations = 
             	fs.getFileBlockLocations(file, 0, length);
-            if ((length != 0) && isSplitable(job, path)) {
+            if ((length != 0) && !splitPerFile && isSplitable(job, path)) {
                 long splitSize = 
                 	(long)Math.ceil(length/(double)job.getNumBspTask());
                 LOG.info("[Split Size] " + splitSize / (float)(1024*1024) + " MB");
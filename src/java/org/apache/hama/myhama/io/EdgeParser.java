@@ -1,31 +1,50 @@
 package org.apache.hama.myhama.io;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Parse the string argument as edges (edge ids [and weights]) 
- * around the matches of the given characters.
+ * around the matches of the given characters. 
+ * Edge ids and weights are parsed into primitive arrays directly, 
+ * without creating any boxed object or temporary String per edge
+ * (except for weights in unusual formats, see parseDouble()).
  * @author root
  *
  */
 public class EdgeParser {
 	
 	public class IntDoubleEdgeSet {
-		Integer[] ids;
-		Double[] weights;
+		int[] ids;
+		double[] weights;
 		
-		public IntDoubleEdgeSet(Integer[] _ids, Double[] _weights) {
+		public IntDoubleEdgeSet(int[] _ids, double[] _weights) {
 			this.ids = _ids;
 			this.weights = _weights;
 		}
 		
-		public Integer[] getEdgeIds() {
+		public int[] getEdgeIds() {
 			return this.ids;
 		}
 		
-		public Double[] getEdgeWeights() {
+		public double[] getEdgeWeights() {
 			return this.weights;
 		}
+		
+		/**
+		 * Get boxed edge weights, used when the edge weight type 
+		 * of {@link GraphRecord} is Double.
+		 * @return
+		 */
+		public Double[] getBoxedEdgeWeights() {
+			if (this.weights == null) {
+				return null;
+			}
+			Double[] result = new Double[this.weights.length];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = this.weights[i];
+			}
+			return result;
+		}
 	}
 	
 	private boolean isEven(int id) {
@@ -36,6 +55,127 @@ public class EdgeParser {
 		}
 	}
 	
+	/**
+	 * Parse chars in [begin, end) as a decimal int value.
+	 * @param cs
+	 * @param begin
+	 * @param end
+	 * @return
+	 */
+	private int parseInt(char[] cs, int begin, int end) {
+		if (begin >= end) {
+			throw new NumberFormatException("empty edge id");
+		}
+		boolean negative = (cs[begin] == '-');
+		int idx = negative||cs[begin]=='+'? begin+1:begin;
+		if (idx >= end) {
+			throw new NumberFormatException(new String(cs, begin, end-begin));
+		}
+		long value = 0L;
+		for (; idx < end; idx++) {
+			int digit = cs[idx] - '0';
+			if (digit<0 || digit>9) {
+				throw new NumberFormatException(new String(cs, begin, end-begin));
+			}
+			value = value*10 + digit;
+			if (value > Integer.MAX_VALUE+1L) {
+				throw new NumberFormatException(new String(cs, begin, end-begin));
+			}
+		}
+		value = negative? -value:value;
+		if (value > Integer.MAX_VALUE) {
+			throw new NumberFormatException(new String(cs, begin, end-begin));
+		}
+		return (int)value;
+	}
+	
+	/** Exact powers of ten as doubles, i.e., 1e0 to 1e22. */
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1.0;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i-1] * 10.0;
+		}
+	}
+	
+	/**
+	 * Parse chars in [begin, end) as a double value. Decimals with at 
+	 * most 15 significant digits and a small exponent, e.g., "0.25" or 
+	 * "3e-2", are computed by one exact multiplication or division, 
+	 * which gives the same result as Double.parseDouble() without 
+	 * creating a String. Other formats fall back to Double.parseDouble().
+	 * @param cs
+	 * @param begin
+	 * @param end
+	 * @return
+	 */
+	private double parseDouble(char[] cs, int begin, int end) {
+		int idx = begin;
+		boolean negative = false;
+		if (idx < end && (cs[idx]=='-' || cs[idx]=='+')) {
+			negative = (cs[idx] == '-');
+			idx++;
+		}
+		long mantissa = 0L;
+		int digits = 0, scale = 0; //value = mantissa * 10^(-scale)
+		boolean dot = false, any = false;
+		for (; idx < end; idx++) {
+			char ch = cs[idx];
+			if (ch>='0' && ch<='9') {
+				any = true;
+				if (mantissa!=0 || ch!='0') {
+					digits++;
+				}
+				if (digits > 15) {
+					return Double.parseDouble(new String(cs, begin, end-begin));
+				}
+				mantissa = mantissa*10 + (ch-'0');
+				scale += dot? 1:0;
+			} else if (ch=='.' && !dot) {
+				dot = true;
+			} else {
+				break;
+			}
+		}
+		if (idx < end) {
+			if (!any || (cs[idx]!='e' && cs[idx]!='E')) {
+				return Double.parseDouble(new String(cs, begin, end-begin));
+			}
+			int exp = 0;
+			try {
+				exp = parseInt(cs, idx+1, end);
+			} catch (NumberFormatException e) {
+				return Double.parseDouble(new String(cs, begin, end-begin));
+			}
+			scale -= Math.max(-1000, Math.min(1000, exp));
+		} else if (!any) {
+			throw new NumberFormatException(new String(cs, begin, end-begin));
+		}
+		
+		double value;
+		if (scale == 0 || mantissa == 0L) {
+			value = mantissa;
+		} else if (scale > 0 && scale < POW10.length) {
+			value = mantissa / POW10[scale];
+		} else if (scale < 0 && -scale < POW10.length) {
+			value = mantissa * POW10[-scale];
+		} else {
+			return Double.parseDouble(new String(cs, begin, end-begin));
+		}
+		return negative? -value:value;
+	}
+	
+	/** Count the number of tokens separated by the given character. */
+	private int countTokens(char[] cs, char c) {
+		int num = 1;
+		for (char ch: cs) {
+			if (ch == c) {
+				num++;
+			}
+		}
+		return num;
+	}
+	
 	/**
 	 * Parse the string argument as target vertex ids of edges around the 
 	 * matches of the given character. A Bipartite Graph is achieved by 
@@ -48,37 +188,35 @@ public class EdgeParser {
 	 * @param s
 	 * @return
 	 */
-	public Integer[] parseEdgeIdArrayFilterBipartiteGraph(String eData, char c, int s) {
+	public int[] parseEdgeIdArrayFilterBipartiteGraph(String eData, char c, int s) {
 		if (eData.equals("")) {
 			return null;
 		}
 		
 		boolean sIsEven = isEven(s);
 		
-        ArrayList<Integer> tmpEdgeId = new ArrayList<Integer>();
     	char edges[] = eData.toCharArray();
-        int begin = 0, end = 0, eid = 0;
+    	int[] edgeIds = new int[countTokens(edges, c)];
+        int begin = 0, end = 0, eid = 0, num = 0;
         for(end = 0; end < edges.length; end++) {
             if(edges[end] != c) {
                 continue;
             }
-            eid = Integer.valueOf(new String(edges, begin, end-begin));
+            eid = parseInt(edges, begin, end);
             if (isEven(eid) != sIsEven) {
-            	tmpEdgeId.add(eid);
+            	edgeIds[num++] = eid;
             }
-            begin = ++end;
+            begin = end + 1;
         }
-        eid = Integer.valueOf(new String(edges, begin, end-begin));
+        eid = parseInt(edges, begin, end);
         if (isEven(eid) != sIsEven) {
-        	tmpEdgeId.add(eid);
+        	edgeIds[num++] = eid;
         }
         
-        if (tmpEdgeId.size() == 0) {
+        if (num == 0) {
         	return null;
         } else {
-            Integer[] edgeIds = new Integer[tmpEdgeId.size()];
-            tmpEdgeId.toArray(edgeIds);
-            return edgeIds;
+            return num==edgeIds.length? edgeIds:Arrays.copyOf(edgeIds, num);
         }
 	}
 	
@@ -91,35 +229,33 @@ public class EdgeParser {
 	 * @param s
 	 * @return
 	 */
-	public Integer[] parseEdgeIdArrayFilterSourceVert(String eData, char c, int s) {
+	public int[] parseEdgeIdArrayFilterSourceVert(String eData, char c, int s) {
 		if (eData.equals("")) {
 			return null;
 		}
 		
-        ArrayList<Integer> tmpEdgeId = new ArrayList<Integer>();
     	char edges[] = eData.toCharArray();
-        int begin = 0, end = 0, eid = 0;
+    	int[] edgeIds = new int[countTokens(edges, c)];
+        int begin = 0, end = 0, eid = 0, num = 0;
         for(end = 0; end < edges.length; end++) {
             if(edges[end] != c) {
                 continue;
             }
-            eid = Integer.valueOf(new String(edges, begin, end-begin));
+            eid = parseInt(edges, begin, end);
             if (eid != s) {
-            	tmpEdgeId.add(eid);
+            	edgeIds[num++] = eid;
             }
-            begin = ++end;
+            begin = end + 1;
         }
-        eid = Integer.valueOf(new String(edges, begin, end-begin));
+        eid = parseInt(edges, begin, end);
         if (eid != s) {
-        	tmpEdgeId.add(eid);
+        	edgeIds[num++] = eid;
         }
         
-        if (tmpEdgeId.size() == 0) {
+        if (num == 0) {
         	return null;
         } else {
-            Integer[] edgeIds = new Integer[tmpEdgeId.size()];
-            tmpEdgeId.toArray(edgeIds);
-            return edgeIds;
+            return num==edgeIds.length? edgeIds:Arrays.copyOf(edgeIds, num);
         }
 	}
 	
@@ -131,27 +267,22 @@ public class EdgeParser {
 	 * @param c
 	 * @return
 	 */
-	public Integer[] parseEdgeIdArray(String eData, char c) {
+	public int[] parseEdgeIdArray(String eData, char c) {
 		if (eData.equals("")) {
 			return null;
 		}
 		
-        ArrayList<Integer> tmpEdgeId = new ArrayList<Integer>();
     	char edges[] = eData.toCharArray();
-        int begin = 0, end = 0;
+    	int[] edgeIds = new int[countTokens(edges, c)];
+        int begin = 0, end = 0, num = 0;
         for(end = 0; end < edges.length; end++) {
             if(edges[end] != c) {
                 continue;
             }
-            tmpEdgeId.add(Integer.valueOf(
-            		new String(edges, begin, end-begin)));
-            begin = ++end;
+            edgeIds[num++] = parseInt(edges, begin, end);
+            begin = end + 1;
         }
-        tmpEdgeId.add(Integer.valueOf(
-        		new String(edges, begin, end-begin)));
-        
-        Integer[] edgeIds = new Integer[tmpEdgeId.size()];
-        tmpEdgeId.toArray(edgeIds);
+        edgeIds[num++] = parseInt(edges, begin, end);
         
         return edgeIds;
 	}
@@ -168,33 +299,26 @@ public class EdgeParser {
 			return new IntDoubleEdgeSet(null, null);
 		}
 		
-        ArrayList<Integer> tmpEdgeId = new ArrayList<Integer>();
-        ArrayList<Double> tmpEdgeWeight = new ArrayList<Double>();
-        boolean isId = true;
     	char edges[] = eData.toCharArray();
-        int begin = 0, end = 0;
+    	int pairNum = countTokens(edges, c) / 2;
+    	int[] edgeIds = new int[pairNum];
+    	double[] edgeWeights = new double[pairNum];
+        boolean isId = true;
+        int begin = 0, end = 0, idNum = 0, weightNum = 0;
         for(end = 0; end < edges.length; end++) {
             if(edges[end] != c) {
                 continue;
             }
             if (isId) {
-                tmpEdgeId.add(Integer.valueOf(
-                		new String(edges, begin, end-begin)));
+            	edgeIds[idNum++] = parseInt(edges, begin, end);
             } else {
-            	tmpEdgeWeight.add(Double.valueOf(
-                		new String(edges, begin, end-begin)));
+            	edgeWeights[weightNum++] = parseDouble(edges, begin, end);
             }
             isId = !isId;
 
-            begin = ++end;
+            begin = end + 1;
         }
-        tmpEdgeWeight.add(Double.valueOf(
-        		new String(edges, begin, end-begin)));
-        
-        Integer[] edgeIds = new Integer[tmpEdgeId.size()];
-        tmpEdgeId.toArray(edgeIds);
-        Double[] edgeWeights = new Double[tmpEdgeWeight.size()];
-        tmpEdgeWeight.toArray(edgeWeights);
+        edgeWeights[weightNum++] = parseDouble(edges, begin, end);
         
         return new IntDoubleEdgeSet(edgeIds, edgeWeights);
 	}
@@ -0,0 +1,400 @@
+package org.apache.hama.myhama.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hama.HamaConfiguration;
+
+/**
+ * StreamingPartitioner is an optional stage run before a job,
+ * as an alternative to Range partitioning over consecutive vertex ids.
+ *
+ * (1) The first pass streams the adjacency input (one vertex per line,
+ *     "source_vertex_id \t target_vertex_id_1:target_vertex_id_2:...")
+ *     and assigns each vertex to the partition with the most of its
+ *     already assigned neighbors, penalized by the partition size,
+ *     i.e., LDG or Fennel.
+ * (2) Vertices are relabeled into dense ranges, one range per partition,
+ *     in the order they are streamed.
+ * (3) The second pass rewrites the input with new ids into one file per
+ *     partition, "part-xxxxx", and the map "old id \t new id" is written
+ *     into "_idmap", which is ignored as the input of a job.
+ *
+ * The output should be read with {@link BSPJob}.setInputSplitPerFile(true),
+ * so that each task loads one partition and {@link CommRouteTable}
+ * still routes vertices by ranges, while cut edges drop.
+ *
+ * Vertex ids of the input must be in [0, #vertices). Target vertices
+ * without their own lines are appended to the smallest partitions
+ * with no edges.
+ */
+public class StreamingPartitioner {
+	private static final Log LOG = LogFactory.getLog(StreamingPartitioner.class);
+	public static final String ID_MAP = "_idmap";
+
+	public static enum Heuristic {
+		/** Linear Deterministic Greedy */
+		LDG,
+		/** Fennel, with gamma = 1.5 */
+		FENNEL
+	}
+
+	private static final double GAMMA = 1.5;
+
+	private Configuration conf;
+	private int parNum, verNum;
+	private Heuristic heuristic;
+	private boolean weighted;
+	/** the maximum #vertices per partition */
+	private int capacity;
+
+	private int[] parIds; //partition of each vertex, -1 if not assigned
+	private int[] newIds; //local index in its partition, then the new id
+	private int[] parSizes;
+	private int[] streamedSizes; //#vertices with lines per partition
+	private int[] parStarts;
+
+	private int[] neighbors; //#neighbors per partition of the current vertex
+	private int[] touched; //partitions with neighbors of the current vertex
+	private long streamedVerNum = 0L, streamedEdgeNum = 0L;
+
+	/**
+	 * @param _conf
+	 * @param _parNum #partitions, i.e., #tasks
+	 * @param _verNum #vertices
+	 * @param _heuristic
+	 * @param _slack the maximum imbalance of #vertices, such as 1.1
+	 * @param _weighted true if edge ids and weights are interleaved
+	 */
+	public StreamingPartitioner(Configuration _conf, int _parNum, int _verNum,
+			Heuristic _heuristic, double _slack, boolean _weighted) {
+		this.conf = _conf;
+		this.parNum = _parNum;
+		this.verNum = _verNum;
+		this.heuristic = _heuristic;
+		this.weighted = _weighted;
+		this.capacity = Math.max(1,
+				(int)Math.ceil(_slack*_verNum/(double)_parNum));
+
+		this.parIds = new int[_verNum];
+		Arrays.fill(this.parIds, -1);
+		this.newIds = new int[_verNum];
+		this.parSizes = new int[_parNum];
+		this.streamedSizes = new int[_parNum];
+		this.parStarts = new int[_parNum];
+		this.neighbors = new int[_parNum];
+		this.touched = new int[_parNum];
+	}
+
+	/**
+	 * Partition graph data in "input" and write the relabeled graph
+	 * and the id map into "output".
+	 * @param input
+	 * @param output
+	 * @throws Exception
+	 */
+	public void run(Path input, Path output) throws Exception {
+		List<Path> files = listInputFiles(input);
+		long start = System.currentTimeMillis();
+		for (Path file: files) {
+			assignFile(file);
+		}
+		int danglingNum = assignDanglingVertices();
+		relabel();
+		LOG.info("assign " + this.streamedVerNum + " vertices, "
+				+ this.streamedEdgeNum + " edges and " + danglingNum
+				+ " vertices without lines by " + this.heuristic + ", cost "
+				+ (System.currentTimeMillis()-start)/1000.0 + " seconds");
+
+		start = System.currentTimeMillis();
+		FileSystem fs = output.getFileSystem(this.conf);
+		BufferedWriter[] writers = new BufferedWriter[this.parNum];
+		for (int i = 0; i < this.parNum; i++) {
+			writers[i] = new BufferedWriter(new OutputStreamWriter(
+					fs.create(new Path(output, String.format("part-%05d", i)))));
+		}
+		long cutNum = 0L;
+		for (Path file: files) {
+			cutNum += rewriteFile(file, writers);
+		}
+		writeDanglingVertices(writers);
+		for (BufferedWriter writer: writers) {
+			writer.close();
+		}
+		writeIdMap(fs, new Path(output, ID_MAP));
+
+		LOG.info("write " + this.parNum + " partitions, #vertices="
+				+ Arrays.toString(this.parSizes) + ", cut edges=" + cutNum
+				+ " (" + (this.streamedEdgeNum==0L? 0.0f:
+					cutNum/(float)this.streamedEdgeNum)
+				+ "), cost " + (System.currentTimeMillis()-start)/1000.0
+				+ " seconds");
+	}
+
+	private List<Path> listInputFiles(Path input) throws IOException {
+		FileSystem fs = input.getFileSystem(this.conf);
+		List<Path> files = new ArrayList<Path>();
+		FileStatus status = fs.getFileStatus(input);
+		if (!status.isDir()) {
+			files.add(input);
+			return files;
+		}
+
+		FileStatus[] children = fs.listStatus(input);
+		Arrays.sort(children); //the same order in both passes
+		for (FileStatus child: children) {
+			String name = child.getPath().getName();
+			if (!child.isDir() && !name.startsWith("_")
+					&& !name.startsWith(".")) {
+				files.add(child.getPath());
+			}
+		}
+		return files;
+	}
+
+	/** The first pass over one input file. */
+	private void assignFile(Path file) throws Exception {
+		EdgeParser parser = new EdgeParser();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				file.getFileSystem(this.conf).open(file)));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int tab = line.indexOf('\t');
+			if (tab < 0) {
+				continue;
+			}
+			int vid = checkId(Integer.parseInt(line.substring(0, tab)));
+			if (this.parIds[vid] >= 0) {
+				reader.close();
+				throw new Exception("duplicate vertex " + vid + " in " + file);
+			}
+			String eData = line.substring(tab+1);
+			int[] eids = this.weighted?
+					parser.parseEdgeIdWeightArray(eData, ':').getEdgeIds()
+						: parser.parseEdgeIdArray(eData, ':');
+			assign(vid, eids);
+		}
+		reader.close();
+	}
+
+	private int checkId(int vid) throws Exception {
+		if (vid<0 || vid>=this.verNum) {
+			throw new Exception("vertex id " + vid
+					+ " is out of [0, " + this.verNum + ")");
+		}
+		return vid;
+	}
+
+	/**
+	 * Assign one vertex to a partition according to the partitions of
+	 * its neighbors streamed before.
+	 * @param vid
+	 * @param eids null if no edges
+	 */
+	private void assign(int vid, int[] eids) throws Exception {
+		int touchedNum = 0, eNum = eids==null? 0:eids.length;
+		for (int i = 0; i < eNum; i++) {
+			int pid = this.parIds[checkId(eids[i])];
+			if (pid >= 0) {
+				if (this.neighbors[pid] == 0) {
+					this.touched[touchedNum++] = pid;
+				}
+				this.neighbors[pid]++;
+			}
+		}
+
+		this.streamedVerNum++;
+		this.streamedEdgeNum += eNum;
+		double alpha = 0.0;
+		if (this.heuristic == Heuristic.FENNEL) {
+			//#edges is estimated by the average degree streamed so far
+			double edgeNum =
+				this.streamedEdgeNum/(double)this.streamedVerNum*this.verNum;
+			alpha = edgeNum * Math.pow(this.parNum, GAMMA-1.0)
+				/ Math.pow(this.verNum, GAMMA);
+		}
+
+		int best = -1;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int pid = 0; pid < this.parNum; pid++) {
+			if (this.parSizes[pid] >= this.capacity) {
+				continue;
+			}
+			double score;
+			if (this.heuristic == Heuristic.LDG) {
+				score = this.neighbors[pid]
+				    * (1.0-this.parSizes[pid]/(double)this.capacity);
+			} else {
+				score = this.neighbors[pid] - alpha*GAMMA
+					* Math.pow(this.parSizes[pid], GAMMA-1.0);
+			}
+			if (score>bestScore || (score==bestScore
+					&& this.parSizes[pid]<this.parSizes[best])) {
+				best = pid;
+				bestScore = score;
+			}
+		}
+		if (best < 0) {
+			best = getSmallestPartition(); //only if the slack is too small
+		}
+
+		for (int i = 0; i < touchedNum; i++) {
+			this.neighbors[this.touched[i]] = 0;
+		}
+		this.parIds[vid] = best;
+		this.newIds[vid] = this.parSizes[best]++;
+	}
+
+	private int getSmallestPartition() {
+		int smallest = 0;
+		for (int pid = 1; pid < this.parNum; pid++) {
+			if (this.parSizes[pid] < this.parSizes[smallest]) {
+				smallest = pid;
+			}
+		}
+		return smallest;
+	}
+
+	/** Assign vertices without lines, i.e., never streamed. */
+	private int assignDanglingVertices() {
+		System.arraycopy(this.parSizes, 0, this.streamedSizes, 0, this.parNum);
+		int counter = 0;
+		for (int vid = 0; vid < this.verNum; vid++) {
+			if (this.parIds[vid] < 0) {
+				int pid = getSmallestPartition();
+				this.parIds[vid] = pid;
+				this.newIds[vid] = this.parSizes[pid]++;
+				counter++;
+			}
+		}
+		return counter;
+	}
+
+	/** Convert local indices into new ids, i.e., dense ranges. */
+	private void relabel() {
+		for (int pid = 1; pid < this.parNum; pid++) {
+			this.parStarts[pid] =
+				this.parStarts[pid-1] + this.parSizes[pid-1];
+		}
+		for (int vid = 0; vid < this.verNum; vid++) {
+			this.newIds[vid] += this.parStarts[this.parIds[vid]];
+		}
+	}
+
+	/**
+	 * The second pass over one input file.
+	 * Lines are appended into partitions in the order they are streamed,
+	 * i.e., in the increasing order of new ids.
+	 * @return #cut edges
+	 */
+	private long rewriteFile(Path file, BufferedWriter[] writers)
+			throws Exception {
+		long cutNum = 0L;
+		StringBuilder sb = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				file.getFileSystem(this.conf).open(file)));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int tab = line.indexOf('\t');
+			if (tab < 0) {
+				continue;
+			}
+			int vid = Integer.parseInt(line.substring(0, tab));
+			int pid = this.parIds[vid];
+			sb.setLength(0);
+			sb.append(this.newIds[vid]).append('\t');
+
+			int begin = tab + 1, end = line.length();
+			boolean isId = true;
+			while (begin < end) {
+				int sep = line.indexOf(':', begin);
+				if (sep < 0) {
+					sep = end;
+				}
+				if (isId) {
+					int eid = Integer.parseInt(line.substring(begin, sep));
+					sb.append(this.newIds[eid]);
+					if (this.parIds[eid] != pid) {
+						cutNum++;
+					}
+				} else {
+					sb.append(line, begin, sep);
+				}
+				if (sep < end) {
+					sb.append(':');
+				}
+				isId = !this.weighted || !isId;
+				begin = sep + 1;
+			}
+			writers[pid].write(sb.toString());
+			writers[pid].newLine();
+		}
+		reader.close();
+		return cutNum;
+	}
+
+	private void writeDanglingVertices(BufferedWriter[] writers)
+			throws IOException {
+		//dangling vertices are relabeled after all streamed ones,
+		//in the increasing order of their old ids
+		for (int vid = 0; vid < this.verNum; vid++) {
+			int pid = this.parIds[vid];
+			if (this.newIds[vid]-this.parStarts[pid] >= this.streamedSizes[pid]) {
+				writers[pid].write(this.newIds[vid] + "\t");
+				writers[pid].newLine();
+			}
+		}
+	}
+
+	private void writeIdMap(FileSystem fs, Path path) throws IOException {
+		BufferedWriter writer =
+			new BufferedWriter(new OutputStreamWriter(fs.create(path)));
+		for (int vid = 0; vid < this.verNum; vid++) {
+			writer.write(vid + "\t" + this.newIds[vid]);
+			writer.newLine();
+		}
+		writer.close();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 4) {
+			StringBuffer sb =
+				new StringBuffer("\nUsage of the streaming partitioner:");
+			sb.append("\n(*)required parameter");
+			sb.append("\n[*]optional parameter");
+			sb.append("\n   (1)input directory on HDFS");
+			sb.append("\n   (2)output directory on HDFS");
+			sb.append("\n   (3)#tasks(int)");
+			sb.append("\n   (4)#vertices(int)");
+			sb.append("\n   [5]heuristic: ldg or fennel (fennel default)");
+			sb.append("\n   [6]balance slack(double, 1.1 default)");
+			sb.append("\n   [7]weighted edges: true or false (false default)");
+			sb.append("\nRun the job on the output directory with");
+			sb.append("\nBSPJob.setInputSplitPerFile(true), i.e.,");
+			sb.append("\nbsp.input.split.per.file=true, and #tasks=(3).");
+			System.out.println(sb.toString());
+			System.exit(-1);
+		}
+
+		Heuristic heuristic = args.length>=5?
+				Heuristic.valueOf(args[4].toUpperCase()):Heuristic.FENNEL;
+		double slack = args.length>=6? Double.parseDouble(args[5]):1.1;
+		boolean weighted = args.length>=7 && Boolean.parseBoolean(args[6]);
+		StreamingPartitioner partitioner = new StreamingPartitioner(
+				new HamaConfiguration(), Integer.parseInt(args[2]),
+				Integer.parseInt(args[3]), heuristic, slack, weighted);
+		partitioner.run(new Path(args[0]), new Path(args[1]));
+	}
+}
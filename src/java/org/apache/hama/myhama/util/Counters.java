@@ -42,6 +42,11 @@ public class Counters implements Writable {
 		/** counters of runtime */
 		Time_Pull, //runtime of pulling msgs from source vertices
 		Time_Ite,  //runtime of one whole iteration
+		Time_Pull_Hidden, //runtime of pulling msgs overlapped with computations by pre-fetching
+		Time_Push_Stall, //milliseconds of suspending computations due to the sending window/budget (push)
+		
+		/** counters of sending windows */
+		Push_InFlight_Max, //maximal #packs in flight to one dstTask (push)
 		
 		/** counters of io_bytes */
 		Byte_Push,  //io_bytes under "PUSH" model, accurate or estimated
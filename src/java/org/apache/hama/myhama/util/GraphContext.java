@@ -31,6 +31,17 @@ public class GraphContext<V, W, M, I> extends Context<V, W, M, I> {
 	public void setVBlockId(int id) {
 		this.vBlkId = id;
 	}
+
+	/**
+	 * Reset the superstep counter and style,
+	 * in order to reuse this context across supersteps.
+	 * @param _iteNum
+	 * @param _iteStyle
+	 */
+	public void setSuperstep(int _iteNum, Constants.STYLE _iteStyle) {
+		this.iteNum = _iteNum;
+		this.iteStyle = _iteStyle;
+	}
 	
 	/**
 	 * Get the update rule of one VBlock.
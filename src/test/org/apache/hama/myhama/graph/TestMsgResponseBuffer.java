@@ -0,0 +1,239 @@
+/**
+ * Termite System
+ * copyright 2012-2010
+ */
+package org.apache.hama.myhama.graph;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hama.myhama.api.DoubleSumCombiner;
+import org.apache.hama.myhama.api.GraphRecord;
+import org.apache.hama.myhama.api.MsgCombiner;
+import org.apache.hama.myhama.api.MsgRecord;
+import org.apache.hama.myhama.api.UserTool;
+
+/**
+ * Check messages delivered by {@link MsgResponseBuffer} against those
+ * generated as {@link MsgRecord} arrays, i.e., by
+ * {@link BSPInterface}.getMessages(Context), with and without a
+ * {@link MsgCombiner}. Slots are reused across requests.
+ * The heap allocation of both ways is also compared.
+ */
+public class TestMsgResponseBuffer extends TestCase {
+
+	private static class SumMsgRecord extends MsgRecord<Double> {
+		@Override
+		public void combiner(MsgRecord<Double> msg) {
+			this.msgValue += msg.getMsgValue();
+		}
+
+		@Override
+		public void serialize(DataOutputStream out) throws IOException {
+			out.writeInt(this.dstId);
+			out.writeDouble(this.msgValue);
+		}
+
+		@Override
+		public void deserialize(DataInputStream in) throws IOException {
+			this.dstId = in.readInt();
+			this.msgValue = in.readDouble();
+		}
+	}
+
+	private static class SumUserTool extends UserTool<Double, Integer, Double, Integer> {
+		private boolean useCombiner;
+
+		public SumUserTool(boolean _useCombiner) {
+			this.useCombiner = _useCombiner;
+		}
+
+		@Override
+		public GraphRecord<Double, Integer, Double, Integer> getGraphRecord() {
+			return null;
+		}
+
+		@Override
+		public MsgRecord<Double> getMsgRecord() {
+			return new SumMsgRecord();
+		}
+
+		@Override
+		public boolean isAccumulated() {
+			return true;
+		}
+
+		@Override
+		public MsgCombiner<Double> getCombiner() {
+			return this.useCombiner? new DoubleSumCombiner():null;
+		}
+	}
+
+	/** One pulling request, i.e., messages from all source vertices. */
+	private static class Request {
+		private int dstMinId, dstNum;
+		private int[][] edges; //edges of each source vertex
+		private Double[] values;
+
+		public Request(long seed, int _dstMinId, int _dstNum,
+				int srcNum, int degree) {
+			this.dstMinId = _dstMinId;
+			this.dstNum = _dstNum;
+			Random rd = new Random(seed);
+			this.edges = new int[srcNum][degree];
+			this.values = new Double[srcNum];
+			for (int i = 0; i < srcNum; i++) {
+				for (int j = 0; j < degree; j++) {
+					this.edges[i][j] = this.dstMinId + rd.nextInt(this.dstNum);
+				}
+				this.values[i] = rd.nextDouble();
+			}
+		}
+
+		/** Generate messages as arrays, and combine them into a cache. */
+		@SuppressWarnings("unchecked")
+		public MsgRecord<Double>[] respondByArray() {
+			MsgRecord<Double>[] cache =
+				(MsgRecord<Double>[]) new MsgRecord<?>[this.dstNum];
+			for (int src = 0; src < this.edges.length; src++) {
+				MsgRecord<Double>[] msgs = new SumMsgRecord[this.edges[src].length];
+				for (int j = 0; j < msgs.length; j++) {
+					msgs[j] = new SumMsgRecord();
+					msgs[j].initialize(src, this.edges[src][j], this.values[src]);
+				}
+				for (MsgRecord<Double> msg: msgs) {
+					int index = msg.getDstVerId() - this.dstMinId;
+					if (cache[index] == null) {
+						cache[index] = msg;
+					} else {
+						cache[index].collect(msg);
+					}
+				}
+			}
+			return cache;
+		}
+
+		/** Emit messages into the reused buffer. */
+		public void respondBySink(
+				MsgResponseBuffer<Double, Integer, Double, Integer> buf) {
+			buf.prepare(this.dstMinId, this.dstMinId+this.dstNum-1);
+			for (int src = 0; src < this.edges.length; src++) {
+				for (int j = 0; j < this.edges[src].length; j++) {
+					buf.emit(src, this.edges[src][j], this.values[src]);
+				}
+			}
+		}
+
+		public long getMsgNum() {
+			return (long)this.edges.length * this.edges[0].length;
+		}
+	}
+
+	private void checkContents(boolean useCombiner) {
+		MsgResponseBuffer<Double, Integer, Double, Integer> buf =
+			new MsgResponseBuffer<Double, Integer, Double, Integer>(
+					new SumUserTool(useCombiner), true);
+		//ranges grow, shrink and shift, so slots are reused and re-allocated
+		Request[] reqs = new Request[] {
+				new Request(17L, 0, 1000, 500, 4),
+				new Request(18L, 1000, 300, 200, 3),
+				new Request(19L, 500, 2000, 800, 5),
+				new Request(20L, 0, 1000, 10, 2)};
+		for (Request req: reqs) {
+			MsgRecord<Double>[] expected = req.respondByArray();
+			req.respondBySink(buf);
+
+			long[] statis = buf.getStatis();
+			int dstVerHasMsg = 0;
+			assertEquals(req.dstNum, buf.getRange());
+			for (int i = 0; i < req.dstNum; i++) {
+				MsgRecord<Double> msg = buf.get(i);
+				if (expected[i] == null) {
+					assertNull("dst=" + (req.dstMinId+i), msg);
+					continue;
+				}
+				dstVerHasMsg++;
+				assertNotNull("dst=" + (req.dstMinId+i), msg);
+				assertEquals(expected[i].getDstVerId(), msg.getDstVerId());
+				assertEquals(expected[i].getSrcVerId(), msg.getSrcVerId());
+				//the same order of additions, so the sums are identical
+				assertEquals(expected[i].getMsgValue(), msg.getMsgValue());
+			}
+			assertEquals(req.getMsgNum(), statis[3]); //msg_pro
+			assertEquals(dstVerHasMsg, statis[4]); //msg_rec
+			assertEquals(dstVerHasMsg, statis[5]); //dstVerHasMsg
+
+			MsgRecord<Double>[] locals = buf.getLocalMsgs();
+			int vCounter = 0;
+			for (int i = 0; i < req.dstNum; i++) {
+				if (expected[i] != null) {
+					MsgRecord<Double> msg = locals[vCounter++];
+					assertEquals(expected[i].getDstVerId(), msg.getDstVerId());
+					assertEquals(expected[i].getMsgValue(), msg.getMsgValue());
+				}
+			}
+			assertEquals(dstVerHasMsg, vCounter);
+		}
+	}
+
+	public void testContentsWithRecords() {
+		checkContents(false);
+	}
+
+	public void testContentsWithCombiner() {
+		checkContents(true);
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean =
+				(com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported()
+					&& sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1L;
+	}
+
+	/** Bytes allocated per message, by the per-thread allocation counter. */
+	public void testAllocation() {
+		if (allocatedBytes() < 0) {
+			return; //not supported by this JVM
+		}
+		Request req = new Request(17L, 0, 100000, 50000, 10);
+		MsgResponseBuffer<Double, Integer, Double, Integer> buf =
+			new MsgResponseBuffer<Double, Integer, Double, Integer>(
+					new SumUserTool(true), true);
+		req.respondByArray(); req.respondBySink(buf); //warm up
+
+		int reqNum = 5;
+		long bytes = allocatedBytes();
+		for (int r = 0; r < reqNum; r++) {
+			req.respondByArray();
+		}
+		long arrayBytes = allocatedBytes() - bytes;
+
+		bytes = allocatedBytes();
+		for (int r = 0; r < reqNum; r++) {
+			req.respondBySink(buf);
+			buf.getLocalMsgs();
+		}
+		long sinkBytes = allocatedBytes() - bytes;
+
+		double msgNum = reqNum * req.getMsgNum();
+		System.out.println("array: " + (arrayBytes/msgNum)
+				+ " bytes per message, sink: " + (sinkBytes/msgNum)
+				+ " bytes per message");
+		//the sink only boxes one value per destination in getLocalMsgs()
+		assertTrue("array=" + arrayBytes + ", sink=" + sinkBytes,
+				sinkBytes < arrayBytes/4);
+	}
+}